@@ -5,11 +5,16 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
+import org.wikipedia.miner.db.IntListView;
+import org.wikipedia.miner.db.LinkCountTable;
+import org.wikipedia.miner.db.LinkGraph;
 import org.wikipedia.miner.db.WDatabase.DatabaseType;
+import org.wikipedia.miner.db.WEnvironment;
 import org.wikipedia.miner.db.WEnvironment.StatisticName;
-import org.wikipedia.miner.db.struct.DbIntList;
+import org.wikipedia.miner.db.struct.DbPageLinkCounts;
 import org.wikipedia.miner.model.Article;
 import org.wikipedia.miner.model.Wikipedia;
 import org.wikipedia.miner.util.CorrelationCalculator;
@@ -55,6 +60,17 @@ public class ArticleComparer {
 	Double m ;
 	
 	private long articlesCompared = 0 ;
+	
+	//identifies the wikipedia, dependencies and classifier in use, so that relatedness measures made by different classifiers are never confused
+	private volatile String configurationKey ;
+	private static final AtomicLong modelsTrained = new AtomicLong() ;
+
+	private static final ThreadLocal<LinkScratch> linkScratch = new ThreadLocal<LinkScratch>() {
+		@Override
+		protected LinkScratch initialValue() {
+			return new LinkScratch() ;
+		}
+	} ;
 
 	enum Attributes {
 		inLinkGoogleMeasure, 
@@ -94,6 +110,7 @@ public class ArticleComparer {
 
 		this.wikipedia = wikipedia ;
 		this.dependancies = dependancies ;
+		setModelKey("none") ;
 
 		wikipediaArticleCount = new Long(wikipedia.getEnvironment().retrieveStatistic(StatisticName.articleCount)).intValue() ;
 		m = Math.log(wikipediaArticleCount) ;
@@ -107,6 +124,29 @@ public class ArticleComparer {
 			this.loadClassifier(wikipedia.getConfig().getArticleComparisonModel()) ;
 	}
 
+	/**
+	 * @return the wikipedia whose articles are being compared
+	 */
+	public Wikipedia getWikipedia() {
+		return wikipedia ;
+	}
+
+	/**
+	 * Returns a key that identifies everything that determines the relatedness measures made by this comparer: the wikipedia edition,
+	 * the data dependencies and the classifier. Two comparers with the same key will always return the same relatedness for the same pair of articles. 
+	 * <p>
+	 * The key changes whenever a classifier is loaded or built, so it should be checked every time relatedness measures are cached. 
+	 * 
+	 * @return a key that identifies the configuration of this comparer
+	 */
+	public String getConfigurationKey() {
+		return configurationKey ;
+	}
+
+	private void setModelKey(String modelKey) {
+		configurationKey = wikipedia.getConfig().getDatabaseDirectory().getAbsolutePath() + "|" + dependancies + "|" + modelKey ;
+	}
+
 	public Double getRelatedness(Article artA, Article artB) throws Exception {
 
 		if (artA.getId() == artB.getId()) 
@@ -238,6 +278,7 @@ public class ArticleComparer {
 	 */
 	public void loadClassifier(File file) throws Exception {
 		relatednessMeasurer.load(file) ;
+		setModelKey(file.getAbsolutePath() + "@" + file.lastModified()) ;
 	}
 
 
@@ -250,6 +291,7 @@ public class ArticleComparer {
 	public void buildClassifier(Classifier classifier) throws Exception {
 
 		relatednessMeasurer.train(classifier, trainingDataset) ;
+		setModelKey("trained#" + modelsTrained.incrementAndGet()) ;
 	}
 
 	/**
@@ -262,6 +304,7 @@ public class ArticleComparer {
 
 		Classifier classifier = new GaussianProcesses() ;
 		relatednessMeasurer.train(classifier, trainingDataset) ;
+		setModelKey("trained#" + modelsTrained.incrementAndGet()) ;
 	}
 
 
@@ -335,13 +378,18 @@ public class ArticleComparer {
 		if (cmp.getArticleA().getId() == cmp.getArticleB().getId())
 			return cmp ;
 
-		ArrayList<Integer> linksA = getLinks(cmp.getArticleA().getId(), dir) ;
-		ArrayList<Integer> linksB = getLinks(cmp.getArticleB().getId(), dir) ;
+		//links are read into buffers that are reused by every comparison made on this thread
+		LinkScratch scratch = linkScratch.get() ;
+
+		int sizeA = getLinks(cmp.getArticleA().getId(), dir, scratch.linksA, scratch.view) ;
+		int sizeB = getLinks(cmp.getArticleB().getId(), dir, scratch.linksB, scratch.view) ;
 
 		//we can't do anything if there are no links
-		if (linksA.isEmpty() || linksB.isEmpty()) 
+		if (sizeA == 0 || sizeB == 0) 
 			return cmp ;
 		
+		int[] linksA = scratch.linksA.values ;
+		int[] linksB = scratch.linksB.values ;
 
 		int intersection = 0 ;
 		//int sentenceIntersection = 0 ;
@@ -350,12 +398,14 @@ public class ArticleComparer {
 		int indexA = 0 ;
 		int indexB = 0 ;
 
-		ArrayList<Double> vectA = new ArrayList<Double>() ;
-		ArrayList<Double> vectB = new ArrayList<Double>() ;
+		//the vectors are never stored, only accumulated in the order they would have been summed
+		double dotProduct = 0 ;
+		double magnitudeA = 0 ;
+		double magnitudeB = 0 ;
 
 		//get denominators for link frequency
-		Integer linksFromSourceA = 0 ;
-		Integer linksFromSourceB = 0 ;
+		int linksFromSourceA = 0 ;
+		int linksFromSourceB = 0 ;
 		if (useLinkCounts) {
 			if (dir == LinkDirection.Out) {
 				linksFromSourceA = cmp.getArticleA().getTotalLinksOutCount() ;
@@ -366,7 +416,17 @@ public class ArticleComparer {
 			}
 		}
 
-		while (indexA < linksA.size() || indexB < linksB.size()) {
+		//if link counts are cached as a table, they can be read directly for each target. Otherwise 
+		//retrieve link counts for every link target in one batch, in the order they will be visited below
+		LinkCountTable linkCountTable = wikipedia.getEnvironment().getLinkCountTable() ;
+		DbPageLinkCounts[] targetLinkCounts = null ;
+		if (useLinkCounts && linkCountTable == null) {
+			int targetCount = getUnion(linksA, sizeA, linksB, sizeB, scratch.union) ;
+			targetLinkCounts = scratch.getLinkCounts(targetCount) ;
+			wikipedia.getEnvironment().getDbPageLinkCounts().retrieveAll(scratch.union.values, targetCount, targetLinkCounts) ;
+		}
+
+		while (indexA < sizeA || indexB < sizeB) {
 
 			//identify which links to use (A, B, or both)
 
@@ -374,39 +434,32 @@ public class ArticleComparer {
 			boolean useB = false;
 			boolean mutual = false ;
 
-			Integer linkA = null ;
-			Integer linkB = null ;
-			Article linkArt ;
+			boolean hasA = indexA < sizeA ;
+			boolean hasB = indexB < sizeB ;
 
-			if (indexA < linksA.size())
-				linkA = linksA.get(indexA) ;
+			int linkA = hasA ? linksA[indexA] : 0 ;
+			int linkB = hasB ? linksB[indexB] : 0 ;
 
-			if (indexB < linksB.size())
-				linkB = linksB.get(indexB) ;
-
-			if (linkA != null && linkB != null && linkA.equals(linkB)) {
+			if (hasA && hasB && linkA == linkB) {
 				useA = true ;
 				useB = true ;
-				linkArt = new Article(wikipedia.getEnvironment(), linkA) ;
 				intersection ++ ;
 
 				//if (hasSentenceIntersection(linkA.getSentenceIndexes(), linkB.getSentenceIndexes()))
 					//        sentenceIntersection++ ;
 			} else {
-				if (linkA != null && (linkB == null || linkA < linkB)) {
+				if (hasA && (!hasB || linkA < linkB)) {
 					useA = true ;
-					linkArt = new Article(wikipedia.getEnvironment(), linkA) ;
 
-					if (linkA.equals(cmp.getArticleB().getId())) {
+					if (linkA == cmp.getArticleB().getId()) {
 						intersection++ ;
 						mutual = true ;
 					}
 
 				} else {
 					useB = true ;
-					linkArt = new Article(wikipedia.getEnvironment(), linkB) ;
 
-					if (linkB.equals(cmp.getArticleA().getId())) {
+					if (linkB == cmp.getArticleA().getId()) {
 						intersection++ ;
 						mutual = true ;
 					}
@@ -416,11 +469,24 @@ public class ArticleComparer {
 
 			if (useLinkCounts) {
 				//calculate lfiaf values for each vector
-				int linksToTarget ;
-				if (dir == LinkDirection.Out)
-					linksToTarget = linkArt.getTotalLinksInCount() ;
-				else
-					linksToTarget = linkArt.getTotalLinksOutCount() ;
+				int linksToTarget = 0 ;
+				if (linkCountTable != null) {
+					int ordinal = linkCountTable.getOrdinal(useA ? linkA : linkB) ;
+					if (ordinal >= 0) {
+						if (dir == LinkDirection.Out)
+							linksToTarget = linkCountTable.getTotalLinksIn(ordinal) ;
+						else
+							linksToTarget = linkCountTable.getTotalLinksOut(ordinal) ;
+					}
+				} else {
+					DbPageLinkCounts linkCounts = targetLinkCounts[union-1] ;
+					if (linkCounts != null) {
+						if (dir == LinkDirection.Out)
+							linksToTarget = linkCounts.getTotalLinksIn() ;
+						else
+							linksToTarget = linkCounts.getTotalLinksOut() ;
+					}
+				}
 
 				double valA = 0 ;
 				double valB = 0 ;
@@ -433,8 +499,9 @@ public class ArticleComparer {
 					if (useB) valB = getLfiaf(1, linksFromSourceB, linksToTarget) ;
 				}
 
-				vectA.add(valA) ;
-				vectB.add(valB) ;
+				dotProduct = dotProduct + (valA * valB) ;
+				magnitudeA = magnitudeA + (valA * valA) ;
+				magnitudeB = magnitudeB + (valB * valB) ;
 			}
 
 			if (useA)
@@ -450,8 +517,8 @@ public class ArticleComparer {
 		if (intersection == 0) {
 			googleMeasure = 1.0 ;
 		} else {
-			double a = Math.log(linksA.size()) ;
-			double b = Math.log(linksB.size()) ;
+			double a = Math.log(sizeA) ;
+			double b = Math.log(sizeB) ;
 			double ab = Math.log(intersection) ;
 
 			googleMeasure = (Math.max(a, b) -ab) / (m - Math.min(a, b)) ;
@@ -464,38 +531,9 @@ public class ArticleComparer {
 		Double vectorMeasure = null ;
 		if (useLinkCounts) {
 
-			if (vectA.isEmpty() || vectB.isEmpty())
+			if (union == 0)
 				vectorMeasure = Math.PI/2 ;
 			else {
-
-				double dotProduct = 0 ;
-				double magnitudeA = 0 ;
-				double magnitudeB = 0 ;
-
-				//StringBuffer strA = new StringBuffer() ;
-				//StringBuffer strB = new StringBuffer() ;
-
-
-				for (int x=0;x<vectA.size();x++) {
-					double valA = vectA.get(x) ;
-					double valB = vectB.get(x) ;
-
-					/*
-                            if (valA > 0)
-                                    strA.append(df.format(valA) + "\t") ;
-                            else
-                                    strA.append("-.---\t") ;
-
-                            if (valB > 0)
-                                    strB.append(df.format(valB)+ "\t") ;
-                            else
-                                    strB.append("-.---\t") ;
-					 */
-					dotProduct = dotProduct + (valA * valB) ;
-					magnitudeA = magnitudeA + (valA * valA) ;
-					magnitudeB = magnitudeB + (valB * valB) ;
-				}
-
 				magnitudeA = Math.sqrt(magnitudeA) ;
 				magnitudeB = Math.sqrt(magnitudeB) ;
 
@@ -530,21 +568,116 @@ public class ArticleComparer {
 		return cmp ;
 	}
 
-	private ArrayList<Integer> getLinks(int artId, LinkDirection dir) {
+	/**
+	 * Copies the links of the given article into the given buffer
+	 * 
+	 * @return the number of links copied
+	 */
+	private int getLinks(int artId, LinkDirection dir, LinkBuffer into, IntListView view) {
+
+		WEnvironment env = wikipedia.getEnvironment() ;
+
+		LinkGraph graph ;
+		if (dir == LinkDirection.In)
+			graph = env.getPageLinkInGraph() ;
+		else
+			graph = env.getPageLinkOutGraph() ;
+
+		if (graph != null) {
+			int ordinal = graph.getOrdinal(artId) ;
 
-		DbIntList ids ;
+			if (ordinal < 0)
+				return 0 ;
+
+			int size = graph.getEnd(ordinal) - graph.getStart(ordinal) ;
+			into.ensureCapacity(size) ;
+			System.arraycopy(graph.getTargets(), graph.getStart(ordinal), into.values, 0, size) ;
+			return size ;
+		}
+
+		//read ids straight from the stored bytes, rather than building a list of boxed ids
+		byte[] ids ;
 
 		if (dir == LinkDirection.In)
-			ids = wikipedia.getEnvironment().getDbPageLinkInNoSentences().retrieve(artId) ;
+			ids = env.getDbPageLinkInNoSentences().retrieveRaw(artId) ;
 		else
-			ids = wikipedia.getEnvironment().getDbPageLinkOutNoSentences().retrieve(artId) ;
+			ids = env.getDbPageLinkOutNoSentences().retrieveRaw(artId) ;
+
+		if (ids == null) 
+			return 0 ;
+
+		view.wrap(ids) ;
+
+		int size = view.size() ;
+		into.ensureCapacity(size) ;
+		for (int i=0 ; i<size ; i++)
+			into.values[i] = view.next() ;
+
+		return size ;
+	}
+
+
+	/**
+	 * Merges the given sorted links into the given buffer, without duplicates
+	 * 
+	 * @return the number of distinct links
+	 */
+	private int getUnion(int[] linksA, int sizeA, int[] linksB, int sizeB, LinkBuffer into) {
+
+		into.ensureCapacity(sizeA + sizeB) ;
+		int[] union = into.values ;
+
+		int indexA = 0 ;
+		int indexB = 0 ;
+		int size = 0 ;
+
+		while (indexA < sizeA || indexB < sizeB) {
 
-		if (ids == null || ids.getValues() == null) 
-			return new ArrayList<Integer>() ;
+			if (indexB == sizeB || (indexA < sizeA && linksA[indexA] < linksB[indexB])) {
+				union[size++] = linksA[indexA++] ;
+			} else if (indexA == sizeA || linksB[indexB] < linksA[indexA]) {
+				union[size++] = linksB[indexB++] ;
+			} else {
+				union[size++] = linksA[indexA++] ;
+				indexB++ ;
+			}
+		}
 
-		return ids.getValues() ;
+		return size ;
 	}
 
+	/**
+	 * A growable array of ids, which is reused rather than reallocated for every comparison
+	 */
+	private static class LinkBuffer {
+
+		int[] values = new int[256] ;
+
+		void ensureCapacity(int capacity) {
+			if (values.length < capacity)
+				values = new int[Math.max(capacity, values.length * 2)] ;
+		}
+	}
+
+	/**
+	 * Buffers for gathering links, each of which is used by a single thread
+	 */
+	private static class LinkScratch {
+
+		LinkBuffer linksA = new LinkBuffer() ;
+		LinkBuffer linksB = new LinkBuffer() ;
+		LinkBuffer union = new LinkBuffer() ;
+		IntListView view = new IntListView() ;
+
+		private DbPageLinkCounts[] linkCounts = new DbPageLinkCounts[256] ;
+
+		DbPageLinkCounts[] getLinkCounts(int capacity) {
+			if (linkCounts.length < capacity)
+				linkCounts = new DbPageLinkCounts[Math.max(capacity, linkCounts.length * 2)] ;
+
+			return linkCounts ;
+		}
+	}
 
 	private double getLfiaf(int linksFromSourceToTarget, int linksFromSource, int linksToTarget) {
 
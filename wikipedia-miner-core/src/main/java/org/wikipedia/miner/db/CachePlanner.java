@@ -0,0 +1,614 @@
+package org.wikipedia.miner.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.wikipedia.miner.comparison.ArticleComparer.DataDependency;
+import org.wikipedia.miner.db.WDatabase.CachePriority;
+import org.wikipedia.miner.db.WDatabase.DatabaseType;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.je.CacheMode;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Chooses how each database should be cached, so that the databases that matter most for the expected workloads
+ * are cached as effectively as possible without exceeding a memory budget.
+ * <p>
+ * The size of each database is taken from the environment's {@link EnvironmentManifest} (or, failing that, estimated by
+ * sampling entries), and used to estimate the heap needed to cache it with each {@link CachePriority}. Databases are then
+ * considered in order of how frequently they are accessed per byte: each is cached for {@link CachePriority#space space}
+ * if it fits within the heap budget (and is not markup, which can never be cached in full), otherwise {@link CachePriority#mapped mapped} if it fits within the off-heap budget,
+ * otherwise within a {@link CachePriority#bounded bounded} cache if there is room for a worthwhile one (backed by a
+ * {@link CachePriority#tiered tiered} off-heap cache, if there is also room for that). Finally, any heap that
+ * remains is used to upgrade databases to {@link CachePriority#speed speed}.
+ * <p>
+ * Databases that have been explicitly configured to be cached are left as they are, but still count against the budget.
+ */
+public class CachePlanner {
+
+	/**
+	 * The kinds of work that an environment can be used for, each of which depends on different databases
+	 */
+	public enum Workload {
+
+		/**
+		 * Detecting and disambiguating topics within documents (see {@link org.wikipedia.miner.annotation})
+		 */
+		annotation,
+
+		/**
+		 * Measuring relatedness between articles and labels (see {@link org.wikipedia.miner.comparison})
+		 */
+		comparison,
+
+		/**
+		 * Browsing pages, their categories, redirects, labels, links and translations
+		 */
+		explore
+	}
+
+	//rough per-entry overheads of hash map slots, keys and array headers
+	private static final long ENTRY_OVERHEAD = 48 ;
+	private static final long TABLE_ENTRY_OVERHEAD = 16 ;
+	private static final long MAPPED_ENTRY_OVERHEAD = 24 ;
+
+	//how much larger deserialised records are than their serialised form
+	private static final long SPEED_EXPANSION = 3 ;
+
+	//bounded caches smaller than this are not worth the bother
+	private static final long MIN_BOUNDED_BYTES = 16L << 20 ;
+
+	private static final int SAMPLE_SIZE = 1000 ;
+
+	private long heapBudget ;
+	private long offHeapBudget ;
+	private EnumMap<DatabaseType,Float> weights ;
+
+	private EnumMap<DatabaseType,long[]> sizes = new EnumMap<DatabaseType,long[]>(DatabaseType.class) ;
+	private EnumMap<DatabaseType,CachePriority> fixed = new EnumMap<DatabaseType,CachePriority>(DatabaseType.class) ;
+	private EnumMap<DatabaseType,Long> fixedMaxEntries = new EnumMap<DatabaseType,Long>(DatabaseType.class) ;
+	private EnumMap<DatabaseType,Long> fixedMaxBytes = new EnumMap<DatabaseType,Long>(DatabaseType.class) ;
+	private EnumMap<DatabaseType,Long> fixedOffHeapBytes = new EnumMap<DatabaseType,Long>(DatabaseType.class) ;
+
+	/**
+	 * Creates a planner
+	 *
+	 * @param heapBudget the number of bytes of heap that can be used for caching
+	 * @param offHeapBudget the number of bytes (outside of the heap) that can be used for memory-mapped snapshots and off-heap caches
+	 * @param workloads the kinds of work the environment will be used for
+	 * @param comparisonDependencies the data that article comparisons will depend upon (may be null)
+	 */
+	public CachePlanner(long heapBudget, long offHeapBudget, EnumSet<Workload> workloads, EnumSet<DataDependency> comparisonDependencies) {
+		this.heapBudget = heapBudget ;
+		this.offHeapBudget = offHeapBudget ;
+		this.weights = getAccessWeights(workloads, comparisonDependencies) ;
+	}
+
+	/**
+	 * Creates a planner from the budgets, workloads and comparison dependencies of the given configuration.
+	 * Any databases that the configuration explicitly caches are left as they are.
+	 *
+	 * @param conf a configuration
+	 */
+	public CachePlanner(WikipediaConfiguration conf) {
+		this(conf.getCacheBudget(), conf.getOffHeapCacheBudget(), conf.getWorkloads(), conf.getArticleComparisonDependancies()) ;
+
+		for (DatabaseType type:conf.getDatabasesToCache()) {
+			fixed.put(type, conf.getCachePriority(type)) ;
+			fixedMaxEntries.put(type, conf.getCacheMaxEntries(type)) ;
+			fixedMaxBytes.put(type, conf.getCacheMaxBytes(type)) ;
+			fixedOffHeapBytes.put(type, conf.getCacheOffHeapBytes(type)) ;
+		}
+	}
+
+	/**
+	 * Specifies the size of a database
+	 *
+	 * @param type the type of database
+	 * @param entries the number of entries in the database
+	 * @param bytes the total number of bytes in the serialised keys and values of the database
+	 */
+	public void setSize(DatabaseType type, long entries, long bytes) {
+		sizes.put(type, new long[] {entries, bytes}) ;
+	}
+
+	/**
+	 * Specifies the sizes of all databases within the given environment, using its manifest where possible, and otherwise
+	 * by counting entries and sampling their sizes.
+	 *
+	 * @param env an environment
+	 */
+	public void setSizes(WEnvironment env) {
+
+		EnvironmentManifest manifest = env.getManifest() ;
+
+		for (DatabaseType type:DatabaseType.values()) {
+
+			if (type == DatabaseType.statistics)
+				continue ;
+
+			WDatabase<?,?> db ;
+			if (type == DatabaseType.label)
+				db = env.getDbLabel(env.getConfiguration().getDefaultTextProcessor()) ;
+			else
+				db = env.getDatabase(type) ;
+
+			if (db == null)
+				continue ;
+
+			if (manifest != null && manifest.getEntryCount(db.getName()) >= 0) {
+				setSize(type, manifest.getEntryCount(db.getName()), manifest.getByteSize(db.getName())) ;
+				continue ;
+			}
+
+			if (!db.exists())
+				continue ;
+
+			long entries = db.getDatabaseSize() ;
+			setSize(type, entries, entries * sampleEntrySize(db)) ;
+		}
+	}
+
+	/**
+	 * Chooses how each database should be cached
+	 *
+	 * @return a plan for caching databases
+	 */
+	public Plan plan() {
+
+		Plan plan = new Plan() ;
+
+		long heapRemaining = heapBudget ;
+		long offHeapRemaining = offHeapBudget ;
+
+		//explicitly configured databases are kept as they are
+		for (Map.Entry<DatabaseType,CachePriority> e:fixed.entrySet()) {
+
+			DatabaseType type = e.getKey() ;
+			CachePriority priority = e.getValue() ;
+
+			long cost ;
+			if (priority == CachePriority.bounded || priority == CachePriority.tiered)
+				cost = getEstimatedBoundedBytes(type, fixedMaxEntries.get(type), fixedMaxBytes.get(type)) ;
+			else
+				cost = getEstimatedBytes(type, priority) ;
+
+			//if we can't tell how much this will use, assume it will use everything that is left
+			if (cost < 0) {
+				cost = Math.max(0, priority == CachePriority.mapped ? offHeapRemaining : heapRemaining) ;
+				Logger.getLogger(CachePlanner.class).warn("Size of " + type + " is not known, so it is assumed to use the rest of the budget") ;
+			}
+
+			if (priority == CachePriority.mapped)
+				offHeapRemaining -= cost ;
+			else
+				heapRemaining -= cost ;
+
+			plan.set(type, priority, cost, true) ;
+
+			if (priority == CachePriority.tiered) {
+				offHeapRemaining -= fixedOffHeapBytes.get(type) ;
+				plan.setOffHeap(type, fixedOffHeapBytes.get(type)) ;
+			}
+		}
+
+		ArrayList<DatabaseType> candidates = new ArrayList<DatabaseType>() ;
+		for (DatabaseType type:sizes.keySet()) {
+			if (!fixed.containsKey(type) && getWeight(type) > 0)
+				candidates.add(type) ;
+		}
+
+		//first pass: cache as much as possible for space, favouring databases that are accessed most often per byte
+		sortByDensity(candidates, CachePriority.space, null) ;
+
+		for (DatabaseType type:candidates) {
+
+			long spaceCost = getEstimatedBytes(type, CachePriority.space) ;
+			long mappedCost = getEstimatedBytes(type, CachePriority.mapped) ;
+
+			if (spaceCost <= heapRemaining && canCacheInFull(type)) {
+				plan.set(type, CachePriority.space, spaceCost, false) ;
+				heapRemaining -= spaceCost ;
+			} else if (mappedCost <= offHeapRemaining) {
+				plan.set(type, CachePriority.mapped, mappedCost, false) ;
+				offHeapRemaining -= mappedCost ;
+			} else {
+				long boundedCost = Math.min(spaceCost, heapRemaining / 2) ;
+
+				if (boundedCost >= MIN_BOUNDED_BYTES) {
+					heapRemaining -= boundedCost ;
+
+					//whatever doesn't fit on the heap may still fit in a share of the remaining off-heap budget
+					long offHeapCost = offHeapRemaining / 2 ;
+
+					if (offHeapCost >= MIN_BOUNDED_BYTES && boundedCost < spaceCost) {
+						plan.set(type, CachePriority.tiered, boundedCost, false) ;
+						plan.setOffHeap(type, offHeapCost) ;
+						offHeapRemaining -= offHeapCost ;
+					} else {
+						plan.set(type, CachePriority.bounded, boundedCost, false) ;
+					}
+				}
+			}
+		}
+
+		//second pass: upgrade databases to speed, favouring those that gain the most per extra byte
+		ArrayList<DatabaseType> upgrades = new ArrayList<DatabaseType>() ;
+		for (DatabaseType type:candidates) {
+
+			//labels cached for space are held in a LabelIndex, which is smaller and supports prefix searches
+			if (type == DatabaseType.label)
+				continue ;
+
+			if (plan.getPriority(type) == CachePriority.space && getEstimatedBytes(type, CachePriority.speed) > getEstimatedBytes(type, CachePriority.space))
+				upgrades.add(type) ;
+		}
+
+		sortByDensity(upgrades, CachePriority.speed, CachePriority.space) ;
+
+		for (DatabaseType type:upgrades) {
+
+			long extraCost = getEstimatedBytes(type, CachePriority.speed) - getEstimatedBytes(type, CachePriority.space) ;
+
+			if (extraCost <= heapRemaining) {
+				plan.set(type, CachePriority.speed, getEstimatedBytes(type, CachePriority.speed), false) ;
+				heapRemaining -= extraCost ;
+			}
+		}
+
+		return plan ;
+	}
+
+	/**
+	 * Estimates the number of bytes needed to cache the given database with the given priority
+	 *
+	 * @param type the type of database
+	 * @param priority the priority with which it would be cached
+	 * @return the estimated number of bytes (of heap, or of off-heap memory for {@link CachePriority#mapped}), or -1 if the size of the database is not known.
+	 * This is 0 for {@link CachePriority#bounded} and {@link CachePriority#tiered}, which depend on the bounds of the cache (see {@link #getEstimatedBoundedBytes(DatabaseType, long, long)}).
+	 */
+	public long getEstimatedBytes(DatabaseType type, CachePriority priority) {
+
+		long[] size = sizes.get(type) ;
+
+		if (size == null)
+			return -1 ;
+
+		long entries = size[0] ;
+		long bytes = size[1] ;
+
+		switch (priority) {
+		case mapped:
+			return bytes + (entries * MAPPED_ENTRY_OVERHEAD) ;
+		case bounded:
+		case tiered:
+			return 0 ;
+		default:
+		}
+
+		if (isCachedAsTable(type))
+			return bytes + (entries * TABLE_ENTRY_OVERHEAD) ;
+
+		if (priority == CachePriority.speed)
+			return (bytes * SPEED_EXPANSION) + (entries * ENTRY_OVERHEAD) ;
+		else
+			return bytes + (entries * ENTRY_OVERHEAD) ;
+	}
+
+	/**
+	 * Estimates the number of bytes of heap needed to cache the given database with {@link CachePriority#bounded} 
+	 * (or the on-heap tier of {@link CachePriority#tiered}) priority
+	 *
+	 * @param type the type of database
+	 * @param maxEntries the maximum number of entries to cache, or 0 if the number of entries is not bounded
+	 * @param maxBytes the maximum total size of serialised values to cache, or 0 if the size is not bounded
+	 * @return the estimated number of bytes, or -1 if this depends on a size of the database that is not known.
+	 */
+	public long getEstimatedBoundedBytes(DatabaseType type, long maxEntries, long maxBytes) {
+
+		long[] size = sizes.get(type) ;
+
+		long cost = -1 ;
+
+		if (maxEntries > 0 && size != null && size[0] > 0) {
+			long meanEntryBytes = (size[1] / size[0]) + ENTRY_OVERHEAD ;
+
+			//the cache can never hold more entries than the database has
+			cost = Math.min(maxEntries, size[0]) * meanEntryBytes ;
+		}
+
+		if (maxBytes > 0)
+			cost = (cost < 0) ? maxBytes : Math.min(cost, maxBytes) ;
+
+		if (maxEntries <= 0 && maxBytes <= 0)
+			cost = getEstimatedBytes(type, CachePriority.space) ;
+
+		return cost ;
+	}
+
+	/**
+	 * Databases which can be cached for {@link CachePriority#space space} or {@link CachePriority#speed speed}, rather than only 
+	 * being read through a {@link CachePriority#mapped mapped} snapshot or a {@link CachePriority#bounded bounded} cache
+	 * (markup throws {@link UnsupportedOperationException} if any attempt is made to cache all of it to the heap)
+	 */
+	private static boolean canCacheInFull(DatabaseType type) {
+		return type != DatabaseType.markup ;
+	}
+
+	/**
+	 * Databases which are cached in the same compact, primitive structure whether they are cached for speed or space
+	 */
+	private static boolean isCachedAsTable(DatabaseType type) {
+
+		switch (type) {
+		case page:
+		case pageLinkCounts:
+		case pageLinksInNoSentences:
+		case pageLinksOutNoSentences:
+		case redirectTargetBySource:
+			return true ;
+		default:
+			return false ;
+		}
+	}
+
+	private float getWeight(DatabaseType type) {
+		Float weight = weights.get(type) ;
+		return weight == null ? 0 : weight ;
+	}
+
+	private void sortByDensity(ArrayList<DatabaseType> types, final CachePriority priority, final CachePriority basePriority) {
+
+		Collections.sort(types, new Comparator<DatabaseType>() {
+			public int compare(DatabaseType a, DatabaseType b) {
+				return Double.compare(getDensity(b), getDensity(a)) ;
+			}
+
+			private double getDensity(DatabaseType type) {
+				long cost = getEstimatedBytes(type, priority) ;
+				if (basePriority != null)
+					cost = cost - getEstimatedBytes(type, basePriority) ;
+
+				return getWeight(type) / (double)Math.max(1, cost) ;
+			}
+		}) ;
+	}
+
+	/**
+	 * Returns the relative frequency with which each database is accessed by the given workloads
+	 */
+	private static EnumMap<DatabaseType,Float> getAccessWeights(EnumSet<Workload> workloads, EnumSet<DataDependency> comparisonDependencies) {
+
+		EnumMap<DatabaseType,Float> weights = new EnumMap<DatabaseType,Float>(DatabaseType.class) ;
+
+		if (comparisonDependencies == null)
+			comparisonDependencies = EnumSet.of(DataDependency.pageLinksIn) ;
+
+		if (workloads == null || workloads.isEmpty())
+			workloads = EnumSet.allOf(Workload.class) ;
+
+		//annotation measures relatedness between candidate topics, so it depends on the same data as comparison
+		if (workloads.contains(Workload.annotation) || workloads.contains(Workload.comparison)) {
+
+			float w = workloads.contains(Workload.comparison) ? 1.0F : 0.8F ;
+
+			if (comparisonDependencies.contains(DataDependency.pageLinksIn))
+				addWeight(weights, DatabaseType.pageLinksInNoSentences, w) ;
+
+			if (comparisonDependencies.contains(DataDependency.pageLinksOut)) {
+				addWeight(weights, DatabaseType.pageLinksOutNoSentences, w) ;
+				addWeight(weights, DatabaseType.pageLinkCounts, w * 0.8F) ;
+			}
+
+			if (comparisonDependencies.contains(DataDependency.linkCounts))
+				addWeight(weights, DatabaseType.pageLinkCounts, w * 0.8F) ;
+
+			addWeight(weights, DatabaseType.page, w * 0.6F) ;
+		}
+
+		if (workloads.contains(Workload.annotation)) {
+			addWeight(weights, DatabaseType.label, 1.0F) ;
+			addWeight(weights, DatabaseType.page, 0.8F) ;
+			addWeight(weights, DatabaseType.redirectTargetBySource, 0.2F) ;
+			addWeight(weights, DatabaseType.articlesByTitle, 0.1F) ;
+			addWeight(weights, DatabaseType.resolvedArticlesByTitle, 0.1F) ;
+		}
+
+		if (workloads.contains(Workload.comparison)) {
+			addWeight(weights, DatabaseType.label, 0.4F) ;
+			addWeight(weights, DatabaseType.articlesByTitle, 0.2F) ;
+			addWeight(weights, DatabaseType.resolvedArticlesByTitle, 0.2F) ;
+			addWeight(weights, DatabaseType.sentenceMarkup, 0.2F) ;
+			addWeight(weights, DatabaseType.sentenceLinks, 0.2F) ;
+		}
+
+		if (workloads.contains(Workload.explore)) {
+			addWeight(weights, DatabaseType.page, 1.0F) ;
+			addWeight(weights, DatabaseType.pageLabel, 0.6F) ;
+			addWeight(weights, DatabaseType.articlesByTitle, 0.6F) ;
+			addWeight(weights, DatabaseType.resolvedArticlesByTitle, 0.6F) ;
+			addWeight(weights, DatabaseType.label, 0.5F) ;
+			addWeight(weights, DatabaseType.categoryParents, 0.5F) ;
+			addWeight(weights, DatabaseType.articleParents, 0.5F) ;
+			addWeight(weights, DatabaseType.redirectTargetBySource, 0.5F) ;
+			addWeight(weights, DatabaseType.childCategories, 0.4F) ;
+			addWeight(weights, DatabaseType.childArticles, 0.4F) ;
+			addWeight(weights, DatabaseType.redirectSourcesByTarget, 0.4F) ;
+			addWeight(weights, DatabaseType.categoriesByTitle, 0.3F) ;
+			addWeight(weights, DatabaseType.pageLinksIn, 0.3F) ;
+			addWeight(weights, DatabaseType.pageLinksOut, 0.3F) ;
+			addWeight(weights, DatabaseType.translations, 0.3F) ;
+			addWeight(weights, DatabaseType.articlesByTranslation, 0.1F) ;
+			addWeight(weights, DatabaseType.pageLinkCounts, 0.2F) ;
+			addWeight(weights, DatabaseType.sentenceSplits, 0.2F) ;
+			addWeight(weights, DatabaseType.sentenceMarkup, 0.3F) ;
+			addWeight(weights, DatabaseType.markup, 0.2F) ;
+		}
+
+		return weights ;
+	}
+
+	private static void addWeight(EnumMap<DatabaseType,Float> weights, DatabaseType type, float weight) {
+
+		Float existing = weights.get(type) ;
+		weights.put(type, existing == null ? weight : existing + weight) ;
+	}
+
+	/**
+	 * Returns the average number of bytes in the serialised keys and values of the first few entries of the given database
+	 */
+	private static long sampleEntrySize(WDatabase<?,?> db) {
+
+		DatabaseEntry key = new DatabaseEntry() ;
+		DatabaseEntry value = new DatabaseEntry() ;
+
+		long bytes = 0 ;
+		int sampled = 0 ;
+
+		Cursor cursor = db.getDatabase(true).openCursor(null, null) ;
+		cursor.setCacheMode(CacheMode.UNCHANGED) ;
+
+		try {
+			while (sampled < SAMPLE_SIZE && cursor.getNext(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+				bytes += key.getSize() + value.getSize() ;
+				sampled++ ;
+			}
+		} finally {
+			cursor.close() ;
+		}
+
+		return sampled == 0 ? 0 : bytes / sampled ;
+	}
+
+
+	/**
+	 * A choice of how each database should be cached
+	 */
+	public static class Plan {
+
+		private EnumMap<DatabaseType,CachePriority> priorities = new EnumMap<DatabaseType,CachePriority>(DatabaseType.class) ;
+		private EnumMap<DatabaseType,Long> estimatedBytes = new EnumMap<DatabaseType,Long>(DatabaseType.class) ;
+		private EnumMap<DatabaseType,Long> offHeapBytes = new EnumMap<DatabaseType,Long>(DatabaseType.class) ;
+		private EnumSet<DatabaseType> fixed = EnumSet.noneOf(DatabaseType.class) ;
+
+		private void set(DatabaseType type, CachePriority priority, long bytes, boolean isFixed) {
+			priorities.put(type, priority) ;
+			estimatedBytes.put(type, bytes) ;
+
+			if (isFixed)
+				fixed.add(type) ;
+		}
+
+		private void setOffHeap(DatabaseType type, long bytes) {
+			offHeapBytes.put(type, bytes) ;
+		}
+
+		/**
+		 * @param type the type of database
+		 * @return the priority with which the database should be cached, or null if it should not be cached.
+		 */
+		public CachePriority getPriority(DatabaseType type) {
+			return priorities.get(type) ;
+		}
+
+		/**
+		 * @param type the type of database
+		 * @return the estimated number of bytes needed to cache the database (or the size of its bounded cache), or 0 if it should not be cached.
+		 */
+		public long getEstimatedBytes(DatabaseType type) {
+			Long bytes = estimatedBytes.get(type) ;
+			return bytes == null ? 0 : bytes ;
+		}
+
+		/**
+		 * @param type the type of database
+		 * @return the size of the database's off-heap cache, if it should be cached with {@link CachePriority#tiered} priority, otherwise 0.
+		 */
+		public long getEstimatedOffHeapBytes(DatabaseType type) {
+			Long bytes = offHeapBytes.get(type) ;
+			return bytes == null ? 0 : bytes ;
+		}
+
+		/**
+		 * @return the estimated number of bytes of heap needed by this plan
+		 */
+		public long getEstimatedHeapBytes() {
+
+			long total = 0 ;
+			for (DatabaseType type:priorities.keySet()) {
+				if (priorities.get(type) != CachePriority.mapped)
+					total += getEstimatedBytes(type) ;
+			}
+			return total ;
+		}
+
+		/**
+		 * @return the estimated number of bytes of off-heap memory needed by this plan
+		 */
+		public long getEstimatedOffHeapBytes() {
+
+			long total = 0 ;
+			for (DatabaseType type:priorities.keySet()) {
+				if (priorities.get(type) == CachePriority.mapped)
+					total += getEstimatedBytes(type) ;
+				else
+					total += getEstimatedOffHeapBytes(type) ;
+			}
+			return total ;
+		}
+
+		/**
+		 * Adds every database that this plan chose to cache to the given configuration. Databases that were
+		 * already configured are left as they are.
+		 *
+		 * @param conf the configuration to modify
+		 */
+		public void apply(WikipediaConfiguration conf) {
+
+			for (Map.Entry<DatabaseType,CachePriority> e:priorities.entrySet()) {
+
+				DatabaseType type = e.getKey() ;
+
+				if (fixed.contains(type))
+					continue ;
+
+				if (e.getValue() == CachePriority.bounded)
+					conf.addDatabaseToCache(type, 0, getEstimatedBytes(type)) ;
+				else if (e.getValue() == CachePriority.tiered)
+					conf.addDatabaseToCache(type, 0, getEstimatedBytes(type), getEstimatedOffHeapBytes(type)) ;
+				else
+					conf.addDatabaseToCache(type, e.getValue()) ;
+			}
+		}
+
+		@Override
+		public String toString() {
+
+			StringBuffer sb = new StringBuffer() ;
+			sb.append("heap: " + (getEstimatedHeapBytes() >> 20) + "MB, off-heap: " + (getEstimatedOffHeapBytes() >> 20) + "MB") ;
+
+			for (Map.Entry<DatabaseType,CachePriority> e:priorities.entrySet()) {
+				sb.append(", " + e.getKey() + "=" + e.getValue() + " (" + (getEstimatedBytes(e.getKey()) >> 20) + "MB") ;
+
+				if (e.getValue() == CachePriority.tiered)
+					sb.append(" + " + (getEstimatedOffHeapBytes(e.getKey()) >> 20) + "MB off-heap") ;
+
+				if (fixed.contains(e.getKey()))
+					sb.append(", configured") ;
+
+				sb.append(")") ;
+			}
+
+			return sb.toString() ;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.wikipedia.miner.db.WDatabase.CachePriority;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+/**
+ * A binary dump of the (already filtered) entries that a {@link WDatabase} has cached to memory, so that
+ * the cache can be rebuilt on the next start without re-parsing or re-filtering anything.
+ * <p>
+ * Each snapshot records a fingerprint of the configuration options that affect filtering, and will only be
+ * reloaded if the current configuration has the same fingerprint.
+ */
+public class CacheSnapshot {
+
+	/**
+	 * The version of the snapshot format written and understood by this class
+	 */
+	public static final int VERSION = 1 ;
+
+	private static final int MAGIC = 0x574D4353 ; //"WMCS"
+
+	private static final int HEADER_SIZE = 24 ;
+	private static final int COUNT_OFFSET = 16 ;
+	private static final int BUFFER_SIZE = 1 << 20 ;
+
+	/**
+	 * Calculates a fingerprint of the configuration options that affect how databases are filtered and cached
+	 * (minLinksIn, minSenseProbability, minLinkProbability, articlesOfInterest), along with the given priority.
+	 *
+	 * @param conf the configuration to fingerprint
+	 * @param priority the priority with which the database will be cached
+	 * @return a fingerprint of the relevant configuration options
+	 */
+	public static long fingerprint(WikipediaConfiguration conf, CachePriority priority) {
+
+		long hash = 17 ;
+
+		hash = mix(hash, VERSION) ;
+		hash = mix(hash, priority.ordinal()) ;
+		hash = mix(hash, conf.getMinLinksIn()) ;
+		hash = mix(hash, Float.floatToIntBits(conf.getMinSenseProbability())) ;
+		hash = mix(hash, Float.floatToIntBits(conf.getMinLinkProbability())) ;
+
+		TIntHashSet articlesOfInterest = conf.getArticlesOfInterest() ;
+
+		if (articlesOfInterest == null) {
+			hash = mix(hash, -1) ;
+		} else {
+			//this must not depend on the order in which ids are iterated
+			long idHash = 0 ;
+			TIntIterator iter = articlesOfInterest.iterator() ;
+			while (iter.hasNext())
+				idHash += mix(0x9E3779B97F4A7C15L, iter.next()) ;
+
+			hash = mix(hash, articlesOfInterest.size()) ;
+			hash = mix(hash, idHash) ;
+		}
+
+		return hash ;
+	}
+
+	private static long mix(long hash, long value) {
+
+		long h = (hash ^ value) * 0xff51afd7ed558ccdL ;
+		h ^= (h >>> 33) ;
+		h *= 0xc4ceb9fe1a85ec53L ;
+		h ^= (h >>> 33) ;
+		return h ;
+	}
+
+
+	/**
+	 * Writes serialised entries to a new snapshot. The snapshot only replaces any existing file once {@link #finish()} is called.
+	 */
+	public static class Writer {
+
+		private File file ;
+		private File tmpFile ;
+		private DataOutputStream out ;
+		private long count = 0 ;
+
+		/**
+		 * Starts writing a snapshot
+		 *
+		 * @param file the file to write to
+		 * @param fingerprint the fingerprint of the configuration the cached entries were filtered by
+		 * @throws IOException if the snapshot cannot be created
+		 */
+		public Writer(File file, long fingerprint) throws IOException {
+
+			this.file = file ;
+			this.tmpFile = new File(file.getPath() + ".tmp") ;
+
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE)) ;
+
+			out.writeInt(MAGIC) ;
+			out.writeInt(VERSION) ;
+			out.writeLong(fingerprint) ;
+			out.writeLong(0) ; //count will be filled in when finished
+		}
+
+		/**
+		 * Adds a serialised entry to the snapshot
+		 *
+		 * @param key the serialised key
+		 * @param value the serialised value
+		 * @throws IOException if the entry cannot be written
+		 */
+		public void write(byte[] key, byte[] value) throws IOException {
+
+			out.writeInt(key.length) ;
+			out.write(key) ;
+			out.writeInt(value.length) ;
+			out.write(value) ;
+
+			count++ ;
+		}
+
+		/**
+		 * Completes the snapshot, replacing any existing snapshot
+		 *
+		 * @throws IOException if the snapshot cannot be completed
+		 */
+		public void finish() throws IOException {
+
+			out.close() ;
+
+			RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw") ;
+			raf.seek(COUNT_OFFSET) ;
+			raf.writeLong(count) ;
+			raf.close() ;
+
+			if (file.exists())
+				file.delete() ;
+
+			if (!tmpFile.renameTo(file))
+				throw new IOException("Could not create " + file) ;
+		}
+
+		/**
+		 * Abandons the snapshot
+		 */
+		public void abort() {
+
+			try {
+				out.close() ;
+			} catch (IOException e) {} ;
+
+			tmpFile.delete() ;
+		}
+	}
+
+
+	/**
+	 * Reads serialised entries from a snapshot
+	 */
+	public static class Reader {
+
+		private DataInputStream in ;
+		private long count ;
+		private long read = 0 ;
+
+		private byte[] key ;
+		private byte[] value ;
+
+		/**
+		 * Opens the given snapshot, if it exists and matches the given fingerprint
+		 *
+		 * @param file the snapshot file
+		 * @param fingerprint the fingerprint of the current configuration
+		 * @return a reader for the snapshot, or null if it does not exist, is out of date, or was created with a different configuration.
+		 * @throws IOException if the snapshot cannot be read
+		 */
+		public static Reader open(File file, long fingerprint) throws IOException {
+
+			if (!file.canRead() || file.length() < HEADER_SIZE)
+				return null ;
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) ;
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint) {
+				in.close() ;
+				return null ;
+			}
+
+			return new Reader(in, in.readLong()) ;
+		}
+
+		private Reader(DataInputStream in, long count) {
+			this.in = in ;
+			this.count = count ;
+		}
+
+		/**
+		 * Returns the number of entries in the snapshot
+		 *
+		 * @return the number of entries in the snapshot
+		 */
+		public long getCount() {
+			return count ;
+		}
+
+		/**
+		 * Advances to the next entry in the snapshot
+		 *
+		 * @return true if there was another entry, otherwise false
+		 * @throws IOException if the snapshot is truncated or cannot be read
+		 */
+		public boolean next() throws IOException {
+
+			if (read >= count)
+				return false ;
+
+			try {
+				key = new byte[in.readInt()] ;
+				in.readFully(key) ;
+
+				value = new byte[in.readInt()] ;
+				in.readFully(value) ;
+			} catch (EOFException e) {
+				throw new IOException("Snapshot is truncated", e) ;
+			}
+
+			read++ ;
+			return true ;
+		}
+
+		/**
+		 * @return the serialised key of the current entry
+		 */
+		public byte[] getKey() {
+			return key ;
+		}
+
+		/**
+		 * @return the serialised value of the current entry
+		 */
+		public byte[] getValue() {
+			return value ;
+		}
+
+		/**
+		 * Closes the snapshot
+		 */
+		public void close() {
+			try {
+				in.close() ;
+			} catch (IOException e) {} ;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.wikipedia.miner.db;
+
+import org.wikipedia.miner.db.struct.DbIntList;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link RecordBinding} that stores {@link DbIntList DbIntLists} using the compact delta encoding of {@link IntListCodec}.
+ * <p>
+ * Entries that were stored in the original record format are still read correctly.
+ */
+public class CompactIntListBinding extends RecordBinding<DbIntList> {
+
+	public DbIntList createRecordInstance() {
+		return new DbIntList() ;
+	}
+
+	@Override
+	public DbIntList entryToObject(DatabaseEntry input) {
+
+		byte[] bytes = input.getData() ;
+
+		if (IntListCodec.isEncoded(bytes))
+			return new DbIntList(IntListCodec.decode(bytes)) ;
+
+		return super.entryToObject(input) ;
+	}
+
+	@Override
+	public void objectToEntry(DbIntList object, DatabaseEntry entry) {
+		entry.setData(IntListCodec.encode(object.getValues())) ;
+	}
+}
@@ -0,0 +1,33 @@
+package org.wikipedia.miner.db;
+
+import org.wikipedia.miner.db.struct.DbLinkLocationList;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link RecordBinding} that stores {@link DbLinkLocationList DbLinkLocationLists} using the compact delta encoding of {@link IntListCodec}.
+ * <p>
+ * Entries that were stored in the original record format are still read correctly.
+ */
+public class CompactLinkLocationListBinding extends RecordBinding<DbLinkLocationList> {
+
+	public DbLinkLocationList createRecordInstance() {
+		return new DbLinkLocationList() ;
+	}
+
+	@Override
+	public DbLinkLocationList entryToObject(DatabaseEntry input) {
+
+		byte[] bytes = input.getData() ;
+
+		if (IntListCodec.isEncoded(bytes))
+			return IntListCodec.decodeLinkLocations(bytes) ;
+
+		return super.entryToObject(input) ;
+	}
+
+	@Override
+	public void objectToEntry(DbLinkLocationList object, DatabaseEntry entry) {
+		entry.setData(IntListCodec.encode(object)) ;
+	}
+}
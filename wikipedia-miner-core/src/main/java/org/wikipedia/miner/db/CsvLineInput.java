@@ -0,0 +1,458 @@
+package org.wikipedia.miner.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import org.apache.hadoop.record.Buffer;
+import org.apache.hadoop.record.CsvRecordInput;
+import org.apache.hadoop.record.Index;
+
+/**
+ * A streaming replacement for {@link CsvRecordInput}, for reading the (potentially very large) CSV files produced by the
+ * extraction process one line at a time.
+ * <p>
+ * Rather than creating a new String, byte array, stream and reader for every line, this decodes each line from a
+ * single read buffer into a reusable character buffer, and parses fields (including numbers) straight out of that buffer.
+ * It understands exactly the same format as {@link CsvRecordInput}, but is stricter: malformed UTF-8 and incomplete escapes 
+ * are reported as IOExceptions rather than being replaced or causing runtime exceptions. It can be passed to any
+ * {@link WDatabase#deserialiseCsvRecord(CsvRecordInput)} or {@link org.apache.hadoop.record.Record#deserialize(org.apache.hadoop.record.RecordInput)}.
+ * <p>
+ * Each call to {@link #nextLine()} starts a fresh record, so a record that is not fully consumed does not affect the lines that follow it.
+ */
+public class CsvLineInput extends CsvRecordInput {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+
+	private InputStream input ;
+
+	private byte[] buffer = new byte[BUFFER_SIZE] ;
+	private int bufferPos = 0 ;
+	private int bufferLen = 0 ;
+
+	private byte[] lineBytes = new byte[1024] ;
+	private CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT) ;
+
+	private char[] line = new char[1024] ;
+	private int lineLen = 0 ;
+	private int pos = 0 ;
+
+	private long bytesRead = 0 ;
+	private long lineNumber = 0 ;
+
+	/**
+	 * Opens the given file for reading
+	 *
+	 * @param file a UTF-8 encoded CSV file
+	 * @throws IOException if the file cannot be read
+	 */
+	public CsvLineInput(File file) throws IOException {
+		this(new FileInputStream(file)) ;
+	}
+
+	/**
+	 * Reads from the given stream
+	 *
+	 * @param input a stream of UTF-8 encoded CSV records, one per line
+	 */
+	public CsvLineInput(InputStream input) {
+		super(new ByteArrayInputStream(new byte[0])) ;
+		this.input = input ;
+	}
+
+	/**
+	 * Advances to the next line, which can then be read as a record.
+	 *
+	 * @return true if there was another line, otherwise false
+	 * @throws IOException if the underlying stream cannot be read
+	 */
+	public boolean nextLine() throws IOException {
+
+		lineLen = 0 ;
+		pos = 0 ;
+
+		int byteLen = 0 ;
+		boolean ascii = true ;
+		boolean readAny = false ;
+
+		while (true) {
+
+			if (bufferPos >= bufferLen && !fill()) {
+				if (readAny)
+					decodeLine(byteLen, ascii) ;
+
+				return readAny ;
+			}
+
+			readAny = true ;
+
+			int end = bufferPos ;
+			while (end < bufferLen && buffer[end] != '\n') {
+				if (buffer[end] < 0)
+					ascii = false ;
+				end++ ;
+			}
+
+			int length = end - bufferPos ;
+			if (byteLen + length > lineBytes.length)
+				lineBytes = Arrays.copyOf(lineBytes, Math.max(lineBytes.length * 2, byteLen + length)) ;
+
+			System.arraycopy(buffer, bufferPos, lineBytes, byteLen, length) ;
+			byteLen += length ;
+			bytesRead += length ;
+
+			if (end < bufferLen) {
+				//consume the line break
+				bufferPos = end + 1 ;
+				bytesRead++ ;
+
+				decodeLine(byteLen, ascii) ;
+				lineNumber++ ;
+				return true ;
+			}
+
+			bufferPos = end ;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that have been read from the underlying stream so far, which is useful for tracking progress.
+	 *
+	 * @return the number of bytes read so far
+	 */
+	public long getBytesRead() {
+		return bytesRead ;
+	}
+
+	/**
+	 * Returns the number of lines that have been read so far
+	 *
+	 * @return the number of lines read so far
+	 */
+	public long getLineNumber() {
+		return lineNumber ;
+	}
+
+	/**
+	 * Closes the underlying stream
+	 *
+	 * @throws IOException if the stream cannot be closed
+	 */
+	public void close() throws IOException {
+		input.close() ;
+	}
+
+	@Override
+	public byte readByte(String tag) throws IOException {
+		return (byte)readLongField() ;
+	}
+
+	@Override
+	public boolean readBool(String tag) throws IOException {
+
+		int start = pos ;
+		int end = readField() ;
+
+		return (end - start == 1 && line[start] == 'T') ;
+	}
+
+	@Override
+	public int readInt(String tag) throws IOException {
+		return (int)readLongField() ;
+	}
+
+	@Override
+	public long readLong(String tag) throws IOException {
+		return readLongField() ;
+	}
+
+	@Override
+	public float readFloat(String tag) throws IOException {
+		return (float)readDouble(tag) ;
+	}
+
+	@Override
+	public double readDouble(String tag) throws IOException {
+
+		int start = pos ;
+		int end = readField() ;
+
+		try {
+			return Double.parseDouble(new String(line, start, end-start)) ;
+		} catch (NumberFormatException e) {
+			throw new IOException("Error deserializing double on line " + lineNumber) ;
+		}
+	}
+
+	@Override
+	public String readString(String tag) throws IOException {
+
+		int start = pos ;
+		int end = readField() ;
+
+		if (start >= end || line[start] != '\'')
+			throw new IOException("Error deserializing string on line " + lineNumber) ;
+
+		start++ ;
+
+		int escape = start ;
+		while (escape < end && line[escape] != '%')
+			escape++ ;
+
+		if (escape == end)
+			return new String(line, start, end-start) ;
+
+		StringBuilder sb = new StringBuilder(end-start) ;
+		sb.append(line, start, escape-start) ;
+
+		for (int i=escape ; i<end ; i++) {
+			char c = line[i] ;
+
+			if (c == '%' && i+2 < end) {
+				char c1 = line[i+1] ;
+				char c2 = line[i+2] ;
+				i += 2 ;
+
+				if (c1 == '0' && c2 == '0')
+					sb.append('\0') ;
+				else if (c1 == '0' && c2 == 'A')
+					sb.append('\n') ;
+				else if (c1 == '0' && c2 == 'D')
+					sb.append('\r') ;
+				else if (c1 == '2' && c2 == 'C')
+					sb.append(',') ;
+				else if (c1 == '7' && c2 == 'D')
+					sb.append('}') ;
+				else if (c1 == '2' && c2 == '5')
+					sb.append('%') ;
+				else
+					throw new IOException("Illegal escaped character on line " + lineNumber) ;
+			} else if (c == '%') {
+				throw new IOException("Incomplete escaped character on line " + lineNumber) ;
+			} else {
+				sb.append(c) ;
+			}
+		}
+
+		return sb.toString() ;
+	}
+
+	@Override
+	public Buffer readBuffer(String tag) throws IOException {
+
+		int start = pos ;
+		int end = readField() ;
+
+		if (start >= end || line[start] != '#')
+			throw new IOException("Error deserializing buffer on line " + lineNumber) ;
+
+		byte[] bytes = new byte[(end-start-1)/2] ;
+		for (int i=0 ; i<bytes.length ; i++)
+			bytes[i] = (byte)((hexValue(line[start + 1 + (2*i)]) << 4) | hexValue(line[start + 2 + (2*i)])) ;
+
+		return new Buffer(bytes) ;
+	}
+
+	@Override
+	public void startRecord(String tag) throws IOException {
+
+		if (tag != null && tag.length() > 0)
+			expect('s', '{', "record") ;
+	}
+
+	@Override
+	public void endRecord(String tag) throws IOException {
+
+		if (tag == null || tag.length() == 0) {
+			char c = read() ;
+			if (c != '\n' && c != '\r')
+				throw new IOException("Error deserializing record on line " + lineNumber) ;
+		} else {
+			if (read() != '}')
+				throw new IOException("Error deserializing " + tag + " on line " + lineNumber) ;
+
+			skipComma() ;
+		}
+	}
+
+	@Override
+	public Index startVector(String tag) throws IOException {
+		expect('v', '{', tag) ;
+		return new LineIndex() ;
+	}
+
+	@Override
+	public void endVector(String tag) throws IOException {
+
+		if (read() != '}')
+			throw new IOException("Error deserializing " + tag + " on line " + lineNumber) ;
+
+		skipComma() ;
+	}
+
+	@Override
+	public Index startMap(String tag) throws IOException {
+		expect('m', '{', tag) ;
+		return new LineIndex() ;
+	}
+
+	@Override
+	public void endMap(String tag) throws IOException {
+		endVector(tag) ;
+	}
+
+	/**
+	 * Marks the end of the current field, consuming any trailing comma.
+	 *
+	 * @return the position immediately after the last character of the field
+	 */
+	private int readField() {
+
+		while (pos < lineLen) {
+			char c = line[pos] ;
+
+			if (c == ',') {
+				pos++ ;
+				return pos-1 ;
+			}
+
+			if (c == '}' || c == '\r')
+				return pos ;
+
+			pos++ ;
+		}
+		return pos ;
+	}
+
+	private long readLongField() throws IOException {
+
+		int start = pos ;
+		int end = readField() ;
+
+		if (start >= end)
+			throw new IOException("Empty numeric field on line " + lineNumber) ;
+
+		boolean negative = false ;
+		int i = start ;
+
+		if (line[i] == '-' || line[i] == '+') {
+			negative = (line[i] == '-') ;
+			i++ ;
+
+			if (i == end)
+				throw new IOException("Invalid numeric field on line " + lineNumber) ;
+		}
+
+		//accumulate negatively, so that Long.MIN_VALUE can be represented
+		long val = 0 ;
+		for ( ; i<end ; i++) {
+			int digit = line[i] - '0' ;
+
+			if (digit < 0 || digit > 9)
+				throw new IOException("Invalid numeric field '" + new String(line, start, end-start) + "' on line " + lineNumber) ;
+
+			val = (val * 10) - digit ;
+		}
+
+		return negative ? val : -val ;
+	}
+
+	private char read() {
+
+		//the end of the line is reported as a line break, as CsvRecordInput would
+		if (pos >= lineLen) {
+			pos++ ;
+			return '\n' ;
+		}
+
+		return line[pos++] ;
+	}
+
+	private void expect(char c1, char c2, String tag) throws IOException {
+
+		if (read() != c1 || read() != c2)
+			throw new IOException("Error deserializing " + tag + " on line " + lineNumber) ;
+	}
+
+	private void skipComma() {
+
+		if (pos < lineLen && line[pos] == ',')
+			pos++ ;
+	}
+
+	private int hexValue(char c) throws IOException {
+
+		int val = Character.digit(c, 16) ;
+
+		if (val < 0)
+			throw new IOException("Error deserializing buffer on line " + lineNumber) ;
+
+		return val ;
+	}
+
+	private boolean fill() throws IOException {
+
+		bufferPos = 0 ;
+		bufferLen = input.read(buffer, 0, buffer.length) ;
+
+		if (bufferLen <= 0) {
+			bufferLen = 0 ;
+			return false ;
+		}
+		return true ;
+	}
+
+	/**
+	 * Decodes the bytes of the current line into the character buffer. Malformed UTF-8 is reported, rather than replaced, 
+	 * so that corrupt input is never silently turned into different records.
+	 */
+	private void decodeLine(int byteLen, boolean ascii) throws IOException {
+
+		//UTF-8 never decodes to more characters than it has bytes
+		if (line.length < byteLen)
+			line = new char[Math.max(line.length * 2, byteLen)] ;
+
+		if (ascii) {
+			for (int i=0 ; i<byteLen ; i++)
+				line[i] = (char)lineBytes[i] ;
+
+			lineLen = byteLen ;
+			return ;
+		}
+
+		decoder.reset() ;
+
+		CharBuffer out = CharBuffer.wrap(line) ;
+		CoderResult result = decoder.decode(ByteBuffer.wrap(lineBytes, 0, byteLen), out, true) ;
+
+		if (!result.isUnderflow())
+			throw new IOException("Invalid UTF-8 on line " + (lineNumber+1)) ;
+
+		result = decoder.flush(out) ;
+
+		if (!result.isUnderflow())
+			throw new IOException("Invalid UTF-8 on line " + (lineNumber+1)) ;
+
+		lineLen = out.position() ;
+	}
+
+	private class LineIndex implements Index {
+
+		public boolean done() {
+			return (pos < lineLen && line[pos] == '}') ;
+		}
+
+		public void incr() {}
+	}
+}
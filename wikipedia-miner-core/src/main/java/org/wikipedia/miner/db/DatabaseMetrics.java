@@ -0,0 +1,252 @@
+package org.wikipedia.miner.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters that describe how a single {@link WDatabase} is being accessed, so that bottlenecks can be identified
+ * (e.g. to decide which databases are worth caching).
+ * <p>
+ * Requests are {@link WDatabase#retrieve(Object)} and {@link WDatabase#retrieveRaw(Object)} calls, and each key of a
+ * {@link WDatabase#retrieveAll(Object[], Object[])} or {@link IntObjectDatabase#retrieveAll(int[], Object[])} call. Each request
+ * is either a cache hit (a value was found in memory, whether in a full cache, a memory-mapped snapshot or a bounded cache) or
+ * a cache miss (no value was found in memory, so either Berkeley DB had to be read, or the key is absent from a full cache or
+ * snapshot). Latencies are recorded in a histogram whose buckets are powers of two nanoseconds, so recording them needs nothing
+ * more than a couple of atomic increments.
+ * <p>
+ * These are exposed over JMX by {@link WEnvironment} (see {@link DatabaseMetricsMBean}), and can be dumped with {@link WEnvironment#dumpMetrics()}.
+ */
+public class DatabaseMetrics implements DatabaseMetricsMBean {
+
+	//bucket b holds latencies of less than 2^b nanoseconds (and at least 2^(b-1)), so the last bucket holds anything over a second
+	private static final int BUCKETS = 32 ;
+
+	private AtomicLong requests = new AtomicLong() ;
+	private AtomicLong cacheHits = new AtomicLong() ;
+	private AtomicLong cacheMisses = new AtomicLong() ;
+	private AtomicLong databaseReads = new AtomicLong() ;
+	private AtomicLong bytesRead = new AtomicLong() ;
+	private AtomicLong mappedBytesRead = new AtomicLong() ;
+	private AtomicLong deserialisations = new AtomicLong() ;
+	private AtomicLong deserialisationNanos = new AtomicLong() ;
+	private AtomicLong latencyNanos = new AtomicLong() ;
+	private AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS) ;
+
+	void recordHit() {
+		cacheHits.incrementAndGet() ;
+	}
+
+	void recordMiss() {
+		cacheMisses.incrementAndGet() ;
+	}
+
+	void recordCacheLookup(boolean found) {
+		if (found)
+			cacheHits.incrementAndGet() ;
+		else
+			cacheMisses.incrementAndGet() ;
+	}
+
+	void recordRead(int bytes) {
+		databaseReads.incrementAndGet() ;
+
+		if (bytes > 0)
+			bytesRead.addAndGet(bytes) ;
+	}
+
+	void recordMappedRead(int bytes) {
+		mappedBytesRead.addAndGet(bytes) ;
+	}
+
+	void recordDeserialisation(long nanos) {
+		deserialisations.incrementAndGet() ;
+		deserialisationNanos.addAndGet(nanos) ;
+	}
+
+	void recordLatency(long nanos) {
+
+		if (nanos < 0)
+			nanos = 0 ;
+
+		requests.incrementAndGet() ;
+		latencyNanos.addAndGet(nanos) ;
+		latencyHistogram.incrementAndGet(Math.min(BUCKETS-1, 64 - Long.numberOfLeadingZeros(nanos))) ;
+	}
+
+	/**
+	 * @return the number of requests made
+	 */
+	public long getRequests() {
+		return requests.get() ;
+	}
+
+	/**
+	 * @return the number of requests for which a value was found in memory
+	 */
+	public long getCacheHits() {
+		return cacheHits.get() ;
+	}
+
+	/**
+	 * @return the number of requests for which no value was found in memory
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get() ;
+	}
+
+	/**
+	 * @return the proportion of requests answered from memory, or 0 if no requests have been made.
+	 */
+	public double getCacheHitRatio() {
+
+		long hits = cacheHits.get() ;
+		long total = hits + cacheMisses.get() ;
+
+		if (total == 0)
+			return 0 ;
+
+		return (double)hits/total ;
+	}
+
+	/**
+	 * @return the number of values that were searched for in Berkeley DB
+	 */
+	public long getDatabaseReads() {
+		return databaseReads.get() ;
+	}
+
+	/**
+	 * @return the total size of all values read from Berkeley DB
+	 */
+	public long getBytesRead() {
+		return bytesRead.get() ;
+	}
+
+	/**
+	 * @return the total size of all values read from the memory-mapped snapshot
+	 */
+	public long getMappedBytesRead() {
+		return mappedBytesRead.get() ;
+	}
+
+	/**
+	 * @return the number of values that have been deserialised
+	 */
+	public long getDeserialisations() {
+		return deserialisations.get() ;
+	}
+
+	/**
+	 * @return the mean time (in microseconds) taken to deserialise a value
+	 */
+	public double getMeanDeserialisationMicros() {
+
+		long count = deserialisations.get() ;
+
+		if (count == 0)
+			return 0 ;
+
+		return deserialisationNanos.get() / (count * 1000.0) ;
+	}
+
+	/**
+	 * @return the mean time (in microseconds) taken to answer a request
+	 */
+	public double getMeanLatencyMicros() {
+
+		long count = requests.get() ;
+
+		if (count == 0)
+			return 0 ;
+
+		return latencyNanos.get() / (count * 1000.0) ;
+	}
+
+	/**
+	 * @return an upper bound on the median time (in microseconds) taken to answer a request. This is accurate to within a factor of two.
+	 */
+	public double getMedianLatencyMicros() {
+		return getLatencyPercentileMicros(0.5) ;
+	}
+
+	/**
+	 * @return an upper bound on the 99th percentile of time (in microseconds) taken to answer a request. This is accurate to within a factor of two.
+	 */
+	public double get99thPercentileLatencyMicros() {
+		return getLatencyPercentileMicros(0.99) ;
+	}
+
+	/**
+	 * Returns an upper bound on the given percentile of time taken to answer a request. This is accurate to within a factor of two.
+	 *
+	 * @param percentile the percentile, between 0 and 1
+	 * @return an upper bound on the time (in microseconds) within which the given proportion of requests were answered, or 0 if no requests have been made.
+	 */
+	public double getLatencyPercentileMicros(double percentile) {
+
+		long[] histogram = getLatencyHistogram() ;
+
+		long total = 0 ;
+		for (long count:histogram)
+			total += count ;
+
+		if (total == 0)
+			return 0 ;
+
+		long threshold = (long)Math.ceil(total * percentile) ;
+
+		long seen = 0 ;
+		for (int b=0 ; b<BUCKETS ; b++) {
+			seen += histogram[b] ;
+
+			if (seen >= threshold && seen > 0)
+				return (1L << b) / 1000.0 ;
+		}
+
+		return (1L << (BUCKETS-1)) / 1000.0 ;
+	}
+
+	/**
+	 * Returns the number of requests within each bucket of latency. Requests in bucket b took less than 2^b nanoseconds
+	 * (and at least 2^(b-1) nanoseconds), except for the last bucket, which holds all of the slowest requests.
+	 *
+	 * @return the number of requests within each bucket of latency
+	 */
+	public long[] getLatencyHistogram() {
+
+		long[] histogram = new long[BUCKETS] ;
+		for (int b=0 ; b<BUCKETS ; b++)
+			histogram[b] = latencyHistogram.get(b) ;
+
+		return histogram ;
+	}
+
+	/**
+	 * Sets all counters back to zero
+	 */
+	public void reset() {
+
+		requests.set(0) ;
+		cacheHits.set(0) ;
+		cacheMisses.set(0) ;
+		databaseReads.set(0) ;
+		bytesRead.set(0) ;
+		mappedBytesRead.set(0) ;
+		deserialisations.set(0) ;
+		deserialisationNanos.set(0) ;
+		latencyNanos.set(0) ;
+
+		for (int b=0 ; b<BUCKETS ; b++)
+			latencyHistogram.set(b, 0) ;
+	}
+
+	@Override
+	public String toString() {
+		return "requests: " + getRequests() + ", hits: " + getCacheHits() + ", misses: " + getCacheMisses()
+				+ ", db reads: " + getDatabaseReads() + ", bytes read: " + getBytesRead() + ", mapped bytes read: " + getMappedBytesRead()
+				+ ", mean deserialisation: " + String.format("%.1f", getMeanDeserialisationMicros()) + "us"
+				+ ", mean latency: " + String.format("%.1f", getMeanLatencyMicros()) + "us"
+				+ ", median latency: <" + getMedianLatencyMicros() + "us"
+				+ ", 99th percentile latency: <" + get99thPercentileLatencyMicros() + "us" ;
+	}
+}
@@ -0,0 +1,36 @@
+package org.wikipedia.miner.db;
+
+/**
+ * The management interface through which {@link DatabaseMetrics} are exposed over JMX.
+ * See {@link DatabaseMetrics} for the meaning of each attribute.
+ */
+public interface DatabaseMetricsMBean {
+
+	public long getRequests() ;
+
+	public long getCacheHits() ;
+
+	public long getCacheMisses() ;
+
+	public double getCacheHitRatio() ;
+
+	public long getDatabaseReads() ;
+
+	public long getBytesRead() ;
+
+	public long getMappedBytesRead() ;
+
+	public long getDeserialisations() ;
+
+	public double getMeanDeserialisationMicros() ;
+
+	public double getMeanLatencyMicros() ;
+
+	public double getMedianLatencyMicros() ;
+
+	public double get99thPercentileLatencyMicros() ;
+
+	public long[] getLatencyHistogram() ;
+
+	public void reset() ;
+}
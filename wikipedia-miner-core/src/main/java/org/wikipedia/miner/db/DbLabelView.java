@@ -0,0 +1,135 @@
+package org.wikipedia.miner.db;
+
+import org.wikipedia.miner.db.struct.DbLabel;
+import org.wikipedia.miner.db.struct.DbSenseForLabel;
+
+/**
+ * A reusable, flyweight view over a serialised {@link DbLabel}, which reads label statistics and senses directly from 
+ * the stored bytes, without building a {@link DbLabel} or any {@link DbSenseForLabel DbSenseForLabels}.
+ * <p>
+ * Senses are decoded into primitive arrays that are reused (and only grown) each time the view is 
+ * {@link #wrap(byte[]) wrapped} around another label, so it is not thread-safe.
+ */
+public class DbLabelView extends RecordView {
+
+	private long linkOccCount ;
+	private long linkDocCount ;
+	private long textOccCount ;
+	private long textDocCount ;
+
+	private int senseCount ;
+	private int[] senseIds = new int[8] ;
+	private long[] senseLinkOccCounts = new long[8] ;
+	private long[] senseLinkDocCounts = new long[8] ;
+	private boolean[] senseFromTitle = new boolean[8] ;
+	private boolean[] senseFromRedirect = new boolean[8] ;
+
+	/**
+	 * Points this view at the given serialised label
+	 * 
+	 * @param bytes a serialised label, typically obtained from {@link LabelDatabase#retrieveRaw(String)}
+	 * @return this view
+	 */
+	public DbLabelView wrap(byte[] bytes) {
+
+		reset(bytes) ;
+
+		linkOccCount = readVLong() ;
+		linkDocCount = readVLong() ;
+		textOccCount = readVLong() ;
+		textDocCount = readVLong() ;
+
+		senseCount = readVInt() ;
+
+		if (senseCount > senseIds.length) {
+			int capacity = Math.max(senseCount, senseIds.length * 2) ;
+
+			senseIds = new int[capacity] ;
+			senseLinkOccCounts = new long[capacity] ;
+			senseLinkDocCounts = new long[capacity] ;
+			senseFromTitle = new boolean[capacity] ;
+			senseFromRedirect = new boolean[capacity] ;
+		}
+
+		for (int i=0 ; i<senseCount ; i++) {
+			senseIds[i] = readVInt() ;
+			senseLinkOccCounts[i] = readVLong() ;
+			senseLinkDocCounts[i] = readVLong() ;
+			senseFromTitle[i] = readBool() ;
+			senseFromRedirect[i] = readBool() ;
+		}
+
+		return this ;
+	}
+
+	public long getLinkOccCount() {
+		return linkOccCount ;
+	}
+
+	public long getLinkDocCount() {
+		return linkDocCount ;
+	}
+
+	public long getTextOccCount() {
+		return textOccCount ;
+	}
+
+	public long getTextDocCount() {
+		return textDocCount ;
+	}
+
+	/**
+	 * @return the number of senses of this label
+	 */
+	public int getSenseCount() {
+		return senseCount ;
+	}
+
+	/**
+	 * @param index the index of a sense, between 0 and {@link #getSenseCount()}
+	 * @return the id of the page that the sense refers to
+	 */
+	public int getSenseId(int index) {
+		return senseIds[checkSense(index)] ;
+	}
+
+	/**
+	 * @param index the index of a sense, between 0 and {@link #getSenseCount()}
+	 * @return the number of times the label is used as a link to the sense
+	 */
+	public long getSenseLinkOccCount(int index) {
+		return senseLinkOccCounts[checkSense(index)] ;
+	}
+
+	/**
+	 * @param index the index of a sense, between 0 and {@link #getSenseCount()}
+	 * @return the number of documents in which the label is used as a link to the sense
+	 */
+	public long getSenseLinkDocCount(int index) {
+		return senseLinkDocCounts[checkSense(index)] ;
+	}
+
+	/**
+	 * @param index the index of a sense, between 0 and {@link #getSenseCount()}
+	 * @return true if the label matches the title of the sense
+	 */
+	public boolean isSenseFromTitle(int index) {
+		return senseFromTitle[checkSense(index)] ;
+	}
+
+	/**
+	 * @param index the index of a sense, between 0 and {@link #getSenseCount()}
+	 * @return true if the label matches the title of a redirect to the sense
+	 */
+	public boolean isSenseFromRedirect(int index) {
+		return senseFromRedirect[checkSense(index)] ;
+	}
+
+	private int checkSense(int index) {
+
+		if (index < 0 || index >= senseCount)
+			throw new IndexOutOfBoundsException("sense " + index + " of " + senseCount) ;
+
+		return index ;
+	}
+}
@@ -0,0 +1,293 @@
+package org.wikipedia.miner.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.je.CacheMode;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * A summary of the databases within a {@link WEnvironment}, which is written to the environment directory when the environment is built.
+ * <p>
+ * For each database this records the number of entries, the total number of bytes in their serialised keys and values, and a CRC32 checksum of
+ * every key and value (in key order). It also records the configuration the environment was built with.
+ * <p>
+ * This allows the number of entries in a database to be known without walking its btree, caches to be sized before they are filled,
+ * and the memory needed to cache each database to be estimated before anything is loaded. Databases can also be {@link #verify(WDatabase) verified} 
+ * against the manifest, to detect environments that have been modified or corrupted since they were built.
+ */
+public class EnvironmentManifest {
+
+	/**
+	 * The name of the manifest file within the environment directory
+	 */
+	public static final String FILE_NAME = "manifest.properties" ;
+
+	/**
+	 * The version of the manifest format written and understood by this class
+	 */
+	public static final int VERSION = 1 ;
+
+	private static final String COUNT = ".count" ;
+	private static final String BYTES = ".bytes" ;
+	private static final String CHECKSUM = ".checksum" ;
+	private static final String BUILD = "build." ;
+
+	private Properties properties ;
+
+	/**
+	 * Creates an empty manifest
+	 */
+	public EnvironmentManifest() {
+		properties = new Properties() ;
+		properties.setProperty("version", String.valueOf(VERSION)) ;
+	}
+
+	private EnvironmentManifest(Properties properties) {
+		this.properties = properties ;
+	}
+
+	/**
+	 * Reads the manifest within the given environment directory
+	 *
+	 * @param databaseDirectory the directory of a {@link WEnvironment}
+	 * @return the manifest, or null if there is no readable manifest (of the current version) in the directory.
+	 */
+	public static EnvironmentManifest load(File databaseDirectory) {
+
+		File file = new File(databaseDirectory, FILE_NAME) ;
+
+		if (!file.canRead())
+			return null ;
+
+		Properties properties = new Properties() ;
+
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(file)) ;
+			try {
+				properties.load(in) ;
+			} finally {
+				in.close() ;
+			}
+		} catch (IOException e) {
+			Logger.getLogger(EnvironmentManifest.class).warn("Could not read " + file, e) ;
+			return null ;
+		}
+
+		if (!String.valueOf(VERSION).equals(properties.getProperty("version")))
+			return null ;
+
+		return new EnvironmentManifest(properties) ;
+	}
+
+	/**
+	 * Writes this manifest to the given environment directory, replacing any existing manifest.
+	 *
+	 * @param databaseDirectory the directory of a {@link WEnvironment}
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public synchronized void save(File databaseDirectory) throws IOException {
+
+		File file = new File(databaseDirectory, FILE_NAME) ;
+		File tmpFile = new File(databaseDirectory, FILE_NAME + ".tmp") ;
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile)) ;
+		try {
+			properties.store(out, "Wikipedia Miner environment manifest") ;
+		} finally {
+			out.close() ;
+		}
+
+		if (file.exists())
+			file.delete() ;
+
+		if (!tmpFile.renameTo(file))
+			throw new IOException("Could not create " + file) ;
+	}
+
+	/**
+	 * Scans the given database, and records its entry count, size and checksum.
+	 *
+	 * @param db the database to summarise
+	 */
+	public void record(WDatabase<?,?> db) {
+
+		Summary summary = new Summary(db) ;
+
+		synchronized (this) {
+			properties.setProperty(db.getName() + COUNT, String.valueOf(summary.count)) ;
+			properties.setProperty(db.getName() + BYTES, String.valueOf(summary.bytes)) ;
+			properties.setProperty(db.getName() + CHECKSUM, Long.toHexString(summary.checksum)) ;
+		}
+	}
+
+	/**
+	 * Scans the given database, and checks that its entry count, size and checksum match those that were recorded 
+	 * when it was built. 
+	 *
+	 * @param db the database to check
+	 * @return true if the database matches this manifest (or has not been recorded in it), otherwise false.
+	 */
+	public boolean verify(WDatabase<?,?> db) {
+
+		long count = getEntryCount(db.getName()) ;
+		long bytes = getByteSize(db.getName()) ;
+		long checksum = getChecksum(db.getName()) ;
+
+		if (count < 0 || bytes < 0 || checksum < 0)
+			return true ;
+
+		Summary summary = new Summary(db) ;
+
+		if (summary.count == count && summary.bytes == bytes && summary.checksum == checksum)
+			return true ;
+
+		Logger.getLogger(EnvironmentManifest.class).warn("Database '" + db.getName() + "' does not match manifest: " 
+				+ summary.count + " entries (expected " + count + "), " 
+				+ summary.bytes + " bytes (expected " + bytes + "), " 
+				+ "checksum " + Long.toHexString(summary.checksum) + " (expected " + Long.toHexString(checksum) + ")") ;
+
+		return false ;
+	}
+
+	/**
+	 * Forgets everything recorded about the given database (e.g. because it is being rebuilt)
+	 *
+	 * @param dbName the name of a database
+	 */
+	public synchronized void remove(String dbName) {
+		properties.remove(dbName + COUNT) ;
+		properties.remove(dbName + BYTES) ;
+		properties.remove(dbName + CHECKSUM) ;
+	}
+
+	/**
+	 * Records a detail of the configuration the environment was built with
+	 *
+	 * @param name the name of the detail
+	 * @param value the value of the detail
+	 */
+	public synchronized void setBuildProperty(String name, Object value) {
+		properties.setProperty(BUILD + name, String.valueOf(value)) ;
+	}
+
+	/**
+	 * Records the configuration the environment was built with, and when it was built
+	 *
+	 * @param conf the configuration the environment was built with
+	 * @param threads the number of databases that were loaded concurrently
+	 */
+	public void setBuildConfiguration(WikipediaConfiguration conf, int threads) {
+		setBuildProperty("langCode", conf.getLangCode()) ;
+		setBuildProperty("date", new Date().getTime()) ;
+		setBuildProperty("threads", threads) ;
+		setBuildProperty("snapshotVersion", CacheSnapshot.VERSION) ;
+	}
+
+	/**
+	 * @param dbName the name of a database
+	 * @return the number of entries in the database, or -1 if this is not known
+	 */
+	public long getEntryCount(String dbName) {
+		return getLong(dbName + COUNT) ;
+	}
+
+	/**
+	 * @param dbName the name of a database
+	 * @return the total number of bytes in the serialised keys and values of the database, or -1 if this is not known
+	 */
+	public long getByteSize(String dbName) {
+		return getLong(dbName + BYTES) ;
+	}
+
+	/**
+	 * @param dbName the name of a database
+	 * @return a CRC32 checksum of every serialised key and value in the database, or -1 if this is not known
+	 */
+	private long getChecksum(String dbName) {
+
+		String value ;
+		synchronized (this) {
+			value = properties.getProperty(dbName + CHECKSUM) ;
+		}
+
+		if (value == null)
+			return -1 ;
+
+		try {
+			return Long.parseLong(value, 16) ;
+		} catch (NumberFormatException e) {
+			return -1 ;
+		}
+	}
+
+	private long getLong(String property) {
+
+		String value ;
+		synchronized (this) {
+			value = properties.getProperty(property) ;
+		}
+
+		if (value == null)
+			return -1 ;
+
+		try {
+			return Long.parseLong(value) ;
+		} catch (NumberFormatException e) {
+			return -1 ;
+		}
+	}
+
+	/**
+	 * The entry count, size and checksum of a database, gathered by scanning it in key order
+	 */
+	private static class Summary {
+
+		private long count = 0 ;
+		private long bytes = 0 ;
+		private long checksum ;
+
+		Summary(WDatabase<?,?> db) {
+
+			Database database = db.getDatabase(true) ;
+
+			DatabaseEntry key = new DatabaseEntry() ;
+			DatabaseEntry value = new DatabaseEntry() ;
+
+			CRC32 crc = new CRC32() ;
+
+			Cursor cursor = database.openCursor(null, null) ;
+			cursor.setCacheMode(CacheMode.UNCHANGED) ;
+
+			try {
+				while (cursor.getNext(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+					count++ ;
+					bytes += key.getSize() + value.getSize() ;
+
+					crc.update(key.getData(), key.getOffset(), key.getSize()) ;
+					crc.update(value.getData(), value.getOffset(), value.getSize()) ;
+				}
+			} finally {
+				cursor.close() ;
+			}
+
+			checksum = crc.getValue() ;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package org.wikipedia.miner.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wikipedia.miner.db.struct.DbIntList;
+import org.wikipedia.miner.db.struct.DbLinkLocation;
+import org.wikipedia.miner.db.struct.DbLinkLocationList;
+
+/**
+ * A compact encoding for lists of integers (such as link, category and redirect ids, or sentence splits) that
+ * are mostly stored in ascending order.
+ * <p>
+ * Each list is stored as a varint count, followed by the first value and then the difference between each
+ * value and the one before it. Differences are zig-zag encoded so unsorted lists remain valid, but sorted lists of
+ * nearby ids will typically need only one or two bytes per value.
+ * <p>
+ * Every encoded list starts with {@link #MARKER}, which can never begin a Hadoop record containing a vector (because
+ * it would indicate a vector of negative length), so data stored in the original record format can still be read.
+ */
+public class IntListCodec {
+
+	/**
+	 * The first byte of every encoded list
+	 */
+	public static final byte MARKER = (byte)0x80 ;
+
+	/**
+	 * Returns true if the given bytes were produced by this codec, rather than by a {@link RecordBinding}
+	 *
+	 * @param bytes serialised data
+	 * @return true if the given bytes were produced by this codec, otherwise false
+	 */
+	public static boolean isEncoded(byte[] bytes) {
+		return bytes != null && bytes.length > 0 && bytes[0] == MARKER ;
+	}
+
+	/**
+	 * Encodes a list of integers
+	 *
+	 * @param values the values to encode
+	 * @return the encoded values
+	 */
+	public static byte[] encode(List<Integer> values) {
+
+		Encoder e = new Encoder(2 + values.size()) ;
+		e.writeDeltas(values) ;
+		return e.toByteArray() ;
+	}
+
+	/**
+	 * Encodes a list of integers
+	 *
+	 * @param values the values to encode
+	 * @return the encoded values
+	 */
+	public static byte[] encode(int[] values) {
+
+		Encoder e = new Encoder(2 + values.length) ;
+		e.writeVarInt(values.length) ;
+
+		int prev = 0 ;
+		for (int value:values) {
+			e.writeVarInt(zigZag(value - prev)) ;
+			prev = value ;
+		}
+		return e.toByteArray() ;
+	}
+
+	/**
+	 * Decodes a list of integers
+	 *
+	 * @param bytes data produced by {@link #encode(int[])} or {@link #encode(List)}
+	 * @return the decoded values
+	 */
+	public static ArrayList<Integer> decode(byte[] bytes) {
+
+		Decoder d = new Decoder(bytes) ;
+		return d.readDeltas() ;
+	}
+
+	/**
+	 * Encodes a list of link locations. Link ids and the sentence indexes of each link are delta-encoded separately.
+	 *
+	 * @param list the link locations to encode
+	 * @return the encoded link locations
+	 */
+	public static byte[] encode(DbLinkLocationList list) {
+
+		ArrayList<DbLinkLocation> locations = list.getLinkLocations() ;
+
+		Encoder e = new Encoder(2 + (3 * locations.size())) ;
+		e.writeVarInt(locations.size()) ;
+
+		int prev = 0 ;
+		for (DbLinkLocation ll:locations) {
+			e.writeVarInt(zigZag(ll.getLinkId() - prev)) ;
+			prev = ll.getLinkId() ;
+
+			e.writeDeltas(ll.getSentenceIndexes()) ;
+		}
+
+		return e.toByteArray() ;
+	}
+
+	/**
+	 * Decodes a list of link locations
+	 *
+	 * @param bytes data produced by {@link #encode(DbLinkLocationList)}
+	 * @return the decoded link locations
+	 */
+	public static DbLinkLocationList decodeLinkLocations(byte[] bytes) {
+
+		Decoder d = new Decoder(bytes) ;
+
+		int count = d.readVarInt() ;
+		ArrayList<DbLinkLocation> locations = new ArrayList<DbLinkLocation>(count) ;
+
+		int prev = 0 ;
+		for (int i=0 ; i<count ; i++) {
+			prev = prev + d.readDelta() ;
+			locations.add(new DbLinkLocation(prev, d.readDeltas())) ;
+		}
+
+		return new DbLinkLocationList(locations) ;
+	}
+
+	private static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31) ;
+	}
+
+	private static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1) ;
+	}
+
+	private static class Encoder {
+
+		private byte[] bytes ;
+		private int length = 0 ;
+
+		Encoder(int expectedSize) {
+			bytes = new byte[Math.max(8, expectedSize)] ;
+			bytes[length++] = MARKER ;
+		}
+
+		void writeVarInt(int value) {
+
+			if (length + 5 > bytes.length) {
+				byte[] newBytes = new byte[bytes.length * 2] ;
+				System.arraycopy(bytes, 0, newBytes, 0, length) ;
+				bytes = newBytes ;
+			}
+
+			while ((value & ~0x7F) != 0) {
+				bytes[length++] = (byte)((value & 0x7F) | 0x80) ;
+				value >>>= 7 ;
+			}
+			bytes[length++] = (byte)value ;
+		}
+
+		void writeDeltas(List<Integer> values) {
+
+			writeVarInt(values.size()) ;
+
+			int prev = 0 ;
+			for (int value:values) {
+				writeVarInt(zigZag(value - prev)) ;
+				prev = value ;
+			}
+		}
+
+		byte[] toByteArray() {
+
+			byte[] result = new byte[length] ;
+			System.arraycopy(bytes, 0, result, 0, length) ;
+			return result ;
+		}
+	}
+
+	/**
+	 * Reads varints and zig-zag encoded differences from an encoded list. A single decoder can be 
+	 * {@link #wrap(byte[]) wrapped} around many lists in turn.
+	 */
+	static class Decoder {
+
+		private byte[] bytes ;
+		private int pos ;
+
+		Decoder() {
+		}
+
+		Decoder(byte[] bytes) {
+			wrap(bytes) ;
+		}
+
+		void wrap(byte[] bytes) {
+
+			if (!isEncoded(bytes))
+				throw new IllegalArgumentException("data was not encoded with IntListCodec") ;
+
+			this.bytes = bytes ;
+			this.pos = 1 ;
+		}
+
+		int getPosition() {
+			return pos ;
+		}
+
+		void setPosition(int pos) {
+			this.pos = pos ;
+		}
+
+		int readVarInt() {
+
+			int value = 0 ;
+			int shift = 0 ;
+
+			while (true) {
+				byte b = bytes[pos++] ;
+				value |= (b & 0x7F) << shift ;
+
+				if ((b & 0x80) == 0)
+					return value ;
+
+				shift += 7 ;
+			}
+		}
+
+		/**
+		 * @return the difference between the next value and the one before it
+		 */
+		int readDelta() {
+			return unZigZag(readVarInt()) ;
+		}
+
+		ArrayList<Integer> readDeltas() {
+
+			int count = readVarInt() ;
+			ArrayList<Integer> values = new ArrayList<Integer>(count) ;
+
+			int prev = 0 ;
+			for (int i=0 ; i<count ; i++) {
+				prev = prev + readDelta() ;
+				values.add(prev) ;
+			}
+			return values ;
+		}
+	}
+}
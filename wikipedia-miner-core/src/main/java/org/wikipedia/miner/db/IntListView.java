@@ -0,0 +1,106 @@
+package org.wikipedia.miner.db;
+
+import org.wikipedia.miner.db.struct.DbIntList;
+
+/**
+ * A reusable, flyweight view over a serialised {@link DbIntList}, which iterates through values directly from the 
+ * stored bytes, without boxing them or building a new list. 
+ * <p>
+ * This understands both the compact encoding of {@link IntListCodec} and the original record format. 
+ * A single view can be {@link #wrap(byte[]) wrapped} around many lists in turn, but it is not thread-safe.
+ */
+public class IntListView extends RecordView {
+
+	private final IntListCodec.Decoder decoder = new IntListCodec.Decoder() ;
+
+	private boolean encoded ;
+	private int size ;
+	private int start ;
+
+	private int index ;
+	private int prev ;
+
+	/**
+	 * Points this view at the given serialised list
+	 * 
+	 * @param bytes a serialised list, typically obtained from {@link WDatabase#retrieveRaw(Object)}
+	 * @return this view
+	 */
+	public IntListView wrap(byte[] bytes) {
+
+		encoded = IntListCodec.isEncoded(bytes) ;
+
+		if (encoded) {
+			decoder.wrap(bytes) ;
+			size = decoder.readVarInt() ;
+			start = decoder.getPosition() ;
+		} else {
+			reset(bytes) ;
+			size = readVInt() ;
+			start = pos ;
+		}
+
+		index = 0 ;
+		prev = 0 ;
+
+		return this ;
+	}
+
+	/**
+	 * @return the number of values in the list
+	 */
+	public int size() {
+		return size ;
+	}
+
+	/**
+	 * @return true if there are more values to iterate through
+	 */
+	public boolean hasNext() {
+		return index < size ;
+	}
+
+	/**
+	 * @return the next value in the list
+	 */
+	public int next() {
+
+		index++ ;
+
+		if (!encoded)
+			return readVInt() ;
+
+		prev = prev + decoder.readDelta() ;
+		return prev ;
+	}
+
+	/**
+	 * Moves back to the start of the list
+	 */
+	public void rewind() {
+
+		if (encoded)
+			decoder.setPosition(start) ;
+		else
+			pos = start ;
+
+		index = 0 ;
+		prev = 0 ;
+	}
+
+	/**
+	 * Copies all of the values in the list to a new array
+	 * 
+	 * @return the values in the list
+	 */
+	public int[] toArray() {
+
+		rewind() ;
+
+		int[] values = new int[size] ;
+		for (int i=0 ; i<size ; i++)
+			values[i] = next() ;
+
+		return values ;
+	}
+}
@@ -1,9 +1,15 @@
 package org.wikipedia.miner.db;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
 
 import com.sleepycat.bind.EntryBinding;
 import com.sleepycat.bind.tuple.IntegerBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.Cursor;
 import com.sleepycat.je.DatabaseEntry;
 
 
@@ -41,19 +47,135 @@ public abstract class IntObjectDatabase<V> extends WDatabase<Integer,V> {
 		super(env, type, name, new IntegerBinding(), valueBinding) ;
 	}
 	
+	/**
+	 * Retrieves the values associated with each of the given keys. This is much more efficient than calling 
+	 * {@link #retrieve(Object)} repeatedly if the database has not been cached, because keys are looked up in 
+	 * the order in which they are stored, using a single cursor. 
+	 * 
+	 * @param keys the keys to search for
+	 * @param results an array (at least as long as keys) that will be filled so that results[i] contains the value associated with keys[i], or null if none exists.
+	 */
+	public void retrieveAll(int[] keys, V[] results) {
+		retrieveAll(keys, keys.length, results) ;
+	}
+	
+	/**
+	 * Retrieves the values associated with the first count keys in the given array, so that a buffer of keys 
+	 * can be reused from one batch to the next. 
+	 * 
+	 * @param keys the keys to search for
+	 * @param count the number of keys (from the start of the array) to search for
+	 * @param results an array (at least count long) that will be filled so that results[i] contains the value associated with keys[i], or null if none exists.
+	 */
+	public void retrieveAll(int[] keys, int count, V[] results) {
+		
+		if (count > keys.length)
+			throw new IllegalArgumentException("count must be no more than the number of keys") ;
+		
+		if (results.length < count)
+			throw new IllegalArgumentException("results must be at least as long as keys") ;
+		
+		if (isCached() && getCachePriority() != CachePriority.mapped) {
+			for (int i=0 ; i<count ; i++) {
+				long start = System.nanoTime() ;
+				results[i] = retrieveFromCache(keys[i]) ;
+				recordMemoryLookup(results[i], start) ;
+			}
+			return ;
+		}
+		
+		//integer keys are serialised so that their byte order matches their numeric order, 
+		//so they can be sorted without comparing bytes (the index is packed below the key)
+		long[] packed = new long[count] ;
+		for (int i=0 ; i<count ; i++) 
+			packed[i] = ((long)keys[i] << 32) | i ;
+		
+		Arrays.sort(packed) ;
+		
+		TupleOutput keyOutput = new TupleOutput() ;
+		DatabaseEntry dbKey = new DatabaseEntry() ;
+		
+		if (isCached()) {
+			//mapped snapshots need the exact bytes of each key
+			byte[] serialisedKey = new byte[4] ;
+			
+			for (int p=0 ; p<packed.length ; p++) {
+				long start = System.nanoTime() ;
+				int i = (int)(packed[p] & 0xFFFFFFFFL) ;
+				
+				if (p > 0 && (packed[p] >> 32) == (packed[p-1] >> 32)) 
+					results[i] = results[(int)(packed[p-1] & 0xFFFFFFFFL)] ;
+				else {
+					serialise(keys[i], keyOutput, dbKey) ;
+					System.arraycopy(dbKey.getData(), dbKey.getOffset(), serialisedKey, 0, 4) ;
+					results[i] = retrieveFromMappedStore(serialisedKey) ;
+				}
+				
+				recordMemoryLookup(results[i], start) ;
+			}
+			return ;
+		}
+		
+		DatabaseEntry dbValue = new DatabaseEntry() ;
+		Cursor cursor = openBatchCursor() ;
+		
+		try {
+			for (int p=0 ; p<packed.length ; p++) {
+				int i = (int)(packed[p] & 0xFFFFFFFFL) ;
+				
+				//no need to search for the same key twice
+				if (p > 0 && (packed[p] >> 32) == (packed[p-1] >> 32)) {
+					results[i] = results[(int)(packed[p-1] & 0xFFFFFFFFL)] ;
+					recordMemoryLookup(results[i], System.nanoTime()) ;
+					continue ;
+				}
+				
+				serialise(keys[i], keyOutput, dbKey) ;
+				
+				//keys only need to be boxed if there is a bounded cache to consult
+				results[i] = retrieveWithCursor(cursor, isTiered() ? Integer.valueOf(keys[i]) : null, dbKey, dbValue) ;
+			}
+		} finally {
+			cursor.close() ;
+		}
+	}
+	
+	/**
+	 * Serialises the given key exactly as {@link IntegerBinding} would, reusing the given output buffer 
+	 */
+	private static void serialise(int key, TupleOutput keyOutput, DatabaseEntry dbKey) {
+		keyOutput.reset() ;
+		keyOutput.writeInt(key) ;
+		TupleBinding.outputToEntry(keyOutput, dbKey) ;
+	}
+	
 	@Override
 	public long getCacheSize() {
 		if (!isCached())
 			return 0 ;
 		
-		if (getCachePriority() == CachePriority.space)
+		if (getCachePriority() == CachePriority.mapped)
+			return super.getCacheSize() ;
+		
+		if (getCachePriority() == CachePriority.speed)
 			return fastCache.size();
 		else
 			return compactCache.size();
 	}
 		
 	@Override
-	protected V retrieveFromCache(Integer key) {
+	protected final V retrieveFromCache(Integer key) {
+		return retrieveFromCache(key.intValue()) ;
+	}
+	
+	/**
+	 * Retrieves the value associated with the given key from memory, without boxing the key. 
+	 * Subclasses that cache values differently should override this, rather than {@link #retrieveFromCache(Integer)}.
+	 * 
+	 * @param key the key to search for
+	 * @return the cached value associated with the given key, or null if none exists.
+	 */
+	protected V retrieveFromCache(int key) {
 		
 		if (getCachePriority() == CachePriority.speed)
 			return fastCache.get(key) ;
@@ -63,20 +185,52 @@ public abstract class IntObjectDatabase<V> extends WDatabase<Integer,V> {
 			if (cachedData == null)
 				return null ;
 			
-			DatabaseEntry dbValue = new DatabaseEntry(cachedData) ;
-			return valueBinding.entryToObject(dbValue) ;
+			return deserialise(cachedData) ;
 		}
 	}
 	
+	@Override
+	protected byte[] retrieveRawFromCache(Integer key) {
+		
+		if (getCachePriority() == CachePriority.speed)
+			return serialise(fastCache.get(key)) ;
+		else 
+			return compactCache.get(key) ;
+	}
+	
 	@Override
 	protected void initializeCache() {
 		
 		System.out.println("Initializing cache for " + this.getName() + ": " + getCachePriority()) ;
 		
+		int expectedSize = getExpectedCacheSize() ;
+		
 		if (getCachePriority() == CachePriority.speed)
-			fastCache = new TIntObjectHashMap<V>() ;
+			fastCache = expectedSize > 0 ? new TIntObjectHashMap<V>(expectedSize) : new TIntObjectHashMap<V>() ;
+		else
+			compactCache = expectedSize > 0 ? new TIntObjectHashMap<byte[]>(expectedSize) : new TIntObjectHashMap<byte[]>() ;
+	}
+	
+	@Override
+	protected int getExpectedCacheSize() {
+		
+		int expectedSize = super.getExpectedCacheSize() ;
+		
+		//keys are page ids, and most of them will be filtered out if they are not articles of interest
+		TIntHashSet articlesOfInterest = env.getConfiguration().getArticlesOfInterest() ;
+		if (articlesOfInterest != null && expectedSize > 0)
+			expectedSize = Math.min(expectedSize, articlesOfInterest.size()) ;
+		
+		return expectedSize ;
+	}
+	
+	@Override
+	protected void addSerialisedToCache(Integer key, byte[] value) {
+		
+		if (getCachePriority() != CachePriority.speed && compactCache != null) 
+			compactCache.put(key, value) ;
 		else
-			compactCache = new TIntObjectHashMap<byte[]>() ;
+			super.addSerialisedToCache(key, value) ;
 	}
 	
 	@Override
@@ -7,14 +7,11 @@ import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.hadoop.record.CsvRecordInput;
-import org.apache.hadoop.record.CsvRecordOutput;
 import org.apache.log4j.Logger;
 import org.wikipedia.miner.db.struct.DbLabel;
 import org.wikipedia.miner.db.struct.DbSenseForLabel;
@@ -24,23 +21,22 @@ import org.wikipedia.miner.util.text.TextProcessor;
 
 import com.sleepycat.bind.tuple.StringBinding;
 import com.sleepycat.je.Database;
-import com.sleepycat.je.DatabaseEntry;
 
 /**
  * A {@link WDatabase} for associating Strings with statistics about the articles (senses) this string could refer to. 
+ * <p>
+ * When cached with {@link WDatabase.CachePriority#space} priority, labels are held in a {@link LabelIndex} rather than a HashMap. 
+ * This is much smaller, and (via {@link #getLabelIndex()}) allows labels to be enumerated in lexicographical order, searched by prefix 
+ * (i.e. autocomplete queries), or matched against the longest label starting at a position within a text. 
  */
 public class LabelDatabase extends WDatabase<String, DbLabel> {
 
-	//TODO: Labels cached as patricia trie
-	// It would be extremely cool to cache labels in a Patricia Trie rather than a HashMap. 
-	// This would give us:
-	// - iteration in lexicographical order
-	// - prefix-based search (i.e. autocomplete queries)
-	// - fast generation of labels within edit distance (i.e spelling correction)
-	// - faster detection of labels within texts, because we wouldn't need to check every single n-gram.
-	
+	//TODO: fast generation of labels within edit distance (i.e spelling correction)
 	
 	private TextProcessor textProcessor ;
+	
+	private LabelIndex.Builder indexBuilder = null ;
+	private LabelIndex index = null ;
 
 	/**
 	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#label}. 
@@ -97,6 +93,21 @@ public class LabelDatabase extends WDatabase<String, DbLabel> {
 		return textProcessor ;
 	}
 
+	/**
+	 * Returns the index of all cached labels, or null if this database has not been cached with {@link WDatabase.CachePriority#space} priority.
+	 * <p>
+	 * Note that labels in the index have already been processed with this database's {@link #getTextProcessor() text processor}, so any 
+	 * text that is searched for within the index must be processed in the same way.
+	 * <p>
+	 * Labels that start with a prefix are given (in lexicographic order) by {@link LabelIndex#getLabelsWithPrefix(CharSequence, int)}, 
+	 * and the longest label starting at a position within a text by {@link LabelIndex#getLongestMatch(CharSequence, int)}.
+	 * 
+	 * @return the index of all cached labels, or null if this database has not been cached to an index.
+	 */
+	public LabelIndex getLabelIndex() {
+		return index ;
+	}
+
 	/**
 	 * If this database uses a text processor, you must prepare it (by calling {@link #prepare(File,int)} before use. 
 	 * This returns true if that call has been made.
@@ -123,6 +134,151 @@ public class LabelDatabase extends WDatabase<String, DbLabel> {
 			return super.retrieve(textProcessor.processText(key)) ;
 	}
 
+	/**
+	 * Retrieves the serialised label statistics associated with the given text key, which can be read with a {@link DbLabelView}. 
+	 * 
+	 * <p>Note:<b> you should NOT apply text processors to the key; that will be done internally within this method.
+	 * 
+	 * @param key the text key to search for
+	 * @return the serialised label statistics, or null if there are none
+	 */
+	@Override
+	public byte[] retrieveRaw(String key) {
+
+		if (textProcessor == null)
+			return super.retrieveRaw(key) ;
+		else
+			return super.retrieveRaw(textProcessor.processText(key)) ;
+	}
+
+	/**
+	 * Points the given view at the label statistics associated with the given text key, without building a {@link DbLabel}.
+	 * 
+	 * <p>Note:<b> you should NOT apply text processors to the key; that will be done internally within this method.
+	 * 
+	 * @param key the text key to search for
+	 * @param view a view to read the statistics through
+	 * @return true if statistics were found (and the view now points to them), otherwise false
+	 */
+	public boolean retrieveView(String key, DbLabelView view) {
+
+		byte[] data = retrieveRaw(key) ;
+
+		if (data == null)
+			return false ;
+
+		view.wrap(data) ;
+		return true ;
+	}
+
+	/**
+	 * Retrieves the label statistics associated with each of the given text keys. 
+	 * 
+	 * <p>Note:<b> you should NOT apply text processors to the keys; that will be done internally within this method.
+	 * 
+	 * @param keys the text keys to search for
+	 * @param results an array (at least as long as keys) that will be filled with the statistics associated with each key
+	 */
+	@Override
+	public void retrieveAll(String[] keys, DbLabel[] results) {
+
+		if (textProcessor == null) {
+			super.retrieveAll(keys, results) ;
+			return ;
+		}
+
+		String[] processedKeys = new String[keys.length] ;
+		for (int i=0 ; i<keys.length ; i++)
+			processedKeys[i] = textProcessor.processText(keys[i]) ;
+
+		super.retrieveAll(processedKeys, results) ;
+	}
+
+	@Override
+	public long getCacheSize() {
+
+		if (index != null)
+			return index.size() ;
+
+		return super.getCacheSize() ;
+	}
+
+	@Override
+	public void close() {
+		super.close() ;
+
+		index = null ;
+		indexBuilder = null ;
+	}
+
+	@Override
+	protected DbLabel retrieveFromCache(String key) {
+
+		if (index == null)
+			return super.retrieveFromCache(key) ;
+
+		int ordinal = index.find(key) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return deserialise(index.getValue(ordinal)) ;
+	}
+
+	@Override
+	protected byte[] retrieveRawFromCache(String key) {
+
+		if (index == null)
+			return super.retrieveRawFromCache(key) ;
+
+		int ordinal = index.find(key) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return index.getValue(ordinal) ;
+	}
+
+	@Override
+	protected void initializeCache() {
+
+		index = null ;
+
+		if (getCachePriority() == CachePriority.space)
+			indexBuilder = new LabelIndex.Builder(getExpectedCacheSize()) ;
+		else
+			super.initializeCache() ;
+	}
+
+	@Override
+	protected void addToCache(WEntry<String,DbLabel> entry) {
+
+		if (indexBuilder != null)
+			indexBuilder.add(entry.getKey(), serialise(entry.getValue())) ;
+		else
+			super.addToCache(entry) ;
+	}
+
+	@Override
+	protected void addSerialisedToCache(String key, byte[] value) {
+
+		if (indexBuilder != null)
+			indexBuilder.add(key, value) ;
+		else
+			super.addSerialisedToCache(key, value) ;
+	}
+
+	@Override
+	protected void finalizeCache() {
+
+		if (indexBuilder != null) {
+			index = indexBuilder.build() ;
+			indexBuilder = null ;
+		}
+
+		super.finalizeCache() ;
+	}
+
 	@Override
 	public DbLabel filterCacheEntry(WEntry<String,DbLabel> e, WikipediaConfiguration conf) {
 
@@ -171,10 +327,10 @@ public class LabelDatabase extends WDatabase<String, DbLabel> {
 	 * from the original label database (the one with no text processor), re-indexing all entries, and merging statistics whose
 	 * processed texts collide with each other. 
 	 * 
-	 * This is done via an external sort, to avoid memory overflow. 
+	 * This is done via an external sort, to avoid memory overflow (see {@link #prepare(Collection, File, int, int)}). 
 	 * 
 	 * @param tempDir a directory for writing temporary files. Any files created will be deleted, but directories will not.
-	 * @param passes the number of passes to break the task into (more = slower, but less memory required) 
+	 * @param passes the number of sorted runs to break the task into (more = less memory required) 
 	 * @throws IOException if the temporary directory is not writable. 
 	 */
 	public void prepare(File tempDir, int passes) throws IOException {
@@ -182,179 +338,85 @@ public class LabelDatabase extends WDatabase<String, DbLabel> {
 		if (textProcessor == null) 
 			return ;
 
-		WDatabase<String,DbLabel> originalLabels = env.getDbLabel(null) ; 
-		long labelCount = originalLabels.getDatabaseSize() ;
+		long labelCount = env.getDbLabel(null).getDatabaseSize() ;
+		int maxRunSize = (int)Math.min(Integer.MAX_VALUE, Math.max(1, labelCount / Math.max(1, passes))) ;
 
-		tempDir.mkdirs() ;
+		ArrayList<LabelDatabase> dbs = new ArrayList<LabelDatabase>() ;
+		dbs.add(this) ;
 
-		ProgressTracker tracker = new ProgressTracker((2*passes)+1, LabelDatabase.class) ;
+		prepare(dbs, tempDir, maxRunSize, Runtime.getRuntime().availableProcessors()) ;
+	}
 
-		for (int pass=0 ; pass<passes ; pass++) {
+	/**
+	 * Prepares several label databases (each with a different text processor) at once, with a single scan of the original label database.
+	 * <p>
+	 * The original labels are scanned by several threads at once, each processing labels with every text processor. Processed labels
+	 * are gathered in memory, and spilled to disk as sorted runs whenever too many have been gathered. Finally the runs for each database
+	 * are merged together (with a priority queue) and stored in order.
+	 * 
+	 * @param dbs the label databases to prepare. Any that do not use a text processor are ignored.
+	 * @param tempDir a directory for writing temporary files. Any files created will be deleted, but directories will not.
+	 * @param maxRunSize the maximum number of processed labels to hold in memory (for each database) before spilling them to disk
+	 * @param threads the number of threads to use
+	 * @throws IOException if the temporary directory is not writable. 
+	 */
+	public static void prepare(Collection<LabelDatabase> dbs, File tempDir, int maxRunSize, int threads) throws IOException {
 
-			tracker.startTask(labelCount, "Gathering and processing labels (pass " + (pass+1) + " of " + passes + ")") ;
+		final ArrayList<LabelSorter> sorters = new ArrayList<LabelSorter>() ;
+		for (LabelDatabase db:dbs) {
+			if (db.getTextProcessor() != null)
+				sorters.add(new LabelSorter(db, tempDir, maxRunSize)) ;
+		}
 
-			TreeMap<String, DbLabel> tmpProcessedLabels = new TreeMap<String, DbLabel>() ;
+		if (sorters.isEmpty())
+			return ;
 
-			WIterator<String,DbLabel> dbIter = originalLabels.getIterator() ;
-			while (dbIter.hasNext()) {
+		WEnvironment env = sorters.get(0).getDatabase().env ;
+		WDatabase<String,DbLabel> originalLabels = env.getDbLabel(null) ; 
 
-				WEntry<String,DbLabel> e = dbIter.next();
+		tempDir.mkdirs() ;
 
-				String processedText = textProcessor.processText(e.getKey()) ;
+		final ProgressTracker tracker = new ProgressTracker(1 + sorters.size(), LabelDatabase.class) ;
+		tracker.startTask(originalLabels.getDatabaseSize(), "Gathering and processing labels") ;
 
-				if (Math.abs(processedText.hashCode()) % passes == pass) {
+		try {
+			originalLabels.parallelIterate(threads, new EntryVisitor<String,DbLabel>() {
+				public void visit(WEntry<String,DbLabel> e) {
 
-					DbLabel storedLabel = tmpProcessedLabels.get(processedText) ; 
+					try {
+						for (LabelSorter sorter:sorters) 
+							sorter.add(sorter.getDatabase().getTextProcessor().processText(e.getKey()), e.getValue()) ;
+					} catch (IOException ioe) {
+						throw new RuntimeException(ioe) ;
+					}
 
-					if (storedLabel == null) {
-						tmpProcessedLabels.put(processedText, e.getValue()) ;
-					} else {
-						tmpProcessedLabels.put(processedText, mergeLabels(storedLabel, e.getValue())) ;
+					synchronized (tracker) {
+						tracker.update() ;
 					}
 				}
-				tracker.update();
-			}
-			
-			dbIter.close();
-
-			//Dump gathered labels into temporary file
-			tracker.startTask(tmpProcessedLabels.size(), "Dumping processed labels (pass " + (pass+1) + " of " + passes + ")") ;
-
-			Iterator<Map.Entry<String,DbLabel>> mapIter = tmpProcessedLabels.entrySet().iterator() ;
-
-			File tempFile = new File(tempDir.getPath() + File.separator + "tmpLabels" + pass + ".csv") ;
-			tempFile.deleteOnExit() ;
-			
-			BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile)) ;
-
-			while (mapIter.hasNext()) {
-				tracker.update();
-
-				Map.Entry<String, DbLabel> e = mapIter.next();
-
-				ByteArrayOutputStream outStream = new ByteArrayOutputStream() ;
-
-				CsvRecordOutput cro = new CsvRecordOutput(outStream) ;
-				cro.writeString(e.getKey(), null) ;
-				e.getValue().serialize(cro) ;
-
-				writer.write(outStream.toString("UTF-8")) ;
-
-			}
-		}
-
-
-		Database db = getDatabase(false) ;
-
-		long bytesToRead = 0 ;
-		long bytesRead = 0 ;
-		BufferedReader[] readers = new BufferedReader[passes] ;
-
-		String[] currKeys = new String[passes] ;
-		DbLabel[] currValues = new DbLabel[passes] ;
-
-		String line ;
-		
-		File[] tempFiles = new File[passes] ;
-
-		for (int pass=0 ; pass<passes ; pass++) {
-
-			File tempFile = new File(tempDir.getPath() + File.separator + "tmpLabels" + pass + ".csv") ;
-			tempFiles[pass] = tempFile ;
-			bytesToRead = bytesToRead + tempFile.length() ;
+			}) ;
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause() ;
 
-			readers[pass] = new BufferedReader(new FileReader(tempFile)) ;
-
-			if ((line=readers[pass].readLine()) != null) {
-				bytesRead = bytesRead + line.length() + 1 ;
-				//System.out.println(line) ;
-
-				line = line + "\n" ;
-
-				try {
-					CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream(line.getBytes("UTF8"))) ;
-					currKeys[pass] = cri.readString(null) ;
-					currValues[pass] = new DbLabel() ;
-					currValues[pass].deserialize(cri) ;
-				} catch (Exception e) {
-					Logger.getLogger(LabelDatabase.class).error("Could not parse '" + line + "'") ;
-					currKeys[pass] = null ;
-					currValues[pass] = null ;
-				}
-			} else {
-				currKeys[pass] = null ;
-				currValues[pass] = null ;
-			}
+			throw e ;
 		}
 
-		tracker.startTask(bytesToRead, "Storing processed labels") ;
+		for (LabelSorter sorter:sorters) {
+			LabelDatabase db = sorter.getDatabase() ;
 
-		while (true) {
+			Database database = db.getDatabase(false) ;
+			long labelsStored = sorter.merge(database, tracker) ;
 
+			Logger.getLogger(LabelDatabase.class).info("Stored " + labelsStored + " processed labels in " + db.getName()) ;
 
-			String lowestKey = null ;
-			int pass = -1 ;
-
-			for (int i=0 ; i<passes ; i++) {
-
-				if (currKeys[i] != null && (lowestKey == null || currKeys[i].compareTo(lowestKey) < 0)) {
-					lowestKey = currKeys[i] ;
-					pass = i ;
-				}
-			}
-
-			if (pass < 0) {
-				//all readers are finished
-				break ;
-			} else {
-				//save lowestKey and associated value
-				DatabaseEntry k = new DatabaseEntry() ;
-				keyBinding.objectToEntry(lowestKey, k) ;
-
-				DatabaseEntry v = new DatabaseEntry() ;
-				valueBinding.objectToEntry(currValues[pass], v) ;
-
-				db.put(null, k, v) ;
-
-
-				//advance reader
-
-				if ((line=readers[pass].readLine()) != null) {
-					bytesRead = bytesRead + line.length() + 1 ;
-					tracker.update(bytesRead) ;
-
-					line = line + "\n" ;
-
-					try {
-						CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream(line.getBytes("UTF8"))) ;
-						currKeys[pass] = cri.readString(null) ;
-						currValues[pass] = new DbLabel() ;
-						currValues[pass].deserialize(cri) ;
-					} catch (Exception e) {
-						Logger.getLogger(LabelDatabase.class).error("Could not parse '" + line + "'") ;
-						currKeys[pass] = null ;
-						currValues[pass] = null ;
-					}
-				} else {
-					currKeys[pass] = null ;
-					currValues[pass] = null ;
-				}
-			}
+			database.sync() ;
+			env.cleanAndCheckpoint() ;
+			db.getDatabase(true) ;
 		}
-
-		for (BufferedReader r:readers) 
-			r.close();
-		
-		
-		for (File tempFile:tempFiles)
-			tempFile.delete() ;
-
-		env.cleanAndCheckpoint() ;
-		getDatabase(true) ;
-
 	}
 
-	private DbLabel mergeLabels(DbLabel lblA, DbLabel lblB) {
+	DbLabel mergeLabels(DbLabel lblA, DbLabel lblB) {
 
 		THashMap<Integer,DbSenseForLabel> senseHash = new THashMap<Integer,DbSenseForLabel>() ;
 
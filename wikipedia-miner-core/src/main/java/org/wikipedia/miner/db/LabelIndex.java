@@ -0,0 +1,512 @@
+package org.wikipedia.miner.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable index of label texts, each associated with a serialised value.
+ * <p>
+ * All label texts are sorted and packed one after the other into a single character array, and all values are packed
+ * into a single byte array, so the index needs no objects per label. Labels are identified by their ordinal (their position
+ * in lexicographic order), which makes it possible to:
+ * <ul>
+ * <li>look up a label exactly, in O(log n) comparisons;</li>
+ * <li>enumerate all labels in lexicographic order, or just those that start with a given prefix (which occupy a contiguous
+ * range of ordinals);</li>
+ * <li>find the longest label that occurs at a given position within a text, by narrowing the range of candidate labels one
+ * character at a time (in the same way as walking down a trie), without generating every possible n-gram.</li>
+ * </ul>
+ * Labels are compared by their UTF-16 characters, the same order as {@link String#compareTo(String)}.
+ */
+public class LabelIndex {
+
+	private char[] chars ;
+	private int[] labelOffsets ;
+
+	private byte[] values ;
+	private int[] valueOffsets ;
+
+	private LabelIndex(char[] chars, int[] labelOffsets, byte[] values, int[] valueOffsets) {
+		this.chars = chars ;
+		this.labelOffsets = labelOffsets ;
+		this.values = values ;
+		this.valueOffsets = valueOffsets ;
+	}
+
+	/**
+	 * Returns the number of labels in this index
+	 *
+	 * @return the number of labels in this index
+	 */
+	public int size() {
+		return labelOffsets.length - 1 ;
+	}
+
+	/**
+	 * Returns the ordinal of the given label
+	 *
+	 * @param label the label to search for
+	 * @return the ordinal of the label if it is found, otherwise (-(insertion point) - 1), as for {@link java.util.Arrays#binarySearch(int[], int)}
+	 */
+	public int find(CharSequence label) {
+
+		int lo = 0 ;
+		int hi = size() - 1 ;
+
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1 ;
+			int cmp = compare(mid, label) ;
+
+			if (cmp < 0)
+				lo = mid + 1 ;
+			else if (cmp > 0)
+				hi = mid - 1 ;
+			else
+				return mid ;
+		}
+
+		return -(lo + 1) ;
+	}
+
+	/**
+	 * Returns the text of the label with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a label
+	 * @return the text of the label
+	 */
+	public String getLabel(int ordinal) {
+		return new String(chars, labelOffsets[ordinal], getLabelLength(ordinal)) ;
+	}
+
+	/**
+	 * Returns the length (in characters) of the label with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a label
+	 * @return the length of the label
+	 */
+	public int getLabelLength(int ordinal) {
+		return labelOffsets[ordinal+1] - labelOffsets[ordinal] ;
+	}
+
+	/**
+	 * Returns a copy of the serialised value associated with the label with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a label
+	 * @return the serialised value associated with the label
+	 */
+	public byte[] getValue(int ordinal) {
+
+		int start = valueOffsets[ordinal] ;
+		byte[] value = new byte[valueOffsets[ordinal+1] - start] ;
+		System.arraycopy(values, start, value, 0, value.length) ;
+		return value ;
+	}
+
+	/**
+	 * Returns the ordinal of the first label that starts with the given prefix. Labels with this prefix occupy
+	 * all ordinals from this one up to (but excluding) {@link #getPrefixEnd(CharSequence)}
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the ordinal of the first label that starts with the given prefix
+	 */
+	public int getPrefixStart(CharSequence prefix) {
+
+		int lo = 0 ;
+		int hi = size() ;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1 ;
+
+			if (comparePrefix(mid, prefix) < 0)
+				lo = mid + 1 ;
+			else
+				hi = mid ;
+		}
+		return lo ;
+	}
+
+	/**
+	 * Returns the ordinal immediately after the last label that starts with the given prefix.
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the ordinal immediately after the last label that starts with the given prefix
+	 */
+	public int getPrefixEnd(CharSequence prefix) {
+
+		int lo = 0 ;
+		int hi = size() ;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1 ;
+
+			if (comparePrefix(mid, prefix) <= 0)
+				lo = mid + 1 ;
+			else
+				hi = mid ;
+		}
+		return lo ;
+	}
+
+	/**
+	 * Returns up to the given number of labels that start with the given prefix, in lexicographic order
+	 *
+	 * @param prefix the prefix to search for
+	 * @param maxResults the maximum number of labels to return
+	 * @return labels that start with the given prefix
+	 */
+	public ArrayList<String> getLabelsWithPrefix(CharSequence prefix, int maxResults) {
+
+		int start = getPrefixStart(prefix) ;
+		int end = (int)Math.min(getPrefixEnd(prefix), (long)start + maxResults) ;
+
+		ArrayList<String> labels = new ArrayList<String>(Math.max(0, end - start)) ;
+		for (int ordinal=start ; ordinal<end ; ordinal++)
+			labels.add(getLabel(ordinal)) ;
+
+		return labels ;
+	}
+
+	/**
+	 * Finds the longest label that occurs within the given text, starting at the given position.
+	 *
+	 * @param text the text to search within
+	 * @param start the position within the text where the label must start
+	 * @return the ordinal of the longest matching label (its length is given by {@link #getLabelLength(int)}), or -1 if no label starts at this position.
+	 */
+	public int getLongestMatch(CharSequence text, int start) {
+
+		int lo = 0 ;
+		int hi = size() ;
+		int best = -1 ;
+
+		//all labels in [lo,hi) share their first depth characters with the text, and are sorted, so
+		//labels of exactly that length come first, followed by labels ordered by their next character
+		for (int depth=0 ; start+depth < text.length() ; depth++) {
+
+			char c = text.charAt(start + depth) ;
+
+			lo = narrow(lo, hi, depth, c, false) ;
+			hi = narrow(lo, hi, depth, c, true) ;
+
+			if (lo >= hi)
+				break ;
+
+			if (getLabelLength(lo) == depth + 1)
+				best = lo ;
+		}
+
+		return best ;
+	}
+
+	/**
+	 * Finds the first ordinal in [lo,hi) whose label has a character at the given depth that is greater than (or, if not inclusive, greater than or equal to) the given character.
+	 */
+	private int narrow(int lo, int hi, int depth, char c, boolean inclusive) {
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1 ;
+
+			boolean before ;
+			if (getLabelLength(mid) <= depth) {
+				before = true ;
+			} else {
+				char m = chars[labelOffsets[mid] + depth] ;
+				before = inclusive ? m <= c : m < c ;
+			}
+
+			if (before)
+				lo = mid + 1 ;
+			else
+				hi = mid ;
+		}
+		return lo ;
+	}
+
+	private int compare(int ordinalA, int ordinalB) {
+
+		int offsetA = labelOffsets[ordinalA] ;
+		int lengthA = getLabelLength(ordinalA) ;
+
+		int offsetB = labelOffsets[ordinalB] ;
+		int lengthB = getLabelLength(ordinalB) ;
+
+		int len = Math.min(lengthA, lengthB) ;
+		for (int i=0 ; i<len ; i++) {
+			int cmp = chars[offsetA + i] - chars[offsetB + i] ;
+			if (cmp != 0)
+				return cmp ;
+		}
+		return lengthA - lengthB ;
+	}
+
+	private int compare(int ordinal, CharSequence label) {
+
+		int offset = labelOffsets[ordinal] ;
+		int length = getLabelLength(ordinal) ;
+
+		int len = Math.min(length, label.length()) ;
+		for (int i=0 ; i<len ; i++) {
+			int cmp = chars[offset + i] - label.charAt(i) ;
+			if (cmp != 0)
+				return cmp ;
+		}
+		return length - label.length() ;
+	}
+
+	/**
+	 * Compares a label to a prefix, treating every label that starts with the prefix as equal to it.
+	 */
+	private int comparePrefix(int ordinal, CharSequence prefix) {
+
+		int offset = labelOffsets[ordinal] ;
+		int length = getLabelLength(ordinal) ;
+
+		int len = Math.min(length, prefix.length()) ;
+		for (int i=0 ; i<len ; i++) {
+			int cmp = chars[offset + i] - prefix.charAt(i) ;
+			if (cmp != 0)
+				return cmp ;
+		}
+
+		return (length < prefix.length()) ? -1 : 0 ;
+	}
+
+
+	/**
+	 * Accumulates labels and their serialised values, and assembles them into a {@link LabelIndex}
+	 * <p>
+	 * Labels and values are appended directly to packed arrays, so building an index never needs more than one object per label. 
+	 * Labels are expected to arrive in (or close to) sorted order, as they do when read from a database cursor; any that arrive 
+	 * out of order are sorted when the index is built.
+	 */
+	public static class Builder {
+
+		private char[] chars ;
+		private int[] labelOffsets ;
+
+		private byte[] values ;
+		private int[] valueOffsets ;
+
+		private int count = 0 ;
+		private int charCount = 0 ;
+		private int byteCount = 0 ;
+
+		private boolean sorted = true ;
+
+		/**
+		 * Creates a builder for an index of unknown size
+		 */
+		public Builder() {
+			this(0) ;
+		}
+
+		/**
+		 * Creates a builder for an index of roughly the given number of labels
+		 *
+		 * @param expectedSize the number of labels that are expected to be added, or 0 if this is unknown
+		 */
+		public Builder(int expectedSize) {
+
+			int capacity = Math.max(16, expectedSize) ;
+
+			//deliberately low guesses at the size of each label and value, since some entries may be filtered out of the cache
+			chars = new char[(int)Math.min(Integer.MAX_VALUE - 8, capacity * 4L)] ;
+			labelOffsets = new int[capacity + 1] ;
+
+			values = new byte[(int)Math.min(Integer.MAX_VALUE - 8, capacity * 8L)] ;
+			valueOffsets = new int[capacity + 1] ;
+		}
+
+		/**
+		 * Adds a label. Labels can be added in any order, but if a label is added more than once only the last value is kept.
+		 *
+		 * @param label the text of the label
+		 * @param value the serialised value associated with the label
+		 */
+		public void add(String label, byte[] value) {
+
+			if (count > 0 && sorted) {
+				int cmp = compareToLast(label) ;
+
+				if (cmp == 0) {
+					//replace the value of the previous label, which is still at the end of the value array
+					byteCount = valueOffsets[count-1] ;
+					appendValue(value) ;
+					return ;
+				}
+
+				if (cmp > 0)
+					sorted = false ;
+			}
+
+			if (count + 2 > labelOffsets.length) {
+				labelOffsets = Arrays.copyOf(labelOffsets, grow(labelOffsets.length, count + 2)) ;
+				valueOffsets = Arrays.copyOf(valueOffsets, labelOffsets.length) ;
+			}
+
+			if (charCount + label.length() > chars.length)
+				chars = Arrays.copyOf(chars, grow(chars.length, (long)charCount + label.length())) ;
+
+			labelOffsets[count] = charCount ;
+			label.getChars(0, label.length(), chars, charCount) ;
+			charCount += label.length() ;
+
+			valueOffsets[count] = byteCount ;
+			appendValue(value) ;
+
+			count++ ;
+		}
+
+		/**
+		 * Assembles all of the labels that have been added into an index
+		 *
+		 * @return an index of all the labels that have been added
+		 */
+		public LabelIndex build() {
+
+			labelOffsets[count] = charCount ;
+			valueOffsets[count] = byteCount ;
+
+			LabelIndex index ;
+
+			if (sorted) {
+				index = new LabelIndex(
+						Arrays.copyOf(chars, charCount), 
+						Arrays.copyOf(labelOffsets, count + 1), 
+						Arrays.copyOf(values, byteCount), 
+						Arrays.copyOf(valueOffsets, count + 1)
+				) ;
+			} else {
+				index = buildFromUnsorted() ;
+			}
+
+			chars = null ;
+			labelOffsets = null ;
+			values = null ;
+			valueOffsets = null ;
+
+			return index ;
+		}
+
+		private LabelIndex buildFromUnsorted() {
+
+			//wrap the packed arrays so labels can be compared in place 
+			LabelIndex unsorted = new LabelIndex(chars, labelOffsets, values, valueOffsets) ;
+
+			int[] order = new int[count] ;
+			for (int i=0 ; i<count ; i++)
+				order[i] = i ;
+
+			//stable, so later duplicates stay after earlier ones
+			sort(unsorted, order, new int[count], 0, count) ;
+
+			//drop all but the last of any duplicates
+			int uniqueCount = 0 ;
+			int uniqueChars = 0 ;
+			int uniqueBytes = 0 ;
+			for (int o=0 ; o<count ; o++) {
+				if (o+1 < count && unsorted.compare(order[o], order[o+1]) == 0)
+					continue ;
+
+				order[uniqueCount++] = order[o] ;
+				uniqueChars += unsorted.getLabelLength(order[o]) ;
+				uniqueBytes += valueOffsets[order[o]+1] - valueOffsets[order[o]] ;
+			}
+
+			char[] charArray = new char[uniqueChars] ;
+			int[] labelOffsetArray = new int[uniqueCount + 1] ;
+
+			byte[] valueArray = new byte[uniqueBytes] ;
+			int[] valueOffsetArray = new int[uniqueCount + 1] ;
+
+			int charOffset = 0 ;
+			int valueOffset = 0 ;
+			for (int o=0 ; o<uniqueCount ; o++) {
+				int i = order[o] ;
+
+				int length = labelOffsets[i+1] - labelOffsets[i] ;
+				System.arraycopy(chars, labelOffsets[i], charArray, charOffset, length) ;
+				labelOffsetArray[o] = charOffset ;
+				charOffset += length ;
+
+				length = valueOffsets[i+1] - valueOffsets[i] ;
+				System.arraycopy(values, valueOffsets[i], valueArray, valueOffset, length) ;
+				valueOffsetArray[o] = valueOffset ;
+				valueOffset += length ;
+			}
+			labelOffsetArray[uniqueCount] = charOffset ;
+			valueOffsetArray[uniqueCount] = valueOffset ;
+
+			return new LabelIndex(charArray, labelOffsetArray, valueArray, valueOffsetArray) ;
+		}
+
+		/**
+		 * A stable merge sort of the given ordinals, by the labels they refer to
+		 */
+		private static void sort(LabelIndex index, int[] order, int[] scratch, int from, int to) {
+
+			if (to - from <= 16) {
+				for (int i=from+1 ; i<to ; i++) {
+					int ordinal = order[i] ;
+
+					int j = i ;
+					while (j > from && index.compare(order[j-1], ordinal) > 0) {
+						order[j] = order[j-1] ;
+						j-- ;
+					}
+					order[j] = ordinal ;
+				}
+				return ;
+			}
+
+			int mid = (from + to) >>> 1 ;
+			sort(index, order, scratch, from, mid) ;
+			sort(index, order, scratch, mid, to) ;
+
+			if (index.compare(order[mid-1], order[mid]) <= 0)
+				return ;
+
+			System.arraycopy(order, from, scratch, from, to - from) ;
+
+			int a = from ;
+			int b = mid ;
+			for (int i=from ; i<to ; i++) {
+				if (b >= to || (a < mid && index.compare(scratch[a], scratch[b]) <= 0))
+					order[i] = scratch[a++] ;
+				else
+					order[i] = scratch[b++] ;
+			}
+		}
+
+		private int compareToLast(String label) {
+
+			int offset = labelOffsets[count-1] ;
+			int length = charCount - offset ;
+
+			int len = Math.min(length, label.length()) ;
+			for (int i=0 ; i<len ; i++) {
+				int cmp = chars[offset + i] - label.charAt(i) ;
+				if (cmp != 0)
+					return cmp ;
+			}
+			return length - label.length() ;
+		}
+
+		private void appendValue(byte[] value) {
+
+			if (byteCount + value.length > values.length)
+				values = Arrays.copyOf(values, grow(values.length, (long)byteCount + value.length)) ;
+
+			System.arraycopy(value, 0, values, byteCount, value.length) ;
+			byteCount += value.length ;
+		}
+
+		private static int grow(int capacity, long required) {
+
+			if (required > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException("Too many labels to index") ;
+
+			return (int)Math.max(required, Math.min(Integer.MAX_VALUE - 8, capacity + (capacity >> 1))) ;
+		}
+	}
+}
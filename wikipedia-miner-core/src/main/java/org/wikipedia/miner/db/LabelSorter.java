@@ -0,0 +1,269 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.map.hash.THashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.wikipedia.miner.db.struct.DbLabel;
+import org.wikipedia.miner.util.ProgressTracker;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Re-indexes labels for a {@link LabelDatabase} that uses a text processor, via an external sort.
+ * <p>
+ * Processed labels are gathered in memory (merging any that collide), and whenever too many have been gathered they are sorted and
+ * spilled to disk as a run. Once all labels have been added, the runs are merged back together in order with a priority queue,
+ * merging any labels that collide across runs, and the result is written straight to the database.
+ * <p>
+ * Labels can be added from several threads at once.
+ */
+class LabelSorter {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+
+	private LabelDatabase db ;
+	private File tempDir ;
+	private int maxRunSize ;
+
+	private THashMap<String,DbLabel> run = new THashMap<String,DbLabel>() ;
+	private ArrayList<File> runFiles = new ArrayList<File>() ;
+
+	/**
+	 * @param db the database that labels will be sorted for
+	 * @param tempDir a directory for writing runs
+	 * @param maxRunSize the maximum number of labels to hold in memory before spilling them to disk
+	 */
+	LabelSorter(LabelDatabase db, File tempDir, int maxRunSize) {
+		this.db = db ;
+		this.tempDir = tempDir ;
+		this.maxRunSize = Math.max(1, maxRunSize) ;
+	}
+
+	LabelDatabase getDatabase() {
+		return db ;
+	}
+
+	/**
+	 * Adds a label, which has already been processed with the database's text processor
+	 */
+	void add(String processedText, DbLabel label) throws IOException {
+
+		THashMap<String,DbLabel> fullRun = null ;
+
+		synchronized (this) {
+			DbLabel storedLabel = run.get(processedText) ;
+
+			if (storedLabel == null)
+				run.put(processedText, label) ;
+			else
+				run.put(processedText, db.mergeLabels(storedLabel, label)) ;
+
+			if (run.size() >= maxRunSize) {
+				fullRun = run ;
+				run = new THashMap<String,DbLabel>() ;
+			}
+		}
+
+		//spilled outside of the lock, so other threads can carry on gathering labels
+		if (fullRun != null)
+			spill(fullRun) ;
+	}
+
+	/**
+	 * Merges all runs into the given database, in ascending order of processed text.
+	 *
+	 * @return the number of distinct labels that were stored
+	 */
+	long merge(Database target, ProgressTracker tracker) throws IOException {
+
+		synchronized (this) {
+			if (!run.isEmpty()) {
+				spill(run) ;
+				run = new THashMap<String,DbLabel>() ;
+			}
+		}
+
+		long bytesToRead = 0 ;
+		for (File runFile:runFiles)
+			bytesToRead += runFile.length() ;
+
+		tracker.startTask(bytesToRead, "Storing processed labels for " + db.getName()) ;
+
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runFiles.size()), new Comparator<RunReader>() {
+			public int compare(RunReader a, RunReader b) {
+				int cmp = a.key.compareTo(b.key) ;
+				if (cmp != 0)
+					return cmp ;
+
+				return a.index - b.index ;
+			}
+		}) ;
+
+		for (int i=0 ; i<runFiles.size() ; i++) {
+			RunReader reader = new RunReader(runFiles.get(i), i) ;
+
+			if (reader.next())
+				queue.add(reader) ;
+			else
+				reader.close() ;
+		}
+
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
+
+		long bytesRead = 0 ;
+		long labelsWritten = 0 ;
+
+		try {
+			while (!queue.isEmpty()) {
+
+				RunReader reader = queue.poll() ;
+
+				String key = reader.key ;
+				byte[] value = reader.value ;
+				DbLabel mergedLabel = null ;
+
+				bytesRead += reader.advance(queue) ;
+
+				//any other runs that contain the same label must be at the head of the queue
+				while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+					RunReader other = queue.poll() ;
+
+					if (mergedLabel == null)
+						mergedLabel = deserialise(value) ;
+
+					mergedLabel = db.mergeLabels(mergedLabel, deserialise(other.value)) ;
+
+					bytesRead += other.advance(queue) ;
+				}
+
+				if (mergedLabel != null)
+					value = db.serialise(mergedLabel) ;
+
+				db.keyBinding.objectToEntry(key, k) ;
+				v.setData(value) ;
+				target.put(null, k, v) ;
+				labelsWritten++ ;
+
+				if (labelsWritten % 1000 == 0)
+					tracker.update(bytesRead) ;
+			}
+		} finally {
+			for (RunReader reader:queue)
+				reader.close() ;
+
+			for (File runFile:runFiles)
+				runFile.delete() ;
+		}
+
+		return labelsWritten ;
+	}
+
+	private DbLabel deserialise(byte[] value) {
+		return db.valueBinding.entryToObject(new DatabaseEntry(value)) ;
+	}
+
+	private void spill(THashMap<String,DbLabel> labels) throws IOException {
+
+		ArrayList<String> keys = new ArrayList<String>(labels.keySet()) ;
+		Collections.sort(keys) ;
+
+		File runFile ;
+		synchronized (runFiles) {
+			runFile = new File(tempDir, "tmp" + db.getName() + "_" + runFiles.size() + ".run") ;
+			runFiles.add(runFile) ;
+		}
+		runFile.deleteOnExit() ;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE)) ;
+		try {
+			for (String key:keys) {
+				byte[] keyBytes = key.getBytes("UTF-8") ;
+				out.writeInt(keyBytes.length) ;
+				out.write(keyBytes) ;
+
+				byte[] value = db.serialise(labels.get(key)) ;
+				out.writeInt(value.length) ;
+				out.write(value) ;
+			}
+		} finally {
+			out.close() ;
+		}
+	}
+
+	private static class RunReader {
+
+		private DataInputStream in ;
+		private int index ;
+
+		private String key ;
+		private byte[] value ;
+		private int size ;
+
+		RunReader(File runFile, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE)) ;
+			this.index = index ;
+		}
+
+		/**
+		 * Reads the next entry of this run
+		 *
+		 * @return true if there was another entry, otherwise false
+		 */
+		boolean next() throws IOException {
+
+			byte[] keyBytes ;
+			try {
+				keyBytes = new byte[in.readInt()] ;
+			} catch (EOFException e) {
+				return false ;
+			}
+
+			in.readFully(keyBytes) ;
+			key = new String(keyBytes, "UTF-8") ;
+
+			value = new byte[in.readInt()] ;
+			in.readFully(value) ;
+
+			size = 8 + keyBytes.length + value.length ;
+			return true ;
+		}
+
+		/**
+		 * Reads the next entry of this run and, if there is one, puts this reader back on the given queue.
+		 *
+		 * @return the number of bytes consumed by the entry that was just passed over
+		 */
+		int advance(PriorityQueue<RunReader> queue) throws IOException {
+
+			int consumed = size ;
+
+			if (next())
+				queue.add(this) ;
+			else
+				close() ;
+
+			return consumed ;
+		}
+
+		void close() {
+			try {
+				in.close() ;
+			} catch (IOException e) {} ;
+		}
+	}
+}
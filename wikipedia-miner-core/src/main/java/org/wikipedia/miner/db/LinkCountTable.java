@@ -0,0 +1,200 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, columnar table of link counts, where every page is assigned a dense ordinal (its position
+ * within a sorted array of page ids), and each of the four counts is held in a separate primitive int column.
+ * <p>
+ * This allows link counts to be read with a single array access, without allocating a
+ * {@link org.wikipedia.miner.db.struct.DbPageLinkCounts}.
+ */
+public class LinkCountTable {
+
+	private int[] ids ;
+	private int[] totalLinksIn ;
+	private int[] distinctLinksIn ;
+	private int[] totalLinksOut ;
+	private int[] distinctLinksOut ;
+
+	private LinkCountTable(int[] ids, int[] totalLinksIn, int[] distinctLinksIn, int[] totalLinksOut, int[] distinctLinksOut) {
+		this.ids = ids ;
+		this.totalLinksIn = totalLinksIn ;
+		this.distinctLinksIn = distinctLinksIn ;
+		this.totalLinksOut = totalLinksOut ;
+		this.distinctLinksOut = distinctLinksOut ;
+	}
+
+	/**
+	 * Returns the number of pages in this table
+	 *
+	 * @return the number of pages in this table
+	 */
+	public int size() {
+		return ids.length ;
+	}
+
+	/**
+	 * Returns the dense ordinal of the given page id
+	 *
+	 * @param id the id of a page
+	 * @return the ordinal of the page, or a negative value if the page is not in this table.
+	 */
+	public int getOrdinal(int id) {
+		return Arrays.binarySearch(ids, id) ;
+	}
+
+	/**
+	 * Returns the id of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the id of the page
+	 */
+	public int getId(int ordinal) {
+		return ids[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the total number of links that are made to the page
+	 */
+	public int getTotalLinksIn(int ordinal) {
+		return totalLinksIn[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the number of distinct pages that link to the page
+	 */
+	public int getDistinctLinksIn(int ordinal) {
+		return distinctLinksIn[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the total number of links that the page makes
+	 */
+	public int getTotalLinksOut(int ordinal) {
+		return totalLinksOut[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the number of distinct pages that the page links to
+	 */
+	public int getDistinctLinksOut(int ordinal) {
+		return distinctLinksOut[ordinal] ;
+	}
+
+
+	/**
+	 * Accumulates the link counts of pages, and assembles them into a {@link LinkCountTable}
+	 */
+	public static class Builder {
+
+		private TIntArrayList ids ;
+		private TIntArrayList totalLinksIn ;
+		private TIntArrayList distinctLinksIn ;
+		private TIntArrayList totalLinksOut ;
+		private TIntArrayList distinctLinksOut ;
+
+		private boolean sorted = true ;
+
+		/**
+		 * Creates a builder for an unknown number of pages
+		 */
+		public Builder() {
+			this(0) ;
+		}
+
+		/**
+		 * Creates a builder, with room for the given number of pages
+		 *
+		 * @param expectedSize the number of pages that are expected to be added
+		 */
+		public Builder(int expectedSize) {
+
+			int capacity = Math.max(10, expectedSize) ;
+
+			ids = new TIntArrayList(capacity) ;
+			totalLinksIn = new TIntArrayList(capacity) ;
+			distinctLinksIn = new TIntArrayList(capacity) ;
+			totalLinksOut = new TIntArrayList(capacity) ;
+			distinctLinksOut = new TIntArrayList(capacity) ;
+		}
+
+		/**
+		 * Adds the link counts of a single page. Pages are ideally added in ascending order of id, otherwise they
+		 * will need to be sorted when {@link #build()} is called.
+		 *
+		 * @param id the id of the page
+		 * @param totalIn the total number of links that are made to the page
+		 * @param distinctIn the number of distinct pages that link to the page
+		 * @param totalOut the total number of links that the page makes
+		 * @param distinctOut the number of distinct pages that the page links to
+		 */
+		public void add(int id, int totalIn, int distinctIn, int totalOut, int distinctOut) {
+
+			if (!ids.isEmpty() && ids.get(ids.size()-1) >= id)
+				sorted = false ;
+
+			ids.add(id) ;
+			totalLinksIn.add(totalIn) ;
+			distinctLinksIn.add(distinctIn) ;
+			totalLinksOut.add(totalOut) ;
+			distinctLinksOut.add(distinctOut) ;
+		}
+
+		/**
+		 * Assembles all of the link counts that have been added into a table
+		 *
+		 * @return a table of all the link counts that have been added
+		 */
+		public LinkCountTable build() {
+
+			int pageCount = ids.size() ;
+
+			int[] idArray = new int[pageCount] ;
+			int[] totalInArray = new int[pageCount] ;
+			int[] distinctInArray = new int[pageCount] ;
+			int[] totalOutArray = new int[pageCount] ;
+			int[] distinctOutArray = new int[pageCount] ;
+
+			if (sorted) {
+				ids.toArray(idArray) ;
+				totalLinksIn.toArray(totalInArray) ;
+				distinctLinksIn.toArray(distinctInArray) ;
+				totalLinksOut.toArray(totalOutArray) ;
+				distinctLinksOut.toArray(distinctOutArray) ;
+			} else {
+
+				//sort pages by id (packed above their original index), and copy counts across in that order
+				long[] order = new long[pageCount] ;
+				for (int i=0 ; i<pageCount ; i++)
+					order[i] = ((long)ids.get(i) << 32) | i ;
+
+				Arrays.sort(order) ;
+
+				for (int o=0 ; o<pageCount ; o++) {
+					int i = (int)(order[o] & 0xFFFFFFFFL) ;
+
+					idArray[o] = ids.get(i) ;
+					totalInArray[o] = totalLinksIn.get(i) ;
+					distinctInArray[o] = distinctLinksIn.get(i) ;
+					totalOutArray[o] = totalLinksOut.get(i) ;
+					distinctOutArray[o] = distinctLinksOut.get(i) ;
+				}
+			}
+
+			ids = null ;
+			totalLinksIn = null ;
+			distinctLinksIn = null ;
+			totalLinksOut = null ;
+			distinctLinksOut = null ;
+
+			return new LinkCountTable(idArray, totalInArray, distinctInArray, totalOutArray, distinctOutArray) ;
+		}
+	}
+}
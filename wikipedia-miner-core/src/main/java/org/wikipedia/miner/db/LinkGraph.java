@@ -0,0 +1,217 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed sparse row representation of page links, where every page that has links is assigned a dense
+ * ordinal (its position within a sorted array of page ids), and the links of all pages are packed one after the other
+ * within a single array of targets.
+ * <p>
+ * This stores each link as a single primitive int, and allows the links of a page to be accessed without boxing or
+ * object allocation.
+ */
+public class LinkGraph {
+
+	private int[] ids ;
+	private int[] offsets ;
+	private int[] targets ;
+
+	private LinkGraph(int[] ids, int[] offsets, int[] targets) {
+		this.ids = ids ;
+		this.offsets = offsets ;
+		this.targets = targets ;
+	}
+
+	/**
+	 * Returns the number of pages that have links in this graph
+	 *
+	 * @return the number of pages that have links in this graph
+	 */
+	public int getPageCount() {
+		return ids.length ;
+	}
+
+	/**
+	 * Returns the total number of links in this graph
+	 *
+	 * @return the total number of links in this graph
+	 */
+	public int getLinkCount() {
+		return targets.length ;
+	}
+
+	/**
+	 * Returns the dense ordinal of the given page id
+	 *
+	 * @param id the id of a page
+	 * @return the ordinal of the page, or a negative value if the page has no links in this graph.
+	 */
+	public int getOrdinal(int id) {
+		return Arrays.binarySearch(ids, id) ;
+	}
+
+	/**
+	 * Returns the index (within {@link #getTargets()}) of the first link of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the index of the first link of the page
+	 */
+	public int getStart(int ordinal) {
+		return offsets[ordinal] ;
+	}
+
+	/**
+	 * Returns the index (within {@link #getTargets()}) immediately after the last link of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the index immediately after the last link of the page
+	 */
+	public int getEnd(int ordinal) {
+		return offsets[ordinal+1] ;
+	}
+
+	/**
+	 * Returns the packed targets of all links in this graph. This is the backing array, and must not be modified.
+	 *
+	 * @return the packed targets of all links in this graph.
+	 */
+	public int[] getTargets() {
+		return targets ;
+	}
+
+	/**
+	 * Returns the number of links made by the given page
+	 *
+	 * @param id the id of a page
+	 * @return the number of links made by the given page
+	 */
+	public int getLinkCount(int id) {
+
+		int ordinal = getOrdinal(id) ;
+
+		if (ordinal < 0)
+			return 0 ;
+
+		return offsets[ordinal+1] - offsets[ordinal] ;
+	}
+
+	/**
+	 * Returns a read-only view of the links made by the given page, which shares the backing array of this graph.
+	 *
+	 * @param id the id of a page
+	 * @return the links made by the given page, or null if there are none.
+	 */
+	public IntBuffer getLinks(int id) {
+
+		int ordinal = getOrdinal(id) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return IntBuffer.wrap(targets, offsets[ordinal], offsets[ordinal+1] - offsets[ordinal]).slice().asReadOnlyBuffer() ;
+	}
+
+	/**
+	 * Returns a copy of the links made by the given page
+	 *
+	 * @param id the id of a page
+	 * @return a copy of the links made by the given page, or an empty array if there are none.
+	 */
+	public int[] copyLinks(int id) {
+
+		int ordinal = getOrdinal(id) ;
+
+		if (ordinal < 0)
+			return new int[0] ;
+
+		return Arrays.copyOfRange(targets, offsets[ordinal], offsets[ordinal+1]) ;
+	}
+
+
+	/**
+	 * Accumulates the links of pages, and assembles them into a {@link LinkGraph}
+	 */
+	public static class Builder {
+
+		private TIntArrayList ids = new TIntArrayList() ;
+		private TIntArrayList starts = new TIntArrayList() ;
+		private TIntArrayList targets = new TIntArrayList() ;
+
+		private boolean sorted = true ;
+
+		/**
+		 * Adds the links made by a single page. Pages are ideally added in ascending order of id, otherwise they
+		 * will need to be sorted when {@link #build()} is called.
+		 *
+		 * @param id the id of the page
+		 * @param links the ids of the pages that it links to
+		 */
+		public void add(int id, Iterable<Integer> links) {
+
+			if (!ids.isEmpty() && ids.get(ids.size()-1) >= id)
+				sorted = false ;
+
+			ids.add(id) ;
+			starts.add(targets.size()) ;
+
+			for (Integer link:links)
+				targets.add(link) ;
+		}
+
+		/**
+		 * Assembles all of the links that have been added into a graph
+		 *
+		 * @return a graph of all the links that have been added
+		 */
+		public LinkGraph build() {
+
+			int pageCount = ids.size() ;
+
+			int[] idArray = new int[pageCount] ;
+			int[] offsetArray = new int[pageCount+1] ;
+			int[] targetArray ;
+
+			if (sorted) {
+
+				ids.toArray(idArray) ;
+				starts.toArray(offsetArray) ;
+				offsetArray[pageCount] = targets.size() ;
+				targetArray = targets.toArray() ;
+			} else {
+
+				//sort pages by id (packed above their original index), and copy links across in that order
+				long[] order = new long[pageCount] ;
+				for (int i=0 ; i<pageCount ; i++)
+					order[i] = ((long)ids.get(i) << 32) | i ;
+
+				Arrays.sort(order) ;
+
+				targetArray = new int[targets.size()] ;
+
+				int offset = 0 ;
+				for (int o=0 ; o<pageCount ; o++) {
+					int i = (int)(order[o] & 0xFFFFFFFFL) ;
+
+					int start = starts.get(i) ;
+					int end = (i+1 < pageCount) ? starts.get(i+1) : targets.size() ;
+
+					idArray[o] = ids.get(i) ;
+					offsetArray[o] = offset ;
+
+					targets.toArray(targetArray, start, offset, end-start) ;
+					offset += (end-start) ;
+				}
+				offsetArray[pageCount] = offset ;
+			}
+
+			ids = null ;
+			starts = null ;
+			targets = null ;
+
+			return new LinkGraph(idArray, offsetArray, targetArray) ;
+		}
+	}
+}
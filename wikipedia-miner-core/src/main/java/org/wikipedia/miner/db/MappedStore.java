@@ -0,0 +1,366 @@
+package org.wikipedia.miner.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An immutable, memory-mapped snapshot of a {@link WDatabase}.
+ * <p>
+ * The snapshot is a single file containing a header, a fixed-width offset table (sorted by key),
+ * a region of packed keys and a region of packed values. Keys and values are stored exactly as they are
+ * serialised by the bindings of the database they were copied from, so lookups can be resolved by a binary
+ * search directly over the mapped file, without loading anything onto the heap.
+ * <p>
+ * Because the file is mapped read-only, its pages live in the operating system's page cache and are shared between
+ * all JVMs that open the same snapshot.
+ */
+public class MappedStore {
+
+	/**
+	 * The version of the snapshot format written and understood by this class
+	 */
+	public static final int VERSION = 1 ;
+
+	private static final long MAGIC = 0x574D4D4150504544L ; //"WMMAPPED"
+
+	private static final int HEADER_SIZE = 48 ;
+	private static final int INDEX_ENTRY_SIZE = 24 ;
+	private static final int MAX_REGION_SIZE = 1 << 30 ;
+
+	private RandomAccessFile file ;
+
+	//regions are never released explicitly, so reads that are under way when the store is closed can still complete safely
+	private final MappedByteBuffer[] regions ;
+	private volatile boolean closed = false ;
+
+	private long entryCount ;
+	private long indexStart ;
+	private long keysStart ;
+	private long valuesStart ;
+
+	/**
+	 * Opens and maps an existing snapshot file.
+	 *
+	 * @param snapshotFile a file previously created with a {@link MappedStore.Writer}
+	 * @throws IOException if the file cannot be read, or is not a valid snapshot
+	 */
+	public MappedStore(File snapshotFile) throws IOException {
+
+		file = new RandomAccessFile(snapshotFile, "r") ;
+		FileChannel channel = file.getChannel() ;
+
+		long length = channel.size() ;
+
+		if (length < HEADER_SIZE) {
+			file.close() ;
+			throw new IOException(snapshotFile + " is not a valid snapshot") ;
+		}
+
+		int regionCount = (int)((length + MAX_REGION_SIZE - 1) / MAX_REGION_SIZE) ;
+		regions = new MappedByteBuffer[regionCount] ;
+
+		for (int r=0 ; r<regionCount ; r++) {
+			long start = (long)r * MAX_REGION_SIZE ;
+			long size = Math.min(MAX_REGION_SIZE, length - start) ;
+			regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, size) ;
+		}
+
+		if (getLong(0) != MAGIC || getInt(8) != VERSION) {
+			close() ;
+			throw new IOException(snapshotFile + " is not a valid snapshot, or was written by an incompatible version") ;
+		}
+
+		entryCount = getLong(12) ;
+		indexStart = getLong(20) ;
+		keysStart = getLong(28) ;
+		valuesStart = getLong(36) ;
+	}
+
+	/**
+	 * Returns the number of entries in this snapshot
+	 *
+	 * @return the number of entries in this snapshot
+	 */
+	public long size() {
+		return entryCount ;
+	}
+
+	/**
+	 * Retrieves the serialised value associated with the given serialised key.
+	 *
+	 * @param key the serialised key to search for
+	 * @return the serialised value associated with the key, or null if there is none
+	 * @throws IllegalStateException if this snapshot has been closed
+	 */
+	public byte[] get(byte[] key) {
+
+		if (closed)
+			throw new IllegalStateException("This snapshot has been closed") ;
+
+		long lo = 0 ;
+		long hi = entryCount - 1 ;
+
+		while (lo <= hi) {
+			long mid = (lo + hi) >>> 1 ;
+			long entry = indexStart + (mid * INDEX_ENTRY_SIZE) ;
+
+			int cmp = compareKey(keysStart + getLong(entry), getInt(entry + 8), key) ;
+
+			if (cmp < 0) {
+				lo = mid + 1 ;
+			} else if (cmp > 0) {
+				hi = mid - 1 ;
+			} else {
+				byte[] value = new byte[getInt(entry + 20)] ;
+				getBytes(valuesStart + getLong(entry + 12), value) ;
+				return value ;
+			}
+		}
+
+		return null ;
+	}
+
+	/**
+	 * Releases the file underlying this snapshot, after which {@link #get(byte[])} can no longer be called. 
+	 * The mapped regions will be released once this store is garbage collected.
+	 */
+	public void close() {
+
+		closed = true ;
+
+		try {
+			file.close() ;
+		} catch (IOException e) {} ;
+	}
+
+	private int compareKey(long pos, int length, byte[] key) {
+
+		int len = Math.min(length, key.length) ;
+
+		for (int i=0 ; i<len ; i++) {
+			int a = getByte(pos + i) & 0xff ;
+			int b = key[i] & 0xff ;
+
+			if (a != b)
+				return a - b ;
+		}
+
+		return length - key.length ;
+	}
+
+	private byte getByte(long pos) {
+		return regions[(int)(pos / MAX_REGION_SIZE)].get((int)(pos % MAX_REGION_SIZE)) ;
+	}
+
+	private int getInt(long pos) {
+
+		int region = (int)(pos / MAX_REGION_SIZE) ;
+		int offset = (int)(pos % MAX_REGION_SIZE) ;
+
+		if (offset + 4 <= regions[region].limit())
+			return regions[region].getInt(offset) ;
+
+		int val = 0 ;
+		for (int i=0 ; i<4 ; i++)
+			val = (val << 8) | (getByte(pos + i) & 0xff) ;
+
+		return val ;
+	}
+
+	private long getLong(long pos) {
+
+		int region = (int)(pos / MAX_REGION_SIZE) ;
+		int offset = (int)(pos % MAX_REGION_SIZE) ;
+
+		if (offset + 8 <= regions[region].limit())
+			return regions[region].getLong(offset) ;
+
+		long val = 0 ;
+		for (int i=0 ; i<8 ; i++)
+			val = (val << 8) | (getByte(pos + i) & 0xff) ;
+
+		return val ;
+	}
+
+	private void getBytes(long pos, byte[] dest) {
+
+		int copied = 0 ;
+
+		while (copied < dest.length) {
+			int region = (int)((pos + copied) / MAX_REGION_SIZE) ;
+			int offset = (int)((pos + copied) % MAX_REGION_SIZE) ;
+
+			//duplicate, so concurrent readers don't interfere with each other's positions
+			ByteBuffer buffer = regions[region].duplicate() ;
+			buffer.position(offset) ;
+
+			int len = Math.min(dest.length - copied, buffer.remaining()) ;
+			buffer.get(dest, copied, len) ;
+			copied += len ;
+		}
+	}
+
+
+	/**
+	 * Writes a snapshot file from serialised key,value pairs, which must be added in strictly ascending
+	 * (unsigned, lexicographical) key order. This is the order in which they are naturally returned by a
+	 * {@link com.sleepycat.je.Cursor}.
+	 */
+	public static class Writer {
+
+		private File snapshotFile ;
+
+		private File indexFile ;
+		private File keysFile ;
+		private File valuesFile ;
+
+		private DataOutputStream index ;
+		private DataOutputStream keys ;
+		private DataOutputStream values ;
+
+		private long entryCount = 0 ;
+		private long keyBytes = 0 ;
+		private long valueBytes = 0 ;
+		private byte[] lastKey = null ;
+
+		/**
+		 * Starts writing a new snapshot. Nothing will be written to the given file until {@link #finish()} is called.
+		 *
+		 * @param snapshotFile the file to write the snapshot to
+		 * @throws IOException if temporary files cannot be created alongside the snapshot file
+		 */
+		public Writer(File snapshotFile) throws IOException {
+
+			this.snapshotFile = snapshotFile ;
+
+			indexFile = new File(snapshotFile.getPath() + ".index.tmp") ;
+			keysFile = new File(snapshotFile.getPath() + ".keys.tmp") ;
+			valuesFile = new File(snapshotFile.getPath() + ".values.tmp") ;
+
+			index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16)) ;
+			keys = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysFile), 1 << 16)) ;
+			values = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(valuesFile), 1 << 16)) ;
+		}
+
+		/**
+		 * Adds a serialised entry to the snapshot
+		 *
+		 * @param key the serialised key, which must be greater than any key added previously
+		 * @param value the serialised value
+		 * @throws IOException if the entry cannot be written
+		 */
+		public void add(byte[] key, byte[] value) throws IOException {
+
+			if (lastKey != null && compare(lastKey, key) >= 0)
+				throw new IllegalArgumentException("keys must be added in strictly ascending order") ;
+
+			index.writeLong(keyBytes) ;
+			index.writeInt(key.length) ;
+			index.writeLong(valueBytes) ;
+			index.writeInt(value.length) ;
+
+			keys.write(key) ;
+			values.write(value) ;
+
+			keyBytes += key.length ;
+			valueBytes += value.length ;
+			entryCount++ ;
+
+			lastKey = key ;
+		}
+
+		/**
+		 * Assembles the snapshot file and removes all temporary files.
+		 *
+		 * @throws IOException if the snapshot cannot be written
+		 */
+		public void finish() throws IOException {
+
+			index.close() ;
+			keys.close() ;
+			values.close() ;
+
+			File tmpSnapshotFile = new File(snapshotFile.getPath() + ".tmp") ;
+
+			FileOutputStream out = new FileOutputStream(tmpSnapshotFile) ;
+			DataOutputStream header = new DataOutputStream(new BufferedOutputStream(out)) ;
+
+			long indexStart = HEADER_SIZE ;
+			long keysStart = indexStart + (entryCount * INDEX_ENTRY_SIZE) ;
+			long valuesStart = keysStart + keyBytes ;
+
+			header.writeLong(MAGIC) ;
+			header.writeInt(VERSION) ;
+			header.writeLong(entryCount) ;
+			header.writeLong(indexStart) ;
+			header.writeLong(keysStart) ;
+			header.writeLong(valuesStart) ;
+			header.writeInt(0) ; //padding
+			header.flush() ;
+
+			FileChannel channel = out.getChannel() ;
+			append(indexFile, channel) ;
+			append(keysFile, channel) ;
+			append(valuesFile, channel) ;
+
+			header.close() ;
+
+			if (snapshotFile.exists())
+				snapshotFile.delete() ;
+
+			if (!tmpSnapshotFile.renameTo(snapshotFile))
+				throw new IOException("Could not create " + snapshotFile) ;
+		}
+
+		/**
+		 * Abandons the snapshot, and removes all temporary files (including a partly assembled snapshot, if {@link #finish()} failed).
+		 */
+		public void abort() {
+
+			try {
+				index.close() ;
+				keys.close() ;
+				values.close() ;
+			} catch (IOException e) {} ;
+
+			indexFile.delete() ;
+			keysFile.delete() ;
+			valuesFile.delete() ;
+			new File(snapshotFile.getPath() + ".tmp").delete() ;
+		}
+
+		private void append(File tmpFile, FileChannel dest) throws IOException {
+
+			FileInputStream in = new FileInputStream(tmpFile) ;
+			FileChannel src = in.getChannel() ;
+
+			long pos = 0 ;
+			long size = src.size() ;
+			while (pos < size)
+				pos += src.transferTo(pos, size - pos, dest) ;
+
+			in.close() ;
+			tmpFile.delete() ;
+		}
+
+		private static int compare(byte[] a, byte[] b) {
+
+			int len = Math.min(a.length, b.length) ;
+
+			for (int i=0 ; i<len ; i++) {
+				int cmp = (a[i] & 0xff) - (b[i] & 0xff) ;
+				if (cmp != 0)
+					return cmp ;
+			}
+			return a.length - b.length ;
+		}
+	}
+}
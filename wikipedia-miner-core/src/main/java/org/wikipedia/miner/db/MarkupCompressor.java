@@ -0,0 +1,433 @@
+package org.wikipedia.miner.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the markup of individual pages with deflate, primed with a dictionary of markup fragments
+ * (template openings, infobox parameters, tags, common lines such as section headings) that are shared by many pages.
+ * <p>
+ * Because each page is compressed separately, a page can be decompressed without touching any other, and
+ * decompression can stop as soon as the opening of the page has been recovered.
+ * <p>
+ * Compressed records start with a marker byte of 0xFF, which never occurs at the start of a string serialised by
+ * {@link com.sleepycat.bind.tuple.StringBinding} (or any UTF-8 text), so compressed and uncompressed records can be told apart.
+ */
+class MarkupCompressor {
+
+	/**
+	 * The first byte of every compressed record
+	 */
+	static final byte MARKER = (byte)0xFF ;
+
+	private static final byte FLAG_DICTIONARY = 1 ;
+	private static final int HEADER_SIZE = 6 ;
+
+	//deflate can only refer back this far, so there is no point in a larger dictionary
+	private static final int MAX_DICTIONARY_SIZE = 32 * 1024 ;
+
+	private static final int MAX_FRAGMENT_LENGTH = 64 ;
+
+	private byte[] dictionary ;
+
+	/**
+	 * @param dictionary the dictionary to prime compression with (may be empty)
+	 */
+	MarkupCompressor(byte[] dictionary) {
+		this.dictionary = dictionary ;
+	}
+
+	byte[] getDictionary() {
+		return dictionary ;
+	}
+
+	/**
+	 * @return true if the given record was produced by {@link #compress(String)}, otherwise false
+	 */
+	static boolean isCompressed(byte[] data) {
+		return data.length >= HEADER_SIZE && data[0] == MARKER ;
+	}
+
+	/**
+	 * Compresses the given markup
+	 */
+	byte[] compress(String markup) {
+
+		byte[] utf8 = getUtf8(markup) ;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + (utf8.length / 3)) ;
+
+		out.write(MARKER) ;
+		out.write(dictionary.length > 0 ? FLAG_DICTIONARY : 0) ;
+		out.write(utf8.length >>> 24) ;
+		out.write(utf8.length >>> 16) ;
+		out.write(utf8.length >>> 8) ;
+		out.write(utf8.length) ;
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true) ;
+		try {
+			if (dictionary.length > 0)
+				deflater.setDictionary(dictionary) ;
+
+			deflater.setInput(utf8) ;
+			deflater.finish() ;
+
+			byte[] buffer = new byte[4096] ;
+			while (!deflater.finished()) {
+				int len = deflater.deflate(buffer) ;
+				out.write(buffer, 0, len) ;
+			}
+		} finally {
+			deflater.end() ;
+		}
+
+		return out.toByteArray() ;
+	}
+
+	/**
+	 * Decompresses the given record
+	 *
+	 * @param data a record produced by {@link #compress(String)}
+	 * @param maxChars the maximum number of characters to decompress
+	 * @return the markup, or the first maxChars characters of it
+	 */
+	String decompress(byte[] data, int maxChars) {
+
+		Decompression decompression = startDecompression(data) ;
+		try {
+			StringBuilder markup = new StringBuilder(Math.min(maxChars, decompression.getLength())) ;
+			decompression.readTo(markup, maxChars) ;
+
+			//any chunk that was decoded past maxChars lies beyond it
+			if (markup.length() > maxChars)
+				markup.setLength(maxChars) ;
+
+			return markup.toString() ;
+		} finally {
+			decompression.end() ;
+		}
+	}
+
+	/**
+	 * Starts decompressing the given record, so that it can be read a little at a time
+	 *
+	 * @param data a record produced by {@link #compress(String)}
+	 * @return a decompression, which must be {@link Decompression#end() ended} once it is no longer needed
+	 */
+	Decompression startDecompression(byte[] data) {
+		return new Decompression(data) ;
+	}
+
+	/**
+	 * Decompresses a single record incrementally: each call to {@link #readTo(StringBuilder, int)} carries on from where
+	 * the last one stopped, so reading successively longer openings of a page only inflates each byte once.
+	 */
+	class Decompression {
+
+		private static final int CHUNK_SIZE = 8192 ;
+
+		private final int utf8Length ;
+		private Inflater inflater ;
+
+		private byte[] chunk ;
+		//the bytes at the start of the chunk that are part of a character that has not been fully inflated yet
+		private int pending = 0 ;
+		private int bytesRead = 0 ;
+
+		private Decompression(byte[] data) {
+
+			utf8Length = ((data[2] & 0xFF) << 24) | ((data[3] & 0xFF) << 16) | ((data[4] & 0xFF) << 8) | (data[5] & 0xFF) ;
+
+			//raw deflate streams need a dummy trailing byte to be inflated reliably
+			byte[] input = new byte[data.length - HEADER_SIZE + 1] ;
+			System.arraycopy(data, HEADER_SIZE, input, 0, data.length - HEADER_SIZE) ;
+
+			chunk = new byte[Math.min(CHUNK_SIZE, utf8Length + 3)] ;
+
+			inflater = new Inflater(true) ;
+			if ((data[1] & FLAG_DICTIONARY) != 0)
+				inflater.setDictionary(dictionary) ;
+
+			inflater.setInput(input) ;
+		}
+
+		/**
+		 * @return the length of the uncompressed markup, in UTF-8 bytes
+		 */
+		int getLength() {
+			return utf8Length ;
+		}
+
+		/**
+		 * @return true if all of the markup has been read
+		 */
+		boolean isFinished() {
+			return bytesRead >= utf8Length && pending == 0 ;
+		}
+
+		/**
+		 * Appends decompressed markup to the given builder until it holds at least minChars characters, or all of the
+		 * markup has been read. Markup is decoded in chunks, so the builder may end up holding more than minChars characters.
+		 */
+		void readTo(StringBuilder markup, int minChars) {
+
+			while (markup.length() < minChars && !isFinished()) {
+
+				//every character takes at least one byte, so there is no point in inflating less than this
+				long wanted = Math.max(minChars - markup.length(), CHUNK_SIZE) ;
+				int len = (int)Math.min(wanted, Math.min(chunk.length - pending, utf8Length - bytesRead)) ;
+
+				int inflated = 0 ;
+				try {
+					while (inflated < len) {
+						int n = inflater.inflate(chunk, pending + inflated, len - inflated) ;
+
+						if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+							throw new IllegalStateException("Compressed markup is truncated or was compressed with a different dictionary") ;
+
+						inflated += n ;
+					}
+				} catch (DataFormatException e) {
+					throw new IllegalStateException("Compressed markup is corrupt", e) ;
+				}
+
+				bytesRead += inflated ;
+
+				int available = pending + inflated ;
+				int complete = bytesRead >= utf8Length ? available : getCompleteLength(chunk, available) ;
+
+				markup.append(getString(chunk, complete)) ;
+
+				pending = available - complete ;
+				System.arraycopy(chunk, complete, chunk, 0, pending) ;
+			}
+
+			if (isFinished())
+				end() ;
+		}
+
+		/**
+		 * Releases the inflater. Safe to call more than once.
+		 */
+		void end() {
+			if (inflater != null) {
+				inflater.end() ;
+				inflater = null ;
+				chunk = null ;
+			}
+		}
+	}
+
+	/**
+	 * Returns the length of the longest prefix of the given bytes that does not end part way through a UTF-8 character
+	 */
+	private static int getCompleteLength(byte[] utf8, int length) {
+
+		//a character is at most 4 bytes, so its lead byte is within the last 4
+		for (int i=length-1 ; i>=0 && i>=length-4 ; i--) {
+
+			int b = utf8[i] & 0xFF ;
+
+			//continuation byte
+			if ((b & 0xC0) == 0x80)
+				continue ;
+
+			int charLength ;
+			if (b < 0x80)
+				charLength = 1 ;
+			else if ((b & 0xE0) == 0xC0)
+				charLength = 2 ;
+			else if ((b & 0xF0) == 0xE0)
+				charLength = 3 ;
+			else
+				charLength = 4 ;
+
+			return i + charLength <= length ? length : i ;
+		}
+
+		//malformed, so let the decoder deal with it
+		return length ;
+	}
+
+	private static String getString(byte[] utf8, int length) {
+		try {
+			return new String(utf8, 0, length, "UTF-8") ;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e) ;
+		}
+	}
+
+	/**
+	 * Builds a dictionary from fragments of markup that occur within many of the given sample pages.
+	 * <p>
+	 * Candidate fragments are short lines, the openings of templates, links and tags, and the names of template parameters.
+	 * Each is scored by the number of sample pages it occurs in multiplied by its length, and the best are packed into
+	 * the dictionary with the most valuable placed last, where deflate can refer to them most cheaply.
+	 *
+	 * @param samples the markup of a sample of pages
+	 * @return a dictionary of at most 32KB
+	 */
+	static byte[] train(Collection<String> samples) {
+
+		HashMap<String,Integer> docFrequencies = new HashMap<String,Integer>() ;
+
+		for (String markup:samples) {
+			for (String fragment:getFragments(markup)) {
+				Integer freq = docFrequencies.get(fragment) ;
+				docFrequencies.put(fragment, freq == null ? 1 : freq + 1) ;
+			}
+		}
+
+		int minFrequency = Math.max(2, samples.size() / 100) ;
+
+		ArrayList<Map.Entry<String,Integer>> candidates = new ArrayList<Map.Entry<String,Integer>>() ;
+		for (Map.Entry<String,Integer> e:docFrequencies.entrySet()) {
+			if (e.getValue() >= minFrequency)
+				candidates.add(e) ;
+		}
+
+		Collections.sort(candidates, new Comparator<Map.Entry<String,Integer>>() {
+			public int compare(Map.Entry<String,Integer> a, Map.Entry<String,Integer> b) {
+				long scoreA = (long)a.getValue() * a.getKey().length() ;
+				long scoreB = (long)b.getValue() * b.getKey().length() ;
+
+				if (scoreA != scoreB)
+					return scoreA > scoreB ? -1 : 1 ;
+
+				return a.getKey().compareTo(b.getKey()) ;
+			}
+		}) ;
+
+		ArrayList<byte[]> chosen = new ArrayList<byte[]>() ;
+		int size = 0 ;
+
+		for (Map.Entry<String,Integer> e:candidates) {
+			byte[] fragment = getUtf8(e.getKey()) ;
+
+			if (size + fragment.length > MAX_DICTIONARY_SIZE)
+				continue ;
+
+			chosen.add(fragment) ;
+			size += fragment.length ;
+		}
+
+		byte[] dictionary = new byte[size] ;
+		int offset = size ;
+		for (byte[] fragment:chosen) {
+			offset -= fragment.length ;
+			System.arraycopy(fragment, 0, dictionary, offset, fragment.length) ;
+		}
+
+		return dictionary ;
+	}
+
+	private static HashSet<String> getFragments(String markup) {
+
+		HashSet<String> fragments = new HashSet<String>() ;
+
+		int lineStart = 0 ;
+		while (lineStart < markup.length()) {
+
+			int lineEnd = markup.indexOf('\n', lineStart) ;
+			if (lineEnd < 0)
+				lineEnd = markup.length() ;
+			else
+				lineEnd++ ;
+
+			if (lineEnd - lineStart <= MAX_FRAGMENT_LENGTH) {
+				fragments.add(markup.substring(lineStart, lineEnd)) ;
+			} else {
+				//template parameters, e.g. "| birth_date = "
+				int eq = markup.indexOf('=', lineStart) ;
+				if (eq > lineStart && eq < lineStart + MAX_FRAGMENT_LENGTH && markup.charAt(lineStart) == '|')
+					fragments.add(markup.substring(lineStart, eq + 1)) ;
+			}
+
+			lineStart = lineEnd ;
+		}
+
+		addFragments(markup, "{{", "|}\n", fragments) ;
+		addFragments(markup, "[[", ":|]", fragments) ;
+		addFragments(markup, "<", ">", fragments) ;
+
+		return fragments ;
+	}
+
+	/**
+	 * Adds every fragment that starts with the given opening, and ends with (and includes) the first of the given terminators
+	 */
+	private static void addFragments(String markup, String opening, String terminators, HashSet<String> fragments) {
+
+		int start = markup.indexOf(opening) ;
+		while (start >= 0) {
+
+			int limit = Math.min(markup.length(), start + MAX_FRAGMENT_LENGTH) ;
+
+			for (int i=start+opening.length() ; i<limit ; i++) {
+				if (terminators.indexOf(markup.charAt(i)) >= 0) {
+					fragments.add(markup.substring(start, i+1)) ;
+					break ;
+				}
+			}
+
+			start = markup.indexOf(opening, start + opening.length()) ;
+		}
+	}
+
+	/**
+	 * Reads a dictionary that was written with {@link #saveDictionary(File, byte[])}
+	 */
+	static byte[] loadDictionary(File file) throws IOException {
+
+		byte[] dictionary = new byte[(int)file.length()] ;
+
+		InputStream in = new FileInputStream(file) ;
+		try {
+			int offset = 0 ;
+			while (offset < dictionary.length) {
+				int len = in.read(dictionary, offset, dictionary.length - offset) ;
+				if (len < 0)
+					throw new IOException("Unexpected end of " + file) ;
+				offset += len ;
+			}
+		} finally {
+			in.close() ;
+		}
+
+		return dictionary ;
+	}
+
+	static void saveDictionary(File file, byte[] dictionary) throws IOException {
+
+		OutputStream out = new FileOutputStream(file) ;
+		try {
+			out.write(dictionary) ;
+		} finally {
+			out.close() ;
+		}
+	}
+
+	private static byte[] getUtf8(String text) {
+		try {
+			return text.getBytes("UTF-8") ;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e) ;
+		}
+	}
+}
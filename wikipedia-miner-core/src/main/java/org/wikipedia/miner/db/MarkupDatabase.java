@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -16,6 +17,7 @@ import org.apache.hadoop.record.CsvRecordInput;
 import org.wikipedia.miner.util.ProgressTracker;
 import org.wikipedia.miner.util.WikipediaConfiguration;
 
+import com.sleepycat.bind.EntryBinding;
 import com.sleepycat.bind.tuple.IntegerBinding;
 import com.sleepycat.bind.tuple.StringBinding;
 import com.sleepycat.je.Database;
@@ -26,11 +28,26 @@ import org.apache.tools.bzip2.* ;
 /**
  * A {@link WDatabase} for associating page ids with page markup. 
  * 
- * This will throw {@link UnsupportedOperationException}s if any attempt is made to cache this database to memory.
+ * Markup is compressed page by page (see {@link MarkupCompressor}), using a dictionary that is trained on a sample of pages 
+ * when the database is built and stored alongside it, so the opening of a page can be recovered without decompressing all of it 
+ * (see {@link #retrieveOpening(Integer, int)}). Databases built before markup was compressed can still be read.
+ * 
+ * This will throw {@link UnsupportedOperationException}s if any attempt is made to cache this database to memory, 
+ * unless it is cached with {@link WDatabase.CachePriority#mapped} priority.
  */
 public class MarkupDatabase extends WDatabase<Integer, String> {
 
 	private enum DumpTag {page, id, text, ignorable} ;
+	
+	/**
+	 * The name of the file (within the database directory) that holds the dictionary used to compress markup
+	 */
+	public static final String DICTIONARY_FILE_NAME = "markup.dictionary" ;
+	
+	//the number of pages gathered to train the dictionary
+	private static final int DICTIONARY_SAMPLE_SIZE = 2000 ;
+	
+	private volatile MarkupCompressor compressor ;
 
 	/**
 	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#markup}.
@@ -40,6 +57,116 @@ public class MarkupDatabase extends WDatabase<Integer, String> {
 	public MarkupDatabase(WEnvironment env) {
 
 		super (env, DatabaseType.markup, new IntegerBinding(), new StringBinding()) ;
+		
+		this.valueBinding = new MarkupBinding() ;
+	}
+	
+	/**
+	 * Retrieves the opening of a page's markup: at least the given number of characters, cut at a paragraph break 
+	 * that is not within any template, table, link, comment or reference (see {@link MarkupOpening}). 
+	 * <p>
+	 * Only as much of the page is decompressed as is needed. If successively longer openings of the same page might be 
+	 * needed, use {@link #retrieveOpenings(Integer)} instead.
+	 * 
+	 * @param id the id of a page
+	 * @param minLength the minimum number of characters needed
+	 * @return the opening of the page's markup (which may be all of it), or null if there is no markup for this page.
+	 */
+	public String retrieveOpening(Integer id, int minLength) {
+		
+		MarkupOpening opening = retrieveOpenings(id) ;
+		
+		if (opening == null)
+			return null ;
+		
+		try {
+			return opening.getOpening(minLength) ;
+		} finally {
+			opening.close() ;
+		}
+	}
+	
+	/**
+	 * Retrieves a page's markup in a form from which successively longer openings can be read, without decompressing 
+	 * any part of the page more than once.
+	 * 
+	 * @param id the id of a page
+	 * @return the openings of the page's markup, which must be {@link MarkupOpening#close() closed} once they are no longer needed, 
+	 * or null if there is no markup for this page.
+	 */
+	public MarkupOpening retrieveOpenings(Integer id) {
+		
+		byte[] data = retrieveRaw(id) ;
+		
+		if (data == null)
+			return null ;
+		
+		if (MarkupCompressor.isCompressed(data))
+			return new MarkupOpening(getCompressor().startDecompression(data)) ;
+		
+		return new MarkupOpening(StringBinding.entryToString(new DatabaseEntry(data))) ;
+	}
+	
+	/**
+	 * Decodes (up to) the first maxChars characters of a serialised value, which may or may not be compressed
+	 */
+	private String decode(byte[] data, int maxChars) {
+		
+		if (MarkupCompressor.isCompressed(data))
+			return getCompressor().decompress(data, maxChars) ;
+		
+		String markup = StringBinding.entryToString(new DatabaseEntry(data)) ;
+		
+		if (markup.length() > maxChars)
+			markup = markup.substring(0, maxChars) ;
+		
+		return markup ;
+	}
+	
+	private MarkupCompressor getCompressor() {
+		
+		if (compressor == null) {
+			synchronized (this) {
+				if (compressor == null) {
+					File dictionaryFile = getDictionaryFile() ;
+					
+					try {
+						compressor = new MarkupCompressor(MarkupCompressor.loadDictionary(dictionaryFile)) ;
+					} catch (IOException e) {
+						throw new IllegalStateException("Could not read markup dictionary " + dictionaryFile, e) ;
+					}
+				}
+			}
+		}
+		return compressor ;
+	}
+	
+	private File getDictionaryFile() {
+		return new File(env.getConfiguration().getDatabaseDirectory(), DICTIONARY_FILE_NAME) ;
+	}
+	
+	/**
+	 * Serialises markup (compressed if a dictionary has been trained), and deserialises both compressed and uncompressed markup
+	 */
+	private class MarkupBinding implements EntryBinding<String> {
+		
+		public String entryToObject(DatabaseEntry entry) {
+			
+			if (entry.getSize() > 0 && entry.getData()[entry.getOffset()] == MarkupCompressor.MARKER)
+				return decode(getBytes(entry), Integer.MAX_VALUE) ;
+			
+			return StringBinding.entryToString(entry) ;
+		}
+
+		public void objectToEntry(String markup, DatabaseEntry entry) {
+			
+			MarkupCompressor c = compressor ;
+			
+			if (c == null)
+				StringBinding.stringToEntry(markup, entry) ;
+			else
+				entry.setData(c.compress(markup)) ;
+		}
 	}
 
 	@Override
@@ -79,6 +206,11 @@ public class MarkupDatabase extends WDatabase<Integer, String> {
 		tracker.startTask(dataFile.length(), "Loading " + getName() + " database") ;
 
 		Database db = getDatabase(false) ;
+		
+		//pages are held back until enough have been seen to train the compression dictionary
+		compressor = null ;
+		ArrayList<Integer> sampleIds = new ArrayList<Integer>() ;
+		ArrayList<String> sampleMarkup = new ArrayList<String>() ;
 
 		Integer currId = null ;
 		String currMarkup = null ;
@@ -125,17 +257,20 @@ public class MarkupDatabase extends WDatabase<Integer, String> {
 					break ;
 				case page:
 
-					DatabaseEntry key = new DatabaseEntry() ;
-					keyBinding.objectToEntry(currId, key) ;
-
-					DatabaseEntry value = new DatabaseEntry() ;
-					valueBinding.objectToEntry(currMarkup, value) ;
-
 					pageTotal++ ;
 					charTotal = charTotal + currMarkup.length();
 
 					maxChar = Math.max(maxChar, currMarkup.length()) ;
-					db.put(null, key, value) ;
+					
+					if (compressor == null) {
+						sampleIds.add(currId) ;
+						sampleMarkup.add(currMarkup) ;
+						
+						if (sampleIds.size() >= DICTIONARY_SAMPLE_SIZE)
+							storeSamples(db, sampleIds, sampleMarkup) ;
+					} else {
+						storeMarkup(db, currId, currMarkup) ;
+					}
 
 					currId = null ;
 					currMarkup = null ;
@@ -151,11 +286,43 @@ public class MarkupDatabase extends WDatabase<Integer, String> {
 			}
 		}
 		xmlStreamReader.close();
+		
+		if (compressor == null)
+			storeSamples(db, sampleIds, sampleMarkup) ;
 
+		db.sync() ;
 		env.cleanAndCheckpoint() ;
 		getDatabase(true) ;
 	}
 
+	/**
+	 * Trains the compression dictionary on the given sample pages, saves it, and then stores the sample pages
+	 */
+	private void storeSamples(Database db, ArrayList<Integer> ids, ArrayList<String> markup) throws IOException {
+		
+		byte[] dictionary = MarkupCompressor.train(markup) ;
+		MarkupCompressor.saveDictionary(getDictionaryFile(), dictionary) ;
+		
+		compressor = new MarkupCompressor(dictionary) ;
+		
+		for (int i=0 ; i<ids.size() ; i++)
+			storeMarkup(db, ids.get(i), markup.get(i)) ;
+		
+		ids.clear() ;
+		markup.clear() ;
+	}
+	
+	private void storeMarkup(Database db, Integer id, String markup) {
+		
+		DatabaseEntry key = new DatabaseEntry() ;
+		keyBinding.objectToEntry(id, key) ;
+
+		DatabaseEntry value = new DatabaseEntry() ;
+		valueBinding.objectToEntry(markup, value) ;
+		
+		db.put(null, key, value) ;
+	}
+
 	private DumpTag resolveDumpTag(String tagName) {
 
 		try {
@@ -0,0 +1,240 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Reads successively longer openings of a single page's markup, obtained via {@link MarkupDatabase#retrieveOpenings(Integer)}.
+ * <p>
+ * Markup is only decompressed as far as is needed, and each call to {@link #getOpening(int)} carries on decompressing (and
+ * looking for places where the markup can be cut) from where the last one stopped, so asking for a longer opening never
+ * starts again from the beginning of the page.
+ * <p>
+ * An opening is only ever cut at a paragraph break ("\n\n") where every template, table and link that was opened before it
+ * has been closed, and which is not within a comment or any of the tags in which markup is not interpreted
+ * (such as &lt;ref&gt;, &lt;nowiki&gt; and &lt;math&gt;). Stripping markup from an opening will therefore give the same
+ * result as stripping it from the full markup and then taking the same text. This is judged by counting braces
+ * and brackets, so if the markup is unbalanced (a stray closing brace or bracket, or a comment or tag that is never
+ * closed) then no cut is trusted beyond that point, and the whole of the markup is returned instead.
+ * <p>
+ * This is not thread safe, and should be {@link #close() closed} once it is no longer needed.
+ */
+public class MarkupOpening {
+
+	//the smallest amount of markup worth decompressing
+	private static final int MIN_DECOMPRESSED_LENGTH = 4096 ;
+
+	//markup within these tags is skipped when looking for places where markup can safely be cut
+	private static final String[] OPAQUE_TAGS = {"ref", "nowiki", "pre", "math", "source", "syntaxhighlight", "gallery", "timeline"} ;
+
+	//markup this close to the end of what has been decompressed so far is not scanned, in case a comment, tag or paragraph break has been cut in half
+	private static final int LOOKAHEAD = 32 ;
+
+	private MarkupCompressor.Decompression decompression ;
+	private StringBuilder buffer ;
+	private String markup ;
+	private boolean decompressed = false ;
+
+	private int scanPos = 0 ;
+	private int braceDepth = 0 ;
+	private int bracketDepth = 0 ;
+	private boolean unbalanced = false ;
+	private TIntArrayList boundaries = new TIntArrayList() ;
+
+	private boolean whole = false ;
+
+	/**
+	 * Wraps markup that has already been fully decoded
+	 */
+	MarkupOpening(String markup) {
+		this.markup = markup ;
+		this.decompressed = true ;
+	}
+
+	/**
+	 * Wraps markup that will be decompressed as it is needed
+	 */
+	MarkupOpening(MarkupCompressor.Decompression decompression) {
+		this.decompression = decompression ;
+		this.buffer = new StringBuilder() ;
+		this.markup = "" ;
+	}
+
+	/**
+	 * Returns the opening of the markup: at least the given number of characters, cut at a paragraph break that
+	 * is not within any template, table, link, comment or opaque tag.
+	 *
+	 * @param minLength the minimum number of characters needed
+	 * @return the opening of the markup, or all of it if there is no safe place to cut it after minLength characters.
+	 */
+	public String getOpening(int minLength) {
+
+		int cut = getBoundary(minLength) ;
+
+		while (cut < 0 && !isDecompressed()) {
+			decompress(Math.max(Math.max(minLength, markup.length()) * 2, MIN_DECOMPRESSED_LENGTH)) ;
+			cut = getBoundary(minLength) ;
+		}
+
+		if (cut < 0) {
+			whole = true ;
+			return markup ;
+		}
+
+		whole = false ;
+		return markup.substring(0, cut) ;
+	}
+
+	/**
+	 * @return true if the last opening returned by {@link #getOpening(int)} was all of the markup, otherwise false.
+	 */
+	public boolean isWhole() {
+		return whole ;
+	}
+
+	/**
+	 * Releases any resources held for decompressing the markup. Safe to call more than once.
+	 */
+	public void close() {
+		if (decompression != null) {
+			decompression.end() ;
+			decompression = null ;
+			buffer = null ;
+		}
+	}
+
+	private boolean isDecompressed() {
+		return decompressed ;
+	}
+
+	private void decompress(int minChars) {
+
+		if (decompression == null)
+			throw new IllegalStateException("This opening has been closed") ;
+
+		decompression.readTo(buffer, minChars) ;
+		markup = buffer.toString() ;
+
+		if (decompression.isFinished()) {
+			decompressed = true ;
+			close() ;
+		}
+	}
+
+	/**
+	 * Returns the position of the first safe paragraph break at or after minPos, or -1 if none has been found
+	 * within the markup that has been decompressed so far.
+	 */
+	private int getBoundary(int minPos) {
+
+		//paragraph breaks that have already been scanned past
+		int index = boundaries.binarySearch(minPos) ;
+		if (index < 0)
+			index = -index - 1 ;
+
+		if (index < boundaries.size())
+			return boundaries.get(index) ;
+
+		if (unbalanced)
+			return -1 ;
+
+		int limit = isDecompressed() ? markup.length() : markup.length() - LOOKAHEAD ;
+
+		while (scanPos < limit) {
+
+			char c = markup.charAt(scanPos) ;
+
+			switch (c) {
+			case '{':
+				braceDepth++ ;
+				break ;
+			case '}':
+				braceDepth-- ;
+				break ;
+			case '[':
+				bracketDepth++ ;
+				break ;
+			case ']':
+				bracketDepth-- ;
+				break ;
+			case '<':
+				int end = getOpaqueEnd(markup, scanPos) ;
+				if (end < 0) {
+					//the comment or tag may be closed in markup that has not been decompressed yet
+					if (isDecompressed())
+						unbalanced = true ;
+					return -1 ;
+				}
+
+				scanPos = end ;
+				continue ;
+			case '\n':
+				if (braceDepth == 0 && bracketDepth == 0 && markup.startsWith("\n\n", scanPos)) {
+					boundaries.add(scanPos) ;
+
+					if (scanPos >= minPos) {
+						scanPos++ ;
+						return boundaries.get(boundaries.size() - 1) ;
+					}
+				}
+				break ;
+			}
+
+			if (braceDepth < 0 || bracketDepth < 0) {
+				unbalanced = true ;
+				return -1 ;
+			}
+
+			scanPos++ ;
+		}
+
+		return -1 ;
+	}
+
+	/**
+	 * Returns the position just after the comment or opaque tag that starts at the given position (or just after the '<' if
+	 * it is not the start of a comment or opaque tag), or -1 if the comment or tag is not closed within the given markup
+	 */
+	private static int getOpaqueEnd(String markup, int pos) {
+
+		if (markup.startsWith("<!--", pos)) {
+			int end = markup.indexOf("-->", pos + 4) ;
+			return end < 0 ? -1 : end + 3 ;
+		}
+
+		for (String tag:OPAQUE_TAGS) {
+
+			if (!markup.regionMatches(true, pos + 1, tag, 0, tag.length()))
+				continue ;
+
+			int afterName = pos + 1 + tag.length() ;
+			if (afterName < markup.length() && Character.isLetterOrDigit(markup.charAt(afterName)))
+				continue ;
+
+			int tagEnd = markup.indexOf('>', afterName) ;
+			if (tagEnd < 0)
+				return -1 ;
+
+			//self-closing, e.g. <ref name="a"/>
+			if (markup.charAt(tagEnd - 1) == '/')
+				return tagEnd + 1 ;
+
+			int close = indexOfIgnoreCase(markup, "</" + tag, tagEnd) ;
+			if (close < 0)
+				return -1 ;
+
+			int closeEnd = markup.indexOf('>', close) ;
+			return closeEnd < 0 ? -1 : closeEnd + 1 ;
+		}
+
+		return pos + 1 ;
+	}
+
+	private static int indexOfIgnoreCase(String text, String target, int from) {
+
+		for (int i=from ; i<=text.length()-target.length() ; i++) {
+			if (text.regionMatches(true, i, target, 0, target.length()))
+				return i ;
+		}
+		return -1 ;
+	}
+}
@@ -0,0 +1,147 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.IOException;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbPage;
+import org.wikipedia.miner.model.Page.PageType;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+/**
+ * A {@link WDatabase} for associating page ids with the title, type and depth of the page.
+ * <p>
+ * When cached (with either {@link WDatabase.CachePriority#speed} or {@link WDatabase.CachePriority#space} priority),
+ * all pages are packed into a single columnar {@link PageTable}, which can be accessed directly via {@link #getPageTable()}.
+ */
+public class PageDatabase extends IntObjectDatabase<DbPage> {
+
+	private PageTable.Builder tableBuilder = null ;
+	private PageTable table = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#page}
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public PageDatabase(WEnvironment env) {
+
+		super(env,
+				DatabaseType.page,
+				new RecordBinding<DbPage>() {
+			public DbPage createRecordInstance() {
+				return new DbPage() ;
+			}
+		}
+		) ;
+	}
+
+	/**
+	 * Returns the table of all cached pages, or null if this database has not been cached to a table.
+	 *
+	 * @return the table of all cached pages, or null if this database has not been cached to a table.
+	 */
+	public PageTable getPageTable() {
+		return table ;
+	}
+
+	@Override
+	public WEntry<Integer,DbPage> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		Integer id = record.readInt(null) ;
+
+		DbPage p = new DbPage() ;
+		p.deserialize(record) ;
+
+		return new WEntry<Integer,DbPage>(id, p) ;
+	}
+
+	@Override
+	public DbPage filterCacheEntry(
+			WEntry<Integer, DbPage> e,
+			WikipediaConfiguration conf
+	) {
+
+		PageType pageType = PageType.values()[e.getValue().getType()] ;
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		if (validIds == null || validIds.contains(e.getKey()) || pageType == PageType.category || pageType==PageType.redirect)
+			return e.getValue() ;
+		else
+			return null ;
+	}
+
+	@Override
+	public long getCacheSize() {
+
+		if (table != null)
+			return table.size() ;
+
+		return super.getCacheSize() ;
+	}
+
+	@Override
+	public void close() {
+		super.close() ;
+
+		table = null ;
+		tableBuilder = null ;
+	}
+
+	@Override
+	protected DbPage retrieveFromCache(int key) {
+
+		if (table == null)
+			return super.retrieveFromCache(key) ;
+
+		int ordinal = table.getOrdinal(key) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return new DbPage(table.getTitle(ordinal), table.getType(ordinal), table.getDepth(ordinal)) ;
+	}
+
+	@Override
+	protected byte[] retrieveRawFromCache(Integer key) {
+
+		if (table == null)
+			return super.retrieveRawFromCache(key) ;
+
+		return serialise(retrieveFromCache(key)) ;
+	}
+
+	@Override
+	protected void initializeCache() {
+
+		table = null ;
+
+		if (getCachePriority() == CachePriority.speed || getCachePriority() == CachePriority.space)
+			tableBuilder = new PageTable.Builder(getExpectedCacheSize()) ;
+		else
+			super.initializeCache() ;
+	}
+
+	@Override
+	protected void addToCache(WEntry<Integer,DbPage> entry) {
+
+		if (tableBuilder != null) {
+			DbPage p = entry.getValue() ;
+			tableBuilder.add(entry.getKey(), p.getTitle(), p.getType(), p.getDepth()) ;
+		} else {
+			super.addToCache(entry) ;
+		}
+	}
+
+	@Override
+	protected void finalizeCache() {
+
+		if (tableBuilder != null) {
+			table = tableBuilder.build() ;
+			tableBuilder = null ;
+		}
+
+		super.finalizeCache() ;
+	}
+}
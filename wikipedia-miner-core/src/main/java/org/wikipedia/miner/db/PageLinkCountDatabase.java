@@ -3,12 +3,8 @@ package org.wikipedia.miner.db;
 
 import gnu.trove.set.hash.TIntHashSet;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -22,8 +18,18 @@ import org.wikipedia.miner.util.WikipediaConfiguration;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseEntry;
 
+/**
+ * A {@link WDatabase} for associating page ids with the number of links made to and from the page.
+ * <p>
+ * When cached (with either {@link WDatabase.CachePriority#speed} or {@link WDatabase.CachePriority#space} priority),
+ * all counts are packed into a single columnar {@link LinkCountTable}, which can be accessed directly via {@link #getLinkCountTable()},
+ * or via the int accessors such as {@link #getTotalLinksIn(int)}.
+ */
 public class PageLinkCountDatabase extends IntObjectDatabase<DbPageLinkCounts>{
 
+	private LinkCountTable.Builder tableBuilder = null ;
+	private LinkCountTable table = null ;
+
 	public PageLinkCountDatabase(WEnvironment env) {
 		super(env, 
 				DatabaseType.pageLinkCounts, 
@@ -36,6 +42,75 @@ public class PageLinkCountDatabase extends IntObjectDatabase<DbPageLinkCounts>{
 		);
 	}
 
+	/**
+	 * Returns the table of all cached link counts, or null if this database has not been cached to a table.
+	 *
+	 * @return the table of all cached link counts, or null if this database has not been cached to a table.
+	 */
+	public LinkCountTable getLinkCountTable() {
+		return table ;
+	}
+
+	/**
+	 * @param id the id of a page
+	 * @return the total number of links that are made to the page, or 0 if there are none.
+	 */
+	public int getTotalLinksIn(int id) {
+
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+			return ordinal < 0 ? 0 : table.getTotalLinksIn(ordinal) ;
+		}
+
+		DbPageLinkCounts lc = retrieve(id) ;
+		return lc == null ? 0 : lc.getTotalLinksIn() ;
+	}
+
+	/**
+	 * @param id the id of a page
+	 * @return the number of distinct pages that link to the page, or 0 if there are none.
+	 */
+	public int getDistinctLinksIn(int id) {
+
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+			return ordinal < 0 ? 0 : table.getDistinctLinksIn(ordinal) ;
+		}
+
+		DbPageLinkCounts lc = retrieve(id) ;
+		return lc == null ? 0 : lc.getDistinctLinksIn() ;
+	}
+
+	/**
+	 * @param id the id of a page
+	 * @return the total number of links that the page makes, or 0 if there are none.
+	 */
+	public int getTotalLinksOut(int id) {
+
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+			return ordinal < 0 ? 0 : table.getTotalLinksOut(ordinal) ;
+		}
+
+		DbPageLinkCounts lc = retrieve(id) ;
+		return lc == null ? 0 : lc.getTotalLinksOut() ;
+	}
+
+	/**
+	 * @param id the id of a page
+	 * @return the number of distinct pages that the page links to, or 0 if there are none.
+	 */
+	public int getDistinctLinksOut(int id) {
+
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+			return ordinal < 0 ? 0 : table.getDistinctLinksOut(ordinal) ;
+		}
+
+		DbPageLinkCounts lc = retrieve(id) ;
+		return lc == null ? 0 : lc.getDistinctLinksOut() ;
+	}
+
 	@Override
 	public WEntry<Integer, DbPageLinkCounts> deserialiseCsvRecord(
 			CsvRecordInput record) throws IOException {
@@ -129,22 +204,16 @@ public class PageLinkCountDatabase extends IntObjectDatabase<DbPageLinkCounts>{
 
 		Database db = getDatabase(false) ;
 
-		BufferedReader linksInInput = new BufferedReader(new InputStreamReader(new FileInputStream(linksInFile), "UTF-8")) ;
-		BufferedReader linksOutInput = new BufferedReader(new InputStreamReader(new FileInputStream(linksOutFile), "UTF-8")) ;
-
-		long bytesRead = 0 ;
+		CsvLineInput linksInInput = new CsvLineInput(linksInFile) ;
+		CsvLineInput linksOutInput = new CsvLineInput(linksOutFile) ;
 
+		WEntry<Integer, DbLinkLocationList> inLinkEntry = readPageLinkEntry(linksInInput) ;
+		WEntry<Integer, DbLinkLocationList> outLinkEntry = readPageLinkEntry(linksOutInput) ;
 
-		String inLinkLine = linksInInput.readLine() ;
-		bytesRead += (inLinkLine.length() + 1) ;
-		CsvRecordInput linksInRecord = new CsvRecordInput(new ByteArrayInputStream((inLinkLine + "\n").getBytes("UTF-8"))) ;
-		WEntry<Integer, DbLinkLocationList> inLinkEntry = deserializePageLinkCsvRecord(linksInRecord) ;
-
-		String outLinkLine = linksOutInput.readLine() ;
-		bytesRead += (outLinkLine.length() + 1) ;
-		CsvRecordInput linksOutRecord = new CsvRecordInput(new ByteArrayInputStream((outLinkLine + "\n").getBytes("UTF-8"))) ;
-		WEntry<Integer, DbLinkLocationList> outLinkEntry = deserializePageLinkCsvRecord(linksOutRecord) ;
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
 
+		long entriesWritten = 0 ;
 
 		while (inLinkEntry != null && outLinkEntry != null) {
 
@@ -170,45 +239,109 @@ public class PageLinkCountDatabase extends IntObjectDatabase<DbPageLinkCounts>{
 			}
 
 			if (linkCountEntry != null) {
-				DatabaseEntry k = new DatabaseEntry() ;
 				keyBinding.objectToEntry(linkCountEntry.getKey(), k) ;
-
-				DatabaseEntry v = new DatabaseEntry() ;
 				valueBinding.objectToEntry(linkCountEntry.getValue(), v) ;
 
 				db.put(null, k, v) ;
+				entriesWritten++ ;
 			}
 
-			if (advanceInLinks) {
-				inLinkLine = linksInInput.readLine() ;
-				if (inLinkLine != null) {
-					bytesRead += (inLinkLine.length() + 1) ;
-					linksInRecord = new CsvRecordInput(new ByteArrayInputStream((inLinkLine + "\n").getBytes("UTF-8"))) ;
-					inLinkEntry = deserializePageLinkCsvRecord(linksInRecord) ;
-				} else {
-					inLinkEntry = null ;
-				}
-			}
+			if (advanceInLinks)
+				inLinkEntry = readPageLinkEntry(linksInInput) ;
 
-			if (advanceOutLinks) {
-				outLinkLine = linksOutInput.readLine() ;
-				if (outLinkLine != null) {
-					bytesRead += (outLinkLine.length() + 1) ;
-					linksOutRecord = new CsvRecordInput(new ByteArrayInputStream((outLinkLine + "\n").getBytes("UTF-8"))) ;
-					outLinkEntry = deserializePageLinkCsvRecord(linksOutRecord) ;
-				} else {
-					outLinkEntry = null ;
-				}
-			}
+			if (advanceOutLinks)
+				outLinkEntry = readPageLinkEntry(linksOutInput) ;
 
-			tracker.update(bytesRead) ;
+			if (entriesWritten % 1000 == 0)
+				tracker.update(linksInInput.getBytesRead() + linksOutInput.getBytesRead()) ;
 		}
 
 		linksInInput.close();
 		linksOutInput.close() ;
 
+		db.sync() ;
 		env.cleanAndCheckpoint() ;
 		getDatabase(true) ;
 	}
 
+	private WEntry<Integer, DbLinkLocationList> readPageLinkEntry(CsvLineInput input) throws IOException {
+
+		if (!input.nextLine())
+			return null ;
+
+		return deserializePageLinkCsvRecord(input) ;
+	}
+
+	@Override
+	public long getCacheSize() {
+
+		if (table != null)
+			return table.size() ;
+
+		return super.getCacheSize() ;
+	}
+
+	@Override
+	public void close() {
+		super.close() ;
+
+		table = null ;
+		tableBuilder = null ;
+	}
+
+	@Override
+	protected DbPageLinkCounts retrieveFromCache(int key) {
+
+		if (table == null)
+			return super.retrieveFromCache(key) ;
+
+		int ordinal = table.getOrdinal(key) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return new DbPageLinkCounts(table.getTotalLinksIn(ordinal), table.getDistinctLinksIn(ordinal), table.getTotalLinksOut(ordinal), table.getDistinctLinksOut(ordinal)) ;
+	}
+
+	@Override
+	protected byte[] retrieveRawFromCache(Integer key) {
+
+		if (table == null)
+			return super.retrieveRawFromCache(key) ;
+
+		return serialise(retrieveFromCache(key)) ;
+	}
+
+	@Override
+	protected void initializeCache() {
+
+		table = null ;
+
+		if (getCachePriority() == CachePriority.speed || getCachePriority() == CachePriority.space)
+			tableBuilder = new LinkCountTable.Builder(getExpectedCacheSize()) ;
+		else
+			super.initializeCache() ;
+	}
+
+	@Override
+	protected void addToCache(WEntry<Integer,DbPageLinkCounts> entry) {
+
+		if (tableBuilder != null) {
+			DbPageLinkCounts lc = entry.getValue() ;
+			tableBuilder.add(entry.getKey(), lc.getTotalLinksIn(), lc.getDistinctLinksIn(), lc.getTotalLinksOut(), lc.getDistinctLinksOut()) ;
+		} else {
+			super.addToCache(entry) ;
+		}
+	}
+
+	@Override
+	protected void finalizeCache() {
+
+		if (tableBuilder != null) {
+			table = tableBuilder.build() ;
+			tableBuilder = null ;
+		}
+
+		super.finalizeCache() ;
+	}
 }
@@ -0,0 +1,218 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbIntList;
+import org.wikipedia.miner.db.struct.DbLinkLocation;
+import org.wikipedia.miner.db.struct.DbLinkLocationList;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link WDatabase} for associating page ids with the ids of pages that link to it, or that it links to
+ * (without the sentences in which these links are found).
+ * <p>
+ * When cached (with either {@link WDatabase.CachePriority#speed} or {@link WDatabase.CachePriority#space} priority),
+ * all links are packed into a single {@link LinkGraph}, which can be accessed directly via {@link #getLinkGraph()}.
+ */
+public class PageLinkNoSentencesDatabase extends IntObjectDatabase<DbIntList> {
+
+	private LinkGraph.Builder graphBuilder = null ;
+	private LinkGraph graph = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will match the given {@link WDatabase.DatabaseType}
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 * @param type either {@link WDatabase.DatabaseType#pageLinksInNoSentences} or {@link WDatabase.DatabaseType#pageLinksOutNoSentences}
+	 */
+	public PageLinkNoSentencesDatabase(WEnvironment env, DatabaseType type) {
+
+		super(env, type, new CompactIntListBinding()) ;
+
+		if (type != DatabaseType.pageLinksInNoSentences && type != DatabaseType.pageLinksOutNoSentences)
+			throw new IllegalArgumentException("type must be either DatabaseType.pageLinksInNoSentences or DatabaseType.pageLinksOutNoSentences") ;
+	}
+
+	/**
+	 * Returns the graph of all cached links, or null if this database has not been cached to a graph.
+	 *
+	 * @return the graph of all cached links, or null if this database has not been cached to a graph.
+	 */
+	public LinkGraph getLinkGraph() {
+		return graph ;
+	}
+
+	@Override
+	public WEntry<Integer, DbIntList> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		// this has to read from pagelinks file (with sentences
+
+		Integer id = record.readInt(null) ;
+
+		DbLinkLocationList l = new DbLinkLocationList() ;
+		l.deserialize(record) ;
+
+		ArrayList<Integer> linkIds = new ArrayList<Integer>() ;
+
+		for (DbLinkLocation ll:l.getLinkLocations())
+			linkIds.add(ll.getLinkId()) ;
+
+		return new WEntry<Integer, DbIntList>(id, new DbIntList(linkIds)) ;
+	}
+
+	@Override
+	public DbIntList filterCacheEntry(
+			WEntry<Integer, DbIntList> e,
+			WikipediaConfiguration conf) {
+
+		int id = e.getKey() ;
+		DbIntList links = e.getValue() ;
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		if (validIds != null && !validIds.contains(id))
+			return null ;
+
+		ArrayList<Integer> newLinks = new ArrayList<Integer>() ;
+
+		for (Integer link:links.getValues()) {
+			if (validIds != null && !validIds.contains(link))
+				continue ;
+
+			newLinks.add(link) ;
+		}
+
+		if (newLinks.size() == 0)
+			return null ;
+
+		links.setValues(newLinks) ;
+
+		return links ;
+	}
+
+	@Override
+	public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
+
+		if (exists() && !overwrite)
+			return ;
+
+		if (tracker == null) tracker = new ProgressTracker(1, WDatabase.class) ;
+		tracker.startTask(dataFile.length(), "Loading " + getName()) ;
+
+		Database db = getDatabase(false) ;
+
+		CsvLineInput input = new CsvLineInput(dataFile) ;
+
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
+
+		while (input.nextLine()) {
+
+			WEntry<Integer,DbIntList> entry = deserialiseCsvRecord(input) ;
+
+			if (entry != null) {
+				keyBinding.objectToEntry(entry.getKey(), k) ;
+				valueBinding.objectToEntry(entry.getValue(), v) ;
+
+				db.put(null, k, v) ;
+			}
+
+			if (input.getLineNumber() % 1000 == 0)
+				tracker.update(input.getBytesRead()) ;
+		}
+
+		input.close();
+		tracker.update(input.getBytesRead()) ;
+
+		db.sync() ;
+		env.cleanAndCheckpoint() ;
+		getDatabase(true) ;
+	}
+
+	@Override
+	public long getCacheSize() {
+
+		if (graph != null)
+			return graph.getPageCount() ;
+
+		return super.getCacheSize() ;
+	}
+
+	@Override
+	public void close() {
+		super.close() ;
+
+		graph = null ;
+		graphBuilder = null ;
+	}
+
+	@Override
+	protected DbIntList retrieveFromCache(int key) {
+
+		if (graph == null)
+			return super.retrieveFromCache(key) ;
+
+		IntBuffer links = graph.getLinks(key) ;
+
+		if (links == null)
+			return null ;
+
+		ArrayList<Integer> values = new ArrayList<Integer>(links.remaining()) ;
+		while (links.hasRemaining())
+			values.add(links.get()) ;
+
+		return new DbIntList(values) ;
+	}
+
+	@Override
+	protected byte[] retrieveRawFromCache(Integer key) {
+
+		if (graph == null)
+			return super.retrieveRawFromCache(key) ;
+
+		if (graph.getOrdinal(key) < 0)
+			return null ;
+
+		return IntListCodec.encode(graph.copyLinks(key)) ;
+	}
+
+	@Override
+	protected void initializeCache() {
+
+		graph = null ;
+
+		if (getCachePriority() == CachePriority.speed || getCachePriority() == CachePriority.space)
+			graphBuilder = new LinkGraph.Builder() ;
+		else
+			super.initializeCache() ;
+	}
+
+	@Override
+	protected void addToCache(WEntry<Integer,DbIntList> entry) {
+
+		if (graphBuilder != null)
+			graphBuilder.add(entry.getKey(), entry.getValue().getValues()) ;
+		else
+			super.addToCache(entry) ;
+	}
+
+	@Override
+	protected void finalizeCache() {
+
+		if (graphBuilder != null) {
+			graph = graphBuilder.build() ;
+			graphBuilder = null ;
+		}
+
+		super.finalizeCache() ;
+	}
+}
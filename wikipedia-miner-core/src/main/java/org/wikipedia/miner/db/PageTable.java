@@ -0,0 +1,228 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TShortArrayList;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * An immutable, columnar table of page details, where every page is assigned a dense ordinal (its position
+ * within a sorted array of page ids), and each detail is held in a separate primitive column:
+ * <ul>
+ * <li>a byte column of page types (ordinals of {@link org.wikipedia.miner.model.Page.PageType});</li>
+ * <li>a short column of depths;</li>
+ * <li>a column of offsets into a single blob of UTF-8 encoded titles.</li>
+ * </ul>
+ * This allows the type or depth of a page to be checked with a single array read, without allocating a
+ * {@link org.wikipedia.miner.db.struct.DbPage} or decoding its title.
+ */
+public class PageTable {
+
+	private int[] ids ;
+	private byte[] types ;
+	private short[] depths ;
+	private int[] titleOffsets ;
+	private byte[] titles ;
+
+	private PageTable(int[] ids, byte[] types, short[] depths, int[] titleOffsets, byte[] titles) {
+		this.ids = ids ;
+		this.types = types ;
+		this.depths = depths ;
+		this.titleOffsets = titleOffsets ;
+		this.titles = titles ;
+	}
+
+	/**
+	 * Returns the number of pages in this table
+	 *
+	 * @return the number of pages in this table
+	 */
+	public int size() {
+		return ids.length ;
+	}
+
+	/**
+	 * Returns the dense ordinal of the given page id
+	 *
+	 * @param id the id of a page
+	 * @return the ordinal of the page, or a negative value if the page is not in this table.
+	 */
+	public int getOrdinal(int id) {
+		return Arrays.binarySearch(ids, id) ;
+	}
+
+	/**
+	 * Returns the id of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the id of the page
+	 */
+	public int getId(int ordinal) {
+		return ids[ordinal] ;
+	}
+
+	/**
+	 * Returns the type of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the ordinal of the page's {@link org.wikipedia.miner.model.Page.PageType}
+	 */
+	public int getType(int ordinal) {
+		return types[ordinal] ;
+	}
+
+	/**
+	 * Returns the depth of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the depth of the page, or a negative value if it has none.
+	 */
+	public int getDepth(int ordinal) {
+		return depths[ordinal] ;
+	}
+
+	/**
+	 * Returns the title of the page with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a page, as returned by {@link #getOrdinal(int)}
+	 * @return the title of the page
+	 */
+	public String getTitle(int ordinal) {
+
+		int start = titleOffsets[ordinal] ;
+
+		try {
+			return new String(titles, start, titleOffsets[ordinal+1] - start, "UTF-8") ;
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new RuntimeException(e) ;
+		}
+	}
+
+
+	/**
+	 * Accumulates the details of pages, and assembles them into a {@link PageTable}
+	 */
+	public static class Builder {
+
+		private TIntArrayList ids ;
+		private TByteArrayList types ;
+		private TShortArrayList depths ;
+		private TIntArrayList titleOffsets ;
+		private TByteArrayList titles ;
+
+		private boolean sorted = true ;
+
+		/**
+		 * Creates a builder for an unknown number of pages
+		 */
+		public Builder() {
+			this(0) ;
+		}
+
+		/**
+		 * Creates a builder, with room for the given number of pages
+		 *
+		 * @param expectedSize the number of pages that are expected to be added
+		 */
+		public Builder(int expectedSize) {
+
+			int capacity = Math.max(10, expectedSize) ;
+
+			ids = new TIntArrayList(capacity) ;
+			types = new TByteArrayList(capacity) ;
+			depths = new TShortArrayList(capacity) ;
+			titleOffsets = new TIntArrayList(capacity) ;
+			titles = new TByteArrayList(capacity) ;
+		}
+
+		/**
+		 * Adds the details of a single page. Pages are ideally added in ascending order of id, otherwise they
+		 * will need to be sorted when {@link #build()} is called.
+		 *
+		 * @param id the id of the page
+		 * @param title the title of the page
+		 * @param type the ordinal of the page's type
+		 * @param depth the depth of the page (depths that do not fit within a short are clamped)
+		 */
+		public void add(int id, String title, int type, int depth) {
+
+			if (!ids.isEmpty() && ids.get(ids.size()-1) >= id)
+				sorted = false ;
+
+			ids.add(id) ;
+			types.add((byte)type) ;
+			depths.add((short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, depth))) ;
+
+			titleOffsets.add(titles.size()) ;
+			try {
+				titles.add(title.getBytes("UTF-8")) ;
+			} catch (UnsupportedEncodingException e) {
+				//UTF-8 is always supported
+				throw new RuntimeException(e) ;
+			}
+		}
+
+		/**
+		 * Assembles all of the pages that have been added into a table
+		 *
+		 * @return a table of all the pages that have been added
+		 */
+		public PageTable build() {
+
+			int pageCount = ids.size() ;
+
+			int[] idArray = new int[pageCount] ;
+			byte[] typeArray = new byte[pageCount] ;
+			short[] depthArray = new short[pageCount] ;
+			int[] titleOffsetArray = new int[pageCount+1] ;
+			byte[] titleArray ;
+
+			if (sorted) {
+				ids.toArray(idArray) ;
+				types.toArray(typeArray) ;
+				depths.toArray(depthArray) ;
+				titleOffsets.toArray(titleOffsetArray) ;
+				titleOffsetArray[pageCount] = titles.size() ;
+				titleArray = titles.toArray() ;
+			} else {
+
+				//sort pages by id (packed above their original index), and copy details across in that order
+				long[] order = new long[pageCount] ;
+				for (int i=0 ; i<pageCount ; i++)
+					order[i] = ((long)ids.get(i) << 32) | i ;
+
+				Arrays.sort(order) ;
+
+				titleArray = new byte[titles.size()] ;
+
+				int offset = 0 ;
+				for (int o=0 ; o<pageCount ; o++) {
+					int i = (int)(order[o] & 0xFFFFFFFFL) ;
+
+					int start = titleOffsets.get(i) ;
+					int end = (i+1 < pageCount) ? titleOffsets.get(i+1) : titles.size() ;
+
+					idArray[o] = ids.get(i) ;
+					typeArray[o] = types.get(i) ;
+					depthArray[o] = depths.get(i) ;
+					titleOffsetArray[o] = offset ;
+
+					titles.toArray(titleArray, start, offset, end-start) ;
+					offset += (end-start) ;
+				}
+				titleOffsetArray[pageCount] = offset ;
+			}
+
+			ids = null ;
+			types = null ;
+			depths = null ;
+			titleOffsets = null ;
+			titles = null ;
+
+			return new PageTable(idArray, typeArray, depthArray, titleOffsetArray, titleArray) ;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.wikipedia.miner.db;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Base class for flyweight views that read fields directly from the bytes of a Hadoop record, as serialised by a {@link RecordBinding}.
+ * <p>
+ * Hadoop's binary format writes nothing to mark the start or end of a record, writes ints and longs as variable-length integers, 
+ * booleans as a single byte, strings as a variable-length byte count followed by UTF-8, and vectors as a variable-length count 
+ * followed by their elements.
+ */
+abstract class RecordView {
+
+	protected byte[] bytes ;
+	protected int pos ;
+
+	protected void reset(byte[] bytes) {
+		this.bytes = bytes ;
+		this.pos = 0 ;
+	}
+
+	protected long readVLong() {
+
+		byte first = bytes[pos++] ;
+
+		if (first >= -112)
+			return first ;
+
+		boolean negative = first < -120 ;
+		int len = negative ? -(first + 120) : -(first + 112) ;
+
+		long value = 0 ;
+		for (int i=0 ; i<len ; i++) 
+			value = (value << 8) | (bytes[pos++] & 0xFF) ;
+
+		return negative ? ~value : value ;
+	}
+
+	protected int readVInt() {
+		return (int)readVLong() ;
+	}
+
+	protected boolean readBool() {
+		return bytes[pos++] != 0 ;
+	}
+
+	/**
+	 * Skips over a string field
+	 * 
+	 * @return the offset of the first byte of the string's UTF-8 data
+	 */
+	protected int skipString() {
+
+		int len = readVInt() ;
+		int start = pos ;
+		pos += len ;
+		return start ;
+	}
+
+	protected String decodeString(int start, int end) {
+
+		try {
+			return new String(bytes, start, end - start, "UTF-8") ;
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new RuntimeException(e) ;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.IOException;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.bind.tuple.IntegerBinding;
+
+/**
+ * A {@link WDatabase} for associating the ids of redirects with the ids of the pages they point to.
+ * <p>
+ * When cached (with either {@link WDatabase.CachePriority#speed} or {@link WDatabase.CachePriority#space} priority),
+ * all redirects are packed into a single {@link RedirectTable}, which can be accessed directly via {@link #getRedirectTable()},
+ * and in which chains of redirects have already been resolved.
+ */
+public class RedirectDatabase extends IntObjectDatabase<Integer> {
+
+	private RedirectTable.Builder tableBuilder = null ;
+	private RedirectTable table = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#redirectTargetBySource}.
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public RedirectDatabase(WEnvironment env) {
+		super(env, DatabaseType.redirectTargetBySource, new IntegerBinding()) ;
+	}
+
+	/**
+	 * Returns the table of all cached redirects, or null if this database has not been cached to a table.
+	 *
+	 * @return the table of all cached redirects, or null if this database has not been cached to a table.
+	 */
+	public RedirectTable getRedirectTable() {
+		return table ;
+	}
+
+	@Override
+	public WEntry<Integer, Integer> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		int k = record.readInt(null) ;
+		int v = record.readInt(null) ;
+
+		return new WEntry<Integer, Integer>(k,v) ;
+	}
+
+	@Override
+	public Integer filterCacheEntry(WEntry<Integer, Integer> e, WikipediaConfiguration conf) {
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		if (validIds != null && !validIds.contains(e.getValue()))
+			return null ;
+
+		return e.getValue();
+	}
+
+	@Override
+	public long getCacheSize() {
+
+		if (table != null)
+			return table.size() ;
+
+		return super.getCacheSize() ;
+	}
+
+	@Override
+	public void close() {
+		super.close() ;
+
+		table = null ;
+		tableBuilder = null ;
+	}
+
+	@Override
+	protected Integer retrieveFromCache(int key) {
+
+		if (table == null)
+			return super.retrieveFromCache(key) ;
+
+		int ordinal = table.getOrdinal(key) ;
+
+		if (ordinal < 0)
+			return null ;
+
+		return table.getTarget(ordinal) ;
+	}
+
+	@Override
+	protected byte[] retrieveRawFromCache(Integer key) {
+
+		if (table == null)
+			return super.retrieveRawFromCache(key) ;
+
+		return serialise(retrieveFromCache(key)) ;
+	}
+
+	@Override
+	protected void initializeCache() {
+
+		table = null ;
+
+		if (getCachePriority() == CachePriority.speed || getCachePriority() == CachePriority.space)
+			tableBuilder = new RedirectTable.Builder(getExpectedCacheSize()) ;
+		else
+			super.initializeCache() ;
+	}
+
+	@Override
+	protected void addToCache(WEntry<Integer,Integer> entry) {
+
+		if (tableBuilder != null)
+			tableBuilder.add(entry.getKey(), entry.getValue()) ;
+		else
+			super.addToCache(entry) ;
+	}
+
+	@Override
+	protected void finalizeCache() {
+
+		if (tableBuilder != null) {
+			table = tableBuilder.build() ;
+			tableBuilder = null ;
+		}
+
+		super.finalizeCache() ;
+	}
+}
@@ -0,0 +1,181 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * An immutable table of redirects, where every redirect is assigned a dense ordinal (its position within a sorted array of
+ * redirect ids), and its direct and final targets are held in primitive int columns.
+ * <p>
+ * Chains of redirects (double redirects) are resolved when the table is built, so the page that a redirect ultimately
+ * points to can be found with a single binary search.
+ */
+public class RedirectTable {
+
+	/**
+	 * The resolved target of any redirect that leads to a dead end or a loop of redirects
+	 */
+	public static final int UNRESOLVED = 0 ;
+
+	//chains of redirects longer than this are assumed to contain a loop
+	private static final int MAX_HOPS = 32 ;
+
+	private int[] ids ;
+	private int[] targets ;
+	private int[] resolvedTargets ;
+
+	private RedirectTable(int[] ids, int[] targets, int[] resolvedTargets) {
+		this.ids = ids ;
+		this.targets = targets ;
+		this.resolvedTargets = resolvedTargets ;
+	}
+
+	/**
+	 * Returns the number of redirects in this table
+	 *
+	 * @return the number of redirects in this table
+	 */
+	public int size() {
+		return ids.length ;
+	}
+
+	/**
+	 * Returns the dense ordinal of the given redirect id
+	 *
+	 * @param id the id of a redirect
+	 * @return the ordinal of the redirect, or a negative value if the redirect is not in this table.
+	 */
+	public int getOrdinal(int id) {
+		return Arrays.binarySearch(ids, id) ;
+	}
+
+	/**
+	 * Returns the id of the redirect with the given ordinal
+	 *
+	 * @param ordinal the ordinal of a redirect, as returned by {@link #getOrdinal(int)}
+	 * @return the id of the redirect
+	 */
+	public int getId(int ordinal) {
+		return ids[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a redirect, as returned by {@link #getOrdinal(int)}
+	 * @return the id of the page that the redirect points to (which may be another redirect)
+	 */
+	public int getTarget(int ordinal) {
+		return targets[ordinal] ;
+	}
+
+	/**
+	 * @param ordinal the ordinal of a redirect, as returned by {@link #getOrdinal(int)}
+	 * @return the id of the first page that is not a redirect, found by following the redirect (and any redirects it leads to), or {@link #UNRESOLVED} if a dead-end or loop is encountered.
+	 */
+	public int getResolvedTarget(int ordinal) {
+		return resolvedTargets[ordinal] ;
+	}
+
+
+	/**
+	 * Accumulates redirects, and assembles them into a {@link RedirectTable}
+	 */
+	public static class Builder {
+
+		private TIntArrayList ids ;
+		private TIntArrayList targets ;
+
+		private boolean sorted = true ;
+
+		/**
+		 * Creates a builder for an unknown number of redirects
+		 */
+		public Builder() {
+			this(0) ;
+		}
+
+		/**
+		 * Creates a builder, with room for the given number of redirects
+		 *
+		 * @param expectedSize the number of redirects that are expected to be added
+		 */
+		public Builder(int expectedSize) {
+
+			int capacity = Math.max(10, expectedSize) ;
+
+			ids = new TIntArrayList(capacity) ;
+			targets = new TIntArrayList(capacity) ;
+		}
+
+		/**
+		 * Adds a single redirect. Redirects are ideally added in ascending order of id, otherwise they
+		 * will need to be sorted when {@link #build()} is called.
+		 *
+		 * @param id the id of the redirect
+		 * @param target the id of the page the redirect points to
+		 */
+		public void add(int id, int target) {
+
+			if (!ids.isEmpty() && ids.get(ids.size()-1) >= id)
+				sorted = false ;
+
+			ids.add(id) ;
+			targets.add(target) ;
+		}
+
+		/**
+		 * Assembles all of the redirects that have been added into a table, resolving any chains of redirects
+		 *
+		 * @return a table of all the redirects that have been added
+		 */
+		public RedirectTable build() {
+
+			int redirectCount = ids.size() ;
+
+			int[] idArray = new int[redirectCount] ;
+			int[] targetArray = new int[redirectCount] ;
+
+			if (sorted) {
+				ids.toArray(idArray) ;
+				targets.toArray(targetArray) ;
+			} else {
+
+				//sort redirects by id (packed above their original index), and copy targets across in that order
+				long[] order = new long[redirectCount] ;
+				for (int i=0 ; i<redirectCount ; i++)
+					order[i] = ((long)ids.get(i) << 32) | i ;
+
+				Arrays.sort(order) ;
+
+				for (int o=0 ; o<redirectCount ; o++) {
+					int i = (int)(order[o] & 0xFFFFFFFFL) ;
+
+					idArray[o] = ids.get(i) ;
+					targetArray[o] = targets.get(i) ;
+				}
+			}
+
+			ids = null ;
+			targets = null ;
+
+			//follow each chain until it reaches a page that is not a redirect
+			int[] resolvedArray = new int[redirectCount] ;
+			for (int o=0 ; o<redirectCount ; o++) {
+
+				int target = targetArray[o] ;
+				int hops = 0 ;
+
+				int next = Arrays.binarySearch(idArray, target) ;
+				while (next >= 0 && hops < MAX_HOPS) {
+					target = targetArray[next] ;
+					next = Arrays.binarySearch(idArray, target) ;
+					hops++ ;
+				}
+
+				resolvedArray[o] = (next >= 0) ? UNRESOLVED : target ;
+			}
+
+			return new RedirectTable(idArray, targetArray, resolvedArray) ;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbPage;
+import org.wikipedia.miner.model.Page.PageType;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.bind.tuple.IntegerBinding;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link WDatabase} for associating the titles of articles, disambiguation pages and redirects with the id of the
+ * article or disambiguation page they ultimately refer to. Redirects (including chains of redirects) are resolved when this
+ * database is built, so a title can be resolved to an article with a single lookup.
+ * <p>
+ * This is derived from the {@link WDatabase.DatabaseType#articlesByTitle}, {@link WDatabase.DatabaseType#redirectTargetBySource}
+ * and {@link WDatabase.DatabaseType#page} databases. Titles whose redirects lead to a dead end or loop are left out.
+ */
+public class ResolvedTitleDatabase extends WDatabase<String,Integer> {
+
+	private volatile Boolean available = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#resolvedArticlesByTitle}.
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public ResolvedTitleDatabase(WEnvironment env) {
+		super(env, DatabaseType.resolvedArticlesByTitle, new StringBinding(), new IntegerBinding()) ;
+	}
+
+	/**
+	 * Returns true if this database has been built, otherwise false (e.g. for environments built before it was introduced)
+	 *
+	 * @return true if this database has been built, otherwise false
+	 */
+	public boolean isAvailable() {
+
+		if (available == null)
+			available = exists() ;
+
+		return available ;
+	}
+
+	@Override
+	public WEntry<String, Integer> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public Integer filterCacheEntry(WEntry<String, Integer> e, WikipediaConfiguration conf) {
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		if (validIds != null && !validIds.contains(e.getValue()))
+			return null ;
+
+		return e.getValue();
+	}
+
+	/**
+	 * Builds this database by resolving every title in the given title database
+	 *
+	 * @param titles the {@link WDatabase.DatabaseType#articlesByTitle} database
+	 * @param redirects the {@link WDatabase.DatabaseType#redirectTargetBySource} database
+	 * @param pages the {@link WDatabase.DatabaseType#page} database
+	 * @param overwrite true if the existing database should be overwritten, otherwise false
+	 * @param tracker an optional progress tracker (may be null)
+	 */
+	public void loadFromTitles(WDatabase<String,Integer> titles, WDatabase<Integer,Integer> redirects, WDatabase<Integer,DbPage> pages, boolean overwrite, ProgressTracker tracker) {
+
+		if (exists() && !overwrite)
+			return ;
+
+		if (tracker == null) tracker = new ProgressTracker(2, ResolvedTitleDatabase.class) ;
+
+		//gather all redirects into a table, so that chains can be resolved in memory
+		tracker.startTask(redirects.getDatabaseSize(), "Gathering redirects") ;
+
+		RedirectTable.Builder redirectBuilder = new RedirectTable.Builder((int)Math.min(Integer.MAX_VALUE, redirects.getDatabaseSize())) ;
+
+		WIterator<Integer,Integer> redirectIter = redirects.getIterator() ;
+		try {
+			while (redirectIter.hasNext()) {
+				WEntry<Integer,Integer> e = redirectIter.next() ;
+				redirectBuilder.add(e.getKey(), e.getValue()) ;
+				tracker.update() ;
+			}
+		} finally {
+			redirectIter.close() ;
+		}
+
+		RedirectTable redirectTable = redirectBuilder.build() ;
+
+		tracker.startTask(titles.getDatabaseSize(), "Loading " + getName() + " database") ;
+
+		Database db = getDatabase(false) ;
+
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
+
+		//titles are iterated in key order, so they are also stored in key order
+		WIterator<String,Integer> titleIter = titles.getIterator() ;
+		try {
+			while (titleIter.hasNext()) {
+				WEntry<String,Integer> e = titleIter.next() ;
+				tracker.update() ;
+
+				int id = e.getValue() ;
+
+				int ordinal = redirectTable.getOrdinal(id) ;
+				if (ordinal >= 0) {
+					id = redirectTable.getResolvedTarget(ordinal) ;
+
+					if (id == RedirectTable.UNRESOLVED)
+						continue ;
+				}
+
+				DbPage page = pages.retrieve(id) ;
+				if (page == null)
+					continue ;
+
+				PageType type = PageType.values()[page.getType()] ;
+				if (type != PageType.article && type != PageType.disambiguation)
+					continue ;
+
+				keyBinding.objectToEntry(e.getKey(), k) ;
+				valueBinding.objectToEntry(id, v) ;
+
+				db.put(null, k, v) ;
+			}
+		} finally {
+			titleIter.close() ;
+		}
+
+		db.sync() ;
+		env.cleanAndCheckpoint() ;
+		getDatabase(true) ;
+
+		available = true ;
+	}
+}
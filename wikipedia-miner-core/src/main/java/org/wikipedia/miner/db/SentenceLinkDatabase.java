@@ -0,0 +1,382 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbLinkLocation;
+import org.wikipedia.miner.db.struct.DbLinkLocationList;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link WDatabase} for associating the id of each article with bitmaps of the sentences (within that article) that
+ * contain links to each of the articles it links to.
+ * <p>
+ * This is derived from the {@link WDatabase.DatabaseType#pageLinksOut} database, and allows the sentences that mention several
+ * articles at once to be found with {@link #retrieveSentenceIndexes(int, int...)}, by intersecting bitmaps
+ * straight out of the serialised value rather than deserialising and intersecting lists of link locations.
+ * <p>
+ * Each value holds the targets of the article's links in ascending order (delta encoded), each followed by a bitmap of the
+ * sentences in which it is linked to. Bitmaps are trimmed of leading and trailing empty bytes, so a link found in a single
+ * sentence costs only a few bytes.
+ */
+public class SentenceLinkDatabase extends IntObjectDatabase<SentenceLinkDatabase.SentenceBitmaps> {
+
+	private volatile Boolean available = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#sentenceLinks}.
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public SentenceLinkDatabase(WEnvironment env) {
+		super(env, DatabaseType.sentenceLinks, new SentenceBitmapsBinding()) ;
+	}
+
+	/**
+	 * Returns true if this database has been built, otherwise false (e.g. for environments built before it was introduced)
+	 *
+	 * @return true if this database has been built, otherwise false
+	 */
+	public boolean isAvailable() {
+
+		if (available == null)
+			available = exists() ;
+
+		return available ;
+	}
+
+	/**
+	 * Identifies the sentences within the given article that contain links to all of the given target articles,
+	 * without deserialising the bitmaps of any other targets.
+	 *
+	 * @param id the id of the article whose sentences are of interest
+	 * @param targetIds the ids of the articles that must all be linked to
+	 * @return the indexes of all sentences that contain links to all of the given targets, in ascending order.
+	 */
+	public int[] retrieveSentenceIndexes(int id, int... targetIds) {
+
+		if (targetIds.length == 0)
+			return new int[0] ;
+
+		byte[] data = retrieveRaw(id) ;
+
+		if (data == null)
+			return new int[0] ;
+
+		return getSentenceIndexes(data, targetIds) ;
+	}
+
+	/**
+	 * Intersects the bitmaps of the given targets within a serialised value
+	 */
+	static int[] getSentenceIndexes(byte[] data, int[] targetIds) {
+
+		int[] targets = targetIds.clone() ;
+		Arrays.sort(targets) ;
+
+		TupleInput input = new TupleInput(data) ;
+		int linkCount = input.readPackedInt() ;
+
+		//the intersection so far, which covers bytes [start, start+bitmap.length) of a full bitmap
+		byte[] bitmap = null ;
+		int start = 0 ;
+
+		int target = 0 ;
+		int t = 0 ;
+
+		for (int l=0 ; l<linkCount && t<targets.length ; l++) {
+
+			target += input.readPackedInt() ;
+			int firstByte = input.readPackedInt() ;
+			int byteCount = input.readPackedInt() ;
+
+			//targets are in ascending order, so any wanted target we have passed is not linked to at all
+			if (targets[t] < target)
+				return new int[0] ;
+
+			if (targets[t] > target) {
+				input.skipFast(byteCount) ;
+				continue ;
+			}
+
+			int offset = input.getBufferOffset() ;
+			input.skipFast(byteCount) ;
+
+			if (bitmap == null) {
+				bitmap = Arrays.copyOfRange(data, offset, offset + byteCount) ;
+				start = firstByte ;
+			} else {
+				int newStart = Math.max(start, firstByte) ;
+				int newEnd = Math.min(start + bitmap.length, firstByte + byteCount) ;
+
+				if (newStart >= newEnd)
+					return new int[0] ;
+
+				byte[] intersection = new byte[newEnd - newStart] ;
+				for (int b=newStart ; b<newEnd ; b++)
+					intersection[b-newStart] = (byte)(bitmap[b-start] & data[offset + b - firstByte]) ;
+
+				bitmap = intersection ;
+				start = newStart ;
+			}
+
+			//skip over any duplicate targets
+			while (t < targets.length && targets[t] == target)
+				t++ ;
+		}
+
+		if (t < targets.length || bitmap == null)
+			return new int[0] ;
+
+		return toSentenceIndexes(bitmap, start) ;
+	}
+
+	private static int[] toSentenceIndexes(byte[] bitmap, int start) {
+
+		TIntArrayList sentenceIndexes = new TIntArrayList() ;
+
+		for (int b=0 ; b<bitmap.length ; b++) {
+
+			int bits = bitmap[b] & 0xFF ;
+
+			while (bits != 0) {
+				int bit = Integer.numberOfTrailingZeros(bits) ;
+				sentenceIndexes.add(((start + b) << 3) + bit) ;
+				bits &= bits - 1 ;
+			}
+		}
+
+		return sentenceIndexes.toArray() ;
+	}
+
+	@Override
+	public WEntry<Integer, SentenceBitmaps> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public SentenceBitmaps filterCacheEntry(WEntry<Integer, SentenceBitmaps> e, WikipediaConfiguration conf) {
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		//only cache if key is valid article
+		if (validIds != null && !validIds.contains(e.getKey()))
+			return null ;
+
+		return e.getValue() ;
+	}
+
+	/**
+	 * Builds this database from the sentence indexes of every link in the given database
+	 *
+	 * @param linksOut the {@link WDatabase.DatabaseType#pageLinksOut} database
+	 * @param overwrite true if the existing database should be overwritten, otherwise false
+	 * @param threads the number of articles to encode concurrently
+	 * @param tracker an optional progress tracker (may be null)
+	 */
+	public void loadFromLinks(WDatabase<Integer,DbLinkLocationList> linksOut, boolean overwrite, int threads, ProgressTracker tracker) {
+
+		if (exists() && !overwrite)
+			return ;
+
+		if (tracker == null) tracker = new ProgressTracker(1, SentenceLinkDatabase.class) ;
+		tracker.startTask(linksOut.getDatabaseSize(), "Loading " + getName() + " database") ;
+
+		final Database db = getDatabase(false) ;
+		final ProgressTracker t = tracker ;
+
+		linksOut.parallelIterate(threads, new EntryVisitor<Integer,DbLinkLocationList>() {
+			public void visit(WEntry<Integer,DbLinkLocationList> entry) {
+
+				SentenceBitmaps bitmaps = SentenceBitmaps.fromLinkLocations(entry.getValue()) ;
+
+				if (bitmaps.getTargetCount() > 0) {
+					DatabaseEntry key = new DatabaseEntry() ;
+					keyBinding.objectToEntry(entry.getKey(), key) ;
+
+					DatabaseEntry value = new DatabaseEntry() ;
+					valueBinding.objectToEntry(bitmaps, value) ;
+
+					db.put(null, key, value) ;
+				}
+
+				synchronized (t) {
+					t.update() ;
+				}
+			}
+		}) ;
+
+		db.sync() ;
+		env.cleanAndCheckpoint() ;
+		getDatabase(true) ;
+
+		available = true ;
+	}
+
+	/**
+	 * The sentences in which a single article links to each of its targets
+	 */
+	public static class SentenceBitmaps {
+
+		private int[] targetIds ;
+		private int[] firstBytes ;
+		private byte[][] bitmaps ;
+
+		private SentenceBitmaps(int[] targetIds, int[] firstBytes, byte[][] bitmaps) {
+			this.targetIds = targetIds ;
+			this.firstBytes = firstBytes ;
+			this.bitmaps = bitmaps ;
+		}
+
+		/**
+		 * @return the number of distinct articles that are linked to
+		 */
+		public int getTargetCount() {
+			return targetIds.length ;
+		}
+
+		/**
+		 * @param index the index of a target, between 0 and {@link #getTargetCount()}
+		 * @return the id of the target, where targets are sorted by id
+		 */
+		public int getTargetId(int index) {
+			return targetIds[index] ;
+		}
+
+		/**
+		 * @param targetId the id of an article
+		 * @return the indexes of all sentences that link to the given article, in ascending order
+		 */
+		public int[] getSentenceIndexes(int targetId) {
+
+			int index = Arrays.binarySearch(targetIds, targetId) ;
+
+			if (index < 0)
+				return new int[0] ;
+
+			return toSentenceIndexes(bitmaps[index], firstBytes[index]) ;
+		}
+
+		static SentenceBitmaps fromLinkLocations(DbLinkLocationList links) {
+
+			if (links == null || links.getLinkLocations() == null)
+				return new SentenceBitmaps(new int[0], new int[0], new byte[0][]) ;
+
+			//link locations are sorted by target already, but are sorted again just in case
+			DbLinkLocation[] locations = links.getLinkLocations().toArray(new DbLinkLocation[links.getLinkLocations().size()]) ;
+			Arrays.sort(locations, new Comparator<DbLinkLocation>() {
+				public int compare(DbLinkLocation a, DbLinkLocation b) {
+					return a.getLinkId() < b.getLinkId() ? -1 : (a.getLinkId() == b.getLinkId() ? 0 : 1) ;
+				}
+			}) ;
+
+			TIntArrayList targetIds = new TIntArrayList(locations.length) ;
+			TIntArrayList firstBytes = new TIntArrayList(locations.length) ;
+			byte[][] bitmaps = new byte[locations.length][] ;
+
+			for (DbLinkLocation location:locations) {
+
+				if (location.getSentenceIndexes() == null || location.getSentenceIndexes().isEmpty())
+					continue ;
+
+				int minByte = Integer.MAX_VALUE ;
+				int maxByte = -1 ;
+				for (int sentenceIndex:location.getSentenceIndexes()) {
+					minByte = Math.min(minByte, sentenceIndex >> 3) ;
+					maxByte = Math.max(maxByte, sentenceIndex >> 3) ;
+				}
+
+				byte[] bitmap = new byte[maxByte - minByte + 1] ;
+				for (int sentenceIndex:location.getSentenceIndexes())
+					bitmap[(sentenceIndex >> 3) - minByte] |= 1 << (sentenceIndex & 7) ;
+
+				int index = targetIds.size() ;
+
+				//merge duplicate targets
+				if (index > 0 && targetIds.get(index-1) == location.getLinkId()) {
+					index-- ;
+					int start = Math.min(firstBytes.get(index), minByte) ;
+					int end = Math.max(firstBytes.get(index) + bitmaps[index].length, maxByte + 1) ;
+
+					byte[] merged = new byte[end - start] ;
+					for (int b=0 ; b<bitmaps[index].length ; b++)
+						merged[firstBytes.get(index) - start + b] |= bitmaps[index][b] ;
+					for (int b=0 ; b<bitmap.length ; b++)
+						merged[minByte - start + b] |= bitmap[b] ;
+
+					firstBytes.set(index, start) ;
+					bitmaps[index] = merged ;
+					continue ;
+				}
+
+				targetIds.add(location.getLinkId()) ;
+				firstBytes.add(minByte) ;
+				bitmaps[index] = bitmap ;
+			}
+
+			return new SentenceBitmaps(targetIds.toArray(), firstBytes.toArray(), Arrays.copyOf(bitmaps, targetIds.size())) ;
+		}
+	}
+
+	/**
+	 * Serialises bitmaps as a packed count of targets, followed by the packed gap from the previous target id, packed index of
+	 * the first byte, packed byte count and bytes of each target's bitmap
+	 */
+	static class SentenceBitmapsBinding extends TupleBinding<SentenceBitmaps> {
+
+		@Override
+		public SentenceBitmaps entryToObject(TupleInput input) {
+
+			int targetCount = input.readPackedInt() ;
+
+			int[] targetIds = new int[targetCount] ;
+			int[] firstBytes = new int[targetCount] ;
+			byte[][] bitmaps = new byte[targetCount][] ;
+
+			int target = 0 ;
+			for (int i=0 ; i<targetCount ; i++) {
+				target += input.readPackedInt() ;
+				targetIds[i] = target ;
+				firstBytes[i] = input.readPackedInt() ;
+				bitmaps[i] = new byte[input.readPackedInt()] ;
+				input.readFast(bitmaps[i]) ;
+			}
+
+			return new SentenceBitmaps(targetIds, firstBytes, bitmaps) ;
+		}
+
+		@Override
+		public void objectToEntry(SentenceBitmaps bitmaps, TupleOutput output) {
+
+			output.writePackedInt(bitmaps.targetIds.length) ;
+
+			int prevTarget = 0 ;
+			for (int i=0 ; i<bitmaps.targetIds.length ; i++) {
+				output.writePackedInt(bitmaps.targetIds[i] - prevTarget) ;
+				output.writePackedInt(bitmaps.firstBytes[i]) ;
+				output.writePackedInt(bitmaps.bitmaps[i].length) ;
+				output.writeFast(bitmaps.bitmaps[i]) ;
+
+				prevTarget = bitmaps.targetIds[i] ;
+			}
+		}
+	}
+}
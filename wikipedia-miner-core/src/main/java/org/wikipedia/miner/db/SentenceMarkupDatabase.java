@@ -0,0 +1,247 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbIntList;
+import org.wikipedia.miner.util.MarkupStripper;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link WDatabase} for associating page ids with the sentences of each page, already cleaned of all markup
+ * except internal links and emphasis (exactly as returned by {@link org.wikipedia.miner.model.Page#getSentenceMarkup(int)}).
+ * <p>
+ * This is optional, and is derived from the {@link WDatabase.DatabaseType#markup} and {@link WDatabase.DatabaseType#sentenceSplits}
+ * databases (see {@link WEnvironment#prepareSentenceMarkup(WikipediaConfiguration, boolean, int)}). Each value holds the lengths of every
+ * sentence followed by their UTF-8 text, so a single sentence can be read straight out of the serialised value with {@link #retrieveSentence(int, int)}.
+ */
+public class SentenceMarkupDatabase extends IntObjectDatabase<String[]> {
+
+	private volatile Boolean available = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#sentenceMarkup}.
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public SentenceMarkupDatabase(WEnvironment env) {
+		super(env, DatabaseType.sentenceMarkup, new SentenceListBinding()) ;
+	}
+
+	/**
+	 * Returns true if this optional database has been built, otherwise false
+	 *
+	 * @return true if this optional database has been built, otherwise false
+	 */
+	public boolean isAvailable() {
+
+		if (available == null)
+			available = exists() ;
+
+		return available ;
+	}
+
+	/**
+	 * Retrieves a single sentence of the given page, without decoding any of the page's other sentences
+	 *
+	 * @param id the id of a page
+	 * @param index the index of the desired sentence
+	 * @return the content of the desired sentence (or an empty string if the page has fewer sentences), or null if the page is not in this database.
+	 */
+	public String retrieveSentence(int id, int index) {
+
+		byte[] data = retrieveRaw(id) ;
+
+		if (data == null)
+			return null ;
+
+		TupleInput input = new TupleInput(data) ;
+
+		int sentenceCount = input.readPackedInt() ;
+
+		//pages without sentence splits are treated as a single sentence, whatever index is asked for
+		if (sentenceCount == 1)
+			index = 0 ;
+
+		if (index < 0 || index >= sentenceCount)
+			return "" ;
+
+		int start = 0 ;
+		int length = 0 ;
+		for (int i=0 ; i<sentenceCount ; i++) {
+			int l = input.readPackedInt() ;
+
+			if (i < index)
+				start += l ;
+			else if (i == index)
+				length = l ;
+		}
+
+		try {
+			return new String(data, input.getBufferOffset() + start, length, "UTF-8") ;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e) ;
+		}
+	}
+
+	@Override
+	public WEntry<Integer, String[]> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public String[] filterCacheEntry(WEntry<Integer, String[]> e, WikipediaConfiguration conf) {
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		//only cache if key is valid article
+		if (validIds != null && !validIds.contains(e.getKey()))
+			return null ;
+
+		return e.getValue() ;
+	}
+
+	/**
+	 * Builds this database by cleaning and splitting the markup of every page that has sentence splits
+	 *
+	 * @param markup the markup database to read from
+	 * @param sentenceSplits the sentence splits database to read from
+	 * @param overwrite true if the existing database should be overwritten, otherwise false
+	 * @param threads the number of pages to clean concurrently
+	 * @param tracker an optional progress tracker (may be null)
+	 */
+	public void loadFromMarkup(final MarkupDatabase markup, WDatabase<Integer,DbIntList> sentenceSplits, boolean overwrite, int threads, ProgressTracker tracker) {
+
+		if (exists() && !overwrite)
+			return ;
+
+		if (tracker == null) tracker = new ProgressTracker(1, SentenceMarkupDatabase.class) ;
+		tracker.startTask(sentenceSplits.getDatabaseSize(), "Loading " + getName() + " database") ;
+
+		final Database db = getDatabase(false) ;
+		final ProgressTracker t = tracker ;
+
+		sentenceSplits.parallelIterate(threads, new EntryVisitor<Integer,DbIntList>() {
+			public void visit(WEntry<Integer,DbIntList> entry) {
+
+				String pageMarkup = markup.retrieve(entry.getKey()) ;
+
+				if (pageMarkup != null) {
+					DatabaseEntry key = new DatabaseEntry() ;
+					keyBinding.objectToEntry(entry.getKey(), key) ;
+
+					DatabaseEntry value = new DatabaseEntry() ;
+					valueBinding.objectToEntry(getSentences(pageMarkup, entry.getValue().getValues()), value) ;
+
+					db.put(null, key, value) ;
+				}
+
+				synchronized (t) {
+					t.update() ;
+				}
+			}
+		}) ;
+
+		db.sync() ;
+		env.cleanAndCheckpoint() ;
+		getDatabase(true) ;
+
+		available = true ;
+	}
+
+	/**
+	 * Cleans the given markup and splits it into sentences, in the same way as {@link org.wikipedia.miner.model.Page#getSentenceMarkup(int)}
+	 */
+	private static String[] getSentences(String markup, ArrayList<Integer> splits) {
+
+		MarkupStripper s = new MarkupStripper() ;
+		markup = s.stripAllButInternalLinksAndEmphasis(markup, ' ') ;
+		markup = s.stripNonArticleInternalLinks(markup, ' ') ;
+
+		if (splits == null || splits.isEmpty())
+			return new String[] {clean(markup)} ;
+
+		String[] sentences = new String[splits.size() + 1] ;
+
+		int start = 0 ;
+		for (int i=0 ; i<splits.size() ; i++) {
+			sentences[i] = clean(markup.substring(start, splits.get(i))) ;
+			start = splits.get(i) ;
+		}
+		sentences[splits.size()] = clean(markup.substring(start)) ;
+
+		return sentences ;
+	}
+
+	private static String clean(String sentence) {
+		return sentence.replaceAll("\\s+", " ").trim() ;
+	}
+
+	/**
+	 * Serialises sentences as a packed count, the packed length (in UTF-8 bytes) of each sentence, and then the UTF-8 text of all sentences
+	 */
+	private static class SentenceListBinding extends TupleBinding<String[]> {
+
+		@Override
+		public String[] entryToObject(TupleInput input) {
+
+			int sentenceCount = input.readPackedInt() ;
+
+			int[] lengths = new int[sentenceCount] ;
+			for (int i=0 ; i<sentenceCount ; i++)
+				lengths[i] = input.readPackedInt() ;
+
+			String[] sentences = new String[sentenceCount] ;
+			for (int i=0 ; i<sentenceCount ; i++) {
+				byte[] utf8 = new byte[lengths[i]] ;
+				input.readFast(utf8) ;
+
+				try {
+					sentences[i] = new String(utf8, "UTF-8") ;
+				} catch (UnsupportedEncodingException e) {
+					throw new RuntimeException(e) ;
+				}
+			}
+
+			return sentences ;
+		}
+
+		@Override
+		public void objectToEntry(String[] sentences, TupleOutput output) {
+
+			byte[][] utf8 = new byte[sentences.length][] ;
+
+			try {
+				for (int i=0 ; i<sentences.length ; i++)
+					utf8[i] = sentences[i].getBytes("UTF-8") ;
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e) ;
+			}
+
+			output.writePackedInt(sentences.length) ;
+
+			for (byte[] sentence:utf8)
+				output.writePackedInt(sentence.length) ;
+
+			for (byte[] sentence:utf8)
+				output.writeFast(sentence) ;
+		}
+	}
+}
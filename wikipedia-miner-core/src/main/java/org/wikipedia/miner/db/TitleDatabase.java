@@ -3,12 +3,8 @@ package org.wikipedia.miner.db;
 
 import gnu.trove.set.hash.TIntHashSet;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -85,47 +81,38 @@ public class TitleDatabase extends WDatabase<String,Integer>{
 		tracker.startTask(dataFile.length(), "Loading " + getName()) ;
 
 
-		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), "UTF-8")) ;
-
-		long bytesRead = 0 ;
-		int lineNum = 0 ;
+		CsvLineInput input = new CsvLineInput(dataFile) ;
 
+		//the page file is sorted by id rather than title, so entries must be sorted before they can be loaded in order
 		TreeMap<String, Integer> tmp = new TreeMap<String, Integer>() ;
 
-		String line ;
-		while ((line=input.readLine()) != null) {
-			bytesRead = bytesRead + line.length() + 1 ;
-			lineNum++ ;
-
-			CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream((line + "\n").getBytes("UTF-8"))) ;
+		while (input.nextLine()) {
 
-			WEntry<String,Integer> entry = deserialiseCsvRecord(cri) ;
+			WEntry<String,Integer> entry = deserialiseCsvRecord(input) ;
 
-			if (entry != null) {				
+			if (entry != null)
 				tmp.put(entry.getKey(), entry.getValue()) ;
-				tracker.update(bytesRead) ;
-			}
+
+			if (input.getLineNumber() % 1000 == 0)
+				tracker.update(input.getBytesRead()) ;
 		}
 		input.close();
-
-
+		tracker.update(input.getBytesRead()) ;
 
 		Database db = getDatabase(false) ;
 
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
+
 		for (Map.Entry<String, Integer> entry: tmp.entrySet()) {
 
-			DatabaseEntry k = new DatabaseEntry() ;
 			keyBinding.objectToEntry(entry.getKey(), k) ;
-
-			DatabaseEntry v = new DatabaseEntry() ;
 			valueBinding.objectToEntry(entry.getValue(), v) ;
 
 			db.put(null, k, v) ;
-			//TODO: progress update
 		}
 
-		input.close();
-
+		db.sync() ;
 		env.cleanAndCheckpoint() ;
 		getDatabase(true) ;
 	}
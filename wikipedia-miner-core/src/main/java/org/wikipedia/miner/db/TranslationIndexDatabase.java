@@ -0,0 +1,143 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.wikipedia.miner.db.struct.DbPage;
+import org.wikipedia.miner.db.struct.DbTranslations;
+import org.wikipedia.miner.model.Page.PageType;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+import com.sleepycat.bind.tuple.IntegerBinding;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A {@link WDatabase} for associating translated titles (prefixed by their language code, as in "de:Baum") with the id of
+ * the local article that they are a translation of. This is the reverse of the {@link WDatabase.DatabaseType#translations} database,
+ * from which it is derived.
+ * <p>
+ * Keys are sorted by language code first, so all translations into a single language are stored together. Only translations
+ * of articles and disambiguation pages are included, and if several of these share the same translation, only the one with the lowest id is kept.
+ */
+public class TranslationIndexDatabase extends WDatabase<String,Integer> {
+
+	private volatile Boolean available = null ;
+
+	/**
+	 * Creates or connects to a database, whose name and type will be {@link WDatabase.DatabaseType#articlesByTranslation}.
+	 *
+	 * @param env the WEnvironment surrounding this database
+	 */
+	public TranslationIndexDatabase(WEnvironment env) {
+		super(env, DatabaseType.articlesByTranslation, new StringBinding(), new IntegerBinding()) ;
+	}
+
+	/**
+	 * Returns the key under which the given translation is stored
+	 *
+	 * @param languageCode the language code of the translation (i.e. fn, jp, de, etc). This is not case sensitive.
+	 * @param title the (case sensitive) title of the translation
+	 * @return the key of the translation
+	 */
+	public static String getKey(String languageCode, String title) {
+		return languageCode.toLowerCase() + ":" + title ;
+	}
+
+	/**
+	 * Returns true if this database has been built, otherwise false (e.g. for environments built before it was introduced)
+	 *
+	 * @return true if this database has been built, otherwise false
+	 */
+	public boolean isAvailable() {
+
+		if (available == null)
+			available = exists() ;
+
+		return available ;
+	}
+
+	@Override
+	public WEntry<String, Integer> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
+		throw new UnsupportedOperationException() ;
+	}
+
+	@Override
+	public Integer filterCacheEntry(WEntry<String, Integer> e, WikipediaConfiguration conf) {
+
+		TIntHashSet validIds = conf.getArticlesOfInterest() ;
+
+		if (validIds != null && !validIds.contains(e.getValue()))
+			return null ;
+
+		return e.getValue();
+	}
+
+	/**
+	 * Builds this database by inverting every entry in the given translations database
+	 *
+	 * @param translations the {@link WDatabase.DatabaseType#translations} database
+	 * @param pages the {@link WDatabase.DatabaseType#page} database
+	 * @param overwrite true if the existing database should be overwritten, otherwise false
+	 * @param tracker an optional progress tracker (may be null)
+	 */
+	public void loadFromTranslations(WDatabase<Integer,DbTranslations> translations, WDatabase<Integer,DbPage> pages, boolean overwrite, ProgressTracker tracker) {
+
+		if (exists() && !overwrite)
+			return ;
+
+		if (tracker == null) tracker = new ProgressTracker(1, TranslationIndexDatabase.class) ;
+		tracker.startTask(translations.getDatabaseSize(), "Loading " + getName() + " database") ;
+
+		Database db = getDatabase(false) ;
+
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
+
+		//articles are iterated in ascending order of id, so the first article to claim a translation keeps it
+		WIterator<Integer,DbTranslations> iter = translations.getIterator() ;
+		try {
+			while (iter.hasNext()) {
+				WEntry<Integer,DbTranslations> e = iter.next() ;
+				tracker.update() ;
+
+				if (e.getValue().getTranslationsByLangCode() == null)
+					continue ;
+
+				DbPage page = pages.retrieve(e.getKey()) ;
+				if (page == null)
+					continue ;
+
+				PageType type = PageType.values()[page.getType()] ;
+				if (type != PageType.article && type != PageType.disambiguation)
+					continue ;
+
+				valueBinding.objectToEntry(e.getKey(), v) ;
+
+				for (Map.Entry<String,String> t:e.getValue().getTranslationsByLangCode().entrySet()) {
+					keyBinding.objectToEntry(getKey(t.getKey(), t.getValue()), k) ;
+					db.putNoOverwrite(null, k, v) ;
+				}
+			}
+		} finally {
+			iter.close() ;
+		}
+
+		db.sync() ;
+		env.cleanAndCheckpoint() ;
+		getDatabase(true) ;
+
+		available = true ;
+	}
+}
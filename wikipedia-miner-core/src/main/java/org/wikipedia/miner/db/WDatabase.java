@@ -3,25 +3,37 @@ package org.wikipedia.miner.db;
 
 import gnu.trove.map.hash.THashMap;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.hadoop.record.CsvRecordInput;
 import org.apache.log4j.Logger;
 import org.wikipedia.miner.db.struct.*;
+import org.wikipedia.miner.util.BoundedCache;
+import org.wikipedia.miner.util.OffHeapCache;
 import org.wikipedia.miner.util.ProgressTracker;
 import org.wikipedia.miner.util.WikipediaConfiguration;
 
 
 import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.CacheMode;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
@@ -74,6 +86,11 @@ public abstract class WDatabase<K,V> {
 		 * Associates String titles with the id of the page within the template namespace that this refers to
 		 */
 		templatesByTitle,
+		/**
+		 * Associates String titles of articles, disambiguation pages and redirects with the id of the article or disambiguation page 
+		 * they ultimately refer to, with redirects already resolved. This is derived from {@link #articlesByTitle}, {@link #redirectTargetBySource} and {@link #page}
+		 */
+		resolvedArticlesByTitle,
 
 
 		/**
@@ -142,10 +159,27 @@ public abstract class WDatabase<K,V> {
 		 */
 		translations,
 
+		/**
+		 * Associates String translated titles (prefixed by their language code, as in "de:Baum") with the id of the article 
+		 * they are a translation of. This is derived from {@link #translations} (see {@link TranslationIndexDatabase})
+		 */
+		articlesByTranslation,
+
 		/**
 		 * Associates integer id of page with its content, in mediawiki markup format
 		 */
 		markup,
+		/**
+		 * Associates integer id of page with its sentences, cleaned of all markup except internal links and emphasis. 
+		 * This is optional, and derived from {@link #markup} and {@link #sentenceSplits} (see {@link WEnvironment#prepareSentenceMarkup(WikipediaConfiguration, boolean, int)})
+		 */
+		sentenceMarkup,
+
+		/**
+		 * Associates integer id of article with bitmaps of the sentences in which it links to each of its targets. 
+		 * This is derived from {@link #pageLinksOut} (see {@link SentenceLinkDatabase})
+		 */
+		sentenceLinks,
 
 		/**
 		 * Associates integer {@link WEnvironment.StatisticName#ordinal()} with the value relevant to this statistic.
@@ -167,7 +201,30 @@ public abstract class WDatabase<K,V> {
 		/**
 		 * Focus on memory, by compressing values before storing them.
 		 */
-		space
+		space,
+
+		/**
+		 * Keep nothing on the heap, and instead read values directly from an immutable, memory-mapped snapshot
+		 * of the database (see {@link MappedStore}). The snapshot is created alongside the environment the first time
+		 * the database is cached. Unlike the other priorities, no entries are filtered out of the snapshot.
+		 */
+		mapped,
+
+		/**
+		 * Cache nothing up front, but keep the most frequently requested values (in compressed form) 
+		 * within a cache of bounded size. See {@link BoundedCache}. 
+		 * Databases cached with this priority are not considered to be {@link WDatabase#isCached() cached}, because 
+		 * values that are not found in the cache are still retrieved from the persistent database. 
+		 */
+		bounded,
+
+		/**
+		 * As for {@link #bounded}, but backed by a second, larger tier of values held outside of the Java heap (see {@link OffHeapCache}). 
+		 * Values read from the persistent database are placed in the off-heap tier, and are promoted to the on-heap tier 
+		 * only if they are requested often enough to displace its current entries. Values evicted from the on-heap tier 
+		 * remain in the off-heap tier until they stop being requested there too. 
+		 */
+		tiered
 	}
 
 
@@ -184,6 +241,11 @@ public abstract class WDatabase<K,V> {
 
 	private THashMap<K,byte[]> compactCache = null ;
 	private THashMap<K,V> fastCache = null ;
+	private volatile MappedStore mappedStore = null ;
+	private BoundedCache<K,byte[]> boundedCache = null ;
+	private OffHeapCache<K> offHeapCache = null ;
+
+	private DatabaseMetrics metrics = new DatabaseMetrics() ;
 
 	/**
 	 * Creates or connects to a database, whose name will match the given {@link WDatabase.DatabaseType}
@@ -245,14 +307,37 @@ public abstract class WDatabase<K,V> {
 	}
 
 	/**
-	 * Returns the number of entries in the database
+	 * Returns the number of entries in the database. This is taken from the environment's {@link EnvironmentManifest} if possible, 
+	 * because counting entries directly involves walking the entire btree.
 	 * 
 	 * @return the number of entries in the database
 	 */
 	public long getDatabaseSize() {
+
+		EnvironmentManifest manifest = env.getManifest() ;
+		if (manifest != null) {
+			long count = manifest.getEntryCount(name) ;
+			if (count >= 0)
+				return count ;
+		}
+
 		return getDatabase(true).count();
 	}
 
+	/**
+	 * Returns the number of entries that are expected to be cached, so caches can be sized before they are filled.
+	 * 
+	 * @return the expected number of cached entries, or 0 if this is not known.
+	 */
+	protected int getExpectedCacheSize() {
+
+		EnvironmentManifest manifest = env.getManifest() ;
+		if (manifest == null)
+			return 0 ;
+
+		return (int)Math.max(0, Math.min(Integer.MAX_VALUE, manifest.getEntryCount(name))) ;
+	}
+
 	/**
 	 * Returns the number of entries that have been cached to memory
 	 * 
@@ -262,7 +347,11 @@ public abstract class WDatabase<K,V> {
 		if (!isCached)
 			return 0 ;
 
-		if (cachePriority == CachePriority.space)
+		MappedStore store = mappedStore ;
+		if (store != null)
+			return store.size() ;
+
+		if (cachePriority == CachePriority.speed)
 			return fastCache.size();
 		else
 			return compactCache.size();
@@ -286,6 +375,35 @@ public abstract class WDatabase<K,V> {
 		return cachePriority ;
 	}
 
+	/**
+	 * Returns the bounded cache of this database, if it has been cached with {@link CachePriority#bounded} priority. 
+	 * This can be used to inspect hit ratios. 
+	 * 
+	 * @return the bounded cache of this database, or null if it does not have one.
+	 */
+	public BoundedCache<K,byte[]> getBoundedCache() {
+		return boundedCache ;
+	}
+
+	/**
+	 * Returns the off-heap cache of this database, if it has been cached with {@link CachePriority#tiered} priority. 
+	 * This can be used to inspect hit ratios. 
+	 * 
+	 * @return the off-heap cache of this database, or null if it does not have one.
+	 */
+	public OffHeapCache<K> getOffHeapCache() {
+		return offHeapCache ;
+	}
+
+	/**
+	 * Returns counters that describe how this database has been accessed
+	 * 
+	 * @return counters that describe how this database has been accessed
+	 */
+	public DatabaseMetrics getMetrics() {
+		return metrics ;
+	}
+
 	/**
 	 * true if there is a persistent database underlying this, otherwise false
 	 * 
@@ -309,25 +427,157 @@ public abstract class WDatabase<K,V> {
 	 */
 	public V retrieve(K key) {
 
-		if (isCached) {
-			//System.out.println("c") ;
-			return retrieveFromCache(key) ;
+		long start = System.nanoTime() ;
+		V value ;
+
+		MappedStore store = mappedStore ;
+		if (store != null) {
+			value = retrieveFromMappedStore(store, key) ;
+			metrics.recordCacheLookup(value != null) ;
+		} else if (isCached) {
+			value = retrieveFromCache(key) ;
+			metrics.recordCacheLookup(value != null) ;
 		} else {
-			//System.out.println("d") ;
-			Database db = getDatabase(true) ;
+			byte[] data = retrieveRawFromDatabase(key) ;
+			value = (data == null) ? null : deserialise(data) ;
+		}
+
+		metrics.recordLatency(System.nanoTime() - start) ;
+		return value ;
+	}
+
+	/**
+	 * Retrieves the serialised value associated with the given key, without deserialising it. 
+	 * <p>
+	 * This is intended for hot paths that read values through a flyweight view (such as {@link DbLabelView} 
+	 * or {@link IntListView}) rather than building a new object graph for every lookup. When the database has been cached with 
+	 * {@link CachePriority#space} or {@link CachePriority#mapped} priority, or has not been cached at all, the bytes are returned exactly 
+	 * as they are stored. When it has been cached with {@link CachePriority#speed} priority, the cached value has to be serialised.
+	 * 
+	 * @param key the key to search for
+	 * @return the serialised value associated with the given key, or null if none exists. This must not be modified.
+	 */
+	public byte[] retrieveRaw(K key) {
+
+		long start = System.nanoTime() ;
+		byte[] data ;
 
+		MappedStore store = mappedStore ;
+		if (store != null) {
 			DatabaseEntry dbKey = new DatabaseEntry() ;
 			keyBinding.objectToEntry(key, dbKey) ;
 
-			DatabaseEntry dbValue = new DatabaseEntry() ;
+			data = retrieveRawFromMappedStore(store, getBytes(dbKey)) ;
+			metrics.recordCacheLookup(data != null) ;
+		} else if (isCached) {
+			data = retrieveRawFromCache(key) ;
+			metrics.recordCacheLookup(data != null) ;
+		} else {
+			data = retrieveRawFromDatabase(key) ;
+		}
 
-			OperationStatus os = db.get(null, dbKey, dbValue, LockMode.READ_COMMITTED) ; 
+		metrics.recordLatency(System.nanoTime() - start) ;
+		return data ;
+	}
 
-			if (!os.equals(OperationStatus.SUCCESS)) 
-				return null ;
-			else
-				return valueBinding.entryToObject(dbValue) ;
+	private byte[] retrieveRawFromDatabase(K key) {
+
+		byte[] cachedData = retrieveFromTiers(key) ;
+
+		if (cachedData != null) {
+			metrics.recordHit() ;
+			return cachedData ;
+		}
+
+		metrics.recordMiss() ;
+
+		Database db = getDatabase(true) ;
+
+		DatabaseEntry dbKey = new DatabaseEntry() ;
+		keyBinding.objectToEntry(key, dbKey) ;
+
+		DatabaseEntry dbValue = new DatabaseEntry() ;
+
+		OperationStatus os = db.get(null, dbKey, dbValue, LockMode.READ_COMMITTED) ; 
+
+		if (!os.equals(OperationStatus.SUCCESS)) {
+			metrics.recordRead(0) ;
+			return null ;
+		}
+
+		metrics.recordRead(dbValue.getSize()) ;
+
+		addToTiers(key, dbValue.getData()) ;
+
+		return dbValue.getData() ;
+	}
+
+	/**
+	 * Retrieves a serialised value from the on-heap tier, or failing that the off-heap tier, offering anything found 
+	 * off-heap for promotion to the on-heap tier.
+	 */
+	private byte[] retrieveFromTiers(K key) {
+
+		if (boundedCache == null)
+			return null ;
+
+		byte[] cachedData = boundedCache.get(key) ;
+
+		if (cachedData != null || offHeapCache == null)
+			return cachedData ;
+
+		cachedData = offHeapCache.get(key) ;
+
+		//the on-heap tier only admits this if it has been requested more often than whatever it would displace
+		if (cachedData != null)
+			boundedCache.put(key, cachedData) ;
+
+		return cachedData ;
+	}
+
+	/**
+	 * Adds a serialised value that was read from the persistent database to the lowest tier of cache 
+	 */
+	private void addToTiers(K key, byte[] data) {
+
+		if (offHeapCache != null)
+			offHeapCache.put(key, data) ;
+		else if (boundedCache != null)
+			boundedCache.put(key, data) ;
+	}
+
+	/**
+	 * Retrieves the values associated with each of the given keys. This is much more efficient than calling 
+	 * {@link #retrieve(Object)} repeatedly if the database has not been cached, because keys are looked up in 
+	 * the order in which they are stored, using a single cursor. 
+	 * 
+	 * @param keys the keys to search for
+	 * @param results an array (at least as long as keys) that will be filled so that results[i] contains the value associated with keys[i], or null if none exists.
+	 */
+	public void retrieveAll(K[] keys, V[] results) {
+
+		if (results.length < keys.length)
+			throw new IllegalArgumentException("results must be at least as long as keys") ;
+
+		if (mappedStore != null || isCached) {
+			retrieveAllFromMemory(keys, results) ;
+			return ;
+		}
+
+		byte[][] serialisedKeys = new byte[keys.length][] ;
+		int[] order = new int[keys.length] ;
+
+		for (int i=0 ; i<keys.length ; i++) {
+			DatabaseEntry dbKey = new DatabaseEntry() ;
+			keyBinding.objectToEntry(keys[i], dbKey) ;
+
+			serialisedKeys[i] = getBytes(dbKey) ;
+			order[i] = i ;
 		}
+
+		sortBySerialisedKey(order, serialisedKeys) ;
+
+		retrieveAllFromDatabase(keys, serialisedKeys, order, results) ;
 	}
 
 	/**
@@ -368,35 +618,43 @@ public abstract class WDatabase<K,V> {
 
 		Database db = getDatabase(false) ;
 
-		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), "UTF-8")) ;
+		CsvLineInput input = new CsvLineInput(dataFile) ;
 
-		long bytesRead = 0 ;
-		int lineNum = 0 ;
+		DatabaseEntry k = new DatabaseEntry() ;
+		DatabaseEntry v = new DatabaseEntry() ;
 
-		String line ;
-		while ((line=input.readLine()) != null) {
-			bytesRead = bytesRead + line.length() + 1 ;
-			lineNum++ ;
+		byte[] lastKey = null ;
+		boolean sorted = true ;
 
-			CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream((line + "\n").getBytes("UTF-8"))) ;
+		while (input.nextLine()) {
 
-			WEntry<K,V> entry = deserialiseCsvRecord(cri) ;
+			WEntry<K,V> entry = deserialiseCsvRecord(input) ;
 
 			if (entry != null) {
-				DatabaseEntry k = new DatabaseEntry() ;
 				keyBinding.objectToEntry(entry.getKey(), k) ;
-
-				DatabaseEntry v = new DatabaseEntry() ;
 				valueBinding.objectToEntry(entry.getValue(), v) ;
 
+				if (sorted) {
+					//keys that arrive in order are simply appended to the end of the btree, so each node is only written once
+					byte[] key = getBytes(k) ;
+					if (lastKey != null && compareBytes(lastKey, key) > 0) {
+						Logger.getLogger(WDatabase.class).warn(dataFile.getName() + " is not sorted by key, so " + name + " will load more slowly") ;
+						sorted = false ;
+					}
+					lastKey = key ;
+				}
+
 				db.put(null, k, v) ;
 			}
 
-			tracker.update(bytesRead) ;
+			if (input.getLineNumber() % 1000 == 0)
+				tracker.update(input.getBytesRead()) ;
 		}
 
 		input.close();
+		tracker.update(input.getBytesRead()) ;
 
+		db.sync() ;
 		env.cleanAndCheckpoint() ;
 		getDatabase(true) ;
 	}
@@ -413,16 +671,44 @@ public abstract class WDatabase<K,V> {
 	 */
 	public void cache(WikipediaConfiguration conf, ProgressTracker tracker) throws DatabaseException, IOException {
 
-		Database db = getDatabase(true) ;
+		getDatabase(true) ;
 
 		this.cachePriority = conf.getCachePriority(type) ;
 
+		if (cachePriority == CachePriority.mapped) {
+			cacheToMappedStore(tracker) ;
+			return ;
+		}
+
+		if (cachePriority == CachePriority.bounded || cachePriority == CachePriority.tiered) {
+
+			if (cachePriority == CachePriority.tiered)
+				offHeapCache = new OffHeapCache<K>(conf.getCacheOffHeapBytes(type)) ;
+
+			boundedCache = new BoundedCache<K,byte[]>(conf.getCacheMaxEntries(type), conf.getCacheMaxBytes(type), new BoundedCache.Weigher<byte[]>() {
+				public int weigh(byte[] value) {
+					return value.length ;
+				}
+			}) ;
+			return ;
+		}
+
 		initializeCache() ;
 
 		if (tracker == null) 
 			tracker = new ProgressTracker(1, WDatabase.class) ;
 
-		tracker.startTask(db.count(), "caching " + name + " database") ;
+		long fingerprint = CacheSnapshot.fingerprint(conf, getSnapshotPriority()) ;
+
+		//first, try caching from a snapshot of a previous cache
+		if (cacheFromSnapshot(fingerprint, conf, tracker)) {
+			finalizeCache() ;
+			return ;
+		}
+
+		tracker.startTask(getDatabaseSize(), "caching " + name + " database") ;
+
+		CacheSnapshot.Writer snapshot = createSnapshotWriter(fingerprint) ;
 
 		//first, try caching from file
 		if (conf.getDatabaseDirectory() != null) {
@@ -430,17 +716,11 @@ public abstract class WDatabase<K,V> {
 
 			if (dataFile.canRead()) {
 
-				BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), "UTF-8")) ;
-
-				long lineNum = 0 ;
+				CsvLineInput input = new CsvLineInput(dataFile) ;
 
-				String line ;
-				while ((line=input.readLine()) != null) {
-					lineNum++ ;
+				while (input.nextLine()) {
 
-					CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream((line + "\n").getBytes("UTF-8"))) ;
-
-					WEntry<K,V> entry = deserialiseCsvRecord(cri) ;
+					WEntry<K,V> entry = deserialiseCsvRecord(input) ;
 
 					if (entry != null) {
 						V filteredValue = filterCacheEntry(entry, conf) ;
@@ -448,13 +728,15 @@ public abstract class WDatabase<K,V> {
 						if (filteredValue != null) {
 							WEntry<K,V> filteredEntry = new WEntry<K,V>(entry.getKey(), filteredValue) ;
 							addToCache(filteredEntry) ;
+							snapshot = writeToSnapshot(snapshot, filteredEntry) ;
 						}
 					}
 
-					tracker.update(lineNum) ;
+					tracker.update(input.getLineNumber()) ;
 				}
 
 				input.close();	
+				finishSnapshot(snapshot) ;
 				finalizeCache() ;
 
 				return;
@@ -475,15 +757,62 @@ public abstract class WDatabase<K,V> {
 			if (filteredValue != null) {
 				WEntry<K,V> filteredEntry = new WEntry<K,V>(entry.getKey(), filteredValue) ;
 				addToCache(filteredEntry) ;
+				snapshot = writeToSnapshot(snapshot, filteredEntry) ;
 			}
 
 			tracker.update() ;
 		}
 
 		iter.close();
+		finishSnapshot(snapshot) ;
 		finalizeCache() ;
 	}
 
+	/**
+	 * Writes an immutable snapshot of every entry in this database to the given file, so that it can later be 
+	 * memory-mapped by a {@link MappedStore}. 
+	 * 
+	 * @param snapshotFile the file to write the snapshot to
+	 * @param tracker an optional progress tracker
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeMappedSnapshot(File snapshotFile, ProgressTracker tracker) throws IOException {
+
+		Database db = getDatabase(true) ;
+
+		if (tracker == null) 
+			tracker = new ProgressTracker(1, WDatabase.class) ;
+
+		tracker.startTask(getDatabaseSize(), "writing snapshot of " + name + " database") ;
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		boolean finished = false ;
+		Cursor cursor = null ;
+
+		try {
+			cursor = db.openCursor(null, null) ;
+			cursor.setCacheMode(CacheMode.UNCHANGED) ;
+
+			DatabaseEntry key = new DatabaseEntry() ;
+			DatabaseEntry value = new DatabaseEntry() ;
+
+			while (cursor.getNext(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+				writer.add(key.getData(), value.getData()) ;
+				tracker.update() ;
+			}
+
+			writer.finish() ;
+			finished = true ;
+		} finally {
+			if (cursor != null)
+				cursor.close() ;
+
+			//leaves no temporary files behind if anything (including a DatabaseException) went wrong
+			if (!finished)
+				writer.abort() ;
+		}
+	}
+
 	/**
 	 * @return an iterator for the entries in this database, in ascending key order.
 	 */
@@ -491,6 +820,251 @@ public abstract class WDatabase<K,V> {
 		return new WIterator<K,V>(this) ;
 	}
 
+	/**
+	 * Splits this database into (up to) the given number of contiguous key ranges, and returns an iterator over each of them.
+	 * Each iterator has its own cursor, so they can be consumed concurrently from different threads. Together they
+	 * visit every entry exactly once.
+	 * <p>
+	 * Ranges are chosen by interpolating between the first and last keys, so they will only contain similar numbers
+	 * of entries if keys are fairly evenly distributed. 
+	 * 
+	 * @param partitions the number of ranges to split this database into
+	 * @return iterators over disjoint ranges of this database, in ascending key order.
+	 */
+	public ArrayList<WIterator<K,V>> getIterators(int partitions) {
+
+		ArrayList<WIterator<K,V>> iterators = new ArrayList<WIterator<K,V>>() ;
+
+		byte[] fromKey = null ;
+		for (byte[] toKey:getSplitKeys(partitions)) {
+			iterators.add(new WIterator<K,V>(this, fromKey, toKey)) ;
+			fromKey = toKey ;
+		}
+		iterators.add(new WIterator<K,V>(this, fromKey, null)) ;
+
+		return iterators ;
+	}
+
+	/**
+	 * Visits every entry in this database, using the given number of threads to scan separate key ranges concurrently.
+	 * Entries are not visited in any particular order, and the visitor must be safe to call from multiple threads at once.
+	 * 
+	 * @param threads the number of threads to use
+	 * @param visitor the visitor that will be given each entry
+	 * @throws RuntimeException if the visitor fails for any entry (after all threads have stopped)
+	 */
+	public void parallelIterate(int threads, final EntryVisitor<K,V> visitor) {
+
+		parallelIterate(threads, new VisitorFactory<K,V,EntryVisitor<K,V>>() {
+			public EntryVisitor<K,V> createVisitor() {
+				return visitor ;
+			}
+		}) ;
+	}
+
+	/**
+	 * Visits every entry in this database, using the given number of threads to scan separate key ranges concurrently.
+	 * <p>
+	 * Each range is given its own visitor, which only ever sees the entries of that range and is only called from one 
+	 * thread at a time. This allows visitors to gather results without any locking, and for the results to be merged once 
+	 * all of the ranges have been visited.
+	 * <p>
+	 * If any visitor fails, all ranges that are still being scanned are cancelled. 
+	 * 
+	 * @param threads the number of threads to use
+	 * @param factory a factory for the visitors of each range
+	 * @return the visitors of every range, once every range has been visited
+	 * @throws RuntimeException if a visitor fails for any entry (after all threads have stopped)
+	 */
+	public <T extends EntryVisitor<K,V>> ArrayList<T> parallelIterate(int threads, VisitorFactory<K,V,T> factory) {
+
+		//more ranges than threads, so that threads which finish early can help with uneven ranges
+		final ArrayList<WIterator<K,V>> iterators = getIterators(threads <= 1 ? 1 : threads * 4) ;
+		final ArrayList<T> visitors = new ArrayList<T>() ;
+
+		//scans are stopped with a flag rather than by interrupting them, because an interrupt during IO invalidates the environment
+		final AtomicBoolean cancelled = new AtomicBoolean(false) ;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, iterators.size()))) ;
+		CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor) ;
+		ArrayList<Future<Object>> scans = new ArrayList<Future<Object>>() ;
+
+		Throwable failure = null ;
+
+		try {
+			for (final WIterator<K,V> iter:iterators) {
+				final T visitor = factory.createVisitor() ;
+				visitors.add(visitor) ;
+
+				scans.add(completion.submit(new Callable<Object>() {
+					public Object call() {
+						try {
+							while (iter.hasNext() && !cancelled.get())
+								visitor.visit(iter.next()) ;
+						} finally {
+							iter.close() ;
+						}
+						return null ;
+					}
+				})) ;
+			}
+
+			//wait for scans as they complete, so the first failure is noticed straight away
+			for (int i=0 ; i<scans.size() && failure == null ; i++) {
+				try {
+					completion.take().get() ;
+				} catch (ExecutionException e) {
+					failure = e.getCause() ;
+				}
+			}
+		} catch (InterruptedException e) {
+			failure = e ;
+		} finally {
+			if (failure != null) {
+				cancelled.set(true) ;
+
+				for (Future<Object> scan:scans)
+					scan.cancel(false) ;
+			}
+
+			executor.shutdown() ;
+			awaitTermination(executor) ;
+
+			//ranges that were cancelled before they started still have open cursors
+			for (WIterator<K,V> iter:iterators)
+				iter.close() ;
+		}
+
+		if (failure == null)
+			return visitors ;
+
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure ;
+
+		if (failure instanceof Error)
+			throw (Error)failure ;
+
+		throw new RuntimeException(failure) ;
+	}
+
+	private static void awaitTermination(ExecutorService executor) {
+
+		boolean interrupted = false ;
+
+		while (true) {
+			try {
+				if (executor.awaitTermination(1, TimeUnit.SECONDS))
+					break ;
+			} catch (InterruptedException e) {
+				interrupted = true ;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt() ;
+	}
+
+	/**
+	 * Returns keys that split this database into (up to) the given number of ranges, in ascending order.
+	 */
+	private ArrayList<byte[]> getSplitKeys(int partitions) {
+
+		ArrayList<byte[]> splitKeys = new ArrayList<byte[]>() ;
+
+		if (partitions <= 1)
+			return splitKeys ;
+
+		DatabaseEntry key = new DatabaseEntry() ;
+		DatabaseEntry value = new DatabaseEntry() ;
+		value.setPartial(0, 0, true) ;
+
+		Cursor cursor = getDatabase(true).openCursor(null, null) ;
+
+		long first = 0 ;
+		long last = 0 ;
+		boolean empty = true ;
+
+		if (cursor.getFirst(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+			first = getKeyPrefix(key) ;
+			empty = false ;
+		}
+
+		if (cursor.getLast(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS)
+			last = getKeyPrefix(key) ;
+
+		cursor.close() ;
+
+		if (empty || last <= first)
+			return splitKeys ;
+
+		long step = Math.max(1, (last - first) / partitions) ;
+
+		long prev = first ;
+		for (int p=1 ; p<partitions ; p++) {
+			long split = first + (step * p) ;
+
+			if (split <= prev || split > last)
+				break ;
+
+			byte[] splitKey = new byte[KEY_PREFIX_LENGTH] ;
+			for (int i=0 ; i<KEY_PREFIX_LENGTH ; i++)
+				splitKey[i] = (byte)(split >>> (8 * (KEY_PREFIX_LENGTH - 1 - i))) ;
+
+			splitKeys.add(splitKey) ;
+			prev = split ;
+		}
+
+		return splitKeys ;
+	}
+
+	//the number of leading key bytes used to choose split keys (small enough that they can be treated as a positive long)
+	private static final int KEY_PREFIX_LENGTH = 7 ;
+
+	private static long getKeyPrefix(DatabaseEntry key) {
+
+		long prefix = 0 ;
+		for (int i=0 ; i<KEY_PREFIX_LENGTH ; i++) {
+			prefix = prefix << 8 ;
+
+			if (i < key.getSize())
+				prefix = prefix | (key.getData()[key.getOffset() + i] & 0xff) ;
+		}
+		return prefix ;
+	}
+
+	/**
+	 * A visitor for entries, as used by {@link WDatabase#parallelIterate(int, EntryVisitor)}
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	public interface EntryVisitor<K,V> {
+
+		/**
+		 * Called once for each entry in the database. This may be called from several threads at once.
+		 * 
+		 * @param entry an entry in the database
+		 */
+		public void visit(WEntry<K,V> entry) ;
+	}
+
+	/**
+	 * Creates a visitor for each key range, as used by {@link WDatabase#parallelIterate(int, VisitorFactory)}
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 * @param <T> the type of visitor
+	 */
+	public interface VisitorFactory<K,V,T extends EntryVisitor<K,V>> {
+
+		/**
+		 * Called once for each key range, before any entries are visited
+		 * 
+		 * @return a visitor for the entries of a single key range
+		 */
+		public T createVisitor() ;
+	}
+
 	/**
 	 * Closes the underlying database
 	 */
@@ -501,6 +1075,23 @@ public abstract class WDatabase<K,V> {
 			database = null ;
 		}
 
+		MappedStore store = mappedStore ;
+		if (store != null) {
+			mappedStore = null ;
+			store.close() ;
+		}
+
+		if (boundedCache != null) {
+			Logger.getLogger(WDatabase.class).info("Bounded cache of '" + name + "': " + boundedCache) ;
+			boundedCache = null ;
+		}
+
+		if (offHeapCache != null) {
+			Logger.getLogger(WDatabase.class).info("Off-heap cache of '" + name + "': " + offHeapCache) ;
+			offHeapCache.clear() ;
+			offHeapCache = null ;
+		}
+
 		fastCache = null ;
 		compactCache = null ;
 	}
@@ -523,18 +1114,425 @@ public abstract class WDatabase<K,V> {
 			if (cachedData == null)
 				return null ;
 
-			DatabaseEntry dbValue = new DatabaseEntry(cachedData) ;
-			return valueBinding.entryToObject(dbValue) ;
+			return deserialise(cachedData) ;
+		}
+	}
+
+
+	protected byte[] retrieveRawFromCache(K key) {
+
+		if (cachePriority == CachePriority.speed) 
+			return serialise(fastCache.get(key)) ;
+		else 
+			return compactCache.get(key) ;
+	}
+
+	/**
+	 * Serialises the given value with this database's value binding
+	 * 
+	 * @param value the value to serialise (may be null)
+	 * @return the serialised value, or null if the value was null
+	 */
+	protected byte[] serialise(V value) {
+
+		if (value == null)
+			return null ;
+
+		DatabaseEntry dbValue = new DatabaseEntry() ;
+		valueBinding.objectToEntry(value, dbValue) ;
+		return getBytes(dbValue) ;
+	}
+
+	/**
+	 * Deserialises the given value with this database's value binding, recording how long this takes
+	 * 
+	 * @param data the serialised value
+	 * @return the deserialised value
+	 */
+	protected V deserialise(byte[] data) {
+		return deserialise(new DatabaseEntry(data)) ;
+	}
+
+	private V deserialise(DatabaseEntry entry) {
+
+		long start = System.nanoTime() ;
+		V value = valueBinding.entryToObject(entry) ;
+		metrics.recordDeserialisation(System.nanoTime() - start) ;
+
+		return value ;
+	}
+
+	protected void retrieveAllFromMemory(K[] keys, V[] results) {
+
+		MappedStore store = mappedStore ;
+
+		for (int i=0 ; i<keys.length ; i++) {
+			long start = System.nanoTime() ;
+
+			if (store != null)
+				results[i] = retrieveFromMappedStore(store, keys[i]) ;
+			else
+				results[i] = retrieveFromCache(keys[i]) ;
+
+			recordMemoryLookup(results[i], start) ;
+		}
+	}
+
+	/**
+	 * Records a single request that was answered from memory (a full cache or memory-mapped snapshot), 
+	 * or that was answered by an earlier request for the same key within a batch. 
+	 * 
+	 * @param value the value that was found, or null if there was none
+	 * @param start the time (as given by {@link System#nanoTime()}) at which the request was started
+	 */
+	protected void recordMemoryLookup(V value, long start) {
+		metrics.recordCacheLookup(value != null) ;
+		metrics.recordLatency(System.nanoTime() - start) ;
+	}
+
+	/**
+	 * Retrieves values from the persistent database (or the bounded and off-heap caches, if there are any), visiting keys in 
+	 * the given order. 
+	 * 
+	 * @param keys the keys to search for
+	 * @param serialisedKeys the keys to search for, already serialised by the key binding 
+	 * @param order the indexes of keys, sorted so that their serialised forms are in ascending order
+	 * @param results the array to fill with values 
+	 */
+	protected void retrieveAllFromDatabase(K[] keys, byte[][] serialisedKeys, int[] order, V[] results) {
+
+		Cursor cursor = openBatchCursor() ;
+
+		DatabaseEntry dbKey = new DatabaseEntry() ;
+		DatabaseEntry dbValue = new DatabaseEntry() ;
+
+		int prev = -1 ;
+
+		try {
+			for (int i:order) {
+
+				//no need to search for the same key twice
+				if (prev >= 0 && compareBytes(serialisedKeys[prev], serialisedKeys[i]) == 0) {
+					results[i] = results[prev] ;
+					recordMemoryLookup(results[i], System.nanoTime()) ;
+					continue ;
+				}
+				prev = i ;
+
+				dbKey.setData(serialisedKeys[i]) ;
+				results[i] = retrieveWithCursor(cursor, keys[i], dbKey, dbValue) ;
+			}
+		} finally {
+			cursor.close() ;
+		}
+	}
+
+	/**
+	 * Opens a cursor for looking up a batch of keys with {@link #retrieveWithCursor(Cursor, Object, DatabaseEntry, DatabaseEntry)}.
+	 * This must be closed once the batch is complete.
+	 * 
+	 * @return a cursor over the persistent database
+	 */
+	protected Cursor openBatchCursor() {
+		return getDatabase(true).openCursor(null, CursorConfig.READ_COMMITTED) ;
+	}
+
+	/**
+	 * Returns true if this database has a bounded cache (and possibly an off-heap cache) in front of the persistent database, 
+	 * in which case batch lookups need to know each key as well as its serialised form. 
+	 * 
+	 * @return true if this database has a bounded cache, otherwise false
+	 */
+	protected boolean isTiered() {
+		return boundedCache != null ;
+	}
+
+	/**
+	 * Retrieves a single value during a batch lookup, from the bounded and off-heap caches if possible, 
+	 * or otherwise by moving the given cursor to the given serialised key.
+	 * 
+	 * @param cursor a cursor opened with {@link #openBatchCursor()}
+	 * @param key the key to search for. This is only needed to consult the bounded and off-heap caches, so may be null if {@link #isTiered()} is false.
+	 * @param dbKey the serialised key to search for
+	 * @param dbValue an entry to read the serialised value into (which may be reused from one call to the next)
+	 * @return the value associated with the given key, or null if none exists.
+	 */
+	protected V retrieveWithCursor(Cursor cursor, K key, DatabaseEntry dbKey, DatabaseEntry dbValue) {
+
+		long start = System.nanoTime() ;
+		V value ;
+
+		byte[] cachedData = (key == null) ? null : retrieveFromTiers(key) ;
+
+		if (cachedData != null) {
+			metrics.recordHit() ;
+			value = deserialise(cachedData) ;
+		} else {
+			metrics.recordMiss() ;
+
+			OperationStatus os = cursor.getSearchKey(dbKey, dbValue, LockMode.DEFAULT) ;
+
+			if (os.equals(OperationStatus.SUCCESS)) {
+				metrics.recordRead(dbValue.getSize()) ;
+
+				if (key != null)
+					addToTiers(key, getBytes(dbValue)) ;
+
+				value = deserialise(dbValue) ;
+			} else {
+				metrics.recordRead(0) ;
+				value = null ;
+			}
 		}
+
+		metrics.recordLatency(System.nanoTime() - start) ;
+		return value ;
 	}
 
+	/**
+	 * Sorts the given indexes so that the serialised keys they refer to are in the same (unsigned, lexicographic) 
+	 * order used by the persistent database. This is a merge sort, so indexes of equal keys keep their relative order.
+	 * 
+	 * @param order indexes into serialisedKeys
+	 * @param serialisedKeys keys serialised by the key binding 
+	 */
+	protected static void sortBySerialisedKey(int[] order, byte[][] serialisedKeys) {
+		mergeSort(order, new int[order.length], 0, order.length, serialisedKeys) ;
+	}
+
+	private static void mergeSort(int[] order, int[] buffer, int from, int to, byte[][] serialisedKeys) {
+
+		if (to - from <= 16) {
+			//insertion sort for short runs
+			for (int i=from+1 ; i<to ; i++) {
+				int index = order[i] ;
+				int j = i ;
+				while (j > from && compareBytes(serialisedKeys[order[j-1]], serialisedKeys[index]) > 0) {
+					order[j] = order[j-1] ;
+					j-- ;
+				}
+				order[j] = index ;
+			}
+			return ;
+		}
+
+		int mid = (from + to) >>> 1 ;
+		mergeSort(order, buffer, from, mid, serialisedKeys) ;
+		mergeSort(order, buffer, mid, to, serialisedKeys) ;
+
+		//already in order
+		if (compareBytes(serialisedKeys[order[mid-1]], serialisedKeys[order[mid]]) <= 0)
+			return ;
+
+		System.arraycopy(order, from, buffer, from, to - from) ;
+
+		int i = from ;
+		int j = mid ;
+		int k = from ;
+
+		while (i < mid && j < to) {
+			if (compareBytes(serialisedKeys[buffer[j]], serialisedKeys[buffer[i]]) < 0)
+				order[k++] = buffer[j++] ;
+			else
+				order[k++] = buffer[i++] ;
+		}
+
+		while (i < mid)
+			order[k++] = buffer[i++] ;
+
+		while (j < to)
+			order[k++] = buffer[j++] ;
+	}
+
+	/**
+	 * Compares serialised keys in the same (unsigned, lexicographic) order used by the persistent database 
+	 */
+	protected static int compareBytes(byte[] a, byte[] b) {
+
+		int len = Math.min(a.length, b.length) ;
+
+		for (int i=0 ; i<len ; i++) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff) ;
+			if (cmp != 0)
+				return cmp ;
+		}
+		return a.length - b.length ;
+	}
+
+	private V retrieveFromMappedStore(MappedStore store, K key) {
+
+		DatabaseEntry dbKey = new DatabaseEntry() ;
+		keyBinding.objectToEntry(key, dbKey) ;
+
+		return retrieveFromMappedStore(store, getBytes(dbKey)) ;
+	}
+
+	private V retrieveFromMappedStore(MappedStore store, byte[] serialisedKey) {
+
+		byte[] data = retrieveRawFromMappedStore(store, serialisedKey) ;
+
+		if (data == null)
+			return null ;
+
+		return deserialise(data) ;
+	}
+
+	private byte[] retrieveRawFromMappedStore(MappedStore store, byte[] serialisedKey) {
+
+		byte[] data = store.get(serialisedKey) ;
+
+		if (data != null)
+			metrics.recordMappedRead(data.length) ;
+
+		return data ;
+	}
+
+	/**
+	 * Retrieves a value from the memory-mapped snapshot of this database, given its serialised key. 
+	 * This must only be called if the database has been cached with {@link CachePriority#mapped} priority.
+	 * 
+	 * @param serialisedKey the key to search for, serialised by the key binding
+	 * @return the value associated with the given key, or null if none exists.
+	 */
+	protected V retrieveFromMappedStore(byte[] serialisedKey) {
+		return retrieveFromMappedStore(mappedStore, serialisedKey) ;
+	}
+
+	/**
+	 * Returns exactly the bytes held by the given entry. Tuple bindings may leave an entry pointing 
+	 * into a larger buffer, in which case the relevant portion is copied. 
+	 */
+	protected static byte[] getBytes(DatabaseEntry entry) {
+
+		byte[] data = entry.getData() ;
+
+		if (entry.getOffset() == 0 && entry.getSize() == data.length)
+			return data ;
+
+		return Arrays.copyOfRange(data, entry.getOffset(), entry.getOffset() + entry.getSize()) ;
+	}
+
+	private CachePriority getSnapshotPriority() {
+
+		//databases cached without a priority are cached for space
+		if (cachePriority == null)
+			return CachePriority.space ;
+
+		return cachePriority ;
+	}
+
+	private File getCacheSnapshotFile(CachePriority priority) {
+		return new File(env.getEnvironment().getHome(), name + "." + priority.name() + ".cache") ;
+	}
+
+	private boolean cacheFromSnapshot(long fingerprint, WikipediaConfiguration conf, ProgressTracker tracker) throws IOException {
+
+		File snapshotFile = getCacheSnapshotFile(getSnapshotPriority()) ;
+
+		//ignore the snapshot if it is older than the csv file we would otherwise cache from
+		if (conf.getDatabaseDirectory() != null) {
+			File dataFile = new File(conf.getDatabaseDirectory() + File.separator + name + ".csv") ; 
+
+			if (dataFile.canRead() && dataFile.lastModified() > snapshotFile.lastModified())
+				return false ;
+		}
+
+		CacheSnapshot.Reader reader = CacheSnapshot.Reader.open(snapshotFile, fingerprint) ;
+
+		if (reader == null)
+			return false ;
+
+		tracker.startTask(reader.getCount(), "caching " + name + " database from snapshot") ;
+
+		try {
+			while (reader.next()) {
+				K key = keyBinding.entryToObject(new DatabaseEntry(reader.getKey())) ;
+				addSerialisedToCache(key, reader.getValue()) ;
+
+				tracker.update() ;
+			}
+		} catch (IOException e) {
+			Logger.getLogger(WDatabase.class).warn("Could not read cache snapshot for '" + name + "'", e) ;
+			reader.close() ;
+
+			//start again from scratch
+			initializeCache() ;
+			return false ;
+		}
+
+		reader.close() ;
+		return true ;
+	}
+
+	private CacheSnapshot.Writer createSnapshotWriter(long fingerprint) {
+
+		try {
+			return new CacheSnapshot.Writer(getCacheSnapshotFile(getSnapshotPriority()), fingerprint) ;
+		} catch (IOException e) {
+			Logger.getLogger(WDatabase.class).warn("Could not create cache snapshot for '" + name + "'", e) ;
+			return null ;
+		}
+	}
+
+	private CacheSnapshot.Writer writeToSnapshot(CacheSnapshot.Writer snapshot, WEntry<K,V> entry) {
+
+		if (snapshot == null)
+			return null ;
+
+		DatabaseEntry dbKey = new DatabaseEntry() ;
+		keyBinding.objectToEntry(entry.getKey(), dbKey) ;
+
+		DatabaseEntry dbValue = new DatabaseEntry() ;
+		valueBinding.objectToEntry(entry.getValue(), dbValue) ;
+
+		try {
+			snapshot.write(getBytes(dbKey), getBytes(dbValue)) ;
+			return snapshot ;
+		} catch (IOException e) {
+			Logger.getLogger(WDatabase.class).warn("Could not write cache snapshot for '" + name + "'", e) ;
+			snapshot.abort() ;
+			return null ;
+		}
+	}
+
+	private void finishSnapshot(CacheSnapshot.Writer snapshot) {
+
+		if (snapshot == null)
+			return ;
+
+		try {
+			snapshot.finish() ;
+		} catch (IOException e) {
+			Logger.getLogger(WDatabase.class).warn("Could not write cache snapshot for '" + name + "'", e) ;
+			snapshot.abort() ;
+		}
+	}
+
+	private File getMappedSnapshotFile() {
+		return new File(env.getEnvironment().getHome(), name + ".mapped") ;
+	}
+
+	private void cacheToMappedStore(ProgressTracker tracker) throws IOException {
+
+		File snapshotFile = getMappedSnapshotFile() ;
+
+		if (!snapshotFile.canRead()) 
+			writeMappedSnapshot(snapshotFile, tracker) ;
+		else if (tracker != null) 
+			tracker.startTask(1, "mapping " + name + " database") ;
+
+		mappedStore = new MappedStore(snapshotFile) ;
+		this.isCached = true ;
+	}
 
 	protected void initializeCache() {
 
+		int expectedSize = getExpectedCacheSize() ;
+
 		if (cachePriority == CachePriority.speed)
-			fastCache = new THashMap<K,V>() ;
+			fastCache = expectedSize > 0 ? new THashMap<K,V>(expectedSize) : new THashMap<K,V>() ;
 		else
-			compactCache = new THashMap<K,byte[]>() ;
+			compactCache = expectedSize > 0 ? new THashMap<K,byte[]>(expectedSize) : new THashMap<K,byte[]>() ;
 	}
 
 	protected void addToCache(WEntry<K,V> entry) {
@@ -548,6 +1546,18 @@ public abstract class WDatabase<K,V> {
 		}
 	}
 
+	/**
+	 * Adds an entry whose value is already serialised (e.g. read from a {@link CacheSnapshot}) to the cache. 
+	 * By default this avoids deserialising the value if the database is being cached for space. 
+	 */
+	protected void addSerialisedToCache(K key, byte[] value) {
+
+		if (cachePriority != CachePriority.speed && compactCache != null)
+			compactCache.put(key, value) ;
+		else
+			addToCache(new WEntry<K,V>(key, valueBinding.entryToObject(new DatabaseEntry(value)))) ;
+	}
+
 	protected void finalizeCache() {
 		this.isCached = true ;
 	}
@@ -560,12 +1570,19 @@ public abstract class WDatabase<K,V> {
 		conf.setAllowCreate(!readOnly) ;
 		conf.setExclusiveCreate(!readOnly) ;
 
+		//databases are only ever written in bulk, so there is no need to log every put as it happens.
+		//Writes are held in the btree until the database is synced or closed.
+		conf.setDeferredWrite(!readOnly) ;
+
 		if (database != null) {
 			if (database.getConfig().getReadOnly() == readOnly) {
 				//the database is already open as it should be.
 				return database ;
 			} else {
 				//the database needs to be closed and re-opened.
+				if (!database.getConfig().getReadOnly())
+					database.sync() ;
+
 				database.close();
 			}
 		}
@@ -574,6 +1591,20 @@ public abstract class WDatabase<K,V> {
 			try {
 				env.getEnvironment().removeDatabase(null, name) ;
 			} catch (DatabaseNotFoundException e) {} ;
+
+			//any existing manifest entry and snapshots will be stale once this database is rebuilt
+			if (env.getManifest() != null)
+				env.getManifest().remove(name) ;
+
+			File snapshotFile = getMappedSnapshotFile() ;
+			if (snapshotFile.exists())
+				snapshotFile.delete() ;
+
+			for (CachePriority priority:CachePriority.values()) {
+				snapshotFile = getCacheSnapshotFile(priority) ;
+				if (snapshotFile.exists())
+					snapshotFile.delete() ;
+			}
 		}
 
 		database = env.getEnvironment().openDatabase(null, name, conf);
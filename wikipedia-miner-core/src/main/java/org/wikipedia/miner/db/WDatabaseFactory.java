@@ -3,12 +3,8 @@ package org.wikipedia.miner.db;
 
 import gnu.trove.set.hash.TIntHashSet;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
@@ -18,8 +14,6 @@ import org.apache.log4j.Logger;
 import org.wikipedia.miner.db.WDatabase.DatabaseType;
 import org.wikipedia.miner.db.WEnvironment.StatisticName;
 import org.wikipedia.miner.db.struct.*;
-import org.wikipedia.miner.model.Page.PageType;
-import org.wikipedia.miner.util.ProgressTracker;
 import org.wikipedia.miner.util.WikipediaConfiguration;
 import org.wikipedia.miner.util.text.TextProcessor;
 
@@ -27,7 +21,6 @@ import org.wikipedia.miner.util.text.TextProcessor;
 import com.sleepycat.bind.tuple.IntegerBinding;
 import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.je.Database;
-import com.sleepycat.je.DatabaseEntry;
 
 
 /**
@@ -52,45 +45,9 @@ public class WDatabaseFactory {
 	 * 
 	 * @return a database associating page ids with the title, type and generality of the page. 
 	 */
-	public WDatabase<Integer, DbPage> buildPageDatabase() {
+	public PageDatabase buildPageDatabase() {
 
-		RecordBinding<DbPage> keyBinding = new RecordBinding<DbPage>() {
-			public DbPage createRecordInstance() {
-				return new DbPage() ;
-			}
-		} ;
-
-		return new IntObjectDatabase<DbPage>(
-				env, 
-				DatabaseType.page,
-				keyBinding
-		) {
-			@Override
-			public WEntry<Integer,DbPage> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
-				Integer id = record.readInt(null) ;
-
-				DbPage p = new DbPage() ;
-				p.deserialize(record) ;
-
-				return new WEntry<Integer,DbPage>(id, p) ;
-			}
-
-			@Override
-			public DbPage filterCacheEntry(
-					WEntry<Integer, DbPage> e, 
-					WikipediaConfiguration conf
-			) {
-
-				PageType pageType = PageType.values()[e.getValue().getType()] ;
-
-				TIntHashSet validIds = conf.getArticlesOfInterest() ;
-				
-				if (validIds == null || validIds.contains(e.getKey()) || pageType == PageType.category || pageType==PageType.redirect) 
-					return e.getValue() ;
-				else
-					return null ;
-			}
-		};
+		return new PageDatabase(env) ;
 	}
 
 	/**
@@ -181,11 +138,7 @@ public class WDatabaseFactory {
 		if (type != DatabaseType.pageLinksIn && type != DatabaseType.pageLinksOut)
 			throw new IllegalArgumentException("type must be either DatabaseType.pageLinksIn or DatabaseType.pageLinksOut") ;
 
-		RecordBinding<DbLinkLocationList> keyBinding = new RecordBinding<DbLinkLocationList>() {
-			public DbLinkLocationList createRecordInstance() {
-				return new DbLinkLocationList() ;
-			}
-		} ;
+		RecordBinding<DbLinkLocationList> keyBinding = new CompactLinkLocationListBinding() ;
 
 		return new IntObjectDatabase<DbLinkLocationList>(
 				env, 
@@ -244,113 +197,9 @@ public class WDatabaseFactory {
 	 * @param type either {@link DatabaseType#pageLinksIn} or {@link DatabaseType#pageLinksOut}.
 	 * @return a database associating Integer ids with the ids of articles it links to or that link to it.
 	 */
-	public WDatabase<Integer, DbIntList> buildPageLinkNoSentencesDatabase(DatabaseType type) {
-
-		if (type != DatabaseType.pageLinksInNoSentences && type != DatabaseType.pageLinksOutNoSentences)
-			throw new IllegalArgumentException("type must be either DatabaseType.pageLinksInNoSentences or DatabaseType.pageLinksOutNoSentences") ;
-
-		RecordBinding<DbIntList> keyBinding = new RecordBinding<DbIntList>() {
-			public DbIntList createRecordInstance() {
-				return new DbIntList() ;
-			}
-		} ;
-
-		return new IntObjectDatabase<DbIntList>(
-				env, 
-				type, 
-				keyBinding
-		) {
-
-			@Override
-			public WEntry<Integer, DbIntList> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
-				// this has to read from pagelinks file (with sentences
-				
-				Integer id = record.readInt(null) ;
-
-				DbLinkLocationList l = new DbLinkLocationList() ;
-				l.deserialize(record) ;
-				
-				ArrayList<Integer> linkIds = new ArrayList<Integer>() ;
-				
-				for (DbLinkLocation ll:l.getLinkLocations()) 
-					linkIds.add(ll.getLinkId()) ;
-				
-				return new WEntry<Integer, DbIntList>(id, new DbIntList(linkIds)) ;
-			}
-
-			@Override
-			public DbIntList filterCacheEntry(
-					WEntry<Integer, DbIntList> e,
-					WikipediaConfiguration conf) {
-
-				int id = e.getKey() ;
-				DbIntList links = e.getValue() ;
-				
-				TIntHashSet validIds = conf.getArticlesOfInterest() ;
-
-				if (validIds != null && !validIds.contains(id))
-					return null ;
-
-				ArrayList<Integer> newLinks = new ArrayList<Integer>() ;
-
-				for (Integer link:links.getValues()) {
-					if (validIds != null && !validIds.contains(link))
-						continue ;
-
-					newLinks.add(link) ;
-				}
-
-				if (newLinks.size() == 0)
-					return null ;
-
-				links.setValues(newLinks) ;
-
-				return links ;
-			}
-			
-			@Override
-			public void loadFromCsvFile(File dataFile, boolean overwrite, ProgressTracker tracker) throws IOException  {
-
-				if (exists() && !overwrite)
-					return ;
-
-				if (tracker == null) tracker = new ProgressTracker(1, WDatabase.class) ;
-				tracker.startTask(dataFile.length(), "Loading " + getName()) ;
-
-				BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), "UTF-8")) ;
-
-				long bytesRead = 0 ;
-				int lineNum = 0 ;
-
-				Database db = getDatabase(false) ;
-
-				String line ;
-				while ((line=input.readLine()) != null) {
-					bytesRead = bytesRead + line.length() + 1 ;
-					lineNum++ ;
-
-					CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream((line + "\n").getBytes("UTF-8"))) ;
-
-					WEntry<Integer,DbIntList> entry = deserialiseCsvRecord(cri) ;
-
-					if (entry != null) {				
-						DatabaseEntry k = new DatabaseEntry() ;
-						keyBinding.objectToEntry(entry.getKey(), k) ;
-
-						DatabaseEntry v = new DatabaseEntry() ;
-						valueBinding.objectToEntry(entry.getValue(), v) ;
-
-						db.put(null, k, v) ;
-					}
-					tracker.update(bytesRead) ;
-				}
-				input.close();
-
-				env.cleanAndCheckpoint() ;
-				getDatabase(true) ;
-			}
+	public PageLinkNoSentencesDatabase buildPageLinkNoSentencesDatabase(DatabaseType type) {
 
-		} ;
+		return new PageLinkNoSentencesDatabase(env, type) ;
 	}
 
 	/**
@@ -373,11 +222,7 @@ public class WDatabaseFactory {
 			throw new IllegalArgumentException(type.name() + " is not a valid DatabaseType for IntIntListDatabase") ;
 		}
 
-		RecordBinding<DbIntList> keyBinding = new RecordBinding<DbIntList>() {
-			public DbIntList createRecordInstance() {
-				return new DbIntList() ;
-			}
-		} ;
+		RecordBinding<DbIntList> keyBinding = new CompactIntListBinding() ;
 
 		return new IntObjectDatabase<DbIntList>(
 				env, 
@@ -438,37 +283,9 @@ public class WDatabaseFactory {
 	 * 
 	 * @return a database associating integer id of redirect with the id of its target
 	 */
-	public WDatabase<Integer,Integer> buildRedirectTargetBySourceDatabase() {
-
-		return new IntObjectDatabase<Integer>(
-				env, 
-				DatabaseType.redirectTargetBySource, 
-				new IntegerBinding()
-		) {
-
-			@Override
-			public WEntry<Integer, Integer> deserialiseCsvRecord(
-					CsvRecordInput record) throws IOException {
-				int k = record.readInt(null) ;
-				int v = record.readInt(null) ;
-
-				return new WEntry<Integer, Integer>(k,v) ;
-			}
-
-			@Override
-			public Integer filterCacheEntry(
-					WEntry<Integer, Integer> e, 
-					WikipediaConfiguration conf
-			) {
-				TIntHashSet validIds = conf.getArticlesOfInterest() ;
+	public RedirectDatabase buildRedirectTargetBySourceDatabase() {
 
-				if (validIds != null && !validIds.contains(e.getValue()))
-					return null ; 
-
-				return e.getValue();
-
-			}
-		} ;
+		return new RedirectDatabase(env) ;
 	}
 
 	/**
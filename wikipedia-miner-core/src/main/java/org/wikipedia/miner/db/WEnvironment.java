@@ -6,8 +6,23 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.xml.stream.XMLStreamException;
 
 import com.sleepycat.je.*;
@@ -71,10 +86,11 @@ public class WEnvironment  {
 
 	private WikipediaConfiguration conf ;
 	private Environment env ;
+	private EnvironmentManifest manifest ;
 	private PreparationThread prepThread ;
 	
 	
-	private WDatabase<Integer, DbPage> dbPage ;
+	private PageDatabase dbPage ;
 	private LabelDatabase dbLabel ;
 	private HashMap<String, LabelDatabase> processedLabelDbs ;
 	
@@ -83,14 +99,15 @@ public class WEnvironment  {
 	private WDatabase<String,Integer> dbArticlesByTitle ;
 	private WDatabase<String,Integer> dbCategoriesByTitle ;
 	private WDatabase<String,Integer> dbTemplatesByTitle ;
+	private ResolvedTitleDatabase dbResolvedArticlesByTitle ;
 	
-	private WDatabase<Integer,Integer> dbRedirectTargetBySource ;
+	private RedirectDatabase dbRedirectTargetBySource ;
 	private WDatabase<Integer,DbIntList> dbRedirectSourcesByTarget ;
 	
 	private WDatabase<Integer, DbLinkLocationList> dbPageLinkIn ;
-	private WDatabase<Integer, DbIntList> dbPageLinkInNoSentences ;
+	private PageLinkNoSentencesDatabase dbPageLinkInNoSentences ;
 	private WDatabase<Integer, DbLinkLocationList> dbPageLinkOut ;
-	private WDatabase<Integer, DbIntList> dbPageLinkOutNoSentences ;
+	private PageLinkNoSentencesDatabase dbPageLinkOutNoSentences ;
 	private PageLinkCountDatabase dbPageLinkCounts ;
 	
 	private WDatabase<Integer, DbIntList> dbCategoryParents ;
@@ -100,14 +117,17 @@ public class WEnvironment  {
 	
 	private MarkupDatabase dbMarkup ;
 	private WDatabase<Integer, DbIntList> dbSentenceSplits ;
+	private SentenceMarkupDatabase dbSentenceMarkup ;
+	private SentenceLinkDatabase dbSentenceLinks ;
 	
 	private WDatabase<Integer, DbTranslations> dbTranslations ;
+	private TranslationIndexDatabase dbArticlesByTranslation ;
 	
 	private WDatabase<Integer, Long> dbStatistics ;
 	
 	
 	@SuppressWarnings("unchecked")
-	private HashMap<DatabaseType, WDatabase> databasesByType ;
+	private HashMap<DatabaseType, WDatabase<?,?>> databasesByType ;
 	
 	
 	/**
@@ -119,14 +139,32 @@ public class WEnvironment  {
 		return conf ;
 	}
 	
+	/**
+	 * Returns the manifest describing the databases in this environment, which is written when the environment is built.
+	 * 
+	 * @return the manifest of this environment, or null if the environment was built without one.
+	 */
+	public EnvironmentManifest getManifest() {
+		return manifest ;
+	}
+	
 	/**
 	 * Returns the {@link DatabaseType#page} database
 	 * 
 	 * @return see {@link DatabaseType#page} 
 	 */
-	public WDatabase<Integer, DbPage> getDbPage() {
+	public PageDatabase getDbPage() {
 		return dbPage;
 	}
+	
+	/**
+	 * Returns a compact columnar table of all page details, if the {@link DatabaseType#page} database has been cached.
+	 * 
+	 * @return a table of page details, or null if {@link DatabaseType#page} has not been cached.
+	 */
+	public PageTable getPageTable() {
+		return dbPage.getPageTable() ;
+	}
 
 	/**
 	 * Returns the {@link DatabaseType#label} database for the given text processor
@@ -145,6 +183,7 @@ public class WEnvironment  {
 				db = new LabelDatabase(this, textProcessor) ;
 				
 				processedLabelDbs.put(textProcessor.getName(), db) ;
+				registerMetrics(db) ;
 			}
 			return db ;
 		}
@@ -185,6 +224,15 @@ public class WEnvironment  {
 	public WDatabase<String, Integer> getDbTemplatesByTitle() {
 		return dbTemplatesByTitle ;
 	}
+	
+	/**
+	 * Returns the {@link DatabaseType#resolvedArticlesByTitle} database
+	 * 
+	 * @return see {@link DatabaseType#resolvedArticlesByTitle} 
+	 */
+	public ResolvedTitleDatabase getDbResolvedArticlesByTitle() {
+		return dbResolvedArticlesByTitle ;
+	}
 
 	
 	/**
@@ -192,10 +240,19 @@ public class WEnvironment  {
 	 * 
 	 * @return see {@link DatabaseType#redirectTargetBySource} 
 	 */
-	public WDatabase<Integer, Integer> getDbRedirectTargetBySource() {
+	public RedirectDatabase getDbRedirectTargetBySource() {
 		return dbRedirectTargetBySource ;
 	}
 	
+	/**
+	 * Returns a table of all redirects (with chains of redirects already resolved), if the {@link DatabaseType#redirectTargetBySource} database has been cached.
+	 * 
+	 * @return a table of all redirects, or null if {@link DatabaseType#redirectTargetBySource} has not been cached.
+	 */
+	public RedirectTable getRedirectTable() {
+		return dbRedirectTargetBySource.getRedirectTable() ;
+	}
+	
 	/**
 	 * Returns the {@link DatabaseType#redirectSourcesByTarget} database
 	 * 
@@ -219,10 +276,19 @@ public class WEnvironment  {
 	 * 
 	 * @return see {@link DatabaseType#pageLinksInNoSentences} 
 	 */
-	public WDatabase<Integer, DbIntList> getDbPageLinkInNoSentences() {
+	public PageLinkNoSentencesDatabase getDbPageLinkInNoSentences() {
 		return dbPageLinkInNoSentences;
 	}
 	
+	/**
+	 * Returns a compact graph of all incoming links, if the {@link DatabaseType#pageLinksInNoSentences} database has been cached.
+	 * 
+	 * @return a graph of all incoming links, or null if {@link DatabaseType#pageLinksInNoSentences} has not been cached.
+	 */
+	public LinkGraph getPageLinkInGraph() {
+		return dbPageLinkInNoSentences.getLinkGraph() ;
+	}
+	
 
 	/**
 	 * Returns the {@link DatabaseType#pageLinksOut} database
@@ -239,19 +305,37 @@ public class WEnvironment  {
 	 * 
 	 * @return see {@link DatabaseType#pageLinksOutNoSentences} 
 	 */
-	public WDatabase<Integer, DbIntList> getDbPageLinkOutNoSentences() {
+	public PageLinkNoSentencesDatabase getDbPageLinkOutNoSentences() {
 		return dbPageLinkOutNoSentences;
 	}
 	
+	/**
+	 * Returns a compact graph of all outgoing links, if the {@link DatabaseType#pageLinksOutNoSentences} database has been cached.
+	 * 
+	 * @return a graph of all outgoing links, or null if {@link DatabaseType#pageLinksOutNoSentences} has not been cached.
+	 */
+	public LinkGraph getPageLinkOutGraph() {
+		return dbPageLinkOutNoSentences.getLinkGraph() ;
+	}
+	
 	/**
 	 * Returns the {@link DatabaseType#pageLinkCounts} database
 	 * 
 	 * @return see {@link DatabaseType#pageLinkCounts} 
 	 */
-	public WDatabase<Integer, DbPageLinkCounts> getDbPageLinkCounts() {
+	public PageLinkCountDatabase getDbPageLinkCounts() {
 		return dbPageLinkCounts;
 	}
 	
+	/**
+	 * Returns a compact columnar table of all link counts, if the {@link DatabaseType#pageLinkCounts} database has been cached.
+	 * 
+	 * @return a table of link counts, or null if {@link DatabaseType#pageLinkCounts} has not been cached.
+	 */
+	public LinkCountTable getLinkCountTable() {
+		return dbPageLinkCounts.getLinkCountTable() ;
+	}
+	
 	/**
 	 * Returns the {@link DatabaseType#categoryParents} database
 	 * 
@@ -306,6 +390,24 @@ public class WEnvironment  {
 		return dbSentenceSplits;
 	}
 	
+	/**
+	 * Returns the optional {@link DatabaseType#sentenceMarkup} database
+	 * 
+	 * @return see {@link DatabaseType#sentenceMarkup} 
+	 */
+	public SentenceMarkupDatabase getDbSentenceMarkup() {
+		return dbSentenceMarkup;
+	}
+	
+	/**
+	 * Returns the {@link DatabaseType#sentenceLinks} database
+	 * 
+	 * @return see {@link DatabaseType#sentenceLinks} 
+	 */
+	public SentenceLinkDatabase getDbSentenceLinks() {
+		return dbSentenceLinks;
+	}
+	
 
 	/**
 	 * Returns the {@link DatabaseType#translations} database
@@ -315,6 +417,15 @@ public class WEnvironment  {
 	public WDatabase<Integer, DbTranslations> getDbTranslations() {
 		return dbTranslations ;
 	}
+	
+	/**
+	 * Returns the {@link DatabaseType#articlesByTranslation} database
+	 * 
+	 * @return see {@link DatabaseType#articlesByTranslation} 
+	 */
+	public TranslationIndexDatabase getDbArticlesByTranslation() {
+		return dbArticlesByTranslation ;
+	}
 
 	/**
 	 * Intitializes the environment defined in the given configuration, and immediately begins connecting to databases and caching them to memory.
@@ -336,8 +447,12 @@ public class WEnvironment  {
 		envConf.setCachePercent(10) ;
 		
 		env = new Environment(conf.getDatabaseDirectory(), envConf) ;
+		manifest = EnvironmentManifest.load(conf.getDatabaseDirectory()) ;
 		
 		initDatabases() ;
+		
+		for (WDatabase<?,?> db:databasesByType.values())
+			registerMetrics(db) ;
 				
 		prepThread = new PreparationThread(conf) ;
 		if (threaded)
@@ -362,8 +477,14 @@ public class WEnvironment  {
 		envConf.setAllowCreate(true) ;
 		envConf.setReadOnly(false) ;
 		
+		//databases are written in bulk and never updated, so the log is cleaned explicitly (see cleanAndCheckpoint) rather than in the background while loading
+		envConf.setConfigParam(EnvironmentConfig.ENV_RUN_CLEANER, "false") ;
+		
 		env = new Environment(conf.getDatabaseDirectory(), envConf) ;
 		
+		manifest = EnvironmentManifest.load(conf.getDatabaseDirectory()) ;
+		if (manifest == null)
+			manifest = new EnvironmentManifest() ;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -371,7 +492,7 @@ public class WEnvironment  {
 		
 		WDatabaseFactory dbFactory = new WDatabaseFactory(this) ;
 		
-		databasesByType = new HashMap<DatabaseType, WDatabase>() ;
+		databasesByType = new HashMap<DatabaseType, WDatabase<?,?>>() ;
 		
 		dbPage = dbFactory.buildPageDatabase() ;
 		databasesByType.put(DatabaseType.page, dbPage) ;
@@ -390,6 +511,8 @@ public class WEnvironment  {
 		databasesByType.put(DatabaseType.categoriesByTitle, dbCategoriesByTitle) ;
 		dbTemplatesByTitle = dbFactory.buildTitleDatabase(DatabaseType.templatesByTitle) ;
 		databasesByType.put(DatabaseType.templatesByTitle, dbTemplatesByTitle) ;
+		dbResolvedArticlesByTitle = new ResolvedTitleDatabase(this) ;
+		databasesByType.put(DatabaseType.resolvedArticlesByTitle, dbResolvedArticlesByTitle) ;
 		
 		dbPageLinkIn = dbFactory.buildPageLinkDatabase(DatabaseType.pageLinksIn) ; 
 		databasesByType.put(DatabaseType.pageLinksIn, dbPageLinkIn) ;
@@ -424,8 +547,16 @@ public class WEnvironment  {
 		dbSentenceSplits = dbFactory.buildIntIntListDatabase(DatabaseType.sentenceSplits) ;
 		databasesByType.put(DatabaseType.sentenceSplits, dbSentenceSplits) ;
 		
+		dbSentenceMarkup = new SentenceMarkupDatabase(this) ;
+		databasesByType.put(DatabaseType.sentenceMarkup, dbSentenceMarkup) ;
+		
+		dbSentenceLinks = new SentenceLinkDatabase(this) ;
+		databasesByType.put(DatabaseType.sentenceLinks, dbSentenceLinks) ;
+		
 		dbTranslations = dbFactory.buildTranslationsDatabase() ;
 		databasesByType.put(DatabaseType.translations, dbTranslations) ;
+		dbArticlesByTranslation = new TranslationIndexDatabase(this) ;
+		databasesByType.put(DatabaseType.articlesByTranslation, dbArticlesByTranslation) ;
 		
 		dbStatistics = dbFactory.buildStatisticsDatabase() ;
 		databasesByType.put(DatabaseType.statistics, dbStatistics) ;
@@ -482,29 +613,36 @@ public class WEnvironment  {
 	 * @param tracker an optional progress notifier
 	 * @return the set of valid ids which fit the given constrains. 
 	 */
-	public TIntHashSet getValidArticleIds(int minLinkCount, ProgressTracker tracker) {
+	public TIntHashSet getValidArticleIds(final int minLinkCount, ProgressTracker tracker) {
 		
 		//TODO: ideally this should advance a page iterator at the same time, to check page type
 		//TODO: ideally this should advance a pageLinkOut iterator at the same time, to check minimum outlinks
 		
-		TIntHashSet pageIds = new TIntHashSet() ;
-
 		if (tracker == null) tracker = new ProgressTracker(1, WEnvironment.class) ;
 		tracker.startTask(dbPageLinkIn.getDatabaseSize(), "gathering valid page ids") ;
 
-		WIterator<Integer, DbLinkLocationList> iter = dbPageLinkIn.getIterator() ;
+		final ProgressTracker t = tracker ;
+		final AtomicLong visited = new AtomicLong() ;
 		
-		while (iter.hasNext()) {
-			
-			WEntry<Integer, DbLinkLocationList> e = iter.next() ;
-						
-			if (e.getValue().getLinkLocations().size() > minLinkCount) 
-				pageIds.add(e.getKey()) ;
-			
-			tracker.update();
+		//each key range gathers ids into its own set, so entries can be visited without locking
+		ArrayList<ValidIdVisitor> visitors = dbPageLinkIn.parallelIterate(conf.getCacheThreads(), new WDatabase.VisitorFactory<Integer, DbLinkLocationList, ValidIdVisitor>() {
+			public ValidIdVisitor createVisitor() {
+				return new ValidIdVisitor(minLinkCount, visited, t) ;
+			}
+		}) ;
+		
+		int size = 0 ;
+		for (ValidIdVisitor visitor:visitors) {
+			visitor.report() ;
+			size += visitor.pageIds.size() ;
 		}
 		
-		iter.close() ;
+		//ranges are disjoint, so the merged set is exactly as large as all of the range sets put together 
+		TIntHashSet pageIds = new TIntHashSet(Math.max(size, 10)) ;
+		for (ValidIdVisitor visitor:visitors) {
+			pageIds.addAll(visitor.pageIds) ;
+			visitor.pageIds = null ;
+		}
 					
 		return pageIds ;
 	}
@@ -515,7 +653,44 @@ public class WEnvironment  {
 
 
 	
-	protected void cleanAndCheckpoint() throws DatabaseException{
+	/**
+	 * Gathers the ids of pages with enough in-links, for a single key range of {@link #getDbPageLinkIn()}
+	 */
+	private static class ValidIdVisitor implements WDatabase.EntryVisitor<Integer, DbLinkLocationList> {
+		
+		private final int minLinkCount ;
+		private final AtomicLong visited ;
+		private final ProgressTracker tracker ;
+		
+		private TIntHashSet pageIds = new TIntHashSet() ;
+		private int unreported = 0 ;
+		
+		ValidIdVisitor(int minLinkCount, AtomicLong visited, ProgressTracker tracker) {
+			this.minLinkCount = minLinkCount ;
+			this.visited = visited ;
+			this.tracker = tracker ;
+		}
+		
+		public void visit(WEntry<Integer, DbLinkLocationList> e) {
+			
+			if (e.getValue().getLinkLocations().size() > minLinkCount) 
+				pageIds.add(e.getKey()) ;
+			
+			//report progress in batches, to avoid contending for the tracker on every entry
+			if (++unreported == 10000) 
+				report() ;
+		}
+		
+		void report() {
+			
+			synchronized (tracker) {
+				tracker.update(visited.addAndGet(unreported)) ;
+			}
+			unreported = 0 ;
+		}
+	}
+	
+	protected synchronized void cleanAndCheckpoint() throws DatabaseException{
 		
 		Logger.getLogger(WEnvironment.class).info("Starting cleaning") ;
 		boolean anyCleaned = false;
@@ -540,7 +715,7 @@ public class WEnvironment  {
 
 	
 	@SuppressWarnings("unchecked")
-	private WDatabase getDatabase(DatabaseType dbType) {
+	WDatabase<?,?> getDatabase(DatabaseType dbType) {
 		return databasesByType.get(dbType) ;
 	}
 	
@@ -550,7 +725,9 @@ public class WEnvironment  {
 		WikipediaConfiguration conf ;
 		
 		private ProgressTracker tracker ;		
-		private boolean completed = false ;
+		private volatile ProgressTracker[] cacheTrackers = null ;
+		private int taskCount ;
+		private volatile boolean completed = false ;
 		private Exception failureCause = null ;
 		
 		PreparationThread(WikipediaConfiguration conf) {
@@ -573,7 +750,17 @@ public class WEnvironment  {
 			if (tracker == null) 
 				return 0 ;
 
-			return tracker.getGlobalProgress() ;
+			ProgressTracker[] trackers = cacheTrackers ;
+			
+			if (trackers == null)
+				return tracker.getGlobalProgress() ;
+			
+			//databases are being cached concurrently, so combine their individual progress
+			double progress = taskCount - trackers.length ;
+			for (ProgressTracker t:trackers) 
+				progress += t.getGlobalProgress() ;
+			
+			return progress / taskCount ;
 		}
 		
 		public ProgressTracker getTracker() {
@@ -587,11 +774,28 @@ public class WEnvironment  {
 
 		public void doPreparation() {
 			
+			//choose further databases to cache, if given a memory budget to fill
+			if (conf.getCacheBudget() > 0 || conf.getOffHeapCacheBudget() > 0) {
+				try {
+					CachePlanner planner = new CachePlanner(conf) ;
+					planner.setSizes(WEnvironment.this) ;
+					
+					CachePlanner.Plan plan = planner.plan() ;
+					plan.apply(conf) ;
+					
+					Logger.getLogger(WEnvironment.class).info("Cache plan: " + plan) ;
+				} catch (RuntimeException e) {
+					Logger.getLogger(WEnvironment.class).warn("Could not plan caching, so only configured databases will be cached", e) ;
+				}
+			}
+			
 			boolean mustGatherIds = (conf.getMinLinksIn() > 0 && !conf.getDatabasesToCache().isEmpty()) && conf.getArticlesOfInterest() == null ;
 			
-			int taskCount = conf.getDatabasesToCache().size() + 1;
+			taskCount = conf.getDatabasesToCache().size() + 1;
 			if (mustGatherIds)
 				taskCount++ ;
+			if (conf.isVerifyDatabases())
+				taskCount++ ;
 			
 			tracker = new ProgressTracker(taskCount, WEnvironment.class) ;
 			
@@ -603,16 +807,21 @@ public class WEnvironment  {
 				
 				tracker.update();
 				
+				if (conf.isVerifyDatabases()) {
+					tracker.startTask(1, "Verifying databases") ;
+					
+					ArrayList<String> invalid = verifyDatabases(conf.getCacheThreads()) ;
+					if (!invalid.isEmpty())
+						throw new IOException("Databases do not match the environment manifest: " + invalid) ;
+					
+					tracker.update() ;
+				}
+				
+				//the set of valid ids is needed by all databases, so gather it before caching anything else
 				if (mustGatherIds)
 					conf.setArticlesOfInterest(getValidArticleIds(conf.getMinLinksIn(), tracker)) ;
 				
-				for(DatabaseType dbName:conf.getDatabasesToCache()) {
-					
-					if (dbName == DatabaseType.label)
-						getDbLabel(conf.getDefaultTextProcessor()).cache(conf, tracker) ;
-					else
-						getDatabase(dbName).cache(conf, tracker) ;
-				}
+				cacheDatabases() ;
 				
 				conf.setArticlesOfInterest(null) ;
 				
@@ -624,6 +833,114 @@ public class WEnvironment  {
 
 			completed = true ;
 		}
+		
+		private void cacheDatabases() throws Exception {
+			
+			//resolve databases up front, because processed label databases are created lazily
+			ArrayList<WDatabase<?,?>> dbsToCache = new ArrayList<WDatabase<?,?>>() ;
+			for(DatabaseType dbName:conf.getDatabasesToCache()) {
+				
+				if (dbName == DatabaseType.label)
+					dbsToCache.add(getDbLabel(conf.getDefaultTextProcessor())) ;
+				else
+					dbsToCache.add(getDatabase(dbName)) ;
+			}
+			
+			if (dbsToCache.isEmpty())
+				return ;
+			
+			ProgressTracker[] trackers = new ProgressTracker[dbsToCache.size()] ;
+			for (int i=0 ; i<trackers.length ; i++)
+				trackers[i] = new ProgressTracker(1, WEnvironment.class) ;
+			
+			cacheTrackers = trackers ;
+			
+			int threadCount = Math.max(1, Math.min(conf.getCacheThreads(), dbsToCache.size())) ;
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount) ;
+			
+			ArrayList<Future<Object>> results = new ArrayList<Future<Object>>() ;
+			
+			for (int i=0 ; i<trackers.length ; i++) {
+				
+				final WDatabase<?,?> db = dbsToCache.get(i) ;
+				final ProgressTracker dbTracker = trackers[i] ;
+				
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						db.cache(conf, dbTracker) ;
+						return null ;
+					}
+				})) ;
+			}
+			
+			executor.shutdown() ;
+			
+			Exception failure = null ;
+			
+			for (Future<Object> result:results) {
+				try {
+					result.get() ;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						if (e.getCause() instanceof Exception)
+							failure = (Exception)e.getCause() ;
+						else 
+							failure = e ;
+					}
+				}
+			}
+			
+			cacheTrackers = null ;
+			
+			if (failure != null)
+				throw failure ;
+		}
+	}
+	
+	/**
+	 * Checks every database against the entry count, size and checksum recorded in the environment's {@link EnvironmentManifest} 
+	 * when it was built. This reads every database in full. Databases that do not exist, or were not recorded in the 
+	 * manifest, are not checked. 
+	 * <p>
+	 * This is done automatically when the environment is prepared, if {@link WikipediaConfiguration#isVerifyDatabases()} is set.
+	 * 
+	 * @param threads the number of databases to check concurrently
+	 * @return the names of any databases that do not match the manifest
+	 * @throws IOException if the databases could not be read
+	 */
+	public ArrayList<String> verifyDatabases(int threads) throws IOException {
+		
+		final ArrayList<String> invalid = new ArrayList<String>() ;
+		
+		if (manifest == null)
+			return invalid ;
+		
+		ArrayList<Callable<Object>> scans = new ArrayList<Callable<Object>>() ;
+		for (final WDatabase<?,?> db:databasesByType.values()) {
+			if (!db.exists())
+				continue ;
+			
+			scans.add(new Callable<Object>() {
+				public Object call() {
+					if (!manifest.verify(db)) {
+						synchronized (invalid) {
+							invalid.add(db.getName()) ;
+						}
+					}
+					return null ;
+				}
+			}) ;
+		}
+		
+		try {
+			runLoads(scans, threads) ;
+		} catch (XMLStreamException e) {
+			//never thrown when scanning databases
+			throw new IOException(e) ;
+		}
+		
+		Collections.sort(invalid) ;
+		return invalid ;
 	}
 	
 	public Exception getCachingFailureReason() {
@@ -644,9 +961,80 @@ public class WEnvironment  {
 			dbProcessedLabel.close();
 		}
 		
-		for (WDatabase db:this.databasesByType.values()) {
+		for (WDatabase<?,?> db:this.databasesByType.values()) {
 			db.close() ;
 		}
+		
+		for (WDatabase<?,?> db:processedLabelDbs.values())
+			unregisterMetrics(db) ;
+		
+		for (WDatabase<?,?> db:databasesByType.values())
+			unregisterMetrics(db) ;
+	}
+	
+	/**
+	 * Returns a summary of how each database has been accessed (see {@link DatabaseMetrics}), listing only those that have been accessed at all. 
+	 * These metrics are also available over JMX, under the org.wikipedia.miner domain.
+	 * 
+	 * @return a summary of how each database has been accessed, with one line per database
+	 */
+	public String dumpMetrics() {
+		
+		TreeMap<String,DatabaseMetrics> allMetrics = new TreeMap<String,DatabaseMetrics>() ;
+		
+		for (WDatabase<?,?> db:databasesByType.values())
+			allMetrics.put(db.getName(), db.getMetrics()) ;
+		
+		for (WDatabase<?,?> db:processedLabelDbs.values())
+			allMetrics.put(db.getName(), db.getMetrics()) ;
+		
+		StringBuffer sb = new StringBuffer() ;
+		for (Map.Entry<String,DatabaseMetrics> e:allMetrics.entrySet()) {
+			
+			if (e.getValue().getRequests() == 0 && e.getValue().getCacheHits() == 0 && e.getValue().getCacheMisses() == 0)
+				continue ;
+			
+			sb.append(e.getKey() + ": " + e.getValue() + "\n") ;
+		}
+		
+		return sb.toString() ;
+	}
+	
+	/**
+	 * Registers the metrics of the given database as an MBean, so they can be monitored over JMX
+	 */
+	private void registerMetrics(WDatabase<?,?> db) {
+		
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+			ObjectName name = getMetricsName(db) ;
+			
+			if (!server.isRegistered(name))
+				server.registerMBean(db.getMetrics(), name) ;
+		} catch (JMException e) {
+			Logger.getLogger(WEnvironment.class).warn("Could not register metrics of '" + db.getName() + "' database", e) ;
+		}
+	}
+	
+	private void unregisterMetrics(WDatabase<?,?> db) {
+		
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+			ObjectName name = getMetricsName(db) ;
+			
+			if (server.isRegistered(name))
+				server.unregisterMBean(name) ;
+		} catch (JMException e) {
+			Logger.getLogger(WEnvironment.class).warn("Could not unregister metrics of '" + db.getName() + "' database", e) ;
+		}
+	}
+	
+	private ObjectName getMetricsName(WDatabase<?,?> db) throws JMException {
+		
+		//several environments may be open within the same JVM, so they are distinguished by directory 
+		String environment = ObjectName.quote(conf.getDatabaseDirectory().getAbsolutePath()) ;
+		
+		return new ObjectName("org.wikipedia.miner:type=DatabaseMetrics,environment=" + environment + ",name=" + db.getName()) ;
 	}
 	
 	@Override
@@ -673,6 +1061,24 @@ public class WEnvironment  {
 	 * @throws XMLStreamException if the XML dump of wikipedia cannot be parsed
 	 */
 	public static void buildEnvironment(WikipediaConfiguration conf, File dataDirectory, boolean overwrite) throws IOException, XMLStreamException {
+		buildEnvironment(conf, dataDirectory, overwrite, 1) ;
+	}
+	
+	/**
+	 * Builds a WEnvironment, by loading all of the data files stored in the given directory into persistent databases.
+	 * 
+	 * This behaves exactly like {@link #buildEnvironment(WikipediaConfiguration, File, boolean)}, except that several 
+	 * databases can be loaded concurrently. Each load reads its own file and writes its own database, so this is 
+	 * worthwhile whenever there is enough memory and disk bandwidth to spare.
+	 * 
+	 * @param conf a configuration specifying where the databases are to be stored, etc.
+	 * @param dataDirectory a directory containing the a single XML dump of wikipedia, and all of the CSV files produced by {@link DumpExtractor}
+	 * @param overwrite true if existing databases should be overwritten, otherwise false
+	 * @param threads the maximum number of databases to load at the same time
+	 * @throws IOException if any of the required files cannot be read
+	 * @throws XMLStreamException if the XML dump of wikipedia cannot be parsed
+	 */
+	public static void buildEnvironment(WikipediaConfiguration conf, File dataDirectory, final boolean overwrite, int threads) throws IOException, XMLStreamException {
 		
 		//check all files exist and are readable before doing anything
 		
@@ -705,37 +1111,64 @@ public class WEnvironment  {
 		if (!conf.getDatabaseDirectory().exists())
 			conf.getDatabaseDirectory().mkdirs() ;
 		
-		WEnvironment env = new WEnvironment(conf) ;
+		final WEnvironment env = new WEnvironment(conf) ;
 		
+		ArrayList<Callable<Object>> loads = new ArrayList<Callable<Object>>() ;
 		
-		env.dbStatistics.loadFromCsvFile(statistics, overwrite, null) ;
-		env.dbPage.loadFromCsvFile(page, overwrite, null) ;
-		env.dbLabel.loadFromCsvFile(label, overwrite, null) ;
-		env.dbLabelsForPage.loadFromCsvFile(pageLabel, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbStatistics, statistics, overwrite)) ;
+		loads.add(new CsvLoad(env.dbPage, page, overwrite)) ;
+		loads.add(new CsvLoad(env.dbLabel, label, overwrite)) ;
+		loads.add(new CsvLoad(env.dbLabelsForPage, pageLabel, overwrite)) ;
 		
-		env.dbArticlesByTitle.loadFromCsvFile(page, overwrite, null) ;
-		env.dbCategoriesByTitle.loadFromCsvFile(page, overwrite, null) ;
-		env.dbTemplatesByTitle.loadFromCsvFile(page, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbArticlesByTitle, page, overwrite)) ;
+		loads.add(new CsvLoad(env.dbCategoriesByTitle, page, overwrite)) ;
+		loads.add(new CsvLoad(env.dbTemplatesByTitle, page, overwrite)) ;
 		
-		env.dbRedirectTargetBySource.loadFromCsvFile(redirectTargetBySource, overwrite, null) ;
-		env.dbRedirectSourcesByTarget.loadFromCsvFile(redirectSourcesByTarget, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbRedirectTargetBySource, redirectTargetBySource, overwrite)) ;
+		loads.add(new CsvLoad(env.dbRedirectSourcesByTarget, redirectSourcesByTarget, overwrite)) ;
 		
-		env.dbPageLinkIn.loadFromCsvFile(pageLinksIn, overwrite, null) ;
-		env.dbPageLinkInNoSentences.loadFromCsvFile(pageLinksIn, overwrite, null) ;
-		env.dbPageLinkOut.loadFromCsvFile(pageLinksOut, overwrite, null) ;
-		env.dbPageLinkOutNoSentences.loadFromCsvFile(pageLinksOut, overwrite, null) ;
-		env.dbPageLinkCounts.loadFromCsvFiles(pageLinksIn, pageLinksOut, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbPageLinkIn, pageLinksIn, overwrite)) ;
+		loads.add(new CsvLoad(env.dbPageLinkInNoSentences, pageLinksIn, overwrite)) ;
+		loads.add(new CsvLoad(env.dbPageLinkOut, pageLinksOut, overwrite)) ;
+		loads.add(new CsvLoad(env.dbPageLinkOutNoSentences, pageLinksOut, overwrite)) ;
 		
-		env.dbCategoryParents.loadFromCsvFile(categoryParents, overwrite, null) ;
-		env.dbArticleParents.loadFromCsvFile(articleParents, overwrite, null) ;
-		env.dbChildCategories.loadFromCsvFile(childCategories, overwrite, null) ;
-		env.dbChildArticles.loadFromCsvFile(childArticles, overwrite, null) ;
+		final File linksInFile = pageLinksIn ;
+		final File linksOutFile = pageLinksOut ;
+		loads.add(new Callable<Object>() {
+			public Object call() throws Exception {
+				env.dbPageLinkCounts.loadFromCsvFiles(linksInFile, linksOutFile, overwrite, null) ;
+				return null ;
+			}
+		}) ;
 		
-		env.dbSentenceSplits.loadFromCsvFile(sentenceSplits, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbCategoryParents, categoryParents, overwrite)) ;
+		loads.add(new CsvLoad(env.dbArticleParents, articleParents, overwrite)) ;
+		loads.add(new CsvLoad(env.dbChildCategories, childCategories, overwrite)) ;
+		loads.add(new CsvLoad(env.dbChildArticles, childArticles, overwrite)) ;
 		
-		env.dbTranslations.loadFromCsvFile(translations, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbSentenceSplits, sentenceSplits, overwrite)) ;
 		
-		env.dbMarkup.loadFromXmlFile(markup, overwrite, null) ;
+		loads.add(new CsvLoad(env.dbTranslations, translations, overwrite)) ;
+		
+		final File markupFile = markup ;
+		loads.add(new Callable<Object>() {
+			public Object call() throws Exception {
+				env.dbMarkup.loadFromXmlFile(markupFile, overwrite, null) ;
+				return null ;
+			}
+		}) ;
+		
+		runLoads(loads, threads) ;
+		
+		//derived from databases loaded above
+		env.dbResolvedArticlesByTitle.loadFromTitles(env.dbArticlesByTitle, env.dbRedirectTargetBySource, env.dbPage, overwrite, null) ;
+		env.dbArticlesByTranslation.loadFromTranslations(env.dbTranslations, env.dbPage, overwrite, null) ;
+		env.dbSentenceLinks.loadFromLinks(env.dbPageLinkOut, overwrite, threads, null) ;
+		
+		env.cleanAndCheckpoint() ;
+		
+		env.manifest.setBuildConfiguration(conf, threads) ;
+		env.writeManifest(env.databasesByType.values(), threads) ;
 		
 		env.close();
 		
@@ -749,6 +1182,106 @@ public class WEnvironment  {
 		}
 	}
 	
+	/**
+	 * Records the given databases (those that exist) in the manifest, and saves it to the environment directory
+	 */
+	private void writeManifest(Collection<? extends WDatabase<?,?>> dbs, int threads) throws IOException {
+		
+		ArrayList<Callable<Object>> scans = new ArrayList<Callable<Object>>() ;
+		for (final WDatabase<?,?> db:dbs) {
+			if (!db.exists())
+				continue ;
+			
+			scans.add(new Callable<Object>() {
+				public Object call() {
+					manifest.record(db) ;
+					return null ;
+				}
+			}) ;
+		}
+		
+		try {
+			runLoads(scans, threads) ;
+		} catch (XMLStreamException e) {
+			//never thrown when scanning databases
+			throw new IOException(e) ;
+		}
+		
+		manifest.save(conf.getDatabaseDirectory()) ;
+	}
+	
+	private static void runLoads(ArrayList<Callable<Object>> loads, int threads) throws IOException, XMLStreamException {
+		
+		Exception failure = null ;
+		
+		if (threads <= 1) {
+			for (Callable<Object> load:loads) {
+				try {
+					load.call() ;
+				} catch (Exception e) {
+					failure = e ;
+					break ;
+				}
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, loads.size())) ;
+			
+			ArrayList<Future<Object>> results = new ArrayList<Future<Object>>() ;
+			for (Callable<Object> load:loads) 
+				results.add(executor.submit(load)) ;
+			
+			executor.shutdown() ;
+			
+			for (Future<Object> result:results) {
+				try {
+					result.get() ;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						if (e.getCause() instanceof Exception)
+							failure = (Exception)e.getCause() ;
+						else 
+							failure = e ;
+					}
+				} catch (InterruptedException e) {
+					if (failure == null)
+						failure = e ;
+				}
+			}
+		}
+		
+		if (failure == null)
+			return ;
+		
+		if (failure instanceof IOException)
+			throw (IOException)failure ;
+		
+		if (failure instanceof XMLStreamException)
+			throw (XMLStreamException)failure ;
+		
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure ;
+		
+		throw new IOException(failure) ;
+	}
+	
+	private static class CsvLoad implements Callable<Object> {
+		
+		private WDatabase<?,?> db ;
+		private File dataFile ;
+		private boolean overwrite ;
+		
+		public CsvLoad(WDatabase<?,?> db, File dataFile, boolean overwrite) {
+			this.db = db ;
+			this.dataFile = dataFile ;
+			this.overwrite = overwrite ;
+		}
+		
+		public Object call() throws Exception {
+			db.loadFromCsvFile(dataFile, overwrite, null) ;
+			return null ;
+		}
+	}
+	
 	/**
 	 * Prepares the environment, so it can be searched efficiently for labels using the given text processor.
 	 * 
@@ -777,6 +1310,90 @@ public class WEnvironment  {
 		db.prepare(tempDirectory, passes) ;
 		
 		env.cleanAndCheckpoint() ;
+		
+		ArrayList<LabelDatabase> dbs = new ArrayList<LabelDatabase>() ;
+		dbs.add(db) ;
+		env.writeManifest(dbs, 1) ;
+		
+		env.close();
+	}
+	
+	/**
+	 * Builds the optional {@link DatabaseType#sentenceMarkup} database, so that {@link org.wikipedia.miner.model.Page#getSentenceMarkup(int)} 
+	 * no longer needs to clean the markup of the entire page for every sentence it returns. 
+	 * 
+	 * @param conf a configuration specifying where the databases are to be stored, etc.
+	 * @param overwrite true if the database should be rebuilt even if it already exists
+	 * @param threads the number of pages to clean concurrently
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public static void prepareSentenceMarkup(WikipediaConfiguration conf, boolean overwrite, int threads) throws IOException {
+		
+		WEnvironment env = new WEnvironment(conf) ;
+		
+		env.dbSentenceMarkup.loadFromMarkup(env.dbMarkup, env.dbSentenceSplits, overwrite, threads, null) ;
+		
+		env.cleanAndCheckpoint() ;
+		
+		ArrayList<SentenceMarkupDatabase> dbs = new ArrayList<SentenceMarkupDatabase>() ;
+		dbs.add(env.dbSentenceMarkup) ;
+		env.writeManifest(dbs, 1) ;
+		
+		env.close();
+	}
+	
+	/**
+	 * Builds the {@link DatabaseType#sentenceLinks} database within an environment that was built before it was introduced, 
+	 * so that {@link org.wikipedia.miner.model.Article#getSentenceIndexesMentioning(java.util.ArrayList)} can intersect bitmaps 
+	 * rather than lists of link locations.
+	 * 
+	 * @param conf a configuration specifying where the databases are to be stored, etc.
+	 * @param overwrite true if the database should be rebuilt even if it already exists
+	 * @param threads the number of articles to encode concurrently
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public static void prepareSentenceLinks(WikipediaConfiguration conf, boolean overwrite, int threads) throws IOException {
+		
+		WEnvironment env = new WEnvironment(conf) ;
+		
+		env.dbSentenceLinks.loadFromLinks(env.dbPageLinkOut, overwrite, threads, null) ;
+		
+		env.cleanAndCheckpoint() ;
+		
+		ArrayList<SentenceLinkDatabase> dbs = new ArrayList<SentenceLinkDatabase>() ;
+		dbs.add(env.dbSentenceLinks) ;
+		env.writeManifest(dbs, 1) ;
+		
+		env.close();
+	}
+	
+	/**
+	 * Prepares the environment, so it can be searched efficiently for labels using any of the given text processors. 
+	 * All of the processors are prepared with a single scan of the original labels.
+	 * 
+	 * @see LabelDatabase#prepare(Collection, File, int, int)
+	 * 
+	 * @param tps a collection of text processors
+	 * @param conf a configuration specifying where the databases are to be stored, etc.
+	 * @param tempDirectory a directory for writing temporary files
+	 * @param overwrite true if the preparation should occur even for processors that the environment has been prepared for already
+	 * @param maxRunSize the maximum number of processed labels to hold in memory (for each processor) before spilling them to disk
+	 * @throws IOException if the temporary directory is not writable
+	 */
+	public static void prepareTextProcessors(Collection<TextProcessor> tps, WikipediaConfiguration conf, File tempDirectory, boolean overwrite, int maxRunSize) throws IOException {
+		
+		WEnvironment env = new WEnvironment(conf) ;
+		
+		ArrayList<LabelDatabase> dbs = new ArrayList<LabelDatabase>() ;
+		for (TextProcessor tp:tps) {
+			if (tp != null && (overwrite || !env.isPreparedFor(tp)))
+				dbs.add(env.getDbLabel(tp)) ;
+		}
+		
+		LabelDatabase.prepare(dbs, tempDirectory, maxRunSize, conf.getCacheThreads()) ;
+		
+		env.cleanAndCheckpoint() ;
+		env.writeManifest(dbs, conf.getCacheThreads()) ;
 		env.close();
 	}
 	
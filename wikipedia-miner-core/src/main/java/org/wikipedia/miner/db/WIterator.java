@@ -33,6 +33,10 @@ public class WIterator<K,V> implements Iterator<WEntry<K,V>> {
 	
 	DatabaseEntry key = new DatabaseEntry() ;
 	DatabaseEntry value = new DatabaseEntry() ;
+	
+	byte[] fromKey ;
+	byte[] toKey ;
+	boolean started = false ;
 
 	/**
 	 * Creates an iterator that will cycle through all entries the given WDatabase.
@@ -40,8 +44,24 @@ public class WIterator<K,V> implements Iterator<WEntry<K,V>> {
 	 * @param database an active (connected) WDatabase.
 	 */
 	public WIterator(WDatabase<K,V> database) {
+		this(database, null, null) ;
+	}
+	
+	/**
+	 * Creates an iterator that will cycle through the entries of the given WDatabase whose serialised keys fall 
+	 * within the given range. Each iterator has its own cursor, so iterators over different ranges can be used 
+	 * concurrently from different threads.
+	 * 
+	 * @param database an active (connected) WDatabase.
+	 * @param fromKey the serialised key at which to start (inclusive), or null to start at the first entry
+	 * @param toKey the serialised key at which to stop (exclusive), or null to continue to the last entry
+	 */
+	public WIterator(WDatabase<K,V> database, byte[] fromKey, byte[] toKey) {
 		
 		this.db = database ;
+		this.fromKey = fromKey ;
+		this.toKey = toKey ;
+		
 		cursor = db.getDatabase(true).openCursor(null, null) ;
 		cursor.setCacheMode(CacheMode.UNCHANGED) ;
 
@@ -61,6 +81,10 @@ public class WIterator<K,V> implements Iterator<WEntry<K,V>> {
 	 * destroying the object.
 	 */
 	public void close() {
+		
+		if (cursor == null)
+			return ;
+		
 		cursor.close();
 		this.cursor = null ;
 	}
@@ -86,7 +110,16 @@ public class WIterator<K,V> implements Iterator<WEntry<K,V>> {
 	
 	private void queueNext()  {
 		
-		if (cursor.getNext(key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+		OperationStatus status ;
+		if (!started && fromKey != null) {
+			key.setData(fromKey) ;
+			status = cursor.getSearchKeyRange(key, value, LockMode.DEFAULT) ;
+		} else {
+			status = cursor.getNext(key, value, LockMode.DEFAULT) ;
+		}
+		started = true ;
+		
+		if (status == OperationStatus.SUCCESS && (toKey == null || compareKeys(key, toKey) < 0)) {
 			
 			K k = db.keyBinding.entryToObject(key) ;
 			V v = db.valueBinding.entryToObject(value) ;
@@ -96,4 +129,22 @@ public class WIterator<K,V> implements Iterator<WEntry<K,V>> {
 			nextEntry = null ;
 		}
 	}
+	
+	/**
+	 * Compares keys in the same (unsigned, byte by byte) order as the default btree comparator
+	 */
+	static int compareKeys(DatabaseEntry key, byte[] other) {
+		
+		byte[] data = key.getData() ;
+		int offset = key.getOffset() ;
+		int size = key.getSize() ;
+		
+		int len = Math.min(size, other.length) ;
+		for (int i=0 ; i<len ; i++) {
+			int cmp = (data[offset+i] & 0xff) - (other[i] & 0xff) ;
+			if (cmp != 0)
+				return cmp ;
+		}
+		return size - other.length ;
+	}
 }
@@ -21,6 +21,8 @@ package org.wikipedia.miner.model;
 
 import java.util.* ; 
 
+import org.wikipedia.miner.db.LinkGraph;
+import org.wikipedia.miner.db.SentenceLinkDatabase;
 import org.wikipedia.miner.db.WEnvironment;
 import org.wikipedia.miner.db.struct.DbIntList;
 import org.wikipedia.miner.db.struct.DbLabelForPage;
@@ -28,7 +30,6 @@ import org.wikipedia.miner.db.struct.DbLabelForPageList;
 import org.wikipedia.miner.db.struct.DbLinkLocation;
 import org.wikipedia.miner.db.struct.DbLinkLocationList;
 import org.wikipedia.miner.db.struct.DbPage;
-import org.wikipedia.miner.db.struct.DbPageLinkCounts;
 import org.wikipedia.miner.db.struct.DbTranslations;
 
 /**
@@ -134,6 +135,11 @@ public class Article extends Page {
 	 */
 	public Article[] getLinksIn() {
 
+		LinkGraph graph = env.getPageLinkInGraph() ;
+		
+		if (graph != null) 
+			return toArticles(graph) ;
+
 		if (env.getDbPageLinkIn().isCached() && !env.getDbPageLinkInNoSentences().isCached()) {
 			
 			DbLinkLocationList tmpLinks = env.getDbPageLinkIn().retrieve(id) ;
@@ -176,6 +182,11 @@ public class Article extends Page {
 	 */
 	public Article[] getLinksOut()  {
 
+		LinkGraph graph = env.getPageLinkOutGraph() ;
+		
+		if (graph != null) 
+			return toArticles(graph) ;
+
 		if (env.getDbPageLinkOut().isCached() && !env.getDbPageLinkOutNoSentences().isCached()) {
 			
 			DbLinkLocationList tmpLinks = env.getDbPageLinkOut().retrieve(id) ;
@@ -209,6 +220,26 @@ public class Article extends Page {
 		}
 	}
 
+	/**
+	 * Returns the articles that this article is connected to within the given link graph (in either direction, depending on the graph), sorted by id.
+	 */
+	private Article[] toArticles(LinkGraph graph) {
+		
+		int ordinal = graph.getOrdinal(id) ;
+		if (ordinal < 0)
+			return new Article[0] ;
+		
+		int[] targets = graph.getTargets() ;
+		int start = graph.getStart(ordinal) ;
+		
+		Article[] links = new Article[graph.getEnd(ordinal) - start] ;
+		
+		for (int index=0 ; index<links.length ; index++) 
+			links[index] = new Article(env, targets[start + index]) ;
+		
+		return links ;
+	}
+
 	/**
 	 * Returns the title of the article translated into the language given by <em>languageCode</em>
 	 * (i.e. fn, jp, de, etc) or null if translation is not available. 
@@ -247,52 +278,28 @@ public class Article extends Page {
 	 * @return the total number of links that are made to this article 
 	 */
 	public int getTotalLinksInCount()  {
-
-		DbPageLinkCounts lc = env.getDbPageLinkCounts().retrieve(id) ;
-
-		if (lc == null) 
-			return 0 ;
-		else
-			return lc.getTotalLinksIn() ;
+		return env.getDbPageLinkCounts().getTotalLinksIn(id) ;
 	}
 
 	/**
 	 * @return the number of distinct articles which contain a link to this article 
 	 */
 	public int getDistinctLinksInCount()  {
-
-		DbPageLinkCounts lc = env.getDbPageLinkCounts().retrieve(id) ;
-
-		if (lc == null) 
-			return 0 ;
-		else
-			return lc.getDistinctLinksIn() ;
+		return env.getDbPageLinkCounts().getDistinctLinksIn(id) ;
 	}
 
 	/**
 	 * @return the total number links that this article makes to other articles 
 	 */
 	public int getTotalLinksOutCount() {
-
-		DbPageLinkCounts lc = env.getDbPageLinkCounts().retrieve(id) ;
-
-		if (lc == null) 
-			return 0 ;
-		else
-			return lc.getTotalLinksOut() ;
+		return env.getDbPageLinkCounts().getTotalLinksOut(id) ;
 	}
 
 	/**
 	 * @return the number of distinct articles that this article links to 
 	 */
 	public int getDistinctLinksOutCount() {
-
-		DbPageLinkCounts lc = env.getDbPageLinkCounts().retrieve(id) ;
-
-		if (lc == null) 
-			return 0 ;
-		else
-			return lc.getDistinctLinksOut() ;
+		return env.getDbPageLinkCounts().getDistinctLinksOut(id) ;
 	}
 
 	/**
@@ -330,6 +337,10 @@ public class Article extends Page {
 	 */
 	public Integer[] getSentenceIndexesMentioning(Article art) {
 
+		SentenceLinkDatabase sentenceLinks = env.getDbSentenceLinks() ;
+		if (sentenceLinks.isAvailable())
+			return toIntegers(sentenceLinks.retrieveSentenceIndexes(id, art.getId())) ;
+
 		DbLinkLocationList tmpLinks = env.getDbPageLinkIn().retrieve(art.getId()) ;
 		if (tmpLinks == null || tmpLinks.getLinkLocations() == null) 
 			return new Integer[0] ;
@@ -358,6 +369,15 @@ public class Article extends Page {
 	 */
 	public Integer[] getSentenceIndexesMentioning(ArrayList<Article> arts) {
 
+		//with bitmaps of the sentences that link to each article, this is just an intersection of bitmaps
+		SentenceLinkDatabase sentenceLinks = env.getDbSentenceLinks() ;
+		if (sentenceLinks.isAvailable()) {
+			int[] artIds = new int[arts.size()] ;
+			for (int i=0 ; i<arts.size() ; i++)
+				artIds[i] = arts.get(i).getId() ;
+
+			return toIntegers(sentenceLinks.retrieveSentenceIndexes(id, artIds)) ;
+		}
 
 		TreeMap<Integer, Integer> sentenceCounts = new TreeMap<Integer, Integer>() ;
 
@@ -394,6 +414,15 @@ public class Article extends Page {
 		return validSentences.toArray(new Integer[validSentences.size()]) ;
 	}
 
+	private static Integer[] toIntegers(int[] values) {
+
+		Integer[] integers = new Integer[values.length] ;
+		for (int i=0 ; i<values.length ; i++)
+			integers[i] = values[i] ;
+
+		return integers ;
+	}
+
 
 	/**
 	 * A label that has been used to refer to the enclosing {@link Article}. These are mined from the title of the article, the 
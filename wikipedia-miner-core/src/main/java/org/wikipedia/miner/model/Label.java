@@ -1,6 +1,9 @@
 package org.wikipedia.miner.model;
 
 
+import org.wikipedia.miner.db.DbLabelView;
+import org.wikipedia.miner.db.LabelDatabase;
+import org.wikipedia.miner.db.WDatabase.CachePriority;
 import org.wikipedia.miner.db.WEnvironment;
 import org.wikipedia.miner.db.struct.DbLabel;
 import org.wikipedia.miner.db.struct.DbSenseForLabel;
@@ -167,6 +170,16 @@ public class Label {
 			this.fromTitle = s.getFromTitle() ;
 			this.fromRedirect = s.getFromRedirect() ;
 		}
+		
+		protected Sense(WEnvironment env, DbLabelView view, int index) {
+			
+			super(env, view.getSenseId(index)) ;
+			
+			this.sLinkDocCount = view.getSenseLinkDocCount(index) ;
+			this.sLinkOccCount = view.getSenseLinkOccCount(index) ;
+			this.fromTitle = view.isSenseFromTitle(index) ;
+			this.fromRedirect = view.isSenseFromRedirect(index) ;
+		}
 
 		
 		//public ==================================================================
@@ -248,12 +261,24 @@ public class Label {
 	private void setDetails() {
 		
 		try {
-			DbLabel lbl = env.getDbLabel(textProcessor).retrieve(text) ;
-		
-			if (lbl == null) {
-				throw new Exception() ;
-			} else {
+			LabelDatabase db = env.getDbLabel(textProcessor) ;
+			
+			if (db.isCached() && db.getCachePriority() == CachePriority.speed) {
+				//labels are already held as objects, so there is nothing to gain from reading bytes
+				DbLabel lbl = db.retrieve(text) ;
+				
+				if (lbl == null) 
+					throw new Exception() ;
+				
 				setDetails(lbl) ;
+			} else {
+				//read senses straight from the stored bytes, rather than building a DbLabel and a list of DbSenseForLabels
+				DbLabelView view = new DbLabelView() ;
+				
+				if (!db.retrieveView(text, view)) 
+					throw new Exception() ;
+				
+				setDetails(view) ;
 			}
 		} catch (Exception e) {
 			this.senses = new Sense[0] ;
@@ -261,6 +286,21 @@ public class Label {
 		}
 	}
 	
+	private void setDetails(DbLabelView view) {
+		
+		this.linkDocCount = view.getLinkDocCount() ;
+		this.linkOccCount = view.getLinkOccCount() ;
+		this.textDocCount = view.getTextDocCount() ;
+		this.textOccCount = view.getTextOccCount() ;
+		
+		this.senses = new Sense[view.getSenseCount()] ;
+		
+		for (int i=0 ; i<senses.length ; i++) 
+			this.senses[i] = new Sense(env, view, i) ;
+		
+		this.detailsSet = true ;
+	}
+	
 	private void setDetails(DbLabel lbl) {
 		
 		this.linkDocCount = lbl.getLinkDocCount() ;
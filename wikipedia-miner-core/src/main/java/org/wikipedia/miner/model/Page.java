@@ -1,5 +1,8 @@
 package org.wikipedia.miner.model;
 
+import org.wikipedia.miner.db.MarkupOpening;
+import org.wikipedia.miner.db.SentenceMarkupDatabase;
+import org.wikipedia.miner.db.PageTable;
 import org.wikipedia.miner.db.WEnvironment.StatisticName;
 import org.wikipedia.miner.db.struct.DbIntList;
 import org.wikipedia.miner.db.struct.DbPage;
@@ -48,6 +51,11 @@ public class Page implements Comparable<Page> {
 		invalid
 	} ;
 
+	private static final PageType[] PAGE_TYPES = PageType.values() ;
+
+	//the number of characters of markup to try before falling back to more, when looking for the first paragraph
+	private static final int FIRST_PARAGRAPH_OPENING_LENGTH = 2048 ;
+
 	protected int id ;
 	protected String title ;
 	protected PageType type ;
@@ -103,10 +111,7 @@ public class Page implements Comparable<Page> {
 	 *  @return true if a page with this id is defined in Wikipedia, otherwise false.
 	 */
 	public boolean exists() {
-		if (!detailsSet) 
-			setDetails() ;
-
-		return (type != PageType.invalid) ;
+		return (getType() != PageType.invalid) ;
 	}
 
 	/**
@@ -190,7 +195,15 @@ public class Page implements Comparable<Page> {
 	 * @return	the type of the page
 	 */
 	public PageType getType() {
-		if (!detailsSet) setDetails() ;
+		if (type == null) {
+			//if pages have been cached to a table, there is no need to fetch any other details
+			int ordinal = getTableOrdinal() ;
+
+			if (ordinal >= 0)
+				type = PAGE_TYPES[env.getPageTable().getType(ordinal)] ;
+			else
+				setDetails() ;
+		}
 
 		return type;
 	}
@@ -199,7 +212,14 @@ public class Page implements Comparable<Page> {
 	 * @return the length of the shortest path from this page to the root category, or null if no path exists.
 	 */
 	public Integer getDepth() {
-		if (!detailsSet) setDetails() ;
+		if (!detailsSet) {
+			int ordinal = getTableOrdinal() ;
+
+			if (ordinal >= 0)
+				depth = env.getPageTable().getDepth(ordinal) ;
+			else
+				setDetails() ;
+		}
 
 		if (depth < 0)
 			return null ;
@@ -252,9 +272,24 @@ public class Page implements Comparable<Page> {
 	 */
 	public String getSentenceMarkup(int index) {
 
-		String markup = getMarkup() ;
+		//use precomputed sentences, if they are available
+		SentenceMarkupDatabase sentenceDb = env.getDbSentenceMarkup() ;
+		if (sentenceDb.isAvailable()) {
+			String sentence = sentenceDb.retrieveSentence(id, index) ;
+			
+			if (sentence != null)
+				return sentence ;
+		}
+
 		Integer[] splits = getSentenceSplits() ;
 
+		//sentences other than the last can be found within the opening of the markup
+		String markup ;
+		if (index < splits.length)
+			markup = env.getDbMarkup().retrieveOpening(id, splits[index]) ;
+		else
+			markup = getMarkup() ;
+
 		MarkupStripper s = new MarkupStripper() ;
 		markup = s.stripAllButInternalLinksAndEmphasis(markup, ' ') ;
 		markup = s.stripNonArticleInternalLinks(markup, ' ') ;
@@ -287,9 +322,40 @@ public class Page implements Comparable<Page> {
 	 */
 	public String getFirstParagraphMarkup() {
 
-		MarkupStripper stripper = new MarkupStripper() ;
+		//the first paragraph is usually found within the opening of the markup, so try that before decompressing all of it
+		MarkupOpening opening = env.getDbMarkup().retrieveOpenings(id) ;
+		
+		if (opening == null)
+			return null ;
+		
+		try {
+			int openingLength = FIRST_PARAGRAPH_OPENING_LENGTH ;
+			
+			while (true) {
+				String markup = opening.getOpening(openingLength) ;
+				
+				String fp = getFirstParagraphMarkup(markup, opening.isWhole()) ;
+				
+				if (fp != null)
+					return fp ;
+				
+				openingLength = openingLength * 4 ;
+			}
+		} finally {
+			opening.close() ;
+		}
+	}
+	
+	/**
+	 * Extracts the first paragraph from the given markup
+	 * 
+	 * @param markup all of the markup of a page, or an opening returned by {@link MarkupOpening#getOpening(int)}
+	 * @param complete true if the given markup is all of the page's markup
+	 * @return the first paragraph, or null if the given opening is not long enough to be sure of it
+	 */
+	private static String getFirstParagraphMarkup(String markup, boolean complete) {
 
-		String markup = getMarkup() ;
+		MarkupStripper stripper = new MarkupStripper() ;
 
 		markup = markup.replaceAll("={2,}(.+)={2,}", "\n") ; //clear section headings completely - not just formating, but content as well.			
 		markup = stripper.stripAllButInternalLinksAndEmphasis(markup, null) ;
@@ -297,16 +363,22 @@ public class Page implements Comparable<Page> {
 		markup = stripper.stripExcessNewlines(markup) ;
 
 		String fp = "" ;
+		boolean found = false ;
 		int pos = markup.indexOf("\n\n") ;
 
 		while (pos>=0) {
 			fp = markup.substring(0, pos) ;
 
-			if (pos > 150) 
+			if (pos > 150) {
+				found = true ;
 				break ;
+			}
 
 			pos = markup.indexOf("\n\n", pos+2) ;
 		}
+		
+		if (!found && !complete)
+			return null ;
 
 		fp = fp.replaceAll("\n", " ") ;
 		fp = fp.replaceAll("\\s+", " ") ;  //turn all whitespace into spaces, and collapse them.
@@ -328,6 +400,15 @@ public class Page implements Comparable<Page> {
 	 */
 	public static Page createPage(WEnvironment env, int id)  {
 
+		PageTable table = env.getPageTable() ;
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+
+			//only the type is needed to choose the right subclass; other details are read from the table when requested
+			if (ordinal >= 0) 
+				return createPage(env, id, PAGE_TYPES[table.getType(ordinal)]) ;
+		}
+
 		DbPage pd = env.getDbPage().retrieve(id) ; 
 
 		if (pd != null)
@@ -377,10 +458,64 @@ public class Page implements Comparable<Page> {
 	}
 
 
+	private static Page createPage(WEnvironment env, int id, PageType type) {
+
+		Page p = null ;
+
+		switch (type) {
+		case article:
+			p = new Article(env, id) ;
+			break ;
+		case redirect:
+			p = new Redirect(env, id) ;
+			break ;
+		case disambiguation:
+			p = new Disambiguation(env, id) ;
+			break ;
+		case category:
+			p = new Category(env, id) ;
+			break ;
+		case template:
+			p = new Template(env, id) ;
+			break ;
+		default:
+			p = new Page(env, id) ;
+		}
+
+		p.type = type ;
+		return p ;
+	}
+
+
 	//protected and private ====================================================
 
+	/**
+	 * Returns the ordinal of this page within the cached {@link PageTable}, or a negative value if pages have not been cached to a table, or this page is not in it.
+	 */
+	private int getTableOrdinal() {
+
+		PageTable table = env.getPageTable() ;
+
+		if (table == null)
+			return -1 ;
+
+		return table.getOrdinal(id) ;
+	}
+
 	private void setDetails()  {
 
+		int ordinal = getTableOrdinal() ;
+		if (ordinal >= 0) {
+			PageTable table = env.getPageTable() ;
+
+			title = table.getTitle(ordinal) ;
+			type = PAGE_TYPES[table.getType(ordinal)] ;
+			depth = table.getDepth(ordinal) ;
+
+			detailsSet = true ;
+			return ;
+		}
+
 		try {
 			DbPage pd = env.getDbPage().retrieve(id) ;
 
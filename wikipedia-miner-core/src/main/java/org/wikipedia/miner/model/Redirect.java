@@ -4,6 +4,7 @@ package org.wikipedia.miner.model;
 import gnu.trove.set.hash.TIntHashSet;
 
 import org.wikipedia.miner.db.struct.DbPage;
+import org.wikipedia.miner.db.RedirectTable;
 import org.wikipedia.miner.db.WEnvironment;
 
 /**
@@ -34,6 +35,22 @@ public class Redirect extends Page {
 	 * @return	the equivalent Article for this redirect.
 	 */	//TODO: should just resolve double redirects during extraction.
 	public Article getTarget() {
+		
+		//chains of redirects have already been resolved, if redirects have been cached
+		RedirectTable table = env.getRedirectTable() ;
+		if (table != null) {
+			int ordinal = table.getOrdinal(id) ;
+			
+			if (ordinal < 0 || table.getResolvedTarget(ordinal) == RedirectTable.UNRESOLVED)
+				return null ;
+			
+			Page target = Page.createPage(env, table.getResolvedTarget(ordinal)) ;
+			if (!target.exists() || !(target instanceof Article))
+				return null ;
+			
+			return (Article)target ;
+		}
+		
 
 		int currId = id ;
 
@@ -26,6 +26,8 @@ import javax.xml.parsers.ParserConfigurationException;
 
 
 import org.apache.log4j.Logger;
+import org.wikipedia.miner.db.ResolvedTitleDatabase;
+import org.wikipedia.miner.db.TranslationIndexDatabase;
 import org.wikipedia.miner.db.WEnvironment;
 import org.wikipedia.miner.db.WIterator;
 import org.wikipedia.miner.db.WEnvironment.StatisticName;
@@ -166,6 +168,21 @@ public class Wikipedia {
 
 		title = title.substring(0,1).toUpperCase() + title.substring(1) ;
 
+		//redirects have already been resolved, if the environment includes resolved titles
+		ResolvedTitleDatabase resolvedTitles = env.getDbResolvedArticlesByTitle() ;
+		if (resolvedTitles.isAvailable()) {
+			Integer id = resolvedTitles.retrieve(title) ;
+			
+			if (id == null)
+				return null ;
+			
+			Page page = Page.createPage(env, id) ;
+			if (!page.exists())
+				return null ;
+			
+			return (Article)page ;
+		}
+
 		Integer id = env.getDbArticlesByTitle().retrieve(title) ;
 
 		if (id == null)
@@ -181,6 +198,61 @@ public class Wikipedia {
 			return (Article)page ;
 	}
 
+	/**
+	 * Returns the Article that has been translated to the given title in another language (the reverse of {@link Article#getTranslation(String)}). 
+	 * <p>
+	 * This requires the {@link org.wikipedia.miner.db.WDatabase.DatabaseType#articlesByTranslation} database, which is 
+	 * built alongside the rest of the environment.
+	 * 
+	 * @param languageCode the language code of the translation (i.e. fn, jp, de, etc)
+	 * @param title the (case sensitive) title of the translation
+	 * @return the Article that has been translated to the given title, or null if there is no such article (or no index of translations).
+	 */
+	public Article getArticleByTranslation(String languageCode, String title) {
+
+		Article[] articles = getArticlesByTranslation(languageCode, new String[] {title}) ;
+		return articles[0] ;
+	}
+
+	/**
+	 * Returns the Articles that have been translated to each of the given titles in another language. This is much more 
+	 * efficient than calling {@link #getArticleByTranslation(String, String)} repeatedly, because translations are 
+	 * looked up in the order in which they are stored.
+	 * 
+	 * @param languageCode the language code of the translations (i.e. fn, jp, de, etc)
+	 * @param titles the (case sensitive) titles of the translations
+	 * @return an array where the ith element is the Article that has been translated to titles[i], or null if there is no such article.
+	 */
+	public Article[] getArticlesByTranslation(String languageCode, String[] titles) {
+
+		Article[] articles = new Article[titles.length] ;
+
+		TranslationIndexDatabase translations = env.getDbArticlesByTranslation() ;
+		if (!translations.isAvailable()) {
+			Logger.getLogger(Wikipedia.class).warn("No index of translations is available. Rebuild the environment to create one.") ;
+			return articles ;
+		}
+
+		String[] keys = new String[titles.length] ;
+		for (int i=0 ; i<titles.length ; i++)
+			keys[i] = TranslationIndexDatabase.getKey(languageCode, titles[i]) ;
+
+		Integer[] ids = new Integer[titles.length] ;
+		translations.retrieveAll(keys, ids) ;
+
+		for (int i=0 ; i<titles.length ; i++) {
+
+			if (ids[i] == null)
+				continue ;
+
+			Page page = Page.createPage(env, ids[i]) ;
+			if (page.exists() && page instanceof Article)
+				articles[i] = (Article)page ;
+		}
+
+		return articles ;
+	}
+
 	/**
 	 * Returns the Category referenced by the given (case sensitive) title. 
 	 * 
@@ -25,7 +25,10 @@ import java.util.*;
 import java.util.regex.*;
 
 import org.apache.log4j.Logger;
+import org.wikipedia.miner.db.WDatabase;
+import org.wikipedia.miner.db.WEntry;
 import org.wikipedia.miner.db.WEnvironment.StatisticName;
+import org.wikipedia.miner.db.struct.DbPage;
 import org.wikipedia.miner.model.*;
 import org.wikipedia.miner.model.Page.PageType;
 
@@ -196,28 +199,37 @@ public class ArticleSet extends ArrayList<Article> {
 		writer.close() ;
 	}
 		
-	protected static Vector<Article> getRoughCandidates(Wikipedia wikipedia, Integer minInLinks, Integer minOutLinks)  {
+	protected static Vector<Article> getRoughCandidates(final Wikipedia wikipedia, final Integer minInLinks, final Integer minOutLinks)  {
 		
-		Vector<Article> articles = new Vector<Article>() ;
+		final Vector<Article> articles = new Vector<Article>() ;
 		int totalArticles = wikipedia.getEnvironment().retrieveStatistic(StatisticName.articleCount).intValue() ;
 		
-		ProgressTracker pn = new ProgressTracker(totalArticles, "Gathering rough candidates", ArticleSet.class) ;
+		final ProgressTracker pn = new ProgressTracker(totalArticles, "Gathering rough candidates", ArticleSet.class) ;
 		
-		PageIterator i = wikipedia.getPageIterator(PageType.article) ;
+		//pages are scanned concurrently, in separate key ranges, so candidates will not be gathered in order
+		wikipedia.getEnvironment().getDbPage().parallelIterate(wikipedia.getConfig().getCacheThreads(), new WDatabase.EntryVisitor<Integer, DbPage>() {
+			public void visit(WEntry<Integer, DbPage> e) {
+				
+				if (e.getValue().getType() != PageType.article.ordinal())
+					return ;
+				
+				synchronized (pn) {
+					pn.update() ;
+				}
+				
+				Article art = (Article)Page.createPage(wikipedia.getEnvironment(), e.getKey(), e.getValue()) ;
+				
+				if (minOutLinks != null && art.getLinksOut().length < minOutLinks)
+					return ;
+				
+				if (minInLinks != null && art.getLinksIn().length < minInLinks)
+					return ;
+				
+				articles.add(art) ;
+			}
+		}) ;
 		
-		while (i.hasNext()) {
-			Article art = (Article)i.next() ;
-			pn.update() ;
-			
-			if (minOutLinks != null && art.getLinksOut().length < minOutLinks)
-				continue ;
-			
-			if (minInLinks != null && art.getLinksIn().length < minInLinks)
-				continue ;
-			
-			articles.add(art) ;
-		}
-		i.close();
+		Collections.sort(articles) ;
 		
 		return articles ;
 	}
@@ -0,0 +1,536 @@
+package org.wikipedia.miner.util;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache whose size is bounded by a maximum number of entries and/or a maximum total weight (e.g. bytes).
+ * <p>
+ * Entries are admitted as they are accessed, and evicted according to the W-TinyLFU policy: new entries enter a small
+ * LRU window, and only graduate to the main (segmented LRU) region if they have been requested more often than the
+ * entry they would displace. Request frequencies are tracked approximately, by a count-min sketch that is periodically
+ * halved so that old popularity fades away. This keeps hot entries in memory even when they are interleaved with long
+ * scans of entries that are only ever requested once.
+ * <p>
+ * The cache is split into independently locked segments, to reduce contention between threads.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K,V> {
+
+	/**
+	 * Calculates the weight of values, for caches that are bounded by weight.
+	 *
+	 * @param <V> the value type
+	 */
+	public interface Weigher<V> {
+
+		/**
+		 * Returns the weight of the given value
+		 *
+		 * @param value a value that is to be cached
+		 * @return the (non-negative) weight of the value
+		 */
+		public int weigh(V value) ;
+	}
+
+	private static final int SEGMENTS = 16 ;
+
+	private Segment<K,V>[] segments ;
+
+	private AtomicLong hits = new AtomicLong() ;
+	private AtomicLong misses = new AtomicLong() ;
+	private AtomicLong evictions = new AtomicLong() ;
+
+	/**
+	 * Creates a cache bounded by number of entries
+	 *
+	 * @param maxEntries the maximum number of entries to cache
+	 */
+	public BoundedCache(long maxEntries) {
+		this(maxEntries, 0, null) ;
+	}
+
+	/**
+	 * Creates a cache bounded by number of entries, total weight, or both
+	 *
+	 * @param maxEntries the maximum number of entries to cache, or 0 if the number of entries should not be bounded
+	 * @param maxWeight the maximum total weight of entries to cache, or 0 if the weight should not be bounded
+	 * @param weigher calculates the weight of values (may be null if maxWeight is 0)
+	 */
+	public BoundedCache(long maxEntries, long maxWeight, Weigher<V> weigher) {
+
+		if (maxEntries <= 0 && maxWeight <= 0)
+			throw new IllegalArgumentException("Either maxEntries or maxWeight must be specified") ;
+
+		if (maxWeight > 0 && weigher == null)
+			throw new IllegalArgumentException("A weigher must be specified if maxWeight is specified") ;
+
+		segments = newSegments(SEGMENTS) ;
+
+		for (int s=0 ; s<SEGMENTS ; s++)
+			segments[s] = new Segment<K,V>(this, divide(maxEntries), divide(maxWeight), weigher) ;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K,V> Segment<K,V>[] newSegments(int count) {
+		return (Segment<K,V>[])new Segment<?,?>[count] ;
+	}
+
+	/**
+	 * Retrieves the value associated with the given key, if it is cached
+	 *
+	 * @param key the key to search for
+	 * @return the cached value, or null if it is not cached
+	 */
+	public V get(K key) {
+
+		int hash = spread(key.hashCode()) ;
+		V value = segmentFor(hash).get(key, hash) ;
+
+		if (value == null)
+			misses.incrementAndGet() ;
+		else
+			hits.incrementAndGet() ;
+
+		return value ;
+	}
+
+	/**
+	 * Offers the given key,value pair to the cache. It may be rejected immediately (if it is heavier than an entire
+	 * segment of the cache) or evicted later.
+	 *
+	 * @param key the key
+	 * @param value the value associated with the key
+	 */
+	public void put(K key, V value) {
+
+		int hash = spread(key.hashCode()) ;
+		segmentFor(hash).put(key, value, hash) ;
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void clear() {
+		for (Segment<K,V> segment:segments)
+			segment.clear() ;
+	}
+
+	/**
+	 * Returns the number of entries currently cached
+	 *
+	 * @return the number of entries currently cached
+	 */
+	public long size() {
+
+		long size = 0 ;
+		for (Segment<K,V> segment:segments)
+			size += segment.size() ;
+
+		return size ;
+	}
+
+	/**
+	 * Returns the total weight of entries currently cached (or 0, if this cache is not bounded by weight)
+	 *
+	 * @return the total weight of entries currently cached
+	 */
+	public long weight() {
+
+		long weight = 0 ;
+		for (Segment<K,V> segment:segments)
+			weight += segment.weight() ;
+
+		return weight ;
+	}
+
+	/**
+	 * Returns the number of requests that were satisfied by this cache
+	 *
+	 * @return the number of requests that were satisfied by this cache
+	 */
+	public long getHitCount() {
+		return hits.get() ;
+	}
+
+	/**
+	 * Returns the number of requests that could not be satisfied by this cache
+	 *
+	 * @return the number of requests that could not be satisfied by this cache
+	 */
+	public long getMissCount() {
+		return misses.get() ;
+	}
+
+	/**
+	 * Returns the number of entries that have been evicted (or rejected) from this cache
+	 *
+	 * @return the number of entries that have been evicted (or rejected) from this cache
+	 */
+	public long getEvictionCount() {
+		return evictions.get() ;
+	}
+
+	/**
+	 * Returns the proportion of requests that were satisfied by this cache
+	 *
+	 * @return the proportion of requests that were satisfied by this cache, or 0 if no requests have been made.
+	 */
+	public double getHitRatio() {
+
+		long h = hits.get() ;
+		long total = h + misses.get() ;
+
+		if (total == 0)
+			return 0 ;
+
+		return (double)h/total ;
+	}
+
+	@Override
+	public String toString() {
+		return "entries: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", hit ratio: " + getHitRatio() ;
+	}
+
+	private Segment<K,V> segmentFor(int hash) {
+		return segments[(hash >>> 28) & (SEGMENTS-1)] ;
+	}
+
+	private static long divide(long max) {
+
+		if (max <= 0)
+			return 0 ;
+
+		return Math.max(1, (max + SEGMENTS - 1) / SEGMENTS) ;
+	}
+
+	private static int spread(int hash) {
+		hash ^= (hash >>> 16) ;
+		hash *= 0x85ebca6b ;
+		hash ^= (hash >>> 13) ;
+		hash *= 0xc2b2ae35 ;
+		hash ^= (hash >>> 16) ;
+		return hash ;
+	}
+
+
+
+	private enum Region {window, probation, protect} ;
+
+	private static class Node<K,V> {
+
+		K key ;
+		V value ;
+		int weight ;
+		Region region ;
+
+		Node<K,V> prev ;
+		Node<K,V> next ;
+	}
+
+	/**
+	 * A circular, doubly linked list of nodes, ordered from least to most recently used
+	 */
+	private static class Queue<K,V> {
+
+		Node<K,V> head = new Node<K,V>() ;
+		long size = 0 ;
+		long weight = 0 ;
+
+		Queue() {
+			head.prev = head ;
+			head.next = head ;
+		}
+
+		Node<K,V> eldest() {
+			return (head.next == head) ? null : head.next ;
+		}
+
+		void add(Node<K,V> node) {
+			node.prev = head.prev ;
+			node.next = head ;
+			head.prev.next = node ;
+			head.prev = node ;
+
+			size++ ;
+			weight += node.weight ;
+		}
+
+		void remove(Node<K,V> node) {
+			node.prev.next = node.next ;
+			node.next.prev = node.prev ;
+			node.prev = null ;
+			node.next = null ;
+
+			size-- ;
+			weight -= node.weight ;
+		}
+
+		void moveToTail(Node<K,V> node) {
+			remove(node) ;
+			add(node) ;
+		}
+	}
+
+	private static class Segment<K,V> {
+
+		private BoundedCache<K,V> cache ;
+
+		private long maxEntries ;
+		private long maxWeight ;
+		private Weigher<V> weigher ;
+
+		private HashMap<K,Node<K,V>> nodes = new HashMap<K,Node<K,V>>() ;
+
+		private Queue<K,V> window = new Queue<K,V>() ;
+		private Queue<K,V> probation = new Queue<K,V>() ;
+		private Queue<K,V> protect = new Queue<K,V>() ;
+
+		private FrequencySketch sketch ;
+
+		Segment(BoundedCache<K,V> cache, long maxEntries, long maxWeight, Weigher<V> weigher) {
+
+			this.cache = cache ;
+			this.maxEntries = maxEntries ;
+			this.maxWeight = maxWeight ;
+			this.weigher = weigher ;
+
+			//assume an average weight of 64 if the number of entries is not bounded
+			long expectedEntries = (maxEntries > 0) ? maxEntries : maxWeight/64 ;
+			sketch = new FrequencySketch(expectedEntries) ;
+		}
+
+		synchronized V get(K key, int hash) {
+
+			sketch.increment(hash) ;
+
+			Node<K,V> node = nodes.get(key) ;
+
+			if (node == null)
+				return null ;
+
+			switch(node.region) {
+			case window :
+				window.moveToTail(node) ;
+				break ;
+			case probation :
+				probation.remove(node) ;
+				node.region = Region.protect ;
+				protect.add(node) ;
+				demoteProtected() ;
+				break ;
+			case protect :
+				protect.moveToTail(node) ;
+				break ;
+			}
+
+			return node.value ;
+		}
+
+		synchronized void put(K key, V value, int hash) {
+
+			Node<K,V> node = nodes.get(key) ;
+
+			if (node != null) {
+				//replace existing value
+				queueFor(node).remove(node) ;
+				node.value = value ;
+				node.weight = weigh(value) ;
+				queueFor(node).add(node) ;
+			} else {
+				node = new Node<K,V>() ;
+				node.key = key ;
+				node.value = value ;
+				node.weight = weigh(value) ;
+
+				if (maxWeight > 0 && node.weight > maxWeight) {
+					cache.evictions.incrementAndGet() ;
+					return ;
+				}
+
+				node.region = Region.window ;
+				nodes.put(key, node) ;
+				window.add(node) ;
+			}
+
+			evict() ;
+		}
+
+		synchronized void clear() {
+			nodes.clear() ;
+			window = new Queue<K,V>() ;
+			probation = new Queue<K,V>() ;
+			protect = new Queue<K,V>() ;
+		}
+
+		synchronized long size() {
+			return nodes.size() ;
+		}
+
+		synchronized long weight() {
+			return window.weight + probation.weight + protect.weight ;
+		}
+
+		private int weigh(V value) {
+			if (weigher == null)
+				return 0 ;
+
+			return weigher.weigh(value) ;
+		}
+
+		private Queue<K,V> queueFor(Node<K,V> node) {
+			switch (node.region) {
+			case window :
+				return window ;
+			case probation :
+				return probation ;
+			default :
+				return protect ;
+			}
+		}
+
+		private boolean exceeds(long entries, long weight, double proportion) {
+
+			if (maxEntries > 0 && entries > Math.max(1, (long)(maxEntries * proportion)))
+				return true ;
+
+			if (maxWeight > 0 && weight > Math.max(1, (long)(maxWeight * proportion)))
+				return true ;
+
+			return false ;
+		}
+
+		private boolean windowExceeded() {
+			return exceeds(window.size, window.weight, 0.01) ;
+		}
+
+		private boolean mainExceeded() {
+			return exceeds(probation.size + protect.size, probation.weight + protect.weight, 0.99) ;
+		}
+
+		private void demoteProtected() {
+
+			while (exceeds(protect.size, protect.weight, 0.99 * 0.8)) {
+				Node<K,V> node = protect.eldest() ;
+				protect.remove(node) ;
+				node.region = Region.probation ;
+				probation.add(node) ;
+			}
+		}
+
+		private void evict() {
+
+			while (windowExceeded()) {
+
+				Node<K,V> candidate = window.eldest() ;
+				window.remove(candidate) ;
+
+				candidate.region = Region.probation ;
+				probation.add(candidate) ;
+
+				int candidateFreq = sketch.frequency(spread(candidate.key.hashCode())) ;
+
+				while (mainExceeded()) {
+
+					Node<K,V> victim = probation.eldest() ;
+					if (victim == null)
+						victim = protect.eldest() ;
+
+					if (victim == candidate) {
+						discard(candidate) ;
+						break ;
+					}
+
+					if (candidateFreq > sketch.frequency(spread(victim.key.hashCode()))) {
+						discard(victim) ;
+					} else {
+						discard(candidate) ;
+						break ;
+					}
+				}
+			}
+		}
+
+		private void discard(Node<K,V> node) {
+			queueFor(node).remove(node) ;
+			nodes.remove(node.key) ;
+			cache.evictions.incrementAndGet() ;
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters, for estimating how often keys have been requested.
+	 */
+	private static class FrequencySketch {
+
+		private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L} ;
+
+		private long[] table ;
+		private int mask ;
+
+		private long additions = 0 ;
+		private long sampleSize ;
+
+		FrequencySketch(long expectedEntries) {
+
+			int length = 16 ;
+			while (length < expectedEntries && length < (1 << 24))
+				length <<= 1 ;
+
+			table = new long[length] ;
+			mask = length - 1 ;
+			sampleSize = 10L * length ;
+		}
+
+		int frequency(int hash) {
+
+			int freq = Integer.MAX_VALUE ;
+
+			for (int i=0 ; i<4 ; i++) {
+				long h = indexHash(hash, i) ;
+				int index = (int)(h & mask) ;
+				int offset = (int)((h >>> 32) & 15) << 2 ;
+
+				freq = Math.min(freq, (int)((table[index] >>> offset) & 15L)) ;
+			}
+
+			return freq ;
+		}
+
+		void increment(int hash) {
+
+			boolean added = false ;
+
+			for (int i=0 ; i<4 ; i++) {
+				long h = indexHash(hash, i) ;
+				int index = (int)(h & mask) ;
+				int offset = (int)((h >>> 32) & 15) << 2 ;
+
+				if (((table[index] >>> offset) & 15L) != 15L) {
+					table[index] += (1L << offset) ;
+					added = true ;
+				}
+			}
+
+			if (added && ++additions >= sampleSize)
+				reset() ;
+		}
+
+		private void reset() {
+
+			for (int i=0 ; i<table.length ; i++)
+				table[i] = (table[i] >>> 1) & 0x7777777777777777L ;
+
+			additions = additions / 2 ;
+		}
+
+		private static long indexHash(int hash, int i) {
+
+			long h = (hash + SEEDS[i]) * SEEDS[i] ;
+			h ^= (h >>> 29) ;
+			return h ;
+		}
+	}
+}
@@ -14,8 +14,8 @@ public class EnvironmentBuilder {
 
 	public static void main(String args[]) throws Exception {
 		
-		if (args.length != 1) {
-			System.out.println("Please specify path to wikipedia configuration file") ;
+		if (args.length != 1 && args.length != 2) {
+			System.out.println("Please specify path to wikipedia configuration file, and optionally the number of databases to load concurrently (default 1)") ;
 			System.exit(1) ;
 		}
 		
@@ -32,7 +32,18 @@ public class EnvironmentBuilder {
 			System.exit(1) ;
 		}
 	
-		WEnvironment.buildEnvironment(conf, conf.getDataDirectory(), false) ;
+		//databases are loaded one at a time unless more threads are asked for
+		int threads = 1 ;
+		if (args.length == 2) {
+			try {
+				threads = Integer.parseInt(args[1]) ;
+			} catch (NumberFormatException e) {
+				System.out.println("'" + args[1] + "' is not a valid number of threads") ;
+				System.exit(1) ;
+			}
+		}
+	
+		WEnvironment.buildEnvironment(conf, conf.getDataDirectory(), false, threads) ;
 	}
 	
 }
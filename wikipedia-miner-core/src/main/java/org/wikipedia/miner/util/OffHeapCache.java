@@ -0,0 +1,368 @@
+package org.wikipedia.miner.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of byte arrays, which are held in direct {@link ByteBuffer}s outside of the Java heap (and
+ * so are never scanned or moved by the garbage collector). Only the index of keys is held on the heap.
+ * <p>
+ * The cache is split into independently locked segments, each of which is a circular log: values are appended at the head
+ * of the log, and space is reclaimed from its tail. Eviction follows the CLOCK (second chance) policy: any entry that has
+ * been requested since it was written is copied back to the head of the log rather than evicted, so entries that
+ * keep being requested stay cached while entries that are never requested again age out.
+ * <p>
+ * Direct memory is limited by the JVM's -XX:MaxDirectMemorySize option, which must be large enough to accommodate this cache.
+ *
+ * @param <K> the key type
+ */
+public class OffHeapCache<K> {
+
+	//a single direct buffer can be no larger than this
+	private static final long MAX_SEGMENT_SIZE = 1L << 30 ;
+
+	private static final int MIN_SEGMENTS = 16 ;
+
+	private Segment<K>[] segments ;
+	private int segmentShift ;
+
+	private AtomicLong hits = new AtomicLong() ;
+	private AtomicLong misses = new AtomicLong() ;
+	private AtomicLong evictions = new AtomicLong() ;
+
+	/**
+	 * Creates a cache, and allocates all of the memory it will use
+	 *
+	 * @param maxBytes the total size (in bytes) of values to cache
+	 */
+	public OffHeapCache(long maxBytes) {
+
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes must be positive") ;
+
+		int segmentCount = MIN_SEGMENTS ;
+		while (maxBytes / segmentCount > MAX_SEGMENT_SIZE)
+			segmentCount = segmentCount * 2 ;
+
+		segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount) ;
+
+		int segmentSize = (int)Math.max(1, maxBytes / segmentCount) ;
+
+		segments = newSegments(segmentCount) ;
+		for (int s=0 ; s<segmentCount ; s++)
+			segments[s] = new Segment<K>(this, segmentSize) ;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> Segment<K>[] newSegments(int count) {
+		return (Segment<K>[])new Segment<?>[count] ;
+	}
+
+	/**
+	 * Retrieves a copy of the value associated with the given key, if it is cached
+	 *
+	 * @param key the key to search for
+	 * @return the cached value, or null if it is not cached
+	 */
+	public byte[] get(K key) {
+
+		byte[] value = segmentFor(key).get(key) ;
+
+		if (value == null)
+			misses.incrementAndGet() ;
+		else
+			hits.incrementAndGet() ;
+
+		return value ;
+	}
+
+	/**
+	 * Copies the given key,value pair into the cache, replacing any value already associated with the key. The value
+	 * is rejected if it is larger than a quarter of a segment.
+	 *
+	 * @param key the key
+	 * @param value the value associated with the key
+	 */
+	public void put(K key, byte[] value) {
+		segmentFor(key).put(key, value) ;
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void clear() {
+		for (Segment<K> segment:segments)
+			segment.clear() ;
+	}
+
+	/**
+	 * Returns the number of entries currently cached
+	 *
+	 * @return the number of entries currently cached
+	 */
+	public long size() {
+
+		long size = 0 ;
+		for (Segment<K> segment:segments)
+			size += segment.size() ;
+
+		return size ;
+	}
+
+	/**
+	 * Returns the total size (in bytes) of values currently cached
+	 *
+	 * @return the total size of values currently cached
+	 */
+	public long weight() {
+
+		long weight = 0 ;
+		for (Segment<K> segment:segments)
+			weight += segment.weight() ;
+
+		return weight ;
+	}
+
+	/**
+	 * Returns the number of requests that were satisfied by this cache
+	 *
+	 * @return the number of requests that were satisfied by this cache
+	 */
+	public long getHitCount() {
+		return hits.get() ;
+	}
+
+	/**
+	 * Returns the number of requests that could not be satisfied by this cache
+	 *
+	 * @return the number of requests that could not be satisfied by this cache
+	 */
+	public long getMissCount() {
+		return misses.get() ;
+	}
+
+	/**
+	 * Returns the number of entries that have been evicted (or rejected) from this cache
+	 *
+	 * @return the number of entries that have been evicted (or rejected) from this cache
+	 */
+	public long getEvictionCount() {
+		return evictions.get() ;
+	}
+
+	/**
+	 * Returns the proportion of requests that were satisfied by this cache
+	 *
+	 * @return the proportion of requests that were satisfied by this cache, or 0 if no requests have been made.
+	 */
+	public double getHitRatio() {
+
+		long h = hits.get() ;
+		long total = h + misses.get() ;
+
+		if (total == 0)
+			return 0 ;
+
+		return (double)h/total ;
+	}
+
+	@Override
+	public String toString() {
+		return "entries: " + size() + ", bytes: " + weight() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", hit ratio: " + getHitRatio() ;
+	}
+
+	private Segment<K> segmentFor(K key) {
+		return segments[spread(key.hashCode()) >>> segmentShift] ;
+	}
+
+	private static int spread(int hash) {
+		hash ^= (hash >>> 16) ;
+		hash *= 0x85ebca6b ;
+		hash ^= (hash >>> 13) ;
+		hash *= 0xc2b2ae35 ;
+		hash ^= (hash >>> 16) ;
+		return hash ;
+	}
+
+
+
+	private static class Slot<K> {
+
+		K key ;
+		int offset ;
+		int length ;
+
+		boolean live = true ;
+		boolean referenced = false ;
+
+		Slot(K key, int offset, int length) {
+			this.key = key ;
+			this.offset = offset ;
+			this.length = length ;
+		}
+	}
+
+	/**
+	 * A circular log of values within a single direct buffer.
+	 * <p>
+	 * Slots are queued in the order they were written. If the log has not wrapped, live data lies between the tail
+	 * slot and the write position. If it has wrapped, live data lies from the tail slot to the end of the buffer, and from
+	 * the start of the buffer to the write position.
+	 */
+	private static class Segment<K> {
+
+		private OffHeapCache<K> cache ;
+
+		private ByteBuffer buffer ;
+		private int capacity ;
+
+		private HashMap<K,Slot<K>> index = new HashMap<K,Slot<K>>() ;
+		private ArrayDeque<Slot<K>> log = new ArrayDeque<Slot<K>>() ;
+
+		private int writePos = 0 ;
+		private boolean wrapped = false ;
+		private long weight = 0 ;
+
+		Segment(OffHeapCache<K> cache, int capacity) {
+			this.cache = cache ;
+			this.capacity = capacity ;
+			this.buffer = ByteBuffer.allocateDirect(capacity) ;
+		}
+
+		synchronized byte[] get(K key) {
+
+			Slot<K> slot = index.get(key) ;
+
+			if (slot == null)
+				return null ;
+
+			slot.referenced = true ;
+
+			byte[] value = new byte[slot.length] ;
+			buffer.position(slot.offset) ;
+			buffer.get(value) ;
+
+			return value ;
+		}
+
+		void put(K key, byte[] value) {
+
+			if (value.length > capacity / 4) {
+				cache.evictions.incrementAndGet() ;
+				return ;
+			}
+
+			ArrayList<Slot<K>> reprieved = new ArrayList<Slot<K>>() ;
+			ArrayList<byte[]> reprievedValues = new ArrayList<byte[]>() ;
+
+			synchronized (this) {
+				write(key, value, reprieved, reprievedValues) ;
+
+				//entries given a second chance are written back once, and will be evicted next time unless they are requested again
+				for (int i=0 ; i<reprieved.size() ; i++) {
+					Slot<K> slot = reprieved.get(i) ;
+
+					if (!index.containsKey(slot.key))
+						write(slot.key, reprievedValues.get(i), null, null) ;
+				}
+			}
+		}
+
+		/**
+		 * Writes a value at the head of the log, reclaiming space from the tail as needed. Referenced entries that are
+		 * reclaimed are added to the given lists (if they are not null), otherwise they are evicted.
+		 */
+		private void write(K key, byte[] value, ArrayList<Slot<K>> reprieved, ArrayList<byte[]> reprievedValues) {
+
+			Slot<K> existing = index.remove(key) ;
+			if (existing != null) {
+				existing.live = false ;
+				weight -= existing.length ;
+			}
+
+			int offset = allocate(value.length, reprieved, reprievedValues) ;
+
+			buffer.position(offset) ;
+			buffer.put(value) ;
+
+			Slot<K> slot = new Slot<K>(key, offset, value.length) ;
+			log.addLast(slot) ;
+			index.put(key, slot) ;
+			weight += value.length ;
+		}
+
+		private int allocate(int length, ArrayList<Slot<K>> reprieved, ArrayList<byte[]> reprievedValues) {
+
+			while (true) {
+
+				if (log.isEmpty()) {
+					writePos = 0 ;
+					wrapped = false ;
+				}
+
+				if (!wrapped) {
+					if (capacity - writePos >= length)
+						break ;
+
+					//not enough room at the end of the buffer, so continue from the start
+					wrapped = true ;
+					writePos = 0 ;
+					continue ;
+				}
+
+				if (log.peekFirst().offset - writePos >= length)
+					break ;
+
+				reclaimTail(reprieved, reprievedValues) ;
+			}
+
+			int offset = writePos ;
+			writePos += length ;
+			return offset ;
+		}
+
+		private void reclaimTail(ArrayList<Slot<K>> reprieved, ArrayList<byte[]> reprievedValues) {
+
+			Slot<K> slot = log.removeFirst() ;
+
+			if (slot.live) {
+				index.remove(slot.key) ;
+				weight -= slot.length ;
+
+				if (slot.referenced && reprieved != null) {
+					byte[] value = new byte[slot.length] ;
+					buffer.position(slot.offset) ;
+					buffer.get(value) ;
+
+					reprieved.add(slot) ;
+					reprievedValues.add(value) ;
+				} else {
+					cache.evictions.incrementAndGet() ;
+				}
+			}
+
+			//once the tail passes the end of the buffer, live data is contiguous again
+			if (!log.isEmpty() && log.peekFirst().offset < slot.offset)
+				wrapped = false ;
+		}
+
+		synchronized void clear() {
+			index.clear() ;
+			log.clear() ;
+			writePos = 0 ;
+			wrapped = false ;
+			weight = 0 ;
+		}
+
+		synchronized long size() {
+			return index.size() ;
+		}
+
+		synchronized long weight() {
+			return weight ;
+		}
+	}
+}
@@ -127,6 +127,10 @@ public class ProgressTracker {
 	 * @return see above
 	 */
 	public double getTaskProgress() {
+		
+		if (currTask_parts <= 0)
+			return 0 ;
+		
 		return (double)currTask_partsDone/currTask_parts ;
 	}
 
@@ -137,6 +141,10 @@ public class ProgressTracker {
 	 */
 	public double getGlobalProgress() {
 
+		//no tasks have been started yet
+		if (tasksDone < 0)
+			return 0 ;
+
 		double progress = (double)tasksDone/tasks ;
 		progress += getTaskProgress()/tasks ;
 
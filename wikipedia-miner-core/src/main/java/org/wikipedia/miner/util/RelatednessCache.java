@@ -19,23 +19,40 @@
 
 package org.wikipedia.miner.util;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.wikipedia.miner.comparison.ArticleComparer;
 import org.wikipedia.miner.model.Article;
 
-import gnu.trove.* ;
 import gnu.trove.map.hash.TLongDoubleHashMap;
 
 /**
  * This class caches the results of calculating relatedness measures between articles; 
  * If all article comparisons are performed via this class, then no calculations will be repeated.
+ * <p>
+ * Measures are shared (via a bounded cache) by every RelatednessCache whose comparer has the same {@link ArticleComparer#getConfigurationKey()},
+ * i.e. the same wikipedia edition, data dependencies and classifier, so they survive from one request to the next. The size of these shared caches is
+ * given by {@link WikipediaConfiguration#getRelatednessCacheSize()}; if this is 0, each RelatednessCache keeps its own (unbounded) measures instead.
+ * <p>
+ * The comparer's configuration is checked on every request, so if it loads or builds a different classifier, measures made by the old
+ * classifier are no longer used. 
+ * <p>
+ * This class is thread-safe.
  */
 public class RelatednessCache {
 
+	private static final ConcurrentMap<String,BoundedCache<Long,Double>> sharedCaches = new ConcurrentHashMap<String,BoundedCache<Long,Double>>() ;
+	
 	TLongDoubleHashMap cachedRelatedness ;
+	String cachedConfigurationKey ;
 	ArticleComparer comparer ;
 	
-	private long comparisonsRequested = 0 ;
-	private long comparisonsCalculated = 0 ;
+	private AtomicLong comparisonsRequested = new AtomicLong() ;
+	private AtomicLong comparisonsCalculated = new AtomicLong() ;
 	
 	/**
 	 * Initialises the relatedness cache, where relatedness will be measured using the given {@link  ArticleComparer}.
@@ -43,7 +60,6 @@ public class RelatednessCache {
 	 * @param comparer the comparer to use. 
 	 */
 	public RelatednessCache(ArticleComparer comparer) {
-		cachedRelatedness = new TLongDoubleHashMap() ;
 		this.comparer = comparer ;
 	}
 	
@@ -58,39 +74,150 @@ public class RelatednessCache {
 	 */
 	public double getRelatedness(Article art1, Article art2) throws Exception {
 		
-		comparisonsRequested++ ;
+		comparisonsRequested.incrementAndGet() ;
+		
+		long key = getKey(art1.getId(), art2.getId()) ;
+		
+		String configurationKey = comparer.getConfigurationKey() ;
+		BoundedCache<Long,Double> sharedRelatedness = getSharedCache(comparer, configurationKey) ;
+		TLongDoubleHashMap localRelatedness = (sharedRelatedness == null) ? getLocalCache(configurationKey) : null ;
+		
+		Double cached ;
+		if (sharedRelatedness != null) {
+			cached = sharedRelatedness.get(key) ;
+		} else {
+			synchronized (localRelatedness) {
+				cached = localRelatedness.containsKey(key) ? localRelatedness.get(key) : null ;
+			}
+		}
+		
+		if (cached != null)
+			return cached ;
 		
-		//generate unique key for this pair
-		long min = Math.min(art1.getId(), art2.getId()) ;
-		long max = Math.max(art1.getId(), art2.getId()) ;
-		long key = min + (max << 30) ;
+		//calculated outside of any lock; if two threads race to calculate the same pair, they will get the same result
+		double relatedness = comparer.getRelatedness(art1, art2) ;
+		comparisonsCalculated.incrementAndGet() ;
 		
-		double relatedness ;
+		//the classifier changed while this was being calculated, so it is not known which one measured it
+		if (!configurationKey.equals(comparer.getConfigurationKey()))
+			return relatedness ;
 		
-				
-		if (!cachedRelatedness.containsKey(key)) {		
-			relatedness = comparer.getRelatedness(art1, art2) ;		
-			cachedRelatedness.put(key, relatedness) ;
-			
-			comparisonsCalculated++ ;
+		if (sharedRelatedness != null) {
+			sharedRelatedness.put(key, relatedness) ;
 		} else {
-			relatedness = cachedRelatedness.get(key) ;
+			synchronized (localRelatedness) {
+				localRelatedness.put(key, relatedness) ;
+			}
 		}
 		
 		//System.out.println(art1 + " vs. " + art2 + ", " + relatedness) ;
 		return relatedness ;
 	}
 	
+	/**
+	 * @return the number of comparisons that had to be calculated by this cache
+	 */
 	public long getComparisonsCalculated() {
-		return comparisonsCalculated ;
+		return comparisonsCalculated.get() ;
 	}
 	
+	/**
+	 * @return the number of comparisons requested from this cache
+	 */
 	public long getComparisonsRequested() {
-		return comparisonsRequested ;
+		return comparisonsRequested.get() ;
 	}
 	
+	/**
+	 * @return the proportion of comparisons requested from this cache that did not need to be calculated, or 0 if no comparisons have been requested.
+	 */
 	public double getCachedProportion() {
-		double p = (double)comparisonsCalculated/comparisonsRequested ;
+		
+		long requested = comparisonsRequested.get() ;
+		if (requested == 0)
+			return 0 ;
+		
+		double p = (double)comparisonsCalculated.get()/requested ;
 		return 1-p ;
 	}
+	
+	/**
+	 * Returns the cache of relatedness measures that is shared by all comparers with the same configuration as the given one,
+	 * creating it if neccessary. 
+	 * 
+	 * @param comparer the comparer that will be used to measure relatedness
+	 * @return the shared cache for the given comparer, or null if its wikipedia configuration does not allow relatedness measures to be shared.
+	 */
+	public static BoundedCache<Long,Double> getSharedCache(ArticleComparer comparer) {
+		return getSharedCache(comparer, comparer.getConfigurationKey()) ;
+	}
+	
+	private static BoundedCache<Long,Double> getSharedCache(ArticleComparer comparer, String configurationKey) {
+		
+		long size = comparer.getWikipedia().getConfig().getRelatednessCacheSize() ;
+		if (size <= 0)
+			return null ;
+		
+		BoundedCache<Long,Double> cache = sharedCaches.get(configurationKey) ;
+		if (cache != null)
+			return cache ;
+		
+		cache = new BoundedCache<Long,Double>(size) ;
+		
+		BoundedCache<Long,Double> existing = sharedCaches.putIfAbsent(configurationKey, cache) ;
+		if (existing != null)
+			return existing ;
+		
+		return cache ;
+	}
+	
+	/**
+	 * Returns the measures kept by this RelatednessCache alone, discarding them if they were made with a different configuration
+	 */
+	private synchronized TLongDoubleHashMap getLocalCache(String configurationKey) {
+		
+		if (cachedRelatedness == null || !configurationKey.equals(cachedConfigurationKey)) {
+			cachedRelatedness = new TLongDoubleHashMap() ;
+			cachedConfigurationKey = configurationKey ;
+		}
+		
+		return cachedRelatedness ;
+	}
+	
+	/**
+	 * Discards all shared relatedness measures (e.g. to release memory, or after a classifier file has been replaced in place)
+	 */
+	public static void clearSharedCaches() {
+		for (BoundedCache<Long,Double> cache:sharedCaches.values())
+			cache.clear() ;
+		
+		sharedCaches.clear() ;
+	}
+	
+	/**
+	 * Returns a summary of how each shared cache of relatedness measures has been used, including its hit ratio. 
+	 * 
+	 * @return a summary of each shared cache, with one line per comparer configuration
+	 */
+	public static String dumpSharedCaches() {
+		
+		TreeMap<String,BoundedCache<Long,Double>> caches = new TreeMap<String,BoundedCache<Long,Double>>(sharedCaches) ;
+		
+		StringBuffer sb = new StringBuffer() ;
+		for (Map.Entry<String,BoundedCache<Long,Double>> e:caches.entrySet()) 
+			sb.append(e.getKey() + ": " + e.getValue() + "\n") ;
+		
+		return sb.toString() ;
+	}
+	
+	/**
+	 * Generates a unique key for an unordered pair of page ids (which are never negative, but may use all 31 bits of an int)
+	 */
+	private static long getKey(int id1, int id2) {
+		
+		long min = Math.min(id1, id2) & 0xFFFFFFFFL ;
+		long max = Math.max(id1, id2) & 0xFFFFFFFFL ;
+		
+		return (max << 32) | min ;
+	}
 }
@@ -34,6 +34,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.wikipedia.miner.comparison.ArticleComparer;
 import org.wikipedia.miner.comparison.ArticleComparer.DataDependency;
+import org.wikipedia.miner.db.CachePlanner.Workload;
 import org.wikipedia.miner.db.WDatabase.CachePriority;
 import org.wikipedia.miner.db.WDatabase.DatabaseType;
 import org.wikipedia.miner.model.Article;
@@ -42,7 +43,7 @@ import org.xml.sax.SAXException;
 
 public class WikipediaConfiguration {
 	
-	private enum ParamName{langCode,databaseDirectory,dataDirectory,defaultTextProcessor,minLinksIn,minSenseProbability,minLinkProbability, articlesOfInterest, databaseToCache,stopwordFile,articleComparisonDependency,articleComparisonModel, labelDisambiguationModel, labelComparisonModel, comparisonSnippetModel, topicDisambiguationModel, linkDetectionModel, tokenModel, sentenceModel, unknown} ;
+	private enum ParamName{langCode,databaseDirectory,dataDirectory,defaultTextProcessor,minLinksIn,minSenseProbability,minLinkProbability, articlesOfInterest, databaseToCache,cacheThreads,cacheBudget,offHeapCacheBudget,relatednessCacheSize,verifyDatabases,workload,stopwordFile,articleComparisonDependency,articleComparisonModel, labelDisambiguationModel, labelComparisonModel, comparisonSnippetModel, topicDisambiguationModel, linkDetectionModel, tokenModel, sentenceModel, unknown} ;
 	
 	private String langCode ;
 
@@ -51,6 +52,9 @@ public class WikipediaConfiguration {
 	private TextProcessor defaultTextProcessor = null ;
 
 	private HashMap<DatabaseType, CachePriority> databasesToCache = new HashMap<DatabaseType, CachePriority>() ;
+	private HashMap<DatabaseType, Long> cacheMaxEntries = new HashMap<DatabaseType, Long>() ;
+	private HashMap<DatabaseType, Long> cacheMaxBytes = new HashMap<DatabaseType, Long>() ;
+	private HashMap<DatabaseType, Long> cacheOffHeapBytes = new HashMap<DatabaseType, Long>() ;
 
 	private HashSet<String> stopwords = new HashSet<String>() ;
 	
@@ -67,6 +71,17 @@ public class WikipediaConfiguration {
 	private Tokenizer tokenizer ;
 	private SentenceDetector sentenceDetector ;
 	
+	private static final long DEFAULT_CACHE_MAX_ENTRIES = 100000 ;
+	private static final long DEFAULT_RELATEDNESS_CACHE_SIZE = 500000 ;
+	
+	private int cacheThreads = Runtime.getRuntime().availableProcessors() ;
+	
+	private long cacheBudget = 0 ;
+	private long offHeapCacheBudget = 0 ;
+	private long relatednessCacheSize = DEFAULT_RELATEDNESS_CACHE_SIZE ;
+	private boolean verifyDatabases = false ;
+	private EnumSet<Workload> workloads = EnumSet.noneOf(Workload.class) ;
+	
 	private int minLinksIn = 0;
 	private float minLinkProbability = 0 ;
 	private float minSenseProbability = 0 ;
@@ -127,12 +142,56 @@ public class WikipediaConfiguration {
 	
 	public void addDatabaseToCache(DatabaseType type, CachePriority priority) {
 		
+		if (priority == CachePriority.tiered && getCacheOffHeapBytes(type) <= 0)
+			throw new IllegalArgumentException("offHeapBytes must be specified to cache " + type + " with tiered priority") ;
+		
 		System.out.println("Will cache " + type + " for " + priority) ;
 		databasesToCache.put(type, priority) ;
 	}
 	
+	/**
+	 * Specifies that the given database should be cached with {@link CachePriority#bounded} priority, and sets the bounds of this cache. 
+	 * 
+	 * @param type the type of database to cache
+	 * @param maxEntries the maximum number of entries to cache, or 0 if the number of entries should not be bounded
+	 * @param maxBytes the maximum total size (in bytes) of serialised values to cache, or 0 if the size should not be bounded
+	 */
+	public void addDatabaseToCache(DatabaseType type, long maxEntries, long maxBytes) {
+		
+		if (maxEntries <= 0 && maxBytes <= 0)
+			throw new IllegalArgumentException("Either maxEntries or maxBytes must be specified for " + type) ;
+		
+		addDatabaseToCache(type, CachePriority.bounded) ;
+		cacheMaxEntries.put(type, maxEntries) ;
+		cacheMaxBytes.put(type, maxBytes) ;
+	}
+	
+	/**
+	 * Specifies that the given database should be cached with {@link CachePriority#tiered} priority (if offHeapBytes is positive), 
+	 * or otherwise with {@link CachePriority#bounded} priority, and sets the bounds of each tier.
+	 * 
+	 * @param type the type of database to cache
+	 * @param maxEntries the maximum number of entries to cache on the heap, or 0 if the number of entries should not be bounded
+	 * @param maxBytes the maximum total size (in bytes) of serialised values to cache on the heap, or 0 if the size should not be bounded
+	 * @param offHeapBytes the total size (in bytes) of serialised values to cache outside of the heap, or 0 if nothing should be cached outside of the heap
+	 */
+	public void addDatabaseToCache(DatabaseType type, long maxEntries, long maxBytes, long offHeapBytes) {
+		
+		addDatabaseToCache(type, maxEntries, maxBytes) ;
+		
+		if (offHeapBytes > 0) {
+			cacheOffHeapBytes.put(type, offHeapBytes) ;
+			addDatabaseToCache(type, CachePriority.tiered) ;
+		} else {
+			cacheOffHeapBytes.remove(type) ;
+		}
+	}
+	
 	public void clearDatabasesToCache() {
 		databasesToCache.clear();
+		cacheMaxEntries.clear() ;
+		cacheMaxBytes.clear() ;
+		cacheOffHeapBytes.clear() ;
 	}
 	
 	public Set<DatabaseType> getDatabasesToCache() {
@@ -142,6 +201,168 @@ public class WikipediaConfiguration {
 	public CachePriority getCachePriority(DatabaseType databaseType) {
 		return databasesToCache.get(databaseType) ;
 	}
+	
+	/**
+	 * Returns the maximum number of entries to hold in the {@link CachePriority#bounded} cache of the given database
+	 * 
+	 * @param databaseType the type of database
+	 * @return the maximum number of entries to cache, or 0 if the number of entries should not be bounded
+	 */
+	public long getCacheMaxEntries(DatabaseType databaseType) {
+		
+		Long maxEntries = cacheMaxEntries.get(databaseType) ;
+		
+		if (maxEntries == null)
+			return DEFAULT_CACHE_MAX_ENTRIES ;
+		
+		return maxEntries ;
+	}
+	
+	/**
+	 * Returns the maximum total size (in bytes) of values to hold in the {@link CachePriority#bounded} cache of the given database
+	 * 
+	 * @param databaseType the type of database
+	 * @return the maximum total size of values to cache, or 0 if the size should not be bounded
+	 */
+	public long getCacheMaxBytes(DatabaseType databaseType) {
+		
+		Long maxBytes = cacheMaxBytes.get(databaseType) ;
+		
+		if (maxBytes == null)
+			return 0 ;
+		
+		return maxBytes ;
+	}
+	
+	/**
+	 * Returns the total size (in bytes) of values to hold outside of the heap, in the {@link CachePriority#tiered} cache of the given database
+	 * 
+	 * @param databaseType the type of database
+	 * @return the total size of values to cache outside of the heap, or 0 if nothing should be cached outside of the heap
+	 */
+	public long getCacheOffHeapBytes(DatabaseType databaseType) {
+		
+		Long offHeapBytes = cacheOffHeapBytes.get(databaseType) ;
+		
+		if (offHeapBytes == null)
+			return 0 ;
+		
+		return offHeapBytes ;
+	}
+
+	/**
+	 * Returns the maximum number of databases that will be cached to memory concurrently
+	 * 
+	 * @return the maximum number of databases that will be cached to memory concurrently
+	 */
+	public int getCacheThreads() {
+		return cacheThreads ;
+	}
+	
+	/**
+	 * Sets the maximum number of databases that will be cached to memory concurrently. The default is the number of available processors.
+	 * 
+	 * @param cacheThreads the maximum number of databases to cache concurrently
+	 */
+	public void setCacheThreads(int cacheThreads) {
+		this.cacheThreads = cacheThreads ;
+	}
+	
+	/**
+	 * Returns the maximum number of article pairs whose relatedness will be shared across all {@link RelatednessCache}s 
+	 * that compare articles in the same way
+	 * 
+	 * @return the maximum number of shared relatedness measures, or 0 if relatedness measures should not be shared
+	 */
+	public long getRelatednessCacheSize() {
+		return relatednessCacheSize ;
+	}
+	
+	/**
+	 * Sets the maximum number of article pairs whose relatedness will be shared across all {@link RelatednessCache}s 
+	 * that compare articles in the same way. The default is 500,000. If this is 0, each {@link RelatednessCache} keeps its own measures.
+	 * 
+	 * @param relatednessCacheSize the maximum number of shared relatedness measures
+	 */
+	public void setRelatednessCacheSize(long relatednessCacheSize) {
+		this.relatednessCacheSize = relatednessCacheSize ;
+	}
+	
+	/**
+	 * Returns true if databases will be checked against the environment's {@link org.wikipedia.miner.db.EnvironmentManifest} 
+	 * when the environment is prepared
+	 * 
+	 * @return true if databases will be verified when the environment is prepared, otherwise false
+	 */
+	public boolean isVerifyDatabases() {
+		return verifyDatabases ;
+	}
+	
+	/**
+	 * Sets whether databases will be checked against the environment's {@link org.wikipedia.miner.db.EnvironmentManifest} 
+	 * when the environment is prepared. This reads every database in full, so it is off by default.
+	 * 
+	 * @param verifyDatabases true if databases should be verified when the environment is prepared
+	 */
+	public void setVerifyDatabases(boolean verifyDatabases) {
+		this.verifyDatabases = verifyDatabases ;
+	}
+	
+	/**
+	 * Returns the number of bytes of heap that a {@link org.wikipedia.miner.db.CachePlanner} may use when choosing which databases to cache
+	 * 
+	 * @return the number of bytes of heap available for caching, or 0 if databases to cache should not be chosen automatically
+	 */
+	public long getCacheBudget() {
+		return cacheBudget ;
+	}
+	
+	/**
+	 * Sets the number of bytes of heap that a {@link org.wikipedia.miner.db.CachePlanner} may use when choosing which databases to cache.
+	 * If this is 0 (the default), only databases that have been explicitly added via {@link #addDatabaseToCache(DatabaseType)} are cached.
+	 * 
+	 * @param cacheBudget the number of bytes of heap available for caching
+	 */
+	public void setCacheBudget(long cacheBudget) {
+		this.cacheBudget = cacheBudget ;
+	}
+	
+	/**
+	 * Returns the number of bytes outside of the heap that a {@link org.wikipedia.miner.db.CachePlanner} may use for {@link CachePriority#mapped} snapshots
+	 * 
+	 * @return the number of bytes available for mapped snapshots
+	 */
+	public long getOffHeapCacheBudget() {
+		return offHeapCacheBudget ;
+	}
+	
+	/**
+	 * Sets the number of bytes outside of the heap that a {@link org.wikipedia.miner.db.CachePlanner} may use for {@link CachePriority#mapped} snapshots. The default is 0.
+	 * 
+	 * @param offHeapCacheBudget the number of bytes available for mapped snapshots
+	 */
+	public void setOffHeapCacheBudget(long offHeapCacheBudget) {
+		this.offHeapCacheBudget = offHeapCacheBudget ;
+	}
+	
+	/**
+	 * Returns the kinds of work that the environment is expected to be used for, which determine the databases that a 
+	 * {@link org.wikipedia.miner.db.CachePlanner} favours.
+	 * 
+	 * @return the expected workloads (if empty, all workloads are assumed)
+	 */
+	public EnumSet<Workload> getWorkloads() {
+		return workloads ;
+	}
+	
+	/**
+	 * Adds a kind of work that the environment is expected to be used for
+	 * 
+	 * @param workload an expected workload
+	 */
+	public void addWorkload(Workload workload) {
+		workloads.add(workload) ;
+	}
 
 	public int getMinLinksIn() {
 		return minLinksIn;
@@ -365,11 +586,42 @@ public class WikipediaConfiguration {
 					this.articlesOfInterest = gatherArticles(new File(paramValue)) ;
 					break ;
 				case databaseToCache: 
-					if (xmlParam.hasAttribute("priority"))
+					if (xmlParam.hasAttribute("maxEntries") || xmlParam.hasAttribute("maxBytes") || xmlParam.hasAttribute("offHeapBytes")) {
+						long maxEntries = xmlParam.hasAttribute("maxEntries") ? Long.valueOf(xmlParam.getAttribute("maxEntries")) : 0 ;
+						long maxBytes = xmlParam.hasAttribute("maxBytes") ? parseByteSize(xmlParam.getAttribute("maxBytes")) : 0 ;
+						long offHeapBytes = xmlParam.hasAttribute("offHeapBytes") ? parseByteSize(xmlParam.getAttribute("offHeapBytes")) : 0 ;
+						
+						if (xmlParam.hasAttribute("offHeapBytes") && offHeapBytes <= 0)
+							throw new IllegalArgumentException("offHeapBytes must be positive for databaseToCache " + paramValue) ;
+						
+						//an off-heap tier on its own is backed by an on-heap tier of the default size
+						if (maxEntries <= 0 && maxBytes <= 0 && offHeapBytes > 0)
+							maxEntries = DEFAULT_CACHE_MAX_ENTRIES ;
+						
+						addDatabaseToCache(DatabaseType.valueOf(paramValue), maxEntries, maxBytes, offHeapBytes) ;
+					} else if (xmlParam.hasAttribute("priority"))
 						addDatabaseToCache(DatabaseType.valueOf(paramValue), CachePriority.valueOf(xmlParam.getAttribute("priority"))) ;
 					else
 						addDatabaseToCache(DatabaseType.valueOf(paramValue)) ;
 					break ;
+				case cacheThreads:
+					this.cacheThreads = Integer.valueOf(paramValue) ;
+					break ;
+				case cacheBudget:
+					this.cacheBudget = parseByteSize(paramValue) ;
+					break ;
+				case offHeapCacheBudget:
+					this.offHeapCacheBudget = parseByteSize(paramValue) ;
+					break ;
+				case relatednessCacheSize:
+					this.relatednessCacheSize = Long.valueOf(paramValue) ;
+					break ;
+				case verifyDatabases:
+					this.verifyDatabases = Boolean.valueOf(paramValue) ;
+					break ;
+				case workload:
+					this.workloads.add(Workload.valueOf(paramValue)) ;
+					break ;
 				case stopwordFile:
 					this.setStopwords(new File(paramValue)) ;
 					break ;
@@ -431,6 +683,32 @@ public class WikipediaConfiguration {
 		return content ;
 	}
 		
+	/**
+	 * Parses a number of bytes, optionally followed by a k, m or g suffix (e.g. 512m)
+	 */
+	private long parseByteSize(String value) {
+		
+		value = value.trim().toLowerCase() ;
+		
+		long multiplier = 1 ;
+		switch (value.charAt(value.length()-1)) {
+		case 'k':
+			multiplier = 1L << 10 ;
+			break ;
+		case 'm':
+			multiplier = 1L << 20 ;
+			break ;
+		case 'g':
+			multiplier = 1L << 30 ;
+			break ;
+		}
+		
+		if (multiplier > 1)
+			value = value.substring(0, value.length()-1).trim() ;
+		
+		return Long.valueOf(value) * multiplier ;
+	}
+		
 	private ParamName resolveParamName(String name) {
 		try {
 			return ParamName.valueOf(name.trim()) ;
@@ -26,14 +26,12 @@ package org.wikipedia.miner.util.text;
 public class PorterStemmer extends TextProcessor {  
 
 	private final Cleaner cleaner ;
-	private final Stemmer stemmer ;
 
 	/**
 	 * Initializes a newly created PorterStemmer.  
 	 */	
 	public PorterStemmer() {  
 		cleaner = new Cleaner() ;
-		stemmer = new Stemmer() ;
 	}
 
 	/**
@@ -48,6 +46,9 @@ public class PorterStemmer extends TextProcessor {
 		String processedText = "" ;
 		String[] terms = text.split(" ") ;
 
+		//the stemmer holds state, so a new one is needed for each call to be thread safe
+		Stemmer stemmer = new Stemmer() ;
+
 		for (String term: terms) {
 			if (!"".equals(term)) {
 				stemmer.add(term.toCharArray(), term.length()) ;
@@ -45,7 +45,8 @@ public abstract class TextProcessor {
 	}
 	
 	/**
-	 * Returns the modified copy of the argument text
+	 * Returns the modified copy of the argument text. This may be called from several threads at once 
+	 * (e.g. when preparing a {@link org.wikipedia.miner.db.LabelDatabase}), so implementations must be thread safe.
 	 * 
 	 * @param text	the text to be processed.
 	 * @return	the processed version of this text.
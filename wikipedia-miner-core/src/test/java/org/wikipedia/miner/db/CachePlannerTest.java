@@ -0,0 +1,106 @@
+package org.wikipedia.miner.db;
+
+import junit.framework.TestCase;
+
+import org.wikipedia.miner.db.WDatabase.CachePriority;
+import org.wikipedia.miner.db.WDatabase.DatabaseType;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+public class CachePlannerTest extends TestCase {
+
+	private static final long MB = 1L << 20 ;
+
+	public void testBoundedCostFromEntries() {
+
+		WikipediaConfiguration conf = configure(1000 * MB) ;
+		conf.addDatabaseToCache(DatabaseType.pageLinksIn, 100000, 0) ;
+
+		CachePlanner planner = new CachePlanner(conf) ;
+
+		//1,000,000 entries averaging 200 bytes each
+		planner.setSize(DatabaseType.pageLinksIn, 1000000, 200000000L) ;
+
+		long expected = planner.getEstimatedBoundedBytes(DatabaseType.pageLinksIn, 100000, 0) ;
+		assertTrue(expected >= 100000 * 200L) ;
+
+		CachePlanner.Plan plan = planner.plan() ;
+		assertEquals(CachePriority.bounded, plan.getPriority(DatabaseType.pageLinksIn)) ;
+		assertEquals(expected, plan.getEstimatedBytes(DatabaseType.pageLinksIn)) ;
+	}
+
+	public void testBoundedCostLimitedByBytesAndDatabaseSize() {
+
+		CachePlanner planner = new CachePlanner(0, 0, null, null) ;
+		planner.setSize(DatabaseType.pageLinksIn, 1000, 200000L) ;
+
+		long wholeDatabase = planner.getEstimatedBoundedBytes(DatabaseType.pageLinksIn, 1000, 0) ;
+
+		assertEquals(wholeDatabase, planner.getEstimatedBoundedBytes(DatabaseType.pageLinksIn, 1000000, 0)) ;
+		assertEquals(5000, planner.getEstimatedBoundedBytes(DatabaseType.pageLinksIn, 1000, 5000)) ;
+		assertEquals(5000, planner.getEstimatedBoundedBytes(DatabaseType.pageLinksOut, 0, 5000)) ;
+
+		//nothing to go on
+		assertEquals(-1, planner.getEstimatedBoundedBytes(DatabaseType.pageLinksOut, 1000, 0)) ;
+	}
+
+	public void testUnknownSizesUseRemainingBudget() {
+
+		WikipediaConfiguration conf = configure(1000 * MB) ;
+
+		//no size is given for either of these
+		conf.addDatabaseToCache(DatabaseType.label, CachePriority.space) ;
+		conf.addDatabaseToCache(DatabaseType.pageLinksOut, 100000, 0) ;
+
+		CachePlanner planner = new CachePlanner(conf) ;
+		planner.setSize(DatabaseType.page, 1000, 100000L) ;
+		planner.setSize(DatabaseType.pageLinksInNoSentences, 1000, 100000L) ;
+
+		CachePlanner.Plan plan = planner.plan() ;
+
+		assertEquals(1000 * MB, plan.getEstimatedHeapBytes()) ;
+		assertNull(plan.getPriority(DatabaseType.page)) ;
+		assertNull(plan.getPriority(DatabaseType.pageLinksInNoSentences)) ;
+	}
+
+	public void testKnownSizesLeaveRoom() {
+
+		WikipediaConfiguration conf = configure(1000 * MB) ;
+		conf.addDatabaseToCache(DatabaseType.label, CachePriority.space) ;
+
+		CachePlanner planner = new CachePlanner(conf) ;
+		planner.setSize(DatabaseType.label, 1000, 100000L) ;
+		planner.setSize(DatabaseType.page, 1000, 100000L) ;
+
+		CachePlanner.Plan plan = planner.plan() ;
+
+		assertEquals(CachePriority.space, plan.getPriority(DatabaseType.label)) ;
+		assertNotNull(plan.getPriority(DatabaseType.page)) ;
+		assertTrue(plan.getEstimatedHeapBytes() < 1000 * MB) ;
+	}
+
+	public void testMarkupIsNeverCachedInFull() {
+
+		//no workloads are given, so all of them (including explore, which reads markup) are assumed
+		CachePlanner planner = new CachePlanner(4000 * MB, 0, null, null) ;
+
+		//1,000,000 pages averaging 200 bytes each, which would easily fit on the heap
+		planner.setSize(DatabaseType.markup, 1000000, 200000000L) ;
+
+		CachePlanner.Plan plan = planner.plan() ;
+		assertEquals(CachePriority.bounded, plan.getPriority(DatabaseType.markup)) ;
+
+		//given room off the heap, it is mapped instead
+		planner = new CachePlanner(4000 * MB, 4000 * MB, null, null) ;
+		planner.setSize(DatabaseType.markup, 1000000, 200000000L) ;
+
+		plan = planner.plan() ;
+		assertEquals(CachePriority.mapped, plan.getPriority(DatabaseType.markup)) ;
+	}
+
+	private static WikipediaConfiguration configure(long heapBudget) {
+
+		WikipediaConfiguration conf = new WikipediaConfiguration("en", null) ;
+		conf.setCacheBudget(heapBudget) ;
+		return conf ;
+	}
+}
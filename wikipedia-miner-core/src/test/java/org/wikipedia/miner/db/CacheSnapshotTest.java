@@ -0,0 +1,119 @@
+package org.wikipedia.miner.db;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.wikipedia.miner.db.WDatabase.CachePriority;
+import org.wikipedia.miner.util.WikipediaConfiguration;
+
+public class CacheSnapshotTest extends TestCase {
+
+	private File snapshotFile ;
+
+	@Override
+	protected void setUp() throws Exception {
+		snapshotFile = File.createTempFile("cacheSnapshot", ".snapshot") ;
+		snapshotFile.delete() ;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		snapshotFile.delete() ;
+	}
+
+	public void testRoundTrip() throws IOException {
+
+		CacheSnapshot.Writer writer = new CacheSnapshot.Writer(snapshotFile, 42) ;
+		for (int i=0 ; i<100 ; i++)
+			writer.write(new byte[] {(byte)i}, new byte[i]) ;
+		writer.finish() ;
+
+		CacheSnapshot.Reader reader = CacheSnapshot.Reader.open(snapshotFile, 42) ;
+		assertNotNull(reader) ;
+		assertEquals(100, reader.getCount()) ;
+
+		int i = 0 ;
+		while (reader.next()) {
+			assertTrue(Arrays.equals(new byte[] {(byte)i}, reader.getKey())) ;
+			assertEquals(i, reader.getValue().length) ;
+			i++ ;
+		}
+		reader.close() ;
+
+		assertEquals(100, i) ;
+	}
+
+	public void testIgnoresMismatchedFingerprint() throws IOException {
+
+		CacheSnapshot.Writer writer = new CacheSnapshot.Writer(snapshotFile, 42) ;
+		writer.write(new byte[1], new byte[1]) ;
+		writer.finish() ;
+
+		assertNull(CacheSnapshot.Reader.open(snapshotFile, 43)) ;
+	}
+
+	public void testIgnoresMissingAndAbandonedSnapshots() throws IOException {
+
+		assertNull(CacheSnapshot.Reader.open(snapshotFile, 42)) ;
+
+		CacheSnapshot.Writer writer = new CacheSnapshot.Writer(snapshotFile, 42) ;
+		writer.write(new byte[1], new byte[1]) ;
+		writer.abort() ;
+
+		assertFalse(snapshotFile.exists()) ;
+		assertNull(CacheSnapshot.Reader.open(snapshotFile, 42)) ;
+	}
+
+	public void testDetectsTruncation() throws IOException {
+
+		CacheSnapshot.Writer writer = new CacheSnapshot.Writer(snapshotFile, 42) ;
+		writer.write(new byte[4], new byte[100]) ;
+		writer.finish() ;
+
+		RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw") ;
+		raf.setLength(raf.length() - 10) ;
+		raf.close() ;
+
+		CacheSnapshot.Reader reader = CacheSnapshot.Reader.open(snapshotFile, 42) ;
+		try {
+			reader.next() ;
+			fail("a truncated snapshot should not be read") ;
+		} catch (IOException e) {
+		} finally {
+			reader.close() ;
+		}
+	}
+
+	public void testFingerprintReflectsFilteringOptions() {
+
+		WikipediaConfiguration conf = new WikipediaConfiguration("en", new File(".")) ;
+		long original = CacheSnapshot.fingerprint(conf, CachePriority.space) ;
+
+		assertEquals(original, CacheSnapshot.fingerprint(conf, CachePriority.space)) ;
+		assertTrue(original != CacheSnapshot.fingerprint(conf, CachePriority.speed)) ;
+
+		conf.setMinLinksIn(5) ;
+		long withMinLinksIn = CacheSnapshot.fingerprint(conf, CachePriority.space) ;
+		assertTrue(original != withMinLinksIn) ;
+
+		TIntHashSet ids = new TIntHashSet() ;
+		ids.add(1) ;
+		ids.add(2) ;
+		conf.setArticlesOfInterest(ids) ;
+		long withArticles = CacheSnapshot.fingerprint(conf, CachePriority.space) ;
+		assertTrue(withMinLinksIn != withArticles) ;
+
+		//the same ids, added in a different order
+		TIntHashSet sameIds = new TIntHashSet() ;
+		sameIds.add(2) ;
+		sameIds.add(1) ;
+		conf.setArticlesOfInterest(sameIds) ;
+		assertEquals(withArticles, CacheSnapshot.fingerprint(conf, CachePriority.space)) ;
+	}
+}
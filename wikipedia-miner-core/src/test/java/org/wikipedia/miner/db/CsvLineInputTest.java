@@ -0,0 +1,129 @@
+package org.wikipedia.miner.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.record.CsvRecordInput;
+import org.apache.hadoop.record.Index;
+import org.apache.hadoop.record.RecordInput;
+
+public class CsvLineInputTest extends TestCase {
+
+	//each line is an int, a long, a string, a bool, a double, a buffer and a vector of strings
+	private static final String CSV = 
+		"1,-9223372036854775808,'plain,T,1.5,#00ff,v{'a,'b}\n" 
+		+ "2,9223372036854775807,'escaped%2C%25%0A%7D%00,F,-2.25E10,#,v{}\n" 
+		+ "3,0,'unicode é中😀,T,0.0,#abcdef,v{'ü%2C}\n" ;
+
+	public void testMatchesCsvRecordInput() throws IOException {
+
+		byte[] data = CSV.getBytes("UTF-8") ;
+
+		CsvRecordInput reference = new CsvRecordInput(new ByteArrayInputStream(data)) ;
+		ArrayList<String> expected = new ArrayList<String>() ;
+		for (int i=0 ; i<3 ; i++)
+			expected.add(readRecord(reference)) ;
+
+		CsvLineInput input = new CsvLineInput(new ByteArrayInputStream(data)) ;
+		ArrayList<String> actual = new ArrayList<String>() ;
+		while (input.nextLine())
+			actual.add(readRecord(input)) ;
+		input.close() ;
+
+		assertEquals(expected, actual) ;
+		assertEquals(3, input.getLineNumber()) ;
+		assertEquals(data.length, input.getBytesRead()) ;
+	}
+
+	public void testReadsLongLines() throws IOException {
+
+		StringBuilder sb = new StringBuilder("'") ;
+		for (int i=0 ; i<100000 ; i++)
+			sb.append((char)('a' + (i % 26))) ;
+		sb.append("é\n'short\n") ;
+
+		CsvLineInput input = new CsvLineInput(new ByteArrayInputStream(sb.toString().getBytes("UTF-8"))) ;
+
+		assertTrue(input.nextLine()) ;
+		assertEquals(sb.substring(1, sb.indexOf("\n")), input.readString(null)) ;
+
+		assertTrue(input.nextLine()) ;
+		assertEquals("short", input.readString(null)) ;
+
+		assertFalse(input.nextLine()) ;
+	}
+
+	public void testReadsFinalLineWithoutBreak() throws IOException {
+
+		CsvLineInput input = new CsvLineInput(new ByteArrayInputStream("7,'last".getBytes("UTF-8"))) ;
+
+		assertTrue(input.nextLine()) ;
+		assertEquals(7, input.readInt(null)) ;
+		assertEquals("last", input.readString(null)) ;
+		assertFalse(input.nextLine()) ;
+	}
+
+	public void testRejectsIncompleteEscapes() throws IOException {
+		assertRejected("'trailing%\n") ;
+		assertRejected("'trailing%2\n") ;
+		assertRejected("'unknown%41\n") ;
+	}
+
+	public void testRejectsMalformedUtf8() throws IOException {
+
+		//a lone continuation byte, a truncated sequence, and an overlong encoding of '/'
+		byte[][] malformed = {
+			{'\'', 'a', (byte)0x80, '\n'}, 
+			{'\'', 'a', (byte)0xE4, (byte)0xB8, '\n'}, 
+			{'\'', (byte)0xC0, (byte)0xAF, '\n'}
+		} ;
+
+		for (byte[] line:malformed) {
+			CsvLineInput input = new CsvLineInput(new ByteArrayInputStream(line)) ;
+			try {
+				input.nextLine() ;
+				fail("malformed UTF-8 should be rejected: " + Arrays.toString(line)) ;
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void assertRejected(String csv) throws IOException {
+
+		CsvLineInput input = new CsvLineInput(new ByteArrayInputStream(csv.getBytes("UTF-8"))) ;
+		assertTrue(input.nextLine()) ;
+
+		try {
+			input.readString(null) ;
+			fail("'" + csv.trim() + "' should be rejected") ;
+		} catch (IOException e) {
+		}
+	}
+
+	private static String readRecord(RecordInput input) throws IOException {
+
+		StringBuilder sb = new StringBuilder() ;
+
+		input.startRecord("") ;
+		sb.append(input.readInt("int")).append('|') ;
+		sb.append(input.readLong("long")).append('|') ;
+		sb.append(input.readString("string")).append('|') ;
+		sb.append(input.readBool("bool")).append('|') ;
+		sb.append(input.readDouble("double")).append('|') ;
+		sb.append(input.readBuffer("buffer")).append('|') ;
+
+		Index index = input.startVector("vector") ;
+		while (!index.done()) {
+			sb.append(input.readString("item")).append(';') ;
+			index.incr() ;
+		}
+		input.endVector("vector") ;
+		input.endRecord("") ;
+
+		return sb.toString() ;
+	}
+}
@@ -0,0 +1,75 @@
+package org.wikipedia.miner.db;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.wikipedia.miner.db.struct.DbLabel;
+import org.wikipedia.miner.db.struct.DbSenseForLabel;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class DbLabelViewTest extends TestCase {
+
+	private RecordBinding<DbLabel> binding = new RecordBinding<DbLabel>() {
+		public DbLabel createRecordInstance() {
+			return new DbLabel() ;
+		}
+	} ;
+
+	public void testReadsSerialisedLabel() {
+
+		ArrayList<DbSenseForLabel> senses = new ArrayList<DbSenseForLabel>() ;
+		senses.add(new DbSenseForLabel(12, 300, 250, true, false)) ;
+		senses.add(new DbSenseForLabel(Integer.MAX_VALUE, 5000000000L, 1, false, true)) ;
+		senses.add(new DbSenseForLabel(0, 0, 0, false, false)) ;
+
+		DbLabelView view = new DbLabelView().wrap(serialise(new DbLabel(5000000300L, 251, 90000, 1200, senses))) ;
+
+		assertEquals(5000000300L, view.getLinkOccCount()) ;
+		assertEquals(251, view.getLinkDocCount()) ;
+		assertEquals(90000, view.getTextOccCount()) ;
+		assertEquals(1200, view.getTextDocCount()) ;
+
+		assertEquals(senses.size(), view.getSenseCount()) ;
+
+		for (int i=0 ; i<senses.size() ; i++) {
+			DbSenseForLabel sense = senses.get(i) ;
+
+			assertEquals(sense.getId(), view.getSenseId(i)) ;
+			assertEquals(sense.getLinkOccCount(), view.getSenseLinkOccCount(i)) ;
+			assertEquals(sense.getLinkDocCount(), view.getSenseLinkDocCount(i)) ;
+			assertEquals(sense.getFromTitle(), view.isSenseFromTitle(i)) ;
+			assertEquals(sense.getFromRedirect(), view.isSenseFromRedirect(i)) ;
+		}
+	}
+
+	public void testReuseAcrossLabels() {
+
+		ArrayList<DbSenseForLabel> many = new ArrayList<DbSenseForLabel>() ;
+		for (int i=0 ; i<20 ; i++)
+			many.add(new DbSenseForLabel(i, i * 2, i, false, false)) ;
+
+		DbLabelView view = new DbLabelView() ;
+
+		view.wrap(serialise(new DbLabel(40, 20, 100, 50, many))) ;
+		assertEquals(20, view.getSenseCount()) ;
+		assertEquals(19, view.getSenseId(19)) ;
+
+		view.wrap(serialise(new DbLabel(1, 1, 1, 1, new ArrayList<DbSenseForLabel>()))) ;
+		assertEquals(0, view.getSenseCount()) ;
+
+		try {
+			view.getSenseId(0) ;
+			fail("senses of the previous label should not be readable") ;
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	private byte[] serialise(DbLabel label) {
+
+		DatabaseEntry entry = new DatabaseEntry() ;
+		binding.objectToEntry(label, entry) ;
+		return entry.getData() ;
+	}
+}
@@ -0,0 +1,130 @@
+package org.wikipedia.miner.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.wikipedia.miner.db.struct.DbIntList;
+import org.wikipedia.miner.db.struct.DbLinkLocation;
+import org.wikipedia.miner.db.struct.DbLinkLocationList;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class IntListCodecTest extends TestCase {
+
+	public void testEmptyList() {
+
+		byte[] encoded = IntListCodec.encode(new int[0]) ;
+
+		assertTrue(IntListCodec.isEncoded(encoded)) ;
+		assertEquals(2, encoded.length) ;
+		assertEquals(0, IntListCodec.decode(encoded).size()) ;
+
+		assertTrue(Arrays.equals(encoded, IntListCodec.encode(new ArrayList<Integer>()))) ;
+	}
+
+	public void testSingleElement() {
+		assertRoundTrip(42) ;
+		assertRoundTrip(0) ;
+	}
+
+	public void testSortedIdsAreCompact() {
+
+		int[] ids = new int[100] ;
+		for (int i=0 ; i<ids.length ; i++)
+			ids[i] = 1000000 + (i * 3) ;
+
+		byte[] encoded = assertRoundTrip(ids) ;
+
+		//marker, count, first id (zig-zag encoded in 3 bytes) and then a single byte for each delta
+		assertEquals(1 + 1 + 3 + 99, encoded.length) ;
+	}
+
+	public void testNegativeDeltas() {
+		assertRoundTrip(50, 10, 40, 3, 3, 0) ;
+		assertRoundTrip(-1, -100, 5) ;
+	}
+
+	public void testExtremeIds() {
+		assertRoundTrip(Integer.MAX_VALUE) ;
+		assertRoundTrip(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE - 1, Integer.MAX_VALUE) ;
+	}
+
+	public void testLinkLocations() {
+
+		ArrayList<DbLinkLocation> locations = new ArrayList<DbLinkLocation>() ;
+		locations.add(new DbLinkLocation(5, list())) ;
+		locations.add(new DbLinkLocation(3, list(7, 2, 9))) ;
+		locations.add(new DbLinkLocation(Integer.MAX_VALUE, list(0, Integer.MAX_VALUE))) ;
+
+		byte[] encoded = IntListCodec.encode(new DbLinkLocationList(locations)) ;
+		assertEquals(IntListCodec.MARKER, encoded[0]) ;
+
+		DbLinkLocationList decoded = IntListCodec.decodeLinkLocations(encoded) ;
+		assertEquals(locations, decoded.getLinkLocations()) ;
+
+		assertEquals(0, IntListCodec.decodeLinkLocations(IntListCodec.encode(new DbLinkLocationList(new ArrayList<DbLinkLocation>()))).getLinkLocations().size()) ;
+	}
+
+	public void testRejectsRecordFormat() {
+
+		assertFalse(IntListCodec.isEncoded(null)) ;
+		assertFalse(IntListCodec.isEncoded(new byte[0])) ;
+		assertFalse(IntListCodec.isEncoded(new byte[] {3, 1, 2, 3})) ;
+
+		try {
+			IntListCodec.decode(new byte[] {3, 1, 2, 3}) ;
+			fail("data in the record format should not be decoded") ;
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testViewReadsBothFormats() {
+
+		int[] values = {1000000, 3, 3, -7, Integer.MAX_VALUE, 0} ;
+
+		RecordBinding<DbIntList> binding = new RecordBinding<DbIntList>() {
+			public DbIntList createRecordInstance() {
+				return new DbIntList() ;
+			}
+		} ;
+
+		DatabaseEntry record = new DatabaseEntry() ;
+		binding.objectToEntry(new DbIntList(list(values)), record) ;
+
+		IntListView view = new IntListView() ;
+
+		assertTrue(Arrays.equals(values, view.wrap(IntListCodec.encode(values)).toArray())) ;
+		assertTrue(Arrays.equals(values, view.wrap(record.getData()).toArray())) ;
+
+		//the same view can be reused, and rewound part way through
+		view.wrap(IntListCodec.encode(new int[] {5, 9})) ;
+		assertEquals(2, view.size()) ;
+		assertEquals(5, view.next()) ;
+		view.rewind() ;
+		assertEquals(5, view.next()) ;
+		assertEquals(9, view.next()) ;
+		assertFalse(view.hasNext()) ;
+	}
+
+	private static byte[] assertRoundTrip(int... values) {
+
+		byte[] encoded = IntListCodec.encode(values) ;
+		assertEquals(list(values), IntListCodec.decode(encoded)) ;
+
+		//both encoders must produce exactly the same bytes
+		assertTrue(Arrays.equals(encoded, IntListCodec.encode(list(values)))) ;
+
+		return encoded ;
+	}
+
+	private static ArrayList<Integer> list(int... values) {
+
+		ArrayList<Integer> list = new ArrayList<Integer>() ;
+		for (int value:values)
+			list.add(value) ;
+
+		return list ;
+	}
+}
@@ -0,0 +1,164 @@
+package org.wikipedia.miner.db;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class LabelIndexTest extends TestCase {
+
+	public void testSortedInput() {
+
+		LabelIndex.Builder builder = new LabelIndex.Builder() ;
+		builder.add("Apple", value(1)) ;
+		builder.add("Apple Inc.", value(2)) ;
+		builder.add("apple", value(3)) ;
+		builder.add("apple", value(4, 4)) ;
+		builder.add("banana", value()) ;
+
+		LabelIndex index = builder.build() ;
+
+		assertEquals(4, index.size()) ;
+		assertEquals("Apple Inc.", index.getLabel(1)) ;
+
+		assertTrue(Arrays.equals(value(1), index.getValue(index.find("Apple")))) ;
+		assertTrue(Arrays.equals(value(4, 4), index.getValue(index.find("apple")))) ;
+		assertEquals(0, index.getValue(index.find("banana")).length) ;
+
+		assertEquals(-1, index.find("A")) ;
+		assertEquals(-3, index.find("Apricot")) ;
+		assertEquals(-5, index.find("cherry")) ;
+	}
+
+	public void testUnsortedInputMatchesStringOrder() {
+
+		Random random = new Random(7) ;
+		TreeMap<String,byte[]> expected = new TreeMap<String,byte[]>() ;
+
+		LabelIndex.Builder builder = new LabelIndex.Builder(10) ;
+
+		for (int i=0 ; i<2000 ; i++) {
+
+			//a small alphabet (including a surrogate pair) so that there are plenty of duplicates and shared prefixes
+			StringBuilder label = new StringBuilder() ;
+			int length = random.nextInt(4) ;
+			for (int j=0 ; j<length ; j++) {
+				switch (random.nextInt(4)) {
+				case 0: label.append('a') ; break ;
+				case 1: label.append('B') ; break ;
+				case 2: label.append('\uFB01') ; break ;
+				default: label.append("\uD83D\uDE00") ;
+				}
+			}
+
+			byte[] value = value(i, i >> 8) ;
+			builder.add(label.toString(), value) ;
+			expected.put(label.toString(), value) ;
+		}
+
+		LabelIndex index = builder.build() ;
+
+		assertEquals(expected.size(), index.size()) ;
+
+		int ordinal = 0 ;
+		for (String label:expected.keySet()) {
+			assertEquals(label, index.getLabel(ordinal)) ;
+			assertEquals(ordinal, index.find(label)) ;
+			assertTrue("last value should be kept for " + label, Arrays.equals(expected.get(label), index.getValue(ordinal))) ;
+			ordinal++ ;
+		}
+	}
+
+	public void testPrefixRange() {
+
+		LabelIndex.Builder builder = new LabelIndex.Builder() ;
+		for (String label:new String[] {"car", "card", "cardigan", "care", "cat", "ca", "dog"})
+			builder.add(label, value()) ;
+
+		LabelIndex index = builder.build() ;
+
+		assertPrefix(index, "car", "car", "card", "cardigan", "care") ;
+		assertPrefix(index, "card", "card", "cardigan") ;
+		assertPrefix(index, "c", "ca", "car", "card", "cardigan", "care", "cat") ;
+		assertPrefix(index, "cb") ;
+		assertPrefix(index, "", "ca", "car", "card", "cardigan", "care", "cat", "dog") ;
+	}
+
+	public void testLabelsWithPrefix() {
+
+		LabelIndex.Builder builder = new LabelIndex.Builder() ;
+		for (String label:new String[] {"car", "card", "cardigan", "care", "cat", "ca", "dog"})
+			builder.add(label, value()) ;
+
+		LabelIndex index = builder.build() ;
+
+		assertEquals(Arrays.asList("car", "card", "cardigan", "care"), index.getLabelsWithPrefix("car", 10)) ;
+		assertEquals(Arrays.asList("ca", "car"), index.getLabelsWithPrefix("c", 2)) ;
+		assertEquals(Arrays.asList("dog"), index.getLabelsWithPrefix("d", Integer.MAX_VALUE)) ;
+		assertTrue(index.getLabelsWithPrefix("cb", 10).isEmpty()) ;
+		assertTrue(index.getLabelsWithPrefix("car", 0).isEmpty()) ;
+	}
+
+	public void testLongestMatch() {
+
+		LabelIndex.Builder builder = new LabelIndex.Builder() ;
+		for (String label:new String[] {"new", "new york", "new york city", "new zealand", "york", "yo"})
+			builder.add(label, value()) ;
+
+		LabelIndex index = builder.build() ;
+
+		String text = "from new york to new yorkshire, via new zeal" ;
+
+		assertLongestMatch(index, text, text.indexOf("new york"), "new york") ;
+		assertLongestMatch(index, text, text.indexOf("york"), "york") ;
+
+		//"new york" is followed by "shire", but the label is still a prefix of the text
+		assertLongestMatch(index, text, text.indexOf("new yorkshire"), "new york") ;
+
+		//"new zealand" runs past the end of the text, so only "new" fits
+		assertLongestMatch(index, text, text.indexOf("new zeal"), "new") ;
+
+		assertEquals(-1, index.getLongestMatch(text, 0)) ;
+		assertEquals(-1, index.getLongestMatch(text, text.length())) ;
+		assertEquals(-1, index.getLongestMatch("ne", 0)) ;
+		assertEquals(-1, new LabelIndex.Builder().build().getLongestMatch(text, 0)) ;
+	}
+
+	public void testEmpty() {
+
+		LabelIndex index = new LabelIndex.Builder().build() ;
+
+		assertEquals(0, index.size()) ;
+		assertEquals(-1, index.find("anything")) ;
+		assertEquals(0, index.getPrefixStart("a")) ;
+		assertEquals(0, index.getPrefixEnd("a")) ;
+	}
+
+	private static void assertPrefix(LabelIndex index, String prefix, String... labels) {
+
+		int start = index.getPrefixStart(prefix) ;
+		int end = index.getPrefixEnd(prefix) ;
+
+		assertEquals(labels.length, end - start) ;
+		for (int i=0 ; i<labels.length ; i++)
+			assertEquals(labels[i], index.getLabel(start + i)) ;
+	}
+
+	private static void assertLongestMatch(LabelIndex index, String text, int start, String label) {
+
+		int ordinal = index.getLongestMatch(text, start) ;
+
+		assertEquals(label, index.getLabel(ordinal)) ;
+		assertEquals(label.length(), index.getLabelLength(ordinal)) ;
+	}
+
+	private static byte[] value(int... bytes) {
+
+		byte[] value = new byte[bytes.length] ;
+		for (int i=0 ; i<bytes.length ; i++)
+			value[i] = (byte)bytes[i] ;
+
+		return value ;
+	}
+}
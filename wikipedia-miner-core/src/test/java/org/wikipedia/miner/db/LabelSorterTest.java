@@ -0,0 +1,161 @@
+package org.wikipedia.miner.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.wikipedia.miner.db.struct.DbLabel;
+import org.wikipedia.miner.db.struct.DbSenseForLabel;
+import org.wikipedia.miner.util.ProgressTracker;
+import org.wikipedia.miner.util.text.CaseFolder;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+public class LabelSorterTest extends TestCase {
+
+	private File dir ;
+	private Environment env ;
+	private Database target ;
+
+	private LabelDatabase labels ;
+
+	@Override
+	protected void setUp() throws Exception {
+
+		dir = File.createTempFile("labelSorter", "") ;
+		dir.delete() ;
+		dir.mkdirs() ;
+
+		EnvironmentConfig envConf = new EnvironmentConfig() ;
+		envConf.setAllowCreate(true) ;
+		env = new Environment(dir, envConf) ;
+
+		DatabaseConfig dbConf = new DatabaseConfig() ;
+		dbConf.setAllowCreate(true) ;
+		target = env.openDatabase(null, "labels", dbConf) ;
+
+		//the sorter only needs the database's bindings and label merging, not an environment
+		labels = new LabelDatabase(null, new CaseFolder()) ;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+
+		target.close() ;
+		env.close() ;
+
+		for (File file:dir.listFiles())
+			file.delete() ;
+		dir.delete() ;
+	}
+
+	public void testMergesCollisionsWithinAndAcrossRuns() throws Exception {
+
+		//a tiny run size, so that collisions have to be merged both in memory and from separate runs
+		LabelSorter sorter = new LabelSorter(labels, dir, 2) ;
+
+		sorter.add("apple", label(5, sense(1, 5))) ;
+		sorter.add("banana", label(1, sense(2, 1))) ;
+		sorter.add("cherry", label(3, sense(3, 3))) ;
+		sorter.add("apple", label(2, sense(1, 1), sense(4, 1))) ;
+		sorter.add("apple", label(1, sense(4, 1))) ;
+		sorter.add("banana", label(4, sense(5, 4))) ;
+
+		assertEquals(3, sorter.merge(target, new ProgressTracker(1, LabelSorterTest.class))) ;
+
+		HashMap<String,DbLabel> stored = readAll() ;
+		assertEquals(3, stored.size()) ;
+
+		DbLabel apple = stored.get("apple") ;
+		assertEquals(8, apple.getLinkOccCount()) ;
+		assertEquals(2, apple.getSenses().size()) ;
+		assertEquals(1, apple.getSenses().get(0).getId()) ;
+		assertEquals(6, apple.getSenses().get(0).getLinkOccCount()) ;
+		assertEquals(4, apple.getSenses().get(1).getId()) ;
+		assertEquals(2, apple.getSenses().get(1).getLinkOccCount()) ;
+
+		DbLabel banana = stored.get("banana") ;
+		assertEquals(5, banana.getLinkOccCount()) ;
+		assertEquals(5, banana.getSenses().get(0).getId()) ;
+
+		assertEquals(3, stored.get("cherry").getLinkOccCount()) ;
+
+		//runs are deleted once they have been merged
+		for (File file:dir.listFiles())
+			assertFalse(file.getName(), file.getName().endsWith(".run")) ;
+	}
+
+	public void testConcurrentAdds() throws Exception {
+
+		final LabelSorter sorter = new LabelSorter(labels, dir, 50) ;
+
+		ArrayList<Thread> threads = new ArrayList<Thread>() ;
+		final ArrayList<Throwable> failures = new ArrayList<Throwable>() ;
+
+		for (int t=0 ; t<4 ; t++) {
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						for (int i=0 ; i<1000 ; i++)
+							sorter.add("label" + (i % 300), label(1, sense(i % 7, 1))) ;
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e) ;
+						}
+					}
+				}
+			} ;
+			threads.add(thread) ;
+			thread.start() ;
+		}
+
+		for (Thread thread:threads)
+			thread.join() ;
+
+		assertTrue(failures.toString(), failures.isEmpty()) ;
+		assertEquals(300, sorter.merge(target, new ProgressTracker(1, LabelSorterTest.class))) ;
+
+		long total = 0 ;
+		for (DbLabel label:readAll().values())
+			total += label.getLinkOccCount() ;
+
+		assertEquals(4000, total) ;
+	}
+
+	private HashMap<String,DbLabel> readAll() {
+
+		HashMap<String,DbLabel> stored = new HashMap<String,DbLabel>() ;
+
+		DatabaseEntry key = new DatabaseEntry() ;
+		DatabaseEntry value = new DatabaseEntry() ;
+
+		Cursor cursor = target.openCursor(null, null) ;
+		while (cursor.getNext(key, value, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS)
+			stored.put(labels.keyBinding.entryToObject(key), labels.valueBinding.entryToObject(value)) ;
+		cursor.close() ;
+
+		return stored ;
+	}
+
+	private static DbLabel label(long linkOccCount, DbSenseForLabel... senses) {
+
+		ArrayList<DbSenseForLabel> list = new ArrayList<DbSenseForLabel>() ;
+		for (DbSenseForLabel sense:senses)
+			list.add(sense) ;
+
+		return new DbLabel(linkOccCount, linkOccCount, linkOccCount * 10, linkOccCount * 10, list) ;
+	}
+
+	private static DbSenseForLabel sense(int id, long linkOccCount) {
+		return new DbSenseForLabel(id, linkOccCount, linkOccCount, false, false) ;
+	}
+}
@@ -0,0 +1,124 @@
+package org.wikipedia.miner.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class MappedStoreTest extends TestCase {
+
+	private File snapshotFile ;
+
+	@Override
+	protected void setUp() throws Exception {
+		snapshotFile = File.createTempFile("mappedStore", ".snapshot") ;
+		snapshotFile.delete() ;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		snapshotFile.delete() ;
+	}
+
+	public void testRetrievesEveryEntry() throws IOException {
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		for (int i=0 ; i<1000 ; i++)
+			writer.add(key(i), value(i)) ;
+		writer.finish() ;
+
+		MappedStore store = new MappedStore(snapshotFile) ;
+		assertEquals(1000, store.size()) ;
+
+		for (int i=0 ; i<1000 ; i++)
+			assertTrue(Arrays.equals(value(i), store.get(key(i)))) ;
+
+		store.close() ;
+	}
+
+	public void testMissingKeys() throws IOException {
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		writer.add(key(10), value(10)) ;
+		writer.add(key(20), value(20)) ;
+		writer.finish() ;
+
+		MappedStore store = new MappedStore(snapshotFile) ;
+
+		assertNull(store.get(key(5))) ;
+		assertNull(store.get(key(15))) ;
+		assertNull(store.get(key(25))) ;
+
+		//a prefix of a stored key is a different key
+		assertNull(store.get(new byte[] {0, 0})) ;
+
+		store.close() ;
+	}
+
+	public void testEmptySnapshot() throws IOException {
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		writer.finish() ;
+
+		MappedStore store = new MappedStore(snapshotFile) ;
+		assertEquals(0, store.size()) ;
+		assertNull(store.get(key(1))) ;
+		store.close() ;
+	}
+
+	public void testKeysMustBeAscending() throws IOException {
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		writer.add(key(2), value(2)) ;
+
+		try {
+			writer.add(key(1), value(1)) ;
+			fail("keys added out of order should be rejected") ;
+		} catch (IllegalArgumentException e) {
+		} finally {
+			writer.abort() ;
+		}
+	}
+
+	public void testRejectsInvalidFile() throws IOException {
+
+		FileOutputStream out = new FileOutputStream(snapshotFile) ;
+		out.write(new byte[64]) ;
+		out.close() ;
+
+		try {
+			new MappedStore(snapshotFile) ;
+			fail("a file without the snapshot header should be rejected") ;
+		} catch (IOException e) {
+		}
+	}
+
+	public void testClosedStoreCannotBeRead() throws IOException {
+
+		MappedStore.Writer writer = new MappedStore.Writer(snapshotFile) ;
+		writer.add(key(1), value(1)) ;
+		writer.finish() ;
+
+		MappedStore store = new MappedStore(snapshotFile) ;
+		store.close() ;
+
+		try {
+			store.get(key(1)) ;
+			fail("reading a closed snapshot should fail") ;
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	private static byte[] key(int i) {
+		return new byte[] {(byte)(i >>> 24), (byte)(i >>> 16), (byte)(i >>> 8), (byte)i} ;
+	}
+
+	private static byte[] value(int i) {
+
+		byte[] value = new byte[i % 17] ;
+		Arrays.fill(value, (byte)i) ;
+		return value ;
+	}
+}
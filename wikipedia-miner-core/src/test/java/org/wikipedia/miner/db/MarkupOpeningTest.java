@@ -0,0 +1,107 @@
+package org.wikipedia.miner.db;
+
+import junit.framework.TestCase;
+
+public class MarkupOpeningTest extends TestCase {
+
+	public void testCutsAtFirstParagraphBreakAfterMinLength() {
+
+		String markup = "One.\n\nTwo.\n\nThree." ;
+
+		MarkupOpening opening = new MarkupOpening(markup) ;
+
+		assertEquals("One.", opening.getOpening(0)) ;
+		assertFalse(opening.isWhole()) ;
+
+		assertEquals("One.\n\nTwo.", opening.getOpening(5)) ;
+		assertEquals("One.", opening.getOpening(4)) ;
+
+		assertEquals(markup, opening.getOpening(12)) ;
+		assertTrue(opening.isWhole()) ;
+	}
+
+	public void testNeverCutsWithinTemplatesLinksOrOpaqueTags() {
+
+		String markup = "{{Infobox\n\n| name = A}}[[File:a.png|thumb|\n\nCaption]]<!-- \n\n -->"
+				+ "A<ref>{{cite\n\n}}</ref> and <ref name=\"b\"/><math>\\{\n\n</math> is.\n\nRest" ;
+
+		MarkupOpening opening = new MarkupOpening(markup) ;
+
+		assertEquals(markup.substring(0, markup.indexOf("\n\nRest")), opening.getOpening(0)) ;
+		assertFalse(opening.isWhole()) ;
+	}
+
+	public void testUnbalancedMarkupIsReturnedWhole() {
+
+		MarkupOpening opening = new MarkupOpening("A}} stray.\n\nB.\n\nC.") ;
+		assertEquals("A}} stray.\n\nB.\n\nC.", opening.getOpening(0)) ;
+		assertTrue(opening.isWhole()) ;
+
+		opening = new MarkupOpening("A <!-- never closed\n\nB.") ;
+		assertEquals("A <!-- never closed\n\nB.", opening.getOpening(0)) ;
+		assertTrue(opening.isWhole()) ;
+
+		//breaks before the markup became unbalanced can still be used
+		opening = new MarkupOpening("A.\n\nB]].\n\nC.") ;
+		assertEquals("A.", opening.getOpening(0)) ;
+		assertEquals("A.\n\nB]].\n\nC.", opening.getOpening(3)) ;
+	}
+
+	public void testCompressedOpeningsMatchUncompressed() {
+
+		String markup = getSampleMarkup(2000) ;
+
+		MarkupCompressor compressor = new MarkupCompressor(new byte[0]) ;
+		byte[] data = compressor.compress(markup) ;
+
+		MarkupOpening plain = new MarkupOpening(markup) ;
+		MarkupOpening compressed = new MarkupOpening(compressor.startDecompression(data)) ;
+
+		for (int minLength=10 ; minLength<markup.length()+100 ; minLength=minLength*3) {
+
+			String expected = plain.getOpening(minLength) ;
+
+			assertEquals(expected, compressed.getOpening(minLength)) ;
+			assertEquals(plain.isWhole(), compressed.isWhole()) ;
+			assertTrue(markup.startsWith(expected)) ;
+		}
+
+		assertEquals(markup, compressed.getOpening(markup.length())) ;
+		assertTrue(compressed.isWhole()) ;
+
+		compressed.close() ;
+		compressed.close() ;
+	}
+
+	public void testDecompressionAcrossMultibyteCharacters() {
+
+		String markup = getSampleMarkup(5000) ;
+
+		MarkupCompressor compressor = new MarkupCompressor(new byte[0]) ;
+		byte[] data = compressor.compress(markup) ;
+
+		assertEquals(markup, compressor.decompress(data, Integer.MAX_VALUE)) ;
+		assertEquals(markup.substring(0, 12345), compressor.decompress(data, 12345)) ;
+
+		//read a little at a time, so that chunks end part way through characters
+		MarkupCompressor.Decompression decompression = compressor.startDecompression(data) ;
+		StringBuilder sb = new StringBuilder() ;
+
+		while (!decompression.isFinished())
+			decompression.readTo(sb, sb.length() + 1) ;
+
+		assertEquals(markup, sb.toString()) ;
+		decompression.end() ;
+	}
+
+	private static String getSampleMarkup(int paragraphs) {
+
+		StringBuilder sb = new StringBuilder() ;
+		for (int i=0 ; i<paragraphs ; i++) {
+			sb.append("{{Infobox\n\n| caf\u00e9 = ").append(i).append("}}") ;
+			sb.append("Paragraph ").append(i).append(" about [[Z\u00fcrich|\n\nthe city]], \u6771\u4eac and \ud83d\ude00.") ;
+			sb.append("<ref>note\n\n").append(i).append("</ref>\n\n") ;
+		}
+		return sb.toString() ;
+	}
+}
@@ -0,0 +1,92 @@
+package org.wikipedia.miner.db;
+
+import junit.framework.TestCase;
+
+public class RedirectTableTest extends TestCase {
+
+	public void testDirectRedirects() {
+
+		RedirectTable.Builder builder = new RedirectTable.Builder() ;
+		builder.add(1, 100) ;
+		builder.add(2, 200) ;
+
+		RedirectTable table = builder.build() ;
+
+		assertEquals(2, table.size()) ;
+		assertTrue(table.getOrdinal(3) < 0) ;
+
+		int ordinal = table.getOrdinal(2) ;
+		assertEquals(2, table.getId(ordinal)) ;
+		assertEquals(200, table.getTarget(ordinal)) ;
+		assertEquals(200, table.getResolvedTarget(ordinal)) ;
+	}
+
+	public void testChainsAreResolved() {
+
+		//10 -> 11 -> 12 -> ... -> 20 -> 500, added out of order
+		RedirectTable.Builder builder = new RedirectTable.Builder(11) ;
+		for (int id=20 ; id>=10 ; id--)
+			builder.add(id, id == 20 ? 500 : id + 1) ;
+
+		RedirectTable table = builder.build() ;
+
+		assertEquals(11, table.size()) ;
+
+		for (int id=10 ; id<=20 ; id++) {
+			int ordinal = table.getOrdinal(id) ;
+
+			assertEquals(id, table.getId(ordinal)) ;
+			assertEquals(id == 20 ? 500 : id + 1, table.getTarget(ordinal)) ;
+			assertEquals(500, table.getResolvedTarget(ordinal)) ;
+		}
+	}
+
+	public void testCyclesAreUnresolved() {
+
+		RedirectTable.Builder builder = new RedirectTable.Builder() ;
+
+		//a loop of three, with a redirect leading into it
+		builder.add(1, 2) ;
+		builder.add(2, 3) ;
+		builder.add(3, 1) ;
+		builder.add(4, 1) ;
+
+		//a redirect to itself
+		builder.add(5, 5) ;
+
+		//an ordinary redirect alongside them
+		builder.add(6, 7) ;
+
+		RedirectTable table = builder.build() ;
+
+		for (int id=1 ; id<=5 ; id++) {
+			int ordinal = table.getOrdinal(id) ;
+			assertEquals(RedirectTable.UNRESOLVED, table.getResolvedTarget(ordinal)) ;
+		}
+
+		assertEquals(2, table.getTarget(table.getOrdinal(1))) ;
+		assertEquals(5, table.getTarget(table.getOrdinal(5))) ;
+		assertEquals(7, table.getResolvedTarget(table.getOrdinal(6))) ;
+	}
+
+	public void testOverlongChainsAreUnresolved() {
+
+		//chains longer than the hop limit are treated as loops
+		RedirectTable.Builder builder = new RedirectTable.Builder() ;
+		for (int id=1 ; id<=1000 ; id++)
+			builder.add(id, id + 1) ;
+
+		RedirectTable table = builder.build() ;
+
+		assertEquals(RedirectTable.UNRESOLVED, table.getResolvedTarget(table.getOrdinal(1))) ;
+		assertEquals(1001, table.getResolvedTarget(table.getOrdinal(1000))) ;
+	}
+
+	public void testEmptyTable() {
+
+		RedirectTable table = new RedirectTable.Builder().build() ;
+
+		assertEquals(0, table.size()) ;
+		assertTrue(table.getOrdinal(1) < 0) ;
+	}
+}
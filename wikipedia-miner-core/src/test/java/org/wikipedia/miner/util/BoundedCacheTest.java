@@ -0,0 +1,107 @@
+package org.wikipedia.miner.util;
+
+import junit.framework.TestCase;
+
+public class BoundedCacheTest extends TestCase {
+
+	public void testGetAndPut() {
+
+		BoundedCache<Integer,String> cache = new BoundedCache<Integer,String>(100) ;
+
+		assertNull(cache.get(1)) ;
+
+		cache.put(1, "one") ;
+		cache.put(2, "two") ;
+		assertEquals("one", cache.get(1)) ;
+		assertEquals("two", cache.get(2)) ;
+
+		cache.put(1, "uno") ;
+		assertEquals("uno", cache.get(1)) ;
+		assertEquals(2, cache.size()) ;
+
+		assertEquals(3, cache.getHitCount()) ;
+		assertEquals(1, cache.getMissCount()) ;
+		assertEquals(0.75, cache.getHitRatio(), 0.0001) ;
+
+		cache.clear() ;
+		assertEquals(0, cache.size()) ;
+		assertNull(cache.get(1)) ;
+	}
+
+	public void testBoundedByEntries() {
+
+		BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(160) ;
+
+		for (int i=0 ; i<10000 ; i++)
+			cache.put(i, i) ;
+
+		assertTrue(cache.size() <= 160) ;
+		assertTrue(cache.getEvictionCount() >= 10000 - 160) ;
+
+		//whatever survived must still be associated with the right value
+		for (int i=0 ; i<10000 ; i++) {
+			Integer value = cache.get(i) ;
+			assertTrue(value == null || value == i) ;
+		}
+	}
+
+	public void testBoundedByWeight() {
+
+		BoundedCache<Integer,byte[]> cache = new BoundedCache<Integer,byte[]>(0, 16 * 1000, new BoundedCache.Weigher<byte[]>() {
+			public int weigh(byte[] value) {
+				return value.length ;
+			}
+		}) ;
+
+		for (int i=0 ; i<10000 ; i++)
+			cache.put(i, new byte[100]) ;
+
+		assertTrue(cache.weight() <= 16 * 1000) ;
+		assertTrue(cache.weight() > 0) ;
+
+		//anything heavier than a whole segment is rejected outright
+		cache.put(-1, new byte[16 * 1000]) ;
+		assertNull(cache.get(-1)) ;
+	}
+
+	public void testFrequentEntriesSurviveScans() {
+
+		BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(1600) ;
+
+		//a small set of popular entries, requested many times
+		for (int round=0 ; round<20 ; round++) {
+			for (int i=0 ; i<100 ; i++) {
+				if (cache.get(i) == null)
+					cache.put(i, i) ;
+			}
+		}
+
+		//a long scan of entries that are only requested once, while popular entries continue to be requested (but too rarely for an LRU cache to keep them)
+		for (int i=1000 ; i<100000 ; i++) {
+			if (cache.get(i) == null)
+				cache.put(i, i) ;
+
+			if (i % 50 == 0) {
+				int popular = (i / 50) % 100 ;
+				if (cache.get(popular) == null)
+					cache.put(popular, popular) ;
+			}
+		}
+
+		int survivors = 0 ;
+		for (int i=0 ; i<100 ; i++) {
+			if (cache.get(i) != null)
+				survivors++ ;
+		}
+
+		assertTrue("only " + survivors + " popular entries survived", survivors >= 95) ;
+	}
+
+	public void testRequiresABound() {
+		try {
+			new BoundedCache<Integer,Integer>(0) ;
+			fail("a cache must be bounded") ;
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.wikipedia.miner.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class OffHeapCacheTest extends TestCase {
+
+	//16 segments of 4KB each
+	private static final long MAX_BYTES = 16 * 4096 ;
+
+	public void testGetAndPut() {
+
+		OffHeapCache<Integer> cache = new OffHeapCache<Integer>(MAX_BYTES) ;
+
+		assertNull(cache.get(1)) ;
+
+		cache.put(1, getValue(1, 10)) ;
+		cache.put(2, getValue(2, 20)) ;
+		assertTrue(Arrays.equals(getValue(1, 10), cache.get(1))) ;
+		assertTrue(Arrays.equals(getValue(2, 20), cache.get(2))) ;
+
+		cache.put(1, getValue(3, 30)) ;
+		assertTrue(Arrays.equals(getValue(3, 30), cache.get(1))) ;
+		assertEquals(2, cache.size()) ;
+		assertEquals(50, cache.weight()) ;
+
+		assertEquals(3, cache.getHitCount()) ;
+		assertEquals(1, cache.getMissCount()) ;
+		assertEquals(0.75, cache.getHitRatio(), 0.0001) ;
+
+		cache.clear() ;
+		assertEquals(0, cache.size()) ;
+		assertEquals(0, cache.weight()) ;
+		assertNull(cache.get(1)) ;
+	}
+
+	public void testOversizedValuesAreRejected() {
+
+		OffHeapCache<Integer> cache = new OffHeapCache<Integer>(MAX_BYTES) ;
+
+		cache.put(1, new byte[2000]) ;
+
+		assertNull(cache.get(1)) ;
+		assertEquals(1, cache.getEvictionCount()) ;
+	}
+
+	public void testEvictsWhenFull() {
+
+		OffHeapCache<Integer> cache = new OffHeapCache<Integer>(MAX_BYTES) ;
+
+		for (int i=0 ; i<10000 ; i++)
+			cache.put(i, getValue(i, 100)) ;
+
+		assertTrue(cache.weight() <= MAX_BYTES) ;
+		assertTrue(cache.weight() > MAX_BYTES / 2) ;
+		assertEquals(10000 - cache.size(), cache.getEvictionCount()) ;
+
+		//whatever survived must not have been overwritten by later values
+		int cached = 0 ;
+		for (int i=0 ; i<10000 ; i++) {
+			byte[] value = cache.get(i) ;
+
+			if (value != null) {
+				assertTrue(Arrays.equals(getValue(i, 100), value)) ;
+				cached++ ;
+			}
+		}
+		assertEquals(cache.size(), cached) ;
+
+		//the most recent values are still cached
+		assertNotNull(cache.get(9999)) ;
+	}
+
+	public void testRequestedEntriesGetSecondChance() {
+
+		OffHeapCache<Integer> cache = new OffHeapCache<Integer>(MAX_BYTES) ;
+
+		int[] popular = {-1, -2, -3, -4} ;
+
+		for (int p:popular)
+			cache.put(p, getValue(p, 200)) ;
+
+		for (int i=0 ; i<10000 ; i++) {
+			cache.put(i, getValue(i, 100)) ;
+
+			for (int p:popular)
+				assertTrue(Arrays.equals(getValue(p, 200), cache.get(p))) ;
+		}
+
+		//entries that were never requested were evicted
+		assertNull(cache.get(0)) ;
+		assertTrue(cache.getEvictionCount() > 0) ;
+	}
+
+	private static byte[] getValue(int seed, int length) {
+
+		byte[] value = new byte[length] ;
+		for (int i=0 ; i<length ; i++)
+			value[i] = (byte)(seed * 31 + i) ;
+
+		return value ;
+	}
+}
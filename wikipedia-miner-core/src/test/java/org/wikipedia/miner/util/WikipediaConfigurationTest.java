@@ -0,0 +1,73 @@
+package org.wikipedia.miner.util;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+import org.wikipedia.miner.db.WDatabase.CachePriority;
+import org.wikipedia.miner.db.WDatabase.DatabaseType;
+import org.xml.sax.InputSource;
+
+public class WikipediaConfigurationTest extends TestCase {
+
+	public void testBoundedAndTieredCaches() throws Exception {
+
+		WikipediaConfiguration conf = parse(
+				"<databaseToCache maxEntries=\"500\" maxBytes=\"1m\">pageLabel</databaseToCache>"
+				+ "<databaseToCache maxBytes=\"2m\" offHeapBytes=\"1g\">pageLinksIn</databaseToCache>") ;
+
+		assertEquals(CachePriority.bounded, conf.getCachePriority(DatabaseType.pageLabel)) ;
+		assertEquals(500, conf.getCacheMaxEntries(DatabaseType.pageLabel)) ;
+		assertEquals(1L << 20, conf.getCacheMaxBytes(DatabaseType.pageLabel)) ;
+		assertEquals(0, conf.getCacheOffHeapBytes(DatabaseType.pageLabel)) ;
+
+		assertEquals(CachePriority.tiered, conf.getCachePriority(DatabaseType.pageLinksIn)) ;
+		assertEquals(2L << 20, conf.getCacheMaxBytes(DatabaseType.pageLinksIn)) ;
+		assertEquals(1L << 30, conf.getCacheOffHeapBytes(DatabaseType.pageLinksIn)) ;
+	}
+
+	public void testOffHeapBytesAloneIsTieredWithDefaultBounds() throws Exception {
+
+		WikipediaConfiguration conf = parse("<databaseToCache offHeapBytes=\"512m\">pageLinksOut</databaseToCache>") ;
+
+		assertEquals(CachePriority.tiered, conf.getCachePriority(DatabaseType.pageLinksOut)) ;
+		assertTrue(conf.getCacheMaxEntries(DatabaseType.pageLinksOut) > 0) ;
+		assertEquals(512L << 20, conf.getCacheOffHeapBytes(DatabaseType.pageLinksOut)) ;
+	}
+
+	public void testTieredWithoutOffHeapBytesIsRejected() throws Exception {
+
+		try {
+			parse("<databaseToCache priority=\"tiered\">pageLinksIn</databaseToCache>") ;
+			fail("tiered priority without offHeapBytes should be rejected") ;
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("offHeapBytes")) ;
+		}
+
+		try {
+			parse("<databaseToCache maxEntries=\"500\" offHeapBytes=\"0\">pageLinksIn</databaseToCache>") ;
+			fail("an empty off-heap tier should be rejected") ;
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("offHeapBytes")) ;
+		}
+
+		WikipediaConfiguration conf = new WikipediaConfiguration("en", null) ;
+		try {
+			conf.addDatabaseToCache(DatabaseType.pageLinksIn, CachePriority.tiered) ;
+			fail("tiered priority without offHeapBytes should be rejected") ;
+		} catch (IllegalArgumentException e) {
+			assertNull(conf.getCachePriority(DatabaseType.pageLinksIn)) ;
+		}
+	}
+
+	private static WikipediaConfiguration parse(String params) throws Exception {
+
+		String xml = "<wikipediaMiner><langCode>en</langCode>" + params + "</wikipediaMiner>" ;
+		Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement() ;
+
+		return new WikipediaConfiguration(root) ;
+	}
+}
@@ -20,7 +20,6 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
-import org.wikipedia.miner.comparison.ArticleComparer;
 import org.wikipedia.miner.db.struct.DbLinkLocation;
 import org.wikipedia.miner.db.struct.DbLinkLocationList;
 import org.wikipedia.miner.model.Article;
@@ -194,7 +193,7 @@ public class SuggestService extends WMService {
 		float minIndividualRelatedness = prmMinIndividualRelatedness.getValue(request) ;
 		float minAvgRelatedness = prmMinAverageRelatedness.getValue(request) ;
 		
-		RelatednessCache rc = new RelatednessCache(new ArticleComparer(wikipedia)) ;
+		RelatednessCache rc = new RelatednessCache(getWMHub().getArticleComparer(getWikipediaName(request))) ;
 		
 		int c=0 ;
 		for (Article suggestion:roughSuggestions) {